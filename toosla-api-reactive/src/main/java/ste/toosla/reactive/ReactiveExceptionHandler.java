@@ -0,0 +1,73 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.reactive;
+
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebInputException;
+import ste.toosla.api.GlobalExceptionHandler;
+import ste.toosla.api.dto.ErrorResponse;
+
+/**
+ * Maps the WebFlux counterparts of the exceptions handled by
+ * {@link GlobalExceptionHandler} to the same responses, so that clients see no
+ * difference between the two stacks.
+ */
+@RestControllerAdvice
+public class ReactiveExceptionHandler extends GlobalExceptionHandler {
+
+    private static final Logger LOG = Logger.getLogger(ReactiveExceptionHandler.class.getName());
+
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ErrorResponse> handleWebExchangeBindException(WebExchangeBindException ex) {
+        LOG.warning(() -> "Validation error");
+        String errors = ex.getBindingResult().getFieldErrors().stream()
+                .map(error -> error.getDefaultMessage())
+                .collect(Collectors.joining(", "));
+        ErrorResponse error = new ErrorResponse(
+            errors,
+            "Validation failed for input fields"
+        );
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * A missing or unreadable body is a client error, like
+     * {@code HttpMessageNotReadableException} in Spring MVC; anything else
+     * (e.g. a missing header) is handled as a generic error.
+     */
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<ErrorResponse> handleServerWebInputException(ServerWebInputException ex) {
+        if (ex.getMethodParameter() != null && ex.getMethodParameter().hasParameterAnnotation(RequestBody.class)) {
+            LOG.warning(() -> "Malformed JSON input - " + ex.getMessage());
+            return new ResponseEntity<>(
+                new ErrorResponse("Malformed JSON input", ex.getReason()), HttpStatus.BAD_REQUEST
+            );
+        }
+        return handleGenericException(ex);
+    }
+}
@@ -0,0 +1,551 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.reactive;
+
+import jakarta.validation.Valid;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import ste.toosla.api.KeyManager;
+import ste.toosla.api.NotFoundCache;
+import ste.toosla.api.StaleReadCache;
+import ste.toosla.api.StorageChangeFeed;
+import ste.toosla.api.StorageDeadlines;
+import ste.toosla.api.StorageRateLimiter;
+import ste.toosla.api.KeyManager.KeyEntry;
+import ste.toosla.api.dto.ChangeEvent;
+import ste.toosla.api.dto.ErrorResponse;
+import ste.toosla.api.dto.LoginRequest;
+import ste.toosla.api.dto.LoginResponse;
+import ste.toosla.api.dto.ReadRequest;
+import ste.toosla.api.dto.WriteRequest;
+import ste.toosla.util.metrics.MetricsRegistry;
+import ste.toosla.zefiro.ZefiroBulkhead;
+import ste.toosla.zefiro.ZefiroBusyException;
+import ste.toosla.zefiro.ZefiroCircuitBreaker;
+import ste.toosla.zefiro.ZefiroConcurrencyLimiter;
+import ste.toosla.zefiro.ZefiroCircuitOpenException;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroDeadline;
+import ste.toosla.zefiro.ZefiroException;
+import ste.toosla.zefiro.ZefiroFileNotFoundException;
+import ste.toosla.zefiro.ZefiroLoginException;
+import ste.toosla.zefiro.ZefiroLoginResponse;
+import ste.toosla.zefiro.ZefiroLoadMonitor;
+import ste.toosla.zefiro.ZefiroMetrics;
+import ste.toosla.zefiro.ZefiroModificationException;
+import ste.toosla.zefiro.ZefiroRetryPolicy;
+import ste.toosla.zefiro.ZefiroHedgingPolicy;
+import ste.toosla.zefiro.ZefiroTimeoutException;
+import ste.toosla.zefiro.ZefiroUploadResponse;
+
+/**
+ * Reactive controller for the remote storage API.
+ *
+ * <p>It exposes {@code /api/storage/login}, {@code /api/storage/read},
+ * {@code /api/storage/write} and {@code /api/storage/changes} with the same
+ * requests, responses, headers and status codes of
+ * {@link ste.toosla.api.StorageController}. Request bodies are
+ * read and responses written by Reactor Netty without blocking; the calls to
+ * Zefiro, which go through the blocking {@link ZefiroClient}, are subscribed on
+ * the {@code zefiroScheduler} (one virtual thread per request), thus a slow
+ * client or a slow Zefiro never holds an event loop or a platform thread.
+ */
+@RestController
+public class ReactiveStorageController {
+
+    private static final Logger LOG = Logger.getLogger(ReactiveStorageController.class.getName());
+
+    //
+    // Group 1: captures part1 (everything before colon, if present)
+    // Group 2: captures part2 (everything after colon, if present)
+    //
+    private final Pattern pattern = Pattern.compile("^([^:]*?)(?::(.*))?$");
+
+    @Autowired
+    private KeyManager keyManager;
+    @Autowired
+    private HttpClient.Builder httpClientBuilder;
+    @Autowired
+    private ZefiroMetrics zefiroMetrics;
+    @Autowired
+    private ZefiroBulkhead zefiroBulkhead;
+    @Autowired
+    private ZefiroRetryPolicy zefiroRetryPolicy;
+    @Autowired
+    private ZefiroHedgingPolicy zefiroHedgingPolicy;
+    @Autowired
+    private ZefiroCircuitBreaker zefiroCircuitBreaker;
+    @Autowired
+    private ZefiroConcurrencyLimiter zefiroConcurrencyLimiter;
+    @Autowired
+    private ZefiroLoadMonitor zefiroLoadMonitor;
+    @Autowired
+    private StaleReadCache staleReadCache;
+    @Autowired
+    private NotFoundCache notFoundCache;
+    @Autowired
+    private StorageRateLimiter rateLimiter;
+    @Autowired
+    private StorageDeadlines deadlines;
+    @Autowired
+    private StorageChangeFeed changeFeed;
+    @Autowired
+    private Scheduler zefiroScheduler;
+    @Value("${toosla.storage.changes.timeout-ms:600000}")
+    private long changesTimeout;
+    @Value("${toosla.zefiro.api-url:https://zefiro.me}")
+    private String zefiroApiUrl;
+    @Value("${toosla.zefiro.upload-url:https://upload.zefiro.me}")
+    private String zefiroUploadUrl;
+
+    @PostMapping("/api/storage/login")
+    public Mono<ResponseEntity<?>> login(
+            @Valid @RequestBody LoginRequest loginRequest,
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout,
+            ServerHttpRequest request) {
+        final ZefiroDeadline deadline = deadlines.login(timeout);
+        final InetSocketAddress remote = request.getRemoteAddress();
+        final String address = (remote == null) ? null
+                             : (remote.getAddress() != null) ? remote.getAddress().getHostAddress() : remote.getHostString();
+        return Mono.<ResponseEntity<?>>fromCallable(() -> handleLogin(loginRequest.credentials(), address, deadline))
+                   .subscribeOn(zefiroScheduler);
+    }
+
+    @PostMapping("/api/storage/read")
+    public Mono<ResponseEntity<?>> read(
+            @Valid @RequestBody ReadRequest readRequest,
+            @RequestHeader(name = "If-Modified-Since", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            Date ifModifiedSince,
+            @RequestHeader(name = "Authorization", required = false) String authorizationHeader,
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout) {
+        final ZefiroDeadline deadline = deadlines.read(timeout);
+        return Mono.<ResponseEntity<?>>fromCallable(() -> handleRead(readRequest, ifModifiedSince, authorizationHeader, deadline))
+                   .subscribeOn(zefiroScheduler);
+    }
+
+    @PostMapping("/api/storage/write")
+    public Mono<ResponseEntity<?>> write(
+            @Valid @RequestBody WriteRequest writeRequest,
+            @RequestHeader(name = "If-Unmodified-Since", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            Date ifUnmodifiedSince,
+            @RequestHeader(name = "Authorization") String authorizationHeader,
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout) {
+        if (writeRequest.content() == null) {
+            //
+            // writes by patch are served by the servlet stack only
+            //
+            return Mono.just(ResponseEntity.badRequest().body(
+                new ErrorResponse("Patches are not supported", "write the whole content of " + writeRequest.path())
+            ));
+        }
+        final ZefiroDeadline deadline = deadlines.write(timeout);
+        return Mono.<ResponseEntity<?>>fromCallable(() -> handleWrite(writeRequest, ifUnmodifiedSince, authorizationHeader, deadline))
+                   .subscribeOn(zefiroScheduler);
+    }
+
+    /**
+     * Streams the changes of a file; the events are emitted by the
+     * {@link StorageChangeFeed} watcher threads into a buffer drained by the
+     * connection, thus the request never blocks.
+     */
+    @GetMapping("/api/storage/changes")
+    public ResponseEntity<?> changes(
+            @RequestParam("path") String path,
+            @RequestHeader(name = "Authorization", required = false) String authorizationHeader) {
+        LOG.info(() -> "Subscribing to the changes of file: " + path);
+
+        final KeyEntry keyEntry;
+        try {
+            keyEntry = getValidKey(authorizationHeader);
+        } catch (ZefiroLoginException x) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                    new ErrorResponse("Unauthorized", x.getMessage()));
+        }
+
+        final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.READ, keyEntry.account());
+        if (limited != null) {
+            return limited;
+        }
+
+        final Sinks.Many<ServerSentEvent<ChangeEvent>> sink = Sinks.many().unicast().onBackpressureBuffer();
+        final StorageChangeFeed.Subscription subscription = changeFeed.subscribe(
+            keyEntry.account(), path,
+            () -> newZefiroClient(keyEntry)
+                .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+                .withDeadline(deadlines.read(null)),
+            new StorageChangeFeed.Subscriber() {
+                @Override
+                public boolean onChange(final ChangeEvent change) {
+                    return emit(sink, ServerSentEvent.builder(change)
+                        .event("change")
+                        .id(String.valueOf(change.lastModified()))
+                        .build()
+                    );
+                }
+
+                @Override
+                public boolean onCheck() {
+                    return emit(sink, ServerSentEvent.<ChangeEvent>builder().comment("").build());
+                }
+
+                @Override
+                public void onClose() {
+                    synchronized (sink) {
+                        sink.tryEmitComplete();
+                    }
+                }
+            }
+        );
+        if (subscription == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "60")
+                .body(new ErrorResponse(
+                    "Too many files watched, retry later", "the changes of " + path + " can not be watched now"
+                ));
+        }
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.TEXT_EVENT_STREAM)
+            .body(sink.asFlux()
+                .take(Duration.ofMillis(changesTimeout))
+                .doFinally((signal) -> subscription.close())
+            );
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Emits an event to a subscriber of {@code /api/storage/changes}; events
+     * come from different threads, hence emissions are serialized.
+     *
+     * @return false if the subscriber is gone
+     */
+    private static boolean emit(
+        final Sinks.Many<ServerSentEvent<ChangeEvent>> sink, final ServerSentEvent<ChangeEvent> event
+    ) {
+        synchronized (sink) {
+            return sink.tryEmitNext(event).isSuccess();
+        }
+    }
+
+    private ResponseEntity<?> handleLogin(final String credentials, final String address, final ZefiroDeadline deadline) {
+        LOG.info(() -> "Attempting login");
+
+        final Matcher matcher = pattern.matcher(credentials);
+        matcher.matches();
+
+        final String account = matcher.group(1) != null ? matcher.group(1) : "";
+        final String secret = matcher.group(2) != null ? matcher.group(2) : "";
+
+        final ResponseEntity<ErrorResponse> limited = limited(
+            StorageRateLimiter.Operation.LOGIN, StorageRateLimiter.loginKey(address, account)
+        );
+        if (limited != null) {
+            return limited;
+        }
+
+        LOG.info(() -> "Sending login request to Zefiro for account '" + account + "'");
+        ResponseEntity<ErrorResponse> error;
+        Level errorLevel;
+        try {
+            final ZefiroLoginResponse zefiroResponse = newZefiroClient(account, secret).withDeadline(deadline).login();
+
+            final String validationKey = zefiroResponse.key();
+            final String accessKey = keyManager.newKey(account, secret, validationKey);
+
+            LOG.info(() -> "Login successful for account '" + account + "'");
+
+            return ResponseEntity.ok().body(new LoginResponse(zefiroResponse.account(), accessKey, validationKey));
+        } catch (ZefiroLoginException x) {
+            error = ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                new ErrorResponse("Zefiro authentication failed", x.getMessage())
+            );
+            errorLevel = Level.INFO;
+        } catch (ZefiroBusyException x) {
+            error = busy(x);
+            errorLevel = Level.WARNING;
+        } catch (ZefiroTimeoutException x) {
+            error = timeout("login", x);
+            errorLevel = Level.WARNING;
+        } catch (ZefiroException x) {
+            error = ResponseEntity.internalServerError().body(
+                new ErrorResponse("Error processing the Zefiro request", x.getMessage())
+            );
+            errorLevel = Level.SEVERE;
+        }
+
+        final ErrorResponse body = error.getBody();
+        LOG.log(errorLevel, () -> body.getMessage() + " - " + body.getDetails());
+
+        return error;
+    }
+
+    private ResponseEntity<?> handleRead(
+        final ReadRequest readRequest, final Date ifModifiedSince, final String authorizationHeader,
+        final ZefiroDeadline deadline
+    ) {
+        LOG.info(() -> "Attempting to read file: " + readRequest.path() + " if modified since " + ifModifiedSince);
+
+        KeyEntry keyEntry = null;
+        try {
+            keyEntry = getValidKey(authorizationHeader);
+
+            final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.READ, keyEntry.account());
+            if (limited != null) {
+                return limited;
+            }
+
+            final ZefiroFileNotFoundException missing = notFoundCache.get(keyEntry.account(), readRequest.path());
+            if (missing != null) {
+                LOG.info(() -> "File recently found missing: " + readRequest.path());
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                        new ErrorResponse("File not found", missing.getMessage()));
+            }
+
+            final ZefiroClient zefiroClient = newZefiroClient(keyEntry).withDeadline(deadline);
+
+            final Optional<ZefiroClient.DownloadResult> result = zefiroClient.download(readRequest.path(), ifModifiedSince);
+            if (result.isPresent()) {
+                LOG.info(() -> "File read successfully: " + readRequest.path());
+                staleReadCache.put(keyEntry.account(), readRequest.path(), result.get().content(), result.get().lastModified());
+                return ResponseEntity
+                        .ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .lastModified(result.get().lastModified().toInstant())
+                        .body(result.get().content());
+            } else {
+                LOG.info(() -> "File not modified: " + readRequest.path());
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+            }
+        } catch (ZefiroFileNotFoundException x) {
+            LOG.warning(() -> "File not found: " + readRequest.path());
+            if (keyEntry != null) {
+                staleReadCache.remove(keyEntry.account(), readRequest.path());
+                notFoundCache.put(keyEntry.account(), readRequest.path(), x);
+            }
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                    new ErrorResponse("File not found", x.getMessage()));
+        } catch (ZefiroLoginException x) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                    new ErrorResponse("Unauthorized", x.getMessage()));
+        } catch (ZefiroCircuitOpenException x) {
+            return stale(keyEntry, readRequest, ifModifiedSince, x);
+        } catch (ZefiroBusyException x) {
+            LOG.warning(() -> x.getMessage());
+            return busy(x);
+        } catch (ZefiroTimeoutException x) {
+            LOG.warning(() -> x.getMessage());
+            return timeout("read", x);
+        } catch (ZefiroException x) {
+            LOG.log(Level.SEVERE, x, () -> "Error reading file: " + readRequest.path());
+            return ResponseEntity.internalServerError().body(
+                    new ErrorResponse("Error reading file", x.getMessage()));
+        }
+    }
+
+    private ResponseEntity<?> handleWrite(
+        final WriteRequest writeRequest, final Date ifUnmodifiedSince, final String authorizationHeader,
+        final ZefiroDeadline deadline
+    ) {
+        LOG.info(() -> "Attempting to write file: " + writeRequest.path() + " with If-Unmodified-Since: " + ifUnmodifiedSince);
+        try {
+            final KeyEntry keyEntry = getValidKey(authorizationHeader);
+
+            if (zefiroLoadMonitor.shed(ZefiroBulkhead.Priority.BACKGROUND)) {
+                return overloaded("write");
+            }
+            final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.WRITE, keyEntry.account());
+            if (limited != null) {
+                return limited;
+            }
+
+            final ZefiroClient zefiroClient = newZefiroClient(keyEntry)
+                .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+                .withDeadline(deadline);
+
+            final ZefiroUploadResponse zefiroResponse;
+            try {
+                zefiroResponse = zefiroClient.upload(writeRequest.path(), writeRequest.content(), ifUnmodifiedSince);
+            } finally {
+                //
+                // the file may exist now, even if the upload failed
+                //
+                notFoundCache.remove(keyEntry.account(), writeRequest.path());
+            }
+            LOG.info(() -> "File written successfully: " + writeRequest.path());
+            staleReadCache.put(keyEntry.account(), writeRequest.path(), writeRequest.content(), zefiroResponse.lastModified());
+            changeFeed.changed(keyEntry.account(), writeRequest.path(), zefiroResponse.lastModified().getTime());
+
+            return ResponseEntity.ok().lastModified(zefiroResponse.lastModified().toInstant()).build();
+        } catch (ZefiroFileNotFoundException x) {
+            LOG.warning(() -> "File not found: " + writeRequest.path());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                    new ErrorResponse("File not found", x.getMessage()));
+        } catch (ZefiroModificationException x) {
+            LOG.warning(() -> "Precondition Failed for file: " + writeRequest.path() + " - " + x.getMessage());
+            ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.status(HttpStatus.PRECONDITION_FAILED);
+            if (x.lastModified.isPresent()) {
+                responseBuilder.lastModified(x.lastModified.get().getTime());
+            }
+            return responseBuilder.body(new ErrorResponse("Precondition Failed", x.getMessage()));
+        } catch (ZefiroLoginException x) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                    new ErrorResponse("Unauthorized", x.getMessage()));
+        } catch (ZefiroBusyException x) {
+            LOG.warning(() -> x.getMessage());
+            return busy(x);
+        } catch (ZefiroTimeoutException x) {
+            LOG.warning(() -> x.getMessage());
+            return timeout("write", x);
+        } catch (ZefiroException x) {
+            LOG.log(Level.SEVERE, x, () -> "Error writing file: " + writeRequest.path());
+            return ResponseEntity.internalServerError().body(
+                    new ErrorResponse("Error writing file", x.getMessage()));
+        }
+    }
+
+    private ResponseEntity<ErrorResponse> limited(final StorageRateLimiter.Operation operation, final String key) {
+        final long wait = rateLimiter.acquire(operation, key);
+        if (wait == 0) {
+            return null;
+        }
+
+        LOG.warning(() -> "Too many " + operation.tag() + " requests for '" + key + "'");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(StorageRateLimiter.retryAfterSeconds(wait)))
+            .body(new ErrorResponse(
+                "Too many requests, retry later", "rate limit of " + operation.tag() + " requests exceeded"
+            ));
+    }
+
+    private ResponseEntity<ErrorResponse> overloaded(final String operation) {
+        LOG.warning(() -> "Service overloaded, " + operation + " request shed");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(new ErrorResponse(
+                "Service overloaded, retry later", operation + " requests are shed while Zefiro calls are backing up"
+            ));
+    }
+
+    private ResponseEntity<ErrorResponse> timeout(final String operation, final ZefiroTimeoutException x) {
+        zefiroMetrics.registry().counter(
+            MetricsRegistry.name("storage.timeouts", "operation", operation, "phase", x.endpoint.tag)
+        ).increment();
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(
+            new ErrorResponse("Storage service timeout", x.getMessage())
+        );
+    }
+
+    private ResponseEntity<ErrorResponse> busy(final ZefiroBusyException x) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(x.retryAfterSeconds()))
+            .body(new ErrorResponse(
+                (x instanceof ZefiroCircuitOpenException) ? "Storage service unavailable, retry later" : "Service busy, retry later",
+                x.getMessage()
+            ));
+    }
+
+    /**
+     * Serves the last known content of a file while Zefiro is unavailable, if
+     * this node has one; the response is marked as stale.
+     */
+    private ResponseEntity<?> stale(
+        final KeyEntry keyEntry, final ReadRequest readRequest, final Date ifModifiedSince,
+        final ZefiroCircuitOpenException x
+    ) {
+        final Optional<StaleReadCache.Entry> cached = (keyEntry != null)
+                                                    ? staleReadCache.get(keyEntry.account(), readRequest.path())
+                                                    : Optional.empty();
+        if (cached.isEmpty()) {
+            LOG.warning(() -> x.getMessage());
+            return busy(x);
+        }
+
+        LOG.warning(() -> x.getMessage() + " - serving the last known content of " + readRequest.path());
+        if (ifModifiedSince != null && cached.get().lastModified().getTime() <= ifModifiedSince.getTime()) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).header(HttpHeaders.WARNING, StaleReadCache.WARNING).build();
+        }
+        return ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .lastModified(cached.get().lastModified().toInstant())
+                .header(HttpHeaders.WARNING, StaleReadCache.WARNING)
+                .body(cached.get().content());
+    }
+
+    private ZefiroClient newZefiroClient(final KeyEntry keyEntry) {
+        return newZefiroClient(keyEntry.account(), keyEntry.secret())
+            .withValidationKey(keyEntry.validationKey());
+    }
+
+    private ZefiroClient newZefiroClient(final String account, final String secret) {
+        return new ZefiroClient(account, secret)
+            .withHttpClientBuilder(httpClientBuilder)
+            .withApiUrl(zefiroApiUrl)
+            .withUploadUrl(zefiroUploadUrl)
+            .withBulkhead(zefiroBulkhead)
+            .withRetryPolicy(zefiroRetryPolicy)
+            .withHedgingPolicy(zefiroHedgingPolicy)
+            .withCircuitBreaker(zefiroCircuitBreaker)
+            .withConcurrencyLimiter(zefiroConcurrencyLimiter)
+            .withListener(zefiroMetrics)
+            .withListener(zefiroLoadMonitor);
+    }
+
+    private KeyEntry getValidKey(final String authorizationHeader) throws ZefiroLoginException {
+        KeyEntry keyEntry = null;
+        if (
+            authorizationHeader == null ||
+            !authorizationHeader.startsWith("Bearer ") ||
+            (keyEntry = keyManager.get(authorizationHeader.substring(7))) == null
+        ) {
+            throw new ZefiroLoginException("Missing or invalid Authorization header");
+        }
+        return keyEntry;
+    }
+}
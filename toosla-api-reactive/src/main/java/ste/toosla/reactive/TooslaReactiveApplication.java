@@ -0,0 +1,47 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ste.toosla.api.HealthController;
+import ste.toosla.api.KeyManager;
+import ste.toosla.api.MetricsController;
+import ste.toosla.api.config.ApplicationConfig;
+
+/**
+ * The entry point of the reactive (WebFlux on Reactor Netty) variant of the
+ * Toosla API. It exposes the same storage, health and metrics endpoints of
+ * {@link ste.toosla.api.TooslaApiApplication}, reusing its configuration and
+ * key management, without the servlet stack.
+ */
+@SpringBootApplication
+@EnableScheduling
+@Import({ ApplicationConfig.class, KeyManager.class, HealthController.class, MetricsController.class })
+public class TooslaReactiveApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(TooslaReactiveApplication.class, args);
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.reactive;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import ste.toosla.api.KeyManager;
+import ste.toosla.api.StorageRateLimiter;
+import static ste.toosla.api.StorageControllerTest.SUCCESSFUL_ZEFIRO_LOGIN_RESPONSE;
+import ste.toosla.zefiro.ZefiroBulkhead;
+import static ste.toosla.zefiro.ZefiroClientTest.FIXED_EARLIER_DATE;
+import static ste.toosla.zefiro.ZefiroClientTest.FIXED_LATER_DATE;
+import static ste.toosla.zefiro.ZefiroClientTest.FIXED_MODIFICATION_DATE;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_ACCOUNT;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_SECRET;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_VALIDATION_KEY;
+import static ste.toosla.zefiro.ZefiroClientTest.setUpFileStubs;
+import ste.xtest.net.http.HttpClientStubber;
+import ste.xtest.net.http.StubHttpClient.StubHttpResponse;
+
+/**
+ * Checks that the reactive stack answers like {@code StorageControllerTest}
+ * expects the servlet stack to.
+ */
+@SpringBootTest
+@AutoConfigureWebTestClient
+public class ReactiveStorageControllerTest {
+
+    private static final DateTimeFormatter HTTP_FORMAT =
+        DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz").withZone(ZoneId.of("GMT"));
+
+    private static final String UPLOAD_URL =
+        "https://upload.zefiro.me/sapi/upload?action=save&acceptasynchronous=false&validationkey=" + TEST_VALIDATION_KEY;
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private HttpClientStubber httpClientBuilder;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @Autowired
+    private ZefiroBulkhead zefiroBulkhead;
+
+    @Autowired
+    private StorageRateLimiter rateLimiter;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        @Primary
+        public HttpClient.Builder stubHttpClientBuilder() {
+            return new HttpClientStubber();
+        }
+    }
+
+    @BeforeEach
+    public void before() {
+        httpClientBuilder.stubs().clear();
+    }
+
+    @Test
+    public void login_successful() {
+        httpClientBuilder.withStub(
+            "https://zefiro.me/sapi/login?action=login",
+            new StubHttpResponse<String>().text(SUCCESSFUL_ZEFIRO_LOGIN_RESPONSE)
+        );
+
+        client.post().uri("/api/storage/login")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"credentials\":\"user1:password1\"}")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.account").isEqualTo("user1")
+            .jsonPath("$.validationKey").isEqualTo("test_key")
+            .jsonPath("$.accessKey").value((String key) -> then(keyManager.containsKey(key)).isTrue());
+    }
+
+    @Test
+    public void login_failed() {
+        httpClientBuilder.withStub(
+            "https://zefiro.me/sapi/login?action=login",
+            new StubHttpResponse<String>().statusCode(401).text("{\"success\": false}")
+        );
+
+        client.post().uri("/api/storage/login")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"credentials\":\"wrong_credentials\"}")
+            .exchange()
+            .expectStatus().isUnauthorized()
+            .expectBody()
+            .jsonPath("$.success").isEqualTo(false)
+            .jsonPath("$.message").isEqualTo("Zefiro authentication failed");
+    }
+
+    @Test
+    public void too_many_logins() {
+        httpClientBuilder.withStub(
+            "https://zefiro.me/sapi/login?action=login",
+            new StubHttpResponse<String>().statusCode(401).text("{\"success\": false}")
+        );
+
+        final StorageRateLimiter.Limit limit = rateLimiter.limit(StorageRateLimiter.Operation.LOGIN);
+        rateLimiter.limit(StorageRateLimiter.Operation.LOGIN, new StorageRateLimiter.Limit(0.001, 1));
+        try {
+            client.post().uri("/api/storage/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"credentials\":\"limited:wrong\"}")
+                .exchange()
+                .expectStatus().isUnauthorized();
+
+            client.post().uri("/api/storage/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"credentials\":\"limited:wrong\"}")
+                .exchange()
+                .expectStatus().isEqualTo(429)
+                .expectHeader().exists("Retry-After")
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Too many requests, retry later");
+        } finally {
+            rateLimiter.limit(StorageRateLimiter.Operation.LOGIN, limit);
+        }
+    }
+
+    @Test
+    public void malformed_and_invalid_requests() {
+        client.post().uri("/api/storage/login")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("not a json string")
+            .exchange()
+            .expectStatus().isBadRequest()
+            .expectBody()
+            .jsonPath("$.success").isEqualTo(false)
+            .jsonPath("$.message").isEqualTo("Malformed JSON input");
+
+        client.post().uri("/api/storage/read")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"path\":\"\"}")
+            .exchange()
+            .expectStatus().isBadRequest()
+            .expectBody()
+            .jsonPath("$.success").isEqualTo(false)
+            .jsonPath("$.details").isEqualTo("Validation failed for input fields");
+    }
+
+    @Test
+    public void read_successful_returns_content_and_last_modified() {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+        setUpFileStubs(httpClientBuilder);
+
+        client.post().uri("/api/storage/read")
+            .header("Authorization", "Bearer " + accessKey)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"path\":\"/Toosla/toosla.json\"}")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentType(MediaType.APPLICATION_JSON)
+            .expectHeader().valueEquals("Last-Modified", HTTP_FORMAT.format(FIXED_MODIFICATION_DATE.toInstant().truncatedTo(ChronoUnit.SECONDS)))
+            .expectBody(String.class).isEqualTo("{\"content\":\"this is toosla\"}");
+    }
+
+    @Test
+    public void read_not_modified_and_unauthorized() {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+        setUpFileStubs(httpClientBuilder);
+
+        client.post().uri("/api/storage/read")
+            .header("Authorization", "Bearer " + accessKey)
+            .header("If-Modified-Since", DateTimeFormatter.ISO_INSTANT.format(FIXED_LATER_DATE.toInstant()))
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"path\":\"/Toosla/toosla.json\"}")
+            .exchange()
+            .expectStatus().isNotModified();
+
+        client.post().uri("/api/storage/read")
+            .header("Authorization", "Bearer invalid access key")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"path\":\"/Toosla/toosla.json\"}")
+            .exchange()
+            .expectStatus().isUnauthorized()
+            .expectBody()
+            .jsonPath("$.message").isEqualTo("Unauthorized")
+            .jsonPath("$.details").isEqualTo("Missing or invalid Authorization header");
+    }
+
+    @Test
+    public void changes_stream_the_state_of_the_file() {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+        setUpFileStubs(httpClientBuilder);
+
+        final String change = client.get().uri("/api/storage/changes?path=/Toosla/toosla.json")
+            .header("Authorization", "Bearer " + accessKey)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+            .returnResult(String.class)
+            .getResponseBody()
+            .blockFirst(Duration.ofSeconds(10));
+
+        then(change).isEqualTo(
+            "{\"path\":\"/Toosla/toosla.json\",\"lastModified\":" + FIXED_MODIFICATION_DATE.getTime() + ",\"etag\":null}"
+        );
+
+        client.get().uri("/api/storage/changes?path=/Toosla/toosla.json")
+            .header("Authorization", "Bearer invalid access key")
+            .exchange()
+            .expectStatus().isUnauthorized()
+            .expectBody()
+            .jsonPath("$.message").isEqualTo("Unauthorized");
+    }
+
+    @Test
+    public void write_successful_and_precondition_failed() {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+        setUpFileStubs(httpClientBuilder).withStub(
+            UPLOAD_URL,
+            new StubHttpResponse<String>().text("{\"success\":\"Media uploaded successfully\",\"id\":\"12345\"}")
+        );
+
+        client.post().uri("/api/storage/write")
+            .header("Authorization", "Bearer " + accessKey)
+            .header("If-Unmodified-Since", DateTimeFormatter.ISO_INSTANT.format(FIXED_MODIFICATION_DATE.toInstant()))
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"path\": \"/Toosla/new_file.json\", \"content\": \"{\\\"key\\\":\\\"value\\\"}\"}")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals("Last-Modified", HTTP_FORMAT.format(FIXED_MODIFICATION_DATE.toInstant().truncatedTo(ChronoUnit.SECONDS)));
+
+        client.post().uri("/api/storage/write")
+            .header("Authorization", "Bearer " + accessKey)
+            .header("If-Unmodified-Since", DateTimeFormatter.ISO_INSTANT.format(FIXED_EARLIER_DATE.toInstant()))
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"path\": \"/Toosla/toosla.json\", \"content\": \"{\\\"key\\\":\\\"value\\\"}\"}")
+            .exchange()
+            .expectStatus().isEqualTo(412)
+            .expectHeader().valueEquals("Last-Modified", "Tue, 19 Aug 2025 00:00:00 GMT")
+            .expectBody()
+            .jsonPath("$.message").isEqualTo("Precondition Failed")
+            .jsonPath("$.details").isEqualTo("Modification conflict detected");
+    }
+
+    @Test
+    public void read_does_not_hold_bulkhead_permits() {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+        setUpFileStubs(httpClientBuilder);
+
+        client.post().uri("/api/storage/read")
+            .header("Authorization", "Bearer " + accessKey)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"path\":\"/Toosla/toosla.json\"}")
+            .exchange()
+            .expectStatus().isOk();
+
+        then(zefiroBulkhead.inFlight()).isZero();
+    }
+}
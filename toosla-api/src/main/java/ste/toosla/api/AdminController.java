@@ -0,0 +1,190 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ste.toosla.api.dto.ErrorResponse;
+import ste.toosla.util.jfr.TooslaEvents;
+
+/**
+ * Administrative endpoints, restricted to users with role {@code ADMIN} (see
+ * {@link ste.toosla.api.config.SecurityConfig}).
+ *
+ * <p>{@code GET /api/admin/jfr?duration=<seconds>} starts a Flight Recorder
+ * recording with the JDK {@code profile} settings plus the Toosla events
+ * ({@link TooslaEvents#NAMES}) and, once the given time has elapsed, streams
+ * the {@code .jfr} file back. This allows to profile a live node under real
+ * load without restarting it with special flags. Only one recording at a time
+ * is allowed; the request thread is released while recording.
+ *
+ * <p>{@code GET /api/admin/rate-limits} returns the rate limits of the storage
+ * endpoints ({@link StorageRateLimiter}) and
+ * {@code PUT /api/admin/rate-limits/{operation}?rate=<per second>&burst=<n>}
+ * changes the one of the given operation ({@code login}, {@code read} or
+ * {@code write}) on this node, until it is restarted.
+ */
+@RestController
+public class AdminController {
+
+    private static final Logger LOG = Logger.getLogger(AdminController.class.getName());
+
+    public static final long MAX_RECORDING_SECONDS = 300;
+
+    private final AtomicBoolean recording = new AtomicBoolean();
+
+    private final StorageRateLimiter rateLimiter;
+
+    public AdminController(final StorageRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @GetMapping("/api/admin/jfr")
+    public ResponseEntity<StreamingResponseBody> jfr(
+        @RequestParam(name = "duration", defaultValue = "30") long duration
+    ) throws AdminException {
+        if (duration <= 0 || duration > MAX_RECORDING_SECONDS) {
+            throw new AdminException(HttpStatus.BAD_REQUEST,
+                "Invalid duration", "duration must be between 1 and " + MAX_RECORDING_SECONDS + " seconds"
+            );
+        }
+        if (!recording.compareAndSet(false, true)) {
+            throw new AdminException(HttpStatus.CONFLICT,
+                "Recording in progress", "only one recording at a time is allowed"
+            );
+        }
+
+        final Recording jfr;
+        try {
+            jfr = new Recording(Configuration.getConfiguration("profile"));
+            jfr.setName("toosla-" + Instant.now());
+            jfr.setToDisk(true);
+            TooslaEvents.NAMES.forEach(jfr::enable);
+            jfr.start();
+        } catch (IOException | ParseException | RuntimeException x) {
+            recording.set(false);
+            LOG.log(Level.SEVERE, x, () -> "Unable to start the JFR recording");
+            throw new AdminException(HttpStatus.INTERNAL_SERVER_ERROR,
+                "Unable to start the JFR recording", x.getMessage()
+            );
+        }
+
+        LOG.info(() -> "JFR recording '" + jfr.getName() + "' started for " + duration + "s");
+
+        final StreamingResponseBody body = (out) -> {
+            try (jfr) {
+                try {
+                    TimeUnit.SECONDS.sleep(duration);
+                } catch (InterruptedException x) {
+                    LOG.info(() -> "JFR recording '" + jfr.getName() + "' interrupted, returning what was recorded so far");
+                    Thread.currentThread().interrupt();
+                }
+                jfr.stop();
+                try (InputStream in = jfr.getStream(null, null)) {
+                    if (in != null) {
+                        in.transferTo(out);
+                    }
+                }
+                LOG.info(() -> "JFR recording '" + jfr.getName() + "' completed");
+            } finally {
+                recording.set(false);
+            }
+        };
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"toosla.jfr\"")
+            .body(body);
+    }
+
+    @GetMapping("/api/admin/rate-limits")
+    public Map<String, StorageRateLimiter.Limit> rateLimits() {
+        return rateLimiter.limits();
+    }
+
+    @PutMapping("/api/admin/rate-limits/{operation}")
+    public StorageRateLimiter.Limit rateLimit(
+        @PathVariable("operation") String operation,
+        @RequestParam(name = "rate") double rate,
+        @RequestParam(name = "burst") int burst
+    ) throws AdminException {
+        final StorageRateLimiter.Operation op;
+        try {
+            op = StorageRateLimiter.Operation.valueOf(operation.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException x) {
+            throw new AdminException(HttpStatus.BAD_REQUEST,
+                "Invalid rate limit", "operation must be one of " + rateLimiter.limits().keySet()
+            );
+        }
+
+        final StorageRateLimiter.Limit limit;
+        try {
+            limit = new StorageRateLimiter.Limit(rate, burst);
+        } catch (IllegalArgumentException x) {
+            throw new AdminException(HttpStatus.BAD_REQUEST, "Invalid rate limit", x.getMessage());
+        }
+
+        rateLimiter.limit(op, limit);
+        LOG.info(() -> "Rate limit of " + op.tag() + " requests set to " + limit);
+
+        return limit;
+    }
+
+    @ExceptionHandler(AdminException.class)
+    public ResponseEntity<ErrorResponse> handleAdminException(AdminException x) {
+        return ResponseEntity.status(x.status).body(new ErrorResponse(x.getMessage(), x.details));
+    }
+
+    /**
+     * A failure of an admin request, reported to the client with the given
+     * status and an {@link ErrorResponse}.
+     */
+    public static class AdminException extends Exception {
+        public final HttpStatus status;
+        public final String details;
+
+        public AdminException(final HttpStatus status, final String message, final String details) {
+            super(message);
+            this.status = status; this.details = details;
+        }
+    }
+}
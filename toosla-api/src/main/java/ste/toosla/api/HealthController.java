@@ -20,26 +20,62 @@
  */
 package ste.toosla.api;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
 import java.util.Map;
+import ste.toosla.zefiro.ZefiroCircuitBreaker;
+import ste.toosla.zefiro.ZefiroLoadMonitor;
 
 /**
- * A controller that provides a health check endpoint for the API.
+ * A controller that provides the health check endpoints of the API.
+ *
+ * <p>{@code /health} (also {@code /health/live}) tells whether this node is
+ * alive: it reports the state of the Zefiro circuit breaker of each host
+ * called so far ({@code zefiro}), but the node stays {@code UP} while a
+ * circuit is open or Zefiro calls back up, since restarting it would not help.
+ *
+ * <p>{@code /health/ready} tells whether this node should get traffic: it
+ * answers {@code 503} with status {@code OUT_OF_SERVICE} while the node is
+ * saturated by its Zefiro calls (see {@link ZefiroLoadMonitor}), together
+ * with the signals the decision is based on and the state of the circuits,
+ * which, as Zefiro is shared by all nodes, do not affect readiness.
  */
 @RestController
 public class HealthController {
 
-    @GetMapping("/health")
+    private final ZefiroCircuitBreaker circuitBreaker;
+    private final ZefiroLoadMonitor loadMonitor;
+
+    public HealthController(final ZefiroCircuitBreaker circuitBreaker, final ZefiroLoadMonitor loadMonitor) {
+        this.circuitBreaker = circuitBreaker;
+        this.loadMonitor = loadMonitor;
+    }
+
+    @GetMapping({"/health", "/health/live"})
     public ResponseEntity<Map<String, Object>> health() {
         Map<String, Object> response = new HashMap<>();
         response.put("status", "UP");
         response.put("service", "Toosla API");
         response.put("timestamp", System.currentTimeMillis());
+        response.put("zefiro", circuitBreaker.states());
 
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/health/ready")
+    public ResponseEntity<Map<String, Object>> ready() {
+        final boolean ready = loadMonitor.ready();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", ready ? "UP" : "OUT_OF_SERVICE");
+        response.put("service", "Toosla API");
+        response.put("timestamp", System.currentTimeMillis());
+        response.put("zefiro", loadMonitor.status());
+
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(response);
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Applies JSON Merge Patches (RFC 7396) and JSON Patches (RFC 6902), tells
+ * which parts of a patch made against a version of a document conflict with
+ * the changes made to it since (three-way merge) and computes the merge patch
+ * between two versions.
+ *
+ * <p>A part of a patch conflicts if the value it changes is not the same in
+ * the base and in the current version, unless the current version already has
+ * the value the patch sets. Operations on array elements conflict if the
+ * array has changed at all, since indexes may not refer to the same elements.
+ */
+public final class JsonPatches {
+
+    /**
+     * Thrown if a patch is not well formed.
+     */
+    public static class InvalidPatchException extends IllegalArgumentException {
+        public InvalidPatchException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown if a patch can not be applied to a document, e.g. because a
+     * {@code test} fails or a value to remove does not exist.
+     */
+    public static class PatchConflictException extends IllegalStateException {
+        public PatchConflictException(final String message) {
+            super(message);
+        }
+    }
+
+    private JsonPatches() {}
+
+    /**
+     * Applies a JSON Merge Patch (RFC 7396).
+     *
+     * @param target the document - MAY BE NULL
+     * @param patch the merge patch - NOT NULL
+     *
+     * @return the patched document; target is not changed
+     */
+    public static JsonNode merge(final JsonNode target, final JsonNode patch) {
+        if (patch == null) {
+            throw new InvalidPatchException("patch can not be null");
+        }
+        return mergeInto((target == null) ? null : target.deepCopy(), patch);
+    }
+
+    /**
+     * Applies a JSON Patch (RFC 6902); the operations are applied all or none.
+     *
+     * @param target the document - NOT NULL
+     * @param operations the array of operations - NOT NULL
+     *
+     * @return the patched document; target is not changed
+     *
+     * @throws InvalidPatchException if the patch is not well formed
+     * @throws PatchConflictException if an operation can not be applied
+     */
+    public static JsonNode patch(final JsonNode target, final JsonNode operations) {
+        JsonNode document = target.deepCopy();
+        for (final JsonNode operation: operations(operations)) {
+            document = apply(document, operation);
+        }
+        return document;
+    }
+
+    /**
+     * Computes the merge patch that turns a document into another one.
+     *
+     * @param source the document to patch - MAY BE NULL
+     * @param target the document to obtain - NOT NULL
+     *
+     * @return the merge patch, null if it can not be expressed as such, i.e.
+     *         if target has null values where they are not in source (merge
+     *         patches remove keys set to null)
+     */
+    public static JsonNode diff(final JsonNode source, final JsonNode target) {
+        if (!(target instanceof ObjectNode to)) {
+            return target.deepCopy();
+        }
+        if (!(source instanceof ObjectNode from)) {
+            return nulls(to) ? null : to.deepCopy();
+        }
+
+        final ObjectNode patch = to.objectNode();
+        for (final Map.Entry<String, JsonNode> field: from.properties()) {
+            if (!to.has(field.getKey())) {
+                patch.putNull(field.getKey());
+            }
+        }
+        for (final Map.Entry<String, JsonNode> field: to.properties()) {
+            final JsonNode value = field.getValue();
+            if (value.equals(from.get(field.getKey()))) {
+                continue;
+            }
+            final JsonNode change = value.isNull() ? null : diff(from.get(field.getKey()), value);
+            if (change == null) {
+                return null;
+            }
+            patch.set(field.getKey(), change);
+        }
+        return patch;
+    }
+
+    /**
+     * Combines the merge patches that turn different documents into the same
+     * one, so that the result does it for any of them.
+     *
+     * @param a a merge patch computed by {@link #diff(JsonNode, JsonNode)} - NOT NULL
+     * @param b a merge patch to the same target - NOT NULL
+     *
+     * @return the combined merge patch
+     */
+    public static JsonNode union(final JsonNode a, final JsonNode b) {
+        if (a instanceof ObjectNode x && b instanceof ObjectNode y) {
+            final ObjectNode result = x.deepCopy();
+            for (final Map.Entry<String, JsonNode> field: y.properties()) {
+                final JsonNode value = result.get(field.getKey());
+                result.set(field.getKey(), (value == null) ? field.getValue().deepCopy() : union(value, field.getValue()));
+            }
+            return result;
+        }
+        return a.deepCopy();
+    }
+
+    /**
+     * @param base the version the merge patch was made against - NOT NULL
+     * @param current the current version - NOT NULL
+     * @param patch the merge patch - NOT NULL
+     *
+     * @return the JSON pointers of the values changed by both the patch and
+     *         the current version, empty if none
+     */
+    public static List<String> mergeConflicts(final JsonNode base, final JsonNode current, final JsonNode patch) {
+        final List<String> conflicts = new ArrayList<>();
+        if (patch.isObject()) {
+            mergeConflicts(base, current, (ObjectNode)patch, "", conflicts);
+        } else if (!base.equals(current) && !patch.equals(current)) {
+            conflicts.add("");
+        }
+        return conflicts;
+    }
+
+    /**
+     * @param base the version the operations were made against - NOT NULL
+     * @param current the current version - NOT NULL
+     * @param operations the array of operations - NOT NULL
+     *
+     * @return the JSON pointers of the values changed by both the patch and
+     *         the current version, empty if none
+     *
+     * @throws InvalidPatchException if the patch is not well formed
+     */
+    public static List<String> patchConflicts(final JsonNode base, final JsonNode current, final JsonNode operations) {
+        final List<String> conflicts = new ArrayList<>();
+        for (final JsonNode operation: operations(operations)) {
+            final String op = text(operation, "op");
+            final JsonPointer path = pointer(operation, "path");
+
+            if (op.equals("move") || op.equals("copy")) {
+                conflict(base, current, pointer(operation, "from"), null, conflicts);
+            }
+            conflict(
+                base, current, path,
+                (op.equals("add") || op.equals("replace")) ? operation.get("value") : null,
+                conflicts
+            );
+        }
+        return conflicts;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static JsonNode mergeInto(final JsonNode target, final JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch.deepCopy();
+        }
+        final ObjectNode result = (target instanceof ObjectNode object) ? object : ((ObjectNode)patch).objectNode();
+        for (final Map.Entry<String, JsonNode> field: patch.properties()) {
+            if (field.getValue().isNull()) {
+                result.remove(field.getKey());
+            } else {
+                result.set(field.getKey(), mergeInto(result.get(field.getKey()), field.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private static void mergeConflicts(
+        final JsonNode base, final JsonNode current, final ObjectNode patch, final String pointer, final List<String> conflicts
+    ) {
+        for (final Map.Entry<String, JsonNode> field: patch.properties()) {
+            final String path = pointer + "/" + escape(field.getKey());
+            final JsonNode value = field.getValue();
+            final JsonNode b = (base == null) ? null : base.get(field.getKey());
+            final JsonNode c = (current == null) ? null : current.get(field.getKey());
+
+            if (value.isObject() && b != null && b.isObject() && c != null && c.isObject()) {
+                mergeConflicts(b, c, (ObjectNode)value, path, conflicts);
+            } else if (!Objects.equals(b, c) && !(value.isNull() ? (c == null) : value.equals(c))) {
+                conflicts.add(path);
+            }
+        }
+    }
+
+    /**
+     * Adds path (or its array, if an element of an array) to conflicts if it
+     * changed between base and current, unless current already has the given
+     * value.
+     */
+    private static void conflict(
+        final JsonNode base, final JsonNode current, final JsonPointer path, final JsonNode value, final List<String> conflicts
+    ) {
+        final JsonPointer parent = path.head();
+        final JsonPointer changed = (parent != null && (base.at(parent).isArray() || current.at(parent).isArray()))
+                                  ? parent : path;
+
+        if (base.at(changed).equals(current.at(changed))) {
+            return;
+        }
+        if (changed == path && (value == null ? current.at(path).isMissingNode() : value.equals(current.at(path)))) {
+            return;
+        }
+        if (!conflicts.contains(changed.toString())) {
+            conflicts.add(changed.toString());
+        }
+    }
+
+    private static JsonNode apply(final JsonNode document, final JsonNode operation) {
+        final String op = text(operation, "op");
+        final JsonPointer path = pointer(operation, "path");
+
+        switch (op) {
+            case "add":
+                return add(document, path, value(operation));
+            case "remove":
+                return remove(document, path);
+            case "replace":
+                get(document, path);
+                return path.matches() ? value(operation) : add(remove(document, path), path, value(operation));
+            case "move": {
+                final JsonPointer from = pointer(operation, "from");
+                if (!from.equals(path) && path.toString().startsWith(from.toString() + "/")) {
+                    throw new InvalidPatchException("can not move " + from + " into itself");
+                }
+                final JsonNode value = get(document, from);
+                return add(remove(document, from), path, value);
+            }
+            case "copy":
+                return add(document, path, get(document, pointer(operation, "from")).deepCopy());
+            case "test":
+                if (!get(document, path).equals(value(operation))) {
+                    throw new PatchConflictException("test failed at " + path);
+                }
+                return document;
+            default:
+                throw new InvalidPatchException("unknown operation '" + op + "'");
+        }
+    }
+
+    private static JsonNode add(final JsonNode document, final JsonPointer path, final JsonNode value) {
+        if (path.matches()) {
+            return value;
+        }
+        final JsonNode parent = document.at(path.head());
+        final String name = path.last().getMatchingProperty();
+        if (parent instanceof ObjectNode object) {
+            object.set(name, value);
+        } else if (parent instanceof ArrayNode array) {
+            if (name.equals("-")) {
+                array.add(value);
+            } else {
+                final int index = index(path, name);
+                if (index > array.size()) {
+                    throw new PatchConflictException("no index " + index + " in " + path.head());
+                }
+                array.insert(index, value);
+            }
+        } else {
+            throw new PatchConflictException("no container at " + path.head());
+        }
+        return document;
+    }
+
+    private static JsonNode remove(final JsonNode document, final JsonPointer path) {
+        if (path.matches()) {
+            throw new InvalidPatchException("can not remove the whole document");
+        }
+        get(document, path);
+        final JsonNode parent = document.at(path.head());
+        final String name = path.last().getMatchingProperty();
+        if (parent instanceof ObjectNode object) {
+            object.remove(name);
+        } else {
+            ((ArrayNode)parent).remove(index(path, name));
+        }
+        return document;
+    }
+
+    private static JsonNode get(final JsonNode document, final JsonPointer path) {
+        final JsonNode value = document.at(path);
+        if (value.isMissingNode()) {
+            throw new PatchConflictException("no value at " + path);
+        }
+        return value;
+    }
+
+    private static int index(final JsonPointer path, final String name) {
+        if (!name.matches("0|[1-9][0-9]{0,8}")) {
+            throw new InvalidPatchException("invalid array index in " + path);
+        }
+        return Integer.parseInt(name);
+    }
+
+    private static Iterable<JsonNode> operations(final JsonNode operations) {
+        if (operations == null || !operations.isArray()) {
+            throw new InvalidPatchException("patch must be an array of operations");
+        }
+        for (final JsonNode operation: operations) {
+            if (!operation.isObject()) {
+                throw new InvalidPatchException("patch must be an array of operations");
+            }
+        }
+        return operations;
+    }
+
+    private static String text(final JsonNode operation, final String name) {
+        final JsonNode value = operation.get(name);
+        if (value == null || !value.isTextual()) {
+            throw new InvalidPatchException("missing '" + name + "' in " + operation);
+        }
+        return value.asText();
+    }
+
+    private static JsonPointer pointer(final JsonNode operation, final String name) {
+        final String pointer = text(operation, name);
+        try {
+            return JsonPointer.compile(pointer);
+        } catch (IllegalArgumentException x) {
+            throw new InvalidPatchException("invalid '" + name + "' in " + operation);
+        }
+    }
+
+    private static JsonNode value(final JsonNode operation) {
+        final JsonNode value = operation.get("value");
+        if (value == null) {
+            throw new InvalidPatchException("missing 'value' in " + operation);
+        }
+        //
+        // the value goes into the document, which later operations change:
+        // the patch must stay as is to be applied again
+        //
+        return value.deepCopy();
+    }
+
+    private static boolean nulls(final JsonNode node) {
+        if (node.isNull()) {
+            return true;
+        }
+        if (node instanceof ObjectNode object) {
+            for (final Map.Entry<String, JsonNode> field: object.properties()) {
+                if (nulls(field.getValue())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String escape(final String name) {
+        return name.replace("~", "~0").replace("/", "~1");
+    }
+}
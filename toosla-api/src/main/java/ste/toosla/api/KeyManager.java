@@ -28,6 +28,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import ste.toosla.util.jfr.KeyLookupEvent;
 
 @Component
 public class KeyManager {
@@ -85,19 +86,35 @@ public class KeyManager {
     }
 
     public KeyEntry get(final String key) {
-        for (KeyMetadata e: entries) {
-            if (e.entry.accessKey.equals(key)) {
-                e.lastUsed = System.currentTimeMillis();
-                return e.entry;
+        final KeyLookupEvent event = new KeyLookupEvent();
+        event.begin();
+
+        KeyEntry ret = null;
+        synchronized (entries) {  // iteration is not atomic, see Collections.synchronizedList()
+            for (KeyMetadata e: entries) {
+                if (e.entry.accessKey.equals(key)) {
+                    e.lastUsed = System.currentTimeMillis();
+                    ret = e.entry; break;
+                }
             }
         }
-        return null;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.found = (ret != null);
+            event.keys = entries.size();
+            event.commit();
+        }
+
+        return ret;
     }
 
     public boolean containsKey(String key) {
-        for (KeyMetadata e: entries) {
-            if (e.entry.accessKey.equals(key)) {
-                return true;
+        synchronized (entries) {
+            for (KeyMetadata e: entries) {
+                if (e.entry.accessKey.equals(key)) {
+                    return true;
+                }
             }
         }
         return false;
@@ -0,0 +1,141 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import ste.toosla.zefiro.ZefiroFileNotFoundException;
+
+/**
+ * The files recently found missing, by account and path, so that clients
+ * polling for a file that does not exist yet (e.g. the first sync of a new
+ * user) get a 404 without walking the Zefiro folders again on every poll.
+ *
+ * <p>Entries expire after {@code ttl} and must be removed when the file is
+ * written through this node; a file created through another node may keep
+ * being reported missing here for up to {@code ttl}, hence it should be
+ * short. The cache holds at most {@code maxEntries} files, evicting the least
+ * recently used ones; a zero {@code ttl} or {@code maxEntries} disables it.
+ * Cached exceptions are rethrown as they are, which is cheap since
+ * {@link ZefiroFileNotFoundException} has no stack trace.
+ */
+public class NotFoundCache {
+
+    private record Key(String account, String path) {}
+
+    private record Entry(ZefiroFileNotFoundException error, long expiration) {}
+
+    private final long ttl;
+    private final int maxEntries;
+    private final Map<Key, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+
+    public NotFoundCache(final Duration ttl, final int maxEntries) {
+        if (ttl == null || ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl can not be null or negative");
+        }
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries can not be negative");
+        }
+        this.ttl = ttl.toNanos();
+        this.maxEntries = (this.ttl == 0) ? 0 : maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+                return size() > NotFoundCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Records that a file does not exist.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     * @param error the error telling the file does not exist - NOT NULL
+     */
+    public void put(final String account, final String path, final ZefiroFileNotFoundException error) {
+        if (maxEntries == 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(new Key(account, path), new Entry(error, System.nanoTime() + ttl));
+        }
+    }
+
+    /**
+     * Tells whether a file was recently found missing, counting it as a hit.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     *
+     * @return the error the file was found missing with or null if it was not
+     *         (or not recently)
+     */
+    public ZefiroFileNotFoundException get(final String account, final String path) {
+        if (maxEntries == 0) {
+            return null;
+        }
+        final Key key = new Key(account, path);
+        synchronized (entries) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiration() >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            hits.increment();
+            return entry.error();
+        }
+    }
+
+    /**
+     * Forgets a file (e.g. because it has been written).
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     */
+    public void remove(final String account, final String path) {
+        if (maxEntries == 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(new Key(account, path));
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of reads answered from this cache so far
+     */
+    public long hits() {
+        return hits.sum();
+    }
+}
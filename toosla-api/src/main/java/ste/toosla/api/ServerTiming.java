@@ -0,0 +1,133 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import ste.toosla.zefiro.ZefiroCall;
+import ste.toosla.zefiro.ZefiroListener;
+
+/**
+ * Per-request breakdown of where the time of an API call went, rendered as a
+ * standard {@code Server-Timing} response header (e.g.
+ * {@code ser;dur=0.4, auth;dur=0.1, folder;dur=35.2, ..., total;dur=120.3}).
+ *
+ * <p>Upstream phases are collected by attaching the instance as a
+ * {@link ZefiroListener} to the clients created for the request, so that each
+ * exchange is accounted to the phase of its endpoint; other phases are recorded
+ * explicitly with {@link #record(Phase, long)}. Durations are accumulated, thus
+ * a phase involving multiple exchanges (e.g. folder resolution) reports the sum.
+ */
+public class ServerTiming implements ZefiroListener {
+
+    public static final String ATTRIBUTE = "ste.toosla.serverTiming";
+    public static final String HEADER = "Server-Timing";
+
+    public enum Phase {
+        SER("ser", "request deserialization"),
+        AUTH("auth", "access key lookup"),
+        LOGIN("login", "upstream login"),
+        FOLDER("folder", "folder resolution"),
+        LIST("list", "folder listing"),
+        META("meta", "file metadata"),
+        CONTENT("content", "content transfer");
+
+        public final String metric;
+        public final String description;
+
+        Phase(final String metric, final String description) {
+            this.metric = metric; this.description = description;
+        }
+    }
+
+    private final long start;
+    private final AtomicLongArray durations = new AtomicLongArray(Phase.values().length);
+    private final AtomicLongArray counts = new AtomicLongArray(Phase.values().length);
+
+    /**
+     * @param start the request start time as given by {@link System#nanoTime()}
+     */
+    public ServerTiming(final long start) {
+        this.start = start;
+    }
+
+    public long start() {
+        return start;
+    }
+
+    public void record(final Phase phase, final long nanos) {
+        durations.addAndGet(phase.ordinal(), Math.max(0, nanos));
+        counts.incrementAndGet(phase.ordinal());
+    }
+
+    public long duration(final Phase phase) {
+        return durations.get(phase.ordinal());
+    }
+
+    @Override
+    public void onCall(final ZefiroCall call) {
+        record(phase(call), call.duration());
+    }
+
+    /**
+     * Renders the phases recorded so far followed by the total time elapsed
+     * since the start of the request.
+     *
+     * @return the Server-Timing header value
+     */
+    public String header() {
+        final StringBuilder sb = new StringBuilder();
+        for (Phase phase: Phase.values()) {
+            if (counts.get(phase.ordinal()) > 0) {
+                append(sb, phase.metric, phase.description, durations.get(phase.ordinal()));
+            }
+        }
+        append(sb, "total", null, System.nanoTime() - start);
+
+        return sb.toString();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static Phase phase(final ZefiroCall call) {
+        return switch (call.endpoint()) {
+            case LOGIN -> Phase.LOGIN;
+            case ROOT_FOLDER, FOLDER_LIST -> Phase.FOLDER;
+            case MEDIA_LIST -> Phase.LIST;
+            case MEDIA_GET -> Phase.META;
+            case UPLOAD, CONTENT -> Phase.CONTENT;
+        };
+    }
+
+    private static void append(final StringBuilder sb, final String metric, final String description, final long nanos) {
+        if (sb.length() > 0) {
+            sb.append(", ");
+        }
+        sb.append(metric);
+        if (description != null) {
+            sb.append(";desc=\"").append(description).append('"');
+        }
+        sb.append(";dur=").append(
+            String.format(Locale.ROOT, "%.3f", nanos / (double)TimeUnit.MILLISECONDS.toNanos(1))
+        );
+    }
+}
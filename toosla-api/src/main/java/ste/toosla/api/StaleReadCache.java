@@ -0,0 +1,132 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The last known content of the files read or written through this node, by
+ * account and path, used to keep serving reads while Zefiro is unavailable
+ * (see {@link ste.toosla.zefiro.ZefiroCircuitBreaker}). Content served from
+ * here may be stale: it is never used while Zefiro can be reached.
+ *
+ * <p>The cache holds at most {@code maxEntries} files, evicting the least
+ * recently used ones; zero disables it.
+ */
+public class StaleReadCache {
+
+    /**
+     * The {@code Warning} header of responses served from this cache.
+     */
+    public static final String WARNING = "110 toosla \"Response is Stale\"";
+
+    /**
+     * A cached file.
+     *
+     * @param content the content of the file
+     * @param lastModified the modification date of the content
+     */
+    public record Entry(String content, Date lastModified) {}
+
+    private record Key(String account, String path) {}
+
+    private final int maxEntries;
+    private final Map<Key, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+
+    public StaleReadCache(final int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries can not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+                return size() > StaleReadCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Records the last known content of a file.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     * @param content the content - NOT NULL
+     * @param lastModified the modification date of the content - NOT NULL
+     */
+    public void put(final String account, final String path, final String content, final Date lastModified) {
+        if (maxEntries == 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(new Key(account, path), new Entry(content, lastModified));
+        }
+    }
+
+    /**
+     * Returns the last known content of a file, counting it as a hit.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     *
+     * @return the last known content, if any
+     */
+    public Optional<Entry> get(final String account, final String path) {
+        final Entry ret;
+        synchronized (entries) {
+            ret = entries.get(new Key(account, path));
+        }
+        if (ret != null) {
+            hits.increment();
+        }
+        return Optional.ofNullable(ret);
+    }
+
+    /**
+     * Forgets a file (e.g. because it does not exist any more).
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     */
+    public void remove(final String account, final String path) {
+        synchronized (entries) {
+            entries.remove(new Key(account, path));
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of reads served from this cache so far
+     */
+    public long hits() {
+        return hits.sum();
+    }
+}
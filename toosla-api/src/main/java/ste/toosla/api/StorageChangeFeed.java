@@ -0,0 +1,366 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import ste.toosla.api.dto.ChangeEvent;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroException;
+import ste.toosla.zefiro.ZefiroFileInfo;
+import ste.toosla.zefiro.ZefiroFileNotFoundException;
+
+/**
+ * Pushes the changes of files to the clients subscribed to them, so that they
+ * do not need to poll.
+ *
+ * <p>A single watcher per account and path checks the file on Zefiro (see
+ * {@link ZefiroClient#info(String)}) on behalf of all its subscribers, hence
+ * the Zefiro load grows with the files watched and not with the devices
+ * watching them. The watcher checks every {@code minInterval} after a change,
+ * doubling the interval up to {@code maxInterval} while nothing changes; it
+ * stops when its last subscriber goes away. Writes through this node are
+ * pushed right away with {@link #changed(String, String, long)}.
+ *
+ * <p>New subscribers get the last known state of the file, if any, right
+ * away; after each check finding no changes they are told so, which lets them
+ * keep their connections alive and find out whether they are gone. At most
+ * {@code maxWatchers} files are watched at the same time.
+ */
+public class StorageChangeFeed implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(StorageChangeFeed.class.getName());
+
+    /**
+     * Receives the changes of a file.
+     */
+    @FunctionalInterface
+    public interface Subscriber {
+        /**
+         * @param change the change - NOT NULL
+         *
+         * @return false if the subscriber is gone and shall not get any more
+         *         changes
+         */
+        boolean onChange(ChangeEvent change);
+
+        /**
+         * Tells the subscriber that the file has been checked and did not
+         * change, e.g. to keep its connection alive and to find out whether
+         * it is gone.
+         *
+         * @return false if the subscriber is gone and shall not get any more
+         *         changes
+         */
+        default boolean onCheck() {
+            return true;
+        }
+
+        /**
+         * Tells the subscriber that no more changes will come because the feed
+         * has been closed (e.g. the application is shutting down).
+         */
+        default void onClose() {
+        }
+    }
+
+    /**
+     * A subscription to the changes of a file; closing it more than once is
+     * harmless.
+     */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private record Key(String account, String path) {}
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final int maxWatchers;
+    private final Map<Key, Watcher> watchers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("storage-changes").daemon().factory()
+    );
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder events = new LongAdder();
+
+    public StorageChangeFeed(final Duration minInterval, final Duration maxInterval, final int maxWatchers) {
+        if (minInterval == null || minInterval.isZero() || minInterval.isNegative()) {
+            throw new IllegalArgumentException("minInterval can not be null, zero or negative");
+        }
+        if (maxInterval == null || maxInterval.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("maxInterval can not be null or shorter than minInterval");
+        }
+        if (maxWatchers < 0) {
+            throw new IllegalArgumentException("maxWatchers can not be negative");
+        }
+        this.minInterval = minInterval.toMillis();
+        this.maxInterval = maxInterval.toMillis();
+        this.maxWatchers = maxWatchers;
+    }
+
+    /**
+     * Subscribes to the changes of a file, starting a watcher if nobody is
+     * watching it yet.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     * @param client creates the client the watcher checks the file with; the
+     *        latest subscriber's one is used - NOT NULL
+     * @param subscriber the subscriber - NOT NULL
+     *
+     * @return the subscription, to be closed when the subscriber goes away, or
+     *         null if too many files are being watched already
+     */
+    public Subscription subscribe(
+        final String account, final String path, final Supplier<ZefiroClient> client, final Subscriber subscriber
+    ) {
+        Objects.requireNonNull(client, "client can not be null");
+        Objects.requireNonNull(subscriber, "subscriber can not be null");
+
+        final Key key = new Key(account, path);
+        final Watcher watcher = watchers.compute(key, (k, existing) -> {
+            if (existing == null && watchers.size() >= maxWatchers) {
+                return null;
+            }
+            final Watcher ret = (existing != null) ? existing : new Watcher(k);
+            ret.client = client;
+            ret.subscribers.add(subscriber);
+            return ret;
+        });
+        if (watcher == null) {
+            LOG.warning(() -> "Too many files watched, not watching " + path);
+            return null;
+        }
+
+        final ChangeEvent last = watcher.last;
+        if (last != null && !subscriber.onChange(last)) {
+            unsubscribe(key, subscriber);
+        } else {
+            watcher.start();
+        }
+
+        return () -> unsubscribe(key, subscriber);
+    }
+
+    /**
+     * Pushes a change made through this node (e.g. a write) to the subscribers
+     * of the file, if any, and watches it closely again.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     * @param lastModified the new modification time of the file
+     */
+    public void changed(final String account, final String path, final long lastModified) {
+        final Watcher watcher = watchers.get(new Key(account, path));
+        if (watcher != null) {
+            watcher.publish(new ChangeEvent(path, lastModified, null), true);
+            watcher.schedule(minInterval);
+        }
+    }
+
+    /**
+     * @return the number of files being watched
+     */
+    public int watchers() {
+        return watchers.size();
+    }
+
+    /**
+     * @return the number of subscribers of all files
+     */
+    public int subscribers() {
+        int ret = 0;
+        for (Watcher watcher: watchers.values()) {
+            ret += watcher.subscribers.size();
+        }
+        return ret;
+    }
+
+    /**
+     * @return the number of checks made on Zefiro so far
+     */
+    public long checks() {
+        return checks.sum();
+    }
+
+    /**
+     * @return the number of changes pushed to subscribers so far
+     */
+    public long events() {
+        return events.sum();
+    }
+
+    /**
+     * Stops all watchers and tells their subscribers.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        for (Watcher watcher: watchers.values()) {
+            watcher.stop();
+            watcher.subscribers.forEach(Subscriber::onClose);
+        }
+        watchers.clear();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void unsubscribe(final Key key, final Subscriber subscriber) {
+        watchers.computeIfPresent(key, (k, watcher) -> {
+            watcher.subscribers.remove(subscriber);
+            if (watcher.subscribers.isEmpty()) {
+                watcher.stop();
+                return null;
+            }
+            return watcher;
+        });
+    }
+
+    private final class Watcher {
+        private final Key key;
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private volatile Supplier<ZefiroClient> client;
+        private volatile ChangeEvent last;
+        private long interval;
+        private ScheduledFuture<?> next;
+        private boolean stopped;
+
+        private Watcher(final Key key) {
+            this.key = key;
+        }
+
+        /**
+         * Checks the file right away, unless already started.
+         */
+        private synchronized void start() {
+            if (next == null && !stopped) {
+                interval = minInterval;
+                next = scheduler.schedule(this::dispatch, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void stop() {
+            stopped = true;
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+
+        /**
+         * Reschedules the next check after the given interval.
+         */
+        private synchronized void schedule(final long delay) {
+            if (stopped || scheduler.isShutdown()) {
+                return;
+            }
+            if (next != null) {
+                next.cancel(false);
+            }
+            interval = delay;
+            next = scheduler.schedule(this::dispatch, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void dispatch() {
+            if (!executor.isShutdown()) {
+                executor.execute(this::check);
+            }
+        }
+
+        /**
+         * Checks the file on Zefiro and pushes the change, if any; the check
+         * is made again sooner after a change, later otherwise.
+         */
+        private void check() {
+            checks.increment();
+            boolean changed = false;
+            try {
+                final ZefiroFileInfo info = client.get().info(key.path());
+                changed = publish(
+                    new ChangeEvent(key.path(), info.lastModified().getTime(), info.etag()), false
+                );
+            } catch (ZefiroFileNotFoundException x) {
+                LOG.fine(() -> "Watched file not found: " + key.path());
+            } catch (ZefiroException x) {
+                LOG.log(Level.INFO, x, () -> "Error checking watched file: " + key.path());
+            }
+
+            if (!changed) {
+                for (Subscriber subscriber: subscribers) {
+                    if (!subscriber.onCheck()) {
+                        unsubscribe(key, subscriber);
+                    }
+                }
+            }
+
+            final long delay;
+            synchronized (this) {
+                delay = changed ? minInterval : Math.min(maxInterval, interval * 2);
+            }
+            schedule(delay);
+        }
+
+        /**
+         * Pushes a change to all subscribers if it is newer than the last one
+         * (or if forced), dropping the subscribers that are gone.
+         *
+         * @return true if the change was pushed
+         */
+        private boolean publish(final ChangeEvent change, final boolean force) {
+            synchronized (this) {
+                if (!force && last != null && !newer(change, last)) {
+                    return false;
+                }
+                last = change;
+            }
+            LOG.fine(() -> "Change of " + key.path() + ": " + change);
+            for (Subscriber subscriber: subscribers) {
+                events.increment();
+                if (!subscriber.onChange(change)) {
+                    unsubscribe(key, subscriber);
+                }
+            }
+            return true;
+        }
+
+        private boolean newer(final ChangeEvent change, final ChangeEvent last) {
+            if (change.lastModified() != last.lastModified()) {
+                return change.lastModified() > last.lastModified();
+            }
+            return change.etag() != null && last.etag() != null && !change.etag().equals(last.etag());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ste.toosla.api;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -7,35 +8,67 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.net.http.HttpClient;
 import java.util.Date;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ste.toosla.api.KeyManager.KeyEntry;
+import ste.toosla.api.ServerTiming.Phase;
+import ste.toosla.api.config.AccessLogInterceptor;
+import ste.toosla.api.dto.ChangeEvent;
 import ste.toosla.api.dto.ErrorResponse;
 import ste.toosla.api.dto.LoginRequest;
 import ste.toosla.api.dto.LoginResponse;
 import ste.toosla.api.dto.ReadRequest;
 import ste.toosla.api.dto.WriteRequest;
+import ste.toosla.util.jfr.StorageReadEvent;
+import ste.toosla.util.jfr.StorageWriteEvent;
+import ste.toosla.util.jfr.TooslaEvents;
+import ste.toosla.util.metrics.MetricsRegistry;
+import ste.toosla.zefiro.ZefiroBulkhead;
+import ste.toosla.zefiro.ZefiroBusyException;
+import ste.toosla.zefiro.ZefiroCircuitBreaker;
+import ste.toosla.zefiro.ZefiroConcurrencyLimiter;
+import ste.toosla.zefiro.ZefiroCircuitOpenException;
+import ste.toosla.zefiro.ZefiroCallCounter;
 import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroDeadline;
 import ste.toosla.zefiro.ZefiroException;
 import ste.toosla.zefiro.ZefiroFileNotFoundException;
 import ste.toosla.zefiro.ZefiroLoginException;
+import ste.toosla.zefiro.ZefiroListener;
 import ste.toosla.zefiro.ZefiroLoginResponse;
+import ste.toosla.zefiro.ZefiroLoadMonitor;
+import ste.toosla.zefiro.ZefiroMetrics;
 import ste.toosla.zefiro.ZefiroModificationException;
+import ste.toosla.zefiro.ZefiroRetryPolicy;
+import ste.toosla.zefiro.ZefiroHedgingPolicy;
+import ste.toosla.zefiro.ZefiroTimeoutException;
 import ste.toosla.zefiro.ZefiroUploadResponse;
 
 /**
@@ -47,6 +80,13 @@ import ste.toosla.zefiro.ZefiroUploadResponse;
  *
  * <p>Client authentication is managed via a Bearer token provided in the
  * {@code Authorization} header for read and write operations.
+ *
+ * <p>The same operations are also served over the {@code /api/storage/sync}
+ * WebSocket (see {@link StorageSyncSession}).
+ *
+ * <p>If {@code toosla.server-timing.enabled} is set, responses carry a
+ * {@code Server-Timing} header with the time spent in each phase of the request
+ * (see {@link ServerTiming} and {@link ste.toosla.api.config.ServerTimingFilter}).
  */
 @RestController
 @Tag(name = "Storage", description = "API for storing and retrieving data from the remote storage.")
@@ -54,6 +94,8 @@ public class StorageController {
 
     private static final Logger LOG = Logger.getLogger(StorageController.class.getName());
 
+    static final MediaType MERGE_PATCH = MediaType.parseMediaType("application/merge-patch+json");
+
     //
     // Regex pattern to match the different formats
     // Group 1: captures part1 (everything before colon, if present)
@@ -65,6 +107,40 @@ public class StorageController {
     private KeyManager keyManager;
     @Autowired
     private HttpClient.Builder httpClientBuilder;
+    @Autowired
+    private ZefiroMetrics zefiroMetrics;
+    @Autowired
+    private ZefiroBulkhead zefiroBulkhead;
+    @Autowired
+    private ZefiroRetryPolicy zefiroRetryPolicy;
+    @Autowired
+    private ZefiroHedgingPolicy zefiroHedgingPolicy;
+    @Autowired
+    private ZefiroCircuitBreaker zefiroCircuitBreaker;
+    @Autowired
+    private ZefiroConcurrencyLimiter zefiroConcurrencyLimiter;
+    @Autowired
+    private ZefiroLoadMonitor zefiroLoadMonitor;
+    @Autowired
+    private StaleReadCache staleReadCache;
+    @Autowired
+    private NotFoundCache notFoundCache;
+    @Autowired
+    private StorageRateLimiter rateLimiter;
+    @Autowired
+    private StorageDeadlines deadlines;
+    @Autowired
+    private StorageChangeFeed changeFeed;
+    @Autowired
+    private StorageDocuments documents;
+    @Autowired
+    private StoragePatches patches;
+    @Value("${toosla.storage.changes.timeout-ms:600000}")
+    private long changesTimeout;
+    @Value("${toosla.zefiro.api-url:https://zefiro.me}")
+    private String zefiroApiUrl;
+    @Value("${toosla.zefiro.upload-url:https://upload.zefiro.me}")
+    private String zefiroUploadUrl;
     private final ObjectMapper objectMapper;
 
     public StorageController(ObjectMapper objectMapper) {
@@ -88,7 +164,12 @@ public class StorageController {
     public ResponseEntity<?> login(
             @Parameter(description = "User credentials for the backend storage service.", required = true,
                        schema = @Schema(implementation = LoginRequest.class))
-            @Valid @RequestBody LoginRequest loginRequest) throws Exception {
+            @Valid @RequestBody LoginRequest loginRequest,
+            @Parameter(description = "The time in milliseconds the client is willing to wait, if shorter than the server's one.")
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout,
+            HttpServletRequest request) throws Exception {
+        deserialized();
+        final ZefiroDeadline deadline = deadlines.login(timeout);
         LOG.info(() -> "Attempting login");
         //
         // Extract credentials from the LoginRequest record and process them
@@ -103,12 +184,18 @@ public class StorageController {
         // Group 2 contains part2 (or null if no colon or ends with :)
         final String secret = matcher.group(2) != null ? matcher.group(2) : "";
 
+        final ResponseEntity<ErrorResponse> limited = limited(
+            StorageRateLimiter.Operation.LOGIN, StorageRateLimiter.loginKey(request.getRemoteAddr(), account)
+        );
+        if (limited != null) {
+            return limited;
+        }
+
         LOG.info(() -> "Sending login request to Zefiro for account '" + account + "'");
         ResponseEntity[] error = new ResponseEntity[1];
         Level errorLevel = Level.OFF;
         try {
-            ZefiroClient zefiroClient =
-                new ZefiroClient(account, secret).withHttpClientBuilder(httpClientBuilder);
+            ZefiroClient zefiroClient = newZefiroClient(account, secret).withDeadline(deadline);
 
             ZefiroLoginResponse zefiroResponse = zefiroClient.login();
 
@@ -124,6 +211,12 @@ public class StorageController {
                 new ErrorResponse("Zefiro authentication failed", x.getMessage())
             );
             errorLevel = Level.INFO;
+        } catch (ZefiroBusyException x) {
+            error[0] = busy(x);
+            errorLevel = Level.WARNING;
+        } catch (ZefiroTimeoutException x) {
+            error[0] = timeout("login", x);
+            errorLevel = Level.WARNING;
         } catch (ZefiroException x) {
             error[0] = ResponseEntity.internalServerError().body(
                 new ErrorResponse("Error processing the Zefiro request", x.getMessage())
@@ -168,20 +261,377 @@ public class StorageController {
             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
             Date ifModifiedSince,
             @Parameter(description = "The Bearer token obtained from the `/login` endpoint.", required = true)
+            @RequestHeader(name = "Authorization", required = false) String authorizationHeader,
+            @Parameter(description = "The time in milliseconds the client is willing to wait, if shorter than the server's one.")
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout) {
+        deserialized();
+        final ZefiroDeadline deadline = deadlines.read(timeout);
+
+        final StorageReadEvent event = new StorageReadEvent();
+        event.begin();
+
+        final ResponseEntity<?> response = read(readRequest, ifModifiedSince, authorizationHeader, deadline, event);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = readRequest.path();
+            event.status = response.getStatusCode().value();
+            event.cacheHit = (event.status == HttpStatus.NOT_MODIFIED.value());
+            event.upstreamCalls = upstreamCalls();
+            event.commit();
+        }
+
+        return response;
+    }
+
+    @PostMapping("/api/storage/write")
+    @Operation(summary = "Write a file to storage",
+               description = "Writes or overwrites a file in the remote storage, with its whole content or with a JSON Merge Patch (RFC 7396) or JSON Patch (RFC 6902) of its current content. This endpoint supports optimistic locking via the `If-Unmodified-Since` header to prevent lost updates; patches made against an older version than the current one are merged with the changes made since, unless they change the same values.",
+               responses = {
+                   @ApiResponse(responseCode = "200", description = "File written successfully. The `Last-Modified` header in the response contains the new timestamp of the file. If a patch has been merged with changes made since `If-Unmodified-Since`, the body contains the merge patch (`application/merge-patch+json`) that turns the version the patch was made against into the content written or, if that can not be expressed as a merge patch, the content written (`application/json`).",
+                                content = {
+                                    @Content(mediaType = "application/merge-patch+json", schema = @Schema(type = "object")),
+                                    @Content(mediaType = "application/json", schema = @Schema(type = "string"))
+                                }),
+                   @ApiResponse(responseCode = "400", description = "Neither content nor a patch has been given, or the patch is not well formed.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "401", description = "Unauthorized. The `Authorization` header is missing, invalid, or expired.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "404", description = "The specified path's parent folder does not exist.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "409", description = "Conflict. The patch changes values changed on the server since the date specified in the `If-Unmodified-Since` header, or can not be applied to the current content.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "412", description = "Precondition Failed. The file has been modified on the server since the date specified in the `If-Unmodified-Since` header (for patches, only if that version is no longer known to the server).",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "422", description = "The file to patch is not JSON.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "500", description = "A server-side error occurred while writing the file.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public ResponseEntity<?> write(
+            @Parameter(description = "The path and the content or patch of the file to write.", required = true,
+                       schema = @Schema(implementation = WriteRequest.class))
+            @Valid @RequestBody WriteRequest writeRequest,
+            @Parameter(description = "Standard HTTP `If-Unmodified-Since` header. If provided, the server only processes the request if the file has not been modified since this date.", example = "Wed, 21 Oct 2015 07:28:00 GMT")
+            @RequestHeader(name = "If-Unmodified-Since", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+            Date ifUnmodifiedSince,
+            @Parameter(description = "The Bearer token obtained from the `/login` endpoint.", required = true)
+            @RequestHeader(name = "Authorization") String authorizationHeader,
+            @Parameter(description = "The time in milliseconds the client is willing to wait, if shorter than the server's one.")
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout) {
+        deserialized();
+        final ZefiroDeadline deadline = deadlines.write(timeout);
+
+        final StorageWriteEvent event = new StorageWriteEvent();
+        event.begin();
+
+        final ResponseEntity<?> response = write(writeRequest, ifUnmodifiedSince, authorizationHeader, deadline, event);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = writeRequest.path();
+            event.status = response.getStatusCode().value();
+            event.bytes = (writeRequest.content() == null) ? 0 : writeRequest.content().length();
+            event.upstreamCalls = upstreamCalls();
+            event.commit();
+        }
+
+        return response;
+    }
+
+    @GetMapping("/api/storage/changes")
+    @Operation(summary = "Subscribe to the changes of a file",
+               description = "Streams the changes of a file as server-sent `change` events, starting with its current state if known. The server checks the file on the remote storage on behalf of all the subscribers and pushes the changes written through it right away, thus clients do not need to poll `/read`.",
+               responses = {
+                   @ApiResponse(responseCode = "200", description = "The stream of changes.",
+                                content = @Content(mediaType = "text/event-stream",
+                                                   schema = @Schema(implementation = ChangeEvent.class))),
+                   @ApiResponse(responseCode = "401", description = "Unauthorized. The `Authorization` header is missing, invalid, or expired.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "503", description = "Too many files are being watched, retry later.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public Object changes(
+            @Parameter(description = "The path of the file to watch.", required = true, example = "/Toosla/data.json")
+            @RequestParam("path") String path,
+            @Parameter(description = "The Bearer token obtained from the `/login` endpoint.", required = true)
             @RequestHeader(name = "Authorization", required = false) String authorizationHeader) {
-        LOG.info(() -> "Attempting to read file: " + readRequest.path() + " if modified since " + ifModifiedSince);
+        final SseEmitter emitter = new SseEmitter(changesTimeout);
+        final Object subscribed = subscribe(authorizationHeader, path, new StorageChangeFeed.Subscriber() {
+            @Override
+            public boolean onChange(final ChangeEvent change) {
+                return send(emitter, SseEmitter.event()
+                    .name("change")
+                    .id(String.valueOf(change.lastModified()))
+                    .data(change, MediaType.APPLICATION_JSON)
+                );
+            }
+
+            @Override
+            public boolean onCheck() {
+                return send(emitter, SseEmitter.event().comment(""));
+            }
+
+            @Override
+            public void onClose() {
+                emitter.complete();
+            }
+        });
+        if (subscribed instanceof ResponseEntity<?> error) {
+            return error;
+        }
+
+        final StorageChangeFeed.Subscription subscription = (StorageChangeFeed.Subscription)subscribed;
+        emitter.onCompletion(subscription::close);
+        emitter.onError((x) -> subscription.close());
 
+        return emitter;
+    }
+
+    @GetMapping("/api/storage/document")
+    @Operation(summary = "Read a key of a JSON document",
+               description = "Reads the value of a top-level key of a JSON object stored in the remote storage (e.g. an entry of `/Toosla/data.json`), without transferring the whole document. The server keeps a copy of recently used documents in memory.",
+               responses = {
+                   @ApiResponse(responseCode = "200", description = "The value of the key. The `Last-Modified` header contains the timestamp of the document.",
+                                content = @Content(mediaType = "application/json")),
+                   @ApiResponse(responseCode = "401", description = "Unauthorized. The `Authorization` header is missing, invalid, or expired.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "404", description = "The document or the key does not exist.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "422", description = "The document is not a JSON object.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public ResponseEntity<?> getKey(
+            @Parameter(description = "The path of the document.", required = true, example = "/Toosla/data.json")
+            @RequestParam("path") String path,
+            @Parameter(description = "The top-level key.", required = true)
+            @RequestParam("key") String key,
+            @Parameter(description = "The Bearer token obtained from the `/login` endpoint.", required = true)
+            @RequestHeader(name = "Authorization", required = false) String authorizationHeader,
+            @Parameter(description = "The time in milliseconds the client is willing to wait, if shorter than the server's one.")
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout) {
+        final ZefiroDeadline deadline = deadlines.read(timeout);
+        LOG.info(() -> "Attempting to read key '" + key + "' of document: " + path);
         try {
             final KeyEntry keyEntry = getValidKey(authorizationHeader);
 
-            ZefiroClient zefiroClient =
-                new ZefiroClient(keyEntry.account(), keyEntry.secret())
-                    .withHttpClientBuilder(httpClientBuilder)
-                    .withValidationKey(keyEntry.validationKey());
+            final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.READ, keyEntry.account());
+            if (limited != null) {
+                return limited;
+            }
+
+            final StorageDocuments.Value value = documents.get(
+                keyEntry.account(), path, key, deadline, () -> newZefiroClient(keyEntry).withDeadline(deadline)
+            );
+            if (value == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                        new ErrorResponse("Key not found", "no key '" + key + "' in " + path));
+            }
+
+            //
+            // a document created by changes not written yet has no timestamp
+            //
+            final ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+            if (value.lastModified() != null) {
+                response.lastModified(value.lastModified().toInstant());
+            }
+            return response.body(value.value());
+        } catch (ZefiroException x) {
+            return documentError("read", path, x);
+        }
+    }
+
+    @PutMapping("/api/storage/document")
+    @Operation(summary = "Write a key of a JSON document",
+               description = "Sets a top-level key of a JSON object stored in the remote storage, creating the document if it does not exist; the request carries the value only. Changes made to the same document at about the same time are written together.",
+               responses = {
+                   @ApiResponse(responseCode = "200", description = "The key has been written. The `Last-Modified` header contains the new timestamp of the document."),
+                   @ApiResponse(responseCode = "401", description = "Unauthorized. The `Authorization` header is missing, invalid, or expired.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "404", description = "The document's parent folder does not exist.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "422", description = "The document is not a JSON object.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public ResponseEntity<?> putKey(
+            @Parameter(description = "The path of the document.", required = true, example = "/Toosla/data.json")
+            @RequestParam("path") String path,
+            @Parameter(description = "The top-level key.", required = true)
+            @RequestParam("key") String key,
+            @Parameter(description = "The new value of the key, any JSON value.", required = true)
+            @RequestBody JsonNode value,
+            @Parameter(description = "The Bearer token obtained from the `/login` endpoint.", required = true)
+            @RequestHeader(name = "Authorization", required = false) String authorizationHeader,
+            @Parameter(description = "The time in milliseconds the client is willing to wait, if shorter than the server's one.")
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout) {
+        final ZefiroDeadline deadline = deadlines.write(timeout);
+        LOG.info(() -> "Attempting to write key '" + key + "' of document: " + path);
+        return changeKey(path, key, value, authorizationHeader, deadline);
+    }
+
+    @DeleteMapping("/api/storage/document")
+    @Operation(summary = "Remove a key of a JSON document",
+               description = "Removes a top-level key of a JSON object stored in the remote storage; removing a key that does not exist is not an error.",
+               responses = {
+                   @ApiResponse(responseCode = "200", description = "The key has been removed. The `Last-Modified` header contains the new timestamp of the document."),
+                   @ApiResponse(responseCode = "401", description = "Unauthorized. The `Authorization` header is missing, invalid, or expired.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class))),
+                   @ApiResponse(responseCode = "422", description = "The document is not a JSON object.",
+                                content = @Content(mediaType = "application/json",
+                                                   schema = @Schema(implementation = ErrorResponse.class)))
+               })
+    public ResponseEntity<?> deleteKey(
+            @Parameter(description = "The path of the document.", required = true, example = "/Toosla/data.json")
+            @RequestParam("path") String path,
+            @Parameter(description = "The top-level key.", required = true)
+            @RequestParam("key") String key,
+            @Parameter(description = "The Bearer token obtained from the `/login` endpoint.", required = true)
+            @RequestHeader(name = "Authorization", required = false) String authorizationHeader,
+            @Parameter(description = "The time in milliseconds the client is willing to wait, if shorter than the server's one.")
+            @RequestHeader(name = StorageDeadlines.HEADER, required = false) String timeout) {
+        final ZefiroDeadline deadline = deadlines.write(timeout);
+        LOG.info(() -> "Attempting to remove key '" + key + "' of document: " + path);
+        return changeKey(path, key, null, authorizationHeader, deadline);
+    }
+
+    /**
+     * Subscribes to the changes of a file on behalf of the owner of the given
+     * access key, with the same checks as {@code /api/storage/changes}; it is
+     * shared with {@link StorageSyncSession}.
+     *
+     * @return the {@link StorageChangeFeed.Subscription} or, if the subscription
+     *         is not possible, the error {@link ResponseEntity} to answer with
+     */
+    Object subscribe(
+        final String authorizationHeader, final String path, final StorageChangeFeed.Subscriber subscriber
+    ) {
+        LOG.info(() -> "Subscribing to the changes of file: " + path);
+
+        final KeyEntry keyEntry;
+        try {
+            keyEntry = getValidKey(authorizationHeader);
+        } catch (ZefiroLoginException x) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                    new ErrorResponse("Unauthorized", x.getMessage()));
+        }
+
+        final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.READ, keyEntry.account());
+        if (limited != null) {
+            return limited;
+        }
+
+        final StorageChangeFeed.Subscription subscription = changeFeed.subscribe(
+            keyEntry.account(), path,
+            () -> newZefiroClient(keyEntry)
+                .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+                .withDeadline(deadlines.read(null)),
+            subscriber
+        );
+        if (subscription == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "60")
+                .body(new ErrorResponse(
+                    "Too many files watched, retry later", "the changes of " + path + " can not be watched now"
+                ));
+        }
+
+        return subscription;
+    }
+
+    /**
+     * Checks the given {@code Authorization} header; it is shared with
+     * {@link StorageSyncSession}.
+     *
+     * @return the key entry of a valid access key
+     *
+     * @throws ZefiroLoginException if the header is missing or the key is not valid
+     */
+    KeyEntry getValidKey(final String authorizationHeader) throws ZefiroLoginException {
+        final ServerTiming timing = serverTiming();
+        final long start = (timing != null) ? System.nanoTime() : 0;
+
+        KeyEntry keyEntry = null;
+        try {
+            if (
+                authorizationHeader == null ||
+                !authorizationHeader.startsWith("Bearer ") ||
+                (keyEntry = keyManager.get(authorizationHeader.substring(7))) == null
+                ) {
+                throw new ZefiroLoginException("Missing or invalid Authorization header");
+            }
+        } finally {
+            if (timing != null) {
+                timing.record(Phase.AUTH, System.nanoTime() - start);
+            }
+        }
+
+        return keyEntry;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Sends an event to a subscriber of {@code /api/storage/changes}.
+     *
+     * @return false if the subscriber is gone
+     */
+    private static boolean send(final SseEmitter emitter, final SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException x) {
+            LOG.fine(() -> "Subscriber gone: " + x.getMessage());
+            return false;
+        }
+    }
+
+    private ResponseEntity<?> read(
+        final ReadRequest readRequest, final Date ifModifiedSince,
+        final String authorizationHeader, final ZefiroDeadline deadline, final StorageReadEvent event
+    ) {
+        LOG.info(() -> "Attempting to read file: " + readRequest.path() + " if modified since " + ifModifiedSince);
+
+        KeyEntry keyEntry = null;
+        try {
+            keyEntry = getValidKey(authorizationHeader);
+            event.account = event.isEnabled() ? TooslaEvents.account(keyEntry.account()) : null;
+
+            final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.READ, keyEntry.account());
+            if (limited != null) {
+                return limited;
+            }
+
+            final ZefiroFileNotFoundException missing = notFoundCache.get(keyEntry.account(), readRequest.path());
+            if (missing != null) {
+                LOG.info(() -> "File recently found missing: " + readRequest.path());
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                        new ErrorResponse("File not found", missing.getMessage()));
+            }
+
+            ZefiroClient zefiroClient = newZefiroClient(keyEntry).withDeadline(deadline);
 
             Optional<ZefiroClient.DownloadResult> result = zefiroClient.download(readRequest.path(), ifModifiedSince);
             if (result.isPresent()) {
                 LOG.info(() -> "File read successfully: " + readRequest.path());
+                staleReadCache.put(keyEntry.account(), readRequest.path(), result.get().content(), result.get().lastModified());
+                patches.remember(keyEntry.account(), readRequest.path(), result.get().content(), result.get().lastModified());
                 return ResponseEntity
                         .ok()
                         .contentType(MediaType.APPLICATION_JSON)
@@ -193,11 +643,23 @@ public class StorageController {
             }
         } catch (ZefiroFileNotFoundException x) {
             LOG.warning(() -> "File not found: " + readRequest.path());
+            if (keyEntry != null) {
+                staleReadCache.remove(keyEntry.account(), readRequest.path());
+                notFoundCache.put(keyEntry.account(), readRequest.path(), x);
+            }
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
                     new ErrorResponse("File not found", x.getMessage()));
         } catch (ZefiroLoginException x) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
                     new ErrorResponse("Unauthorized", x.getMessage()));
+        } catch (ZefiroCircuitOpenException x) {
+            return stale(keyEntry, readRequest, ifModifiedSince, x);
+        } catch (ZefiroBusyException x) {
+            LOG.warning(() -> x.getMessage());
+            return busy(x);
+        } catch (ZefiroTimeoutException x) {
+            LOG.warning(() -> x.getMessage());
+            return timeout("read", x);
         } catch (ZefiroException x) {
             LOG.log(Level.SEVERE, x, () -> "Error reading file: " + readRequest.path());
             return ResponseEntity.internalServerError().body(
@@ -205,45 +667,42 @@ public class StorageController {
         }
     }
 
-    @PostMapping("/api/storage/write")
-    @Operation(summary = "Write a file to storage",
-               description = "Writes or overwrites a file in the remote storage. This endpoint supports optimistic locking via the `If-Unmodified-Since` header to prevent lost updates.",
-               responses = {
-                   @ApiResponse(responseCode = "200", description = "File written successfully. The `Last-Modified` header in the response contains the new timestamp of the file."),
-                   @ApiResponse(responseCode = "401", description = "Unauthorized. The `Authorization` header is missing, invalid, or expired.",
-                                content = @Content(mediaType = "application/json",
-                                                   schema = @Schema(implementation = ErrorResponse.class))),
-                   @ApiResponse(responseCode = "404", description = "The specified path's parent folder does not exist.",
-                                content = @Content(mediaType = "application/json",
-                                                   schema = @Schema(implementation = ErrorResponse.class))),
-                   @ApiResponse(responseCode = "412", description = "Precondition Failed. The file has been modified on the server since the date specified in the `If-Unmodified-Since` header.",
-                                content = @Content(mediaType = "application/json",
-                                                   schema = @Schema(implementation = ErrorResponse.class))),
-                   @ApiResponse(responseCode = "500", description = "A server-side error occurred while writing the file.",
-                                content = @Content(mediaType = "application/json",
-                                                   schema = @Schema(implementation = ErrorResponse.class)))
-               })
-    public ResponseEntity<?> write(
-            @Parameter(description = "The path and content of the file to write.", required = true,
-                       schema = @Schema(implementation = WriteRequest.class))
-            @Valid @RequestBody WriteRequest writeRequest,
-            @Parameter(description = "Standard HTTP `If-Unmodified-Since` header. If provided, the server only processes the request if the file has not been modified since this date.", example = "Wed, 21 Oct 2015 07:28:00 GMT")
-            @RequestHeader(name = "If-Unmodified-Since", required = false)
-            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
-            Date ifUnmodifiedSince,
-            @Parameter(description = "The Bearer token obtained from the `/login` endpoint.", required = true)
-            @RequestHeader(name = "Authorization") String authorizationHeader) {
+    private ResponseEntity<?> write(
+        final WriteRequest writeRequest, final Date ifUnmodifiedSince,
+        final String authorizationHeader, final ZefiroDeadline deadline, final StorageWriteEvent event
+    ) {
         LOG.info(() -> "Attempting to write file: " + writeRequest.path() + " with If-Unmodified-Since: " + ifUnmodifiedSince);
         try {
             final KeyEntry keyEntry = getValidKey(authorizationHeader);
+            event.account = event.isEnabled() ? TooslaEvents.account(keyEntry.account()) : null;
+
+            if (zefiroLoadMonitor.shed(ZefiroBulkhead.Priority.BACKGROUND)) {
+                return overloaded("write");
+            }
+            final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.WRITE, keyEntry.account());
+            if (limited != null) {
+                return limited;
+            }
+
+            ZefiroClient zefiroClient = newZefiroClient(keyEntry)
+                .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+                .withDeadline(deadline);
 
-            ZefiroClient zefiroClient =
-                new ZefiroClient(keyEntry.account(), keyEntry.secret())
-                .withHttpClientBuilder(httpClientBuilder)
-                .withValidationKey(keyEntry.validationKey());
+            if (writeRequest.content() == null) {
+                return patch(keyEntry, writeRequest, ifUnmodifiedSince, zefiroClient);
+            }
 
-            ZefiroUploadResponse zefiroResponse = zefiroClient.upload(writeRequest.path(), writeRequest.content(), ifUnmodifiedSince);
+            final ZefiroUploadResponse zefiroResponse;
+            try {
+                zefiroResponse = zefiroClient.upload(writeRequest.path(), writeRequest.content(), ifUnmodifiedSince);
+            } finally {
+                //
+                // the file may exist now, even if the upload failed
+                //
+                notFoundCache.remove(keyEntry.account(), writeRequest.path());
+            }
             LOG.info(() -> "File written successfully: " + writeRequest.path());
+            written(keyEntry.account(), writeRequest.path(), writeRequest.content(), zefiroResponse.lastModified());
 
             ResponseEntity.BodyBuilder response = ResponseEntity.ok();
             response.lastModified(zefiroResponse.lastModified().toInstant());
@@ -262,6 +721,12 @@ public class StorageController {
         } catch (ZefiroLoginException x) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
                     new ErrorResponse("Unauthorized", x.getMessage()));
+        } catch (ZefiroBusyException x) {
+            LOG.warning(() -> x.getMessage());
+            return busy(x);
+        } catch (ZefiroTimeoutException x) {
+            LOG.warning(() -> x.getMessage());
+            return timeout("write", x);
         } catch (ZefiroException x) {
             LOG.log(Level.SEVERE, x, () -> "Error writing file: " + writeRequest.path());
             return ResponseEntity.internalServerError().body(
@@ -269,18 +734,261 @@ public class StorageController {
         }
     }
 
-    // --------------------------------------------------------- private methods
+    /**
+     * Writes a file by patch; errors other than the patch specific ones are
+     * handled as for a plain write.
+     */
+    private ResponseEntity<?> patch(
+        final KeyEntry keyEntry, final WriteRequest writeRequest, final Date ifUnmodifiedSince, final ZefiroClient zefiroClient
+    ) {
+        final boolean merge = (writeRequest.mergePatch() != null);
+        try {
+            final StoragePatches.Result result = patches.write(
+                keyEntry.account(), writeRequest.path(),
+                merge ? StoragePatches.Type.MERGE_PATCH : StoragePatches.Type.JSON_PATCH,
+                merge ? writeRequest.mergePatch() : writeRequest.patch(),
+                ifUnmodifiedSince, zefiroClient
+            );
+            LOG.info(() -> "File patched successfully: " + writeRequest.path() + (result.merged() ? " (merged)" : ""));
+            written(keyEntry.account(), writeRequest.path(), result.content(), result.lastModified());
 
-    private KeyEntry getValidKey(final String authorizationHeader) throws ZefiroLoginException {
-        KeyEntry keyEntry = null;
-        if (
-            authorizationHeader == null ||
-            !authorizationHeader.startsWith("Bearer ") ||
-            (keyEntry = keyManager.get(authorizationHeader.substring(7))) == null
-            ) {
-            throw new ZefiroLoginException("Missing or invalid Authorization header");
+            final ResponseEntity.BodyBuilder response = ResponseEntity.ok().lastModified(result.lastModified().toInstant());
+            //
+            // the client does not have the changes merged with its own yet
+            //
+            if (!result.merged()) {
+                return response.build();
+            }
+            return (result.changes() != null)
+                 ? response.contentType(MERGE_PATCH).body(result.changes())
+                 : response.contentType(MediaType.APPLICATION_JSON).body(result.content());
+        } catch (StoragePatches.ConflictException x) {
+            LOG.warning(() -> "Conflict patching file: " + writeRequest.path() + " - " + x.getMessage());
+            final ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.CONFLICT);
+            if (x.lastModified != null) {
+                response.lastModified(x.lastModified.getTime());
+            }
+            return response.body(new ErrorResponse("Conflict", x.getMessage()));
+        } catch (StoragePatches.NotJsonException x) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(
+                    new ErrorResponse("Not JSON", x.getMessage()));
+        } catch (JsonPatches.InvalidPatchException x) {
+            return ResponseEntity.badRequest().body(
+                    new ErrorResponse("Invalid patch", x.getMessage()));
         }
+    }
 
-        return keyEntry;
+    /**
+     * Tells the caches and the subscribers that a file has been written.
+     */
+    private void written(final String account, final String path, final String content, final Date lastModified) {
+        staleReadCache.put(account, path, content, lastModified);
+        patches.remember(account, path, content, lastModified);
+        documents.forget(account, path);
+        changeFeed.changed(account, path, lastModified.getTime());
+    }
+
+    /**
+     * Sets (or removes, if {@code value} is null) a key of a document; the
+     * document is written by {@link StorageDocuments} together with the other
+     * changes made in the meantime, with its own deadline; the request waits
+     * for it up to {@code deadline}.
+     */
+    private ResponseEntity<?> changeKey(
+        final String path, final String key, final JsonNode value, final String authorizationHeader,
+        final ZefiroDeadline deadline
+    ) {
+        try {
+            final KeyEntry keyEntry = getValidKey(authorizationHeader);
+
+            if (zefiroLoadMonitor.shed(ZefiroBulkhead.Priority.BACKGROUND)) {
+                return overloaded("write");
+            }
+            final ResponseEntity<ErrorResponse> limited = limited(StorageRateLimiter.Operation.WRITE, keyEntry.account());
+            if (limited != null) {
+                return limited;
+            }
+
+            final Supplier<ZefiroClient> client = () -> newZefiroClient(keyEntry)
+                .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+                .withDeadline(deadlines.write(null));
+            final Date lastModified = (value == null)
+                                    ? documents.remove(keyEntry.account(), path, key, deadline, client)
+                                    : documents.put(keyEntry.account(), path, key, value, deadline, client);
+
+            return ResponseEntity.ok().lastModified(lastModified.toInstant()).build();
+        } catch (ZefiroException x) {
+            return documentError("write", path, x);
+        }
+    }
+
+    private ResponseEntity<?> documentError(final String operation, final String path, final ZefiroException x) {
+        if (x instanceof ZefiroLoginException) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(
+                    new ErrorResponse("Unauthorized", x.getMessage()));
+        } else if (x instanceof StorageDocuments.NotAnObjectException) {
+            LOG.warning(() -> x.getMessage());
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(
+                    new ErrorResponse("Not a JSON object", x.getMessage()));
+        } else if (x instanceof ZefiroFileNotFoundException) {
+            LOG.warning(() -> "File not found: " + path);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+                    new ErrorResponse("File not found", x.getMessage()));
+        } else if (x instanceof ZefiroModificationException) {
+            LOG.warning(() -> "Document kept changing: " + path);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                    new ErrorResponse("Conflict", path + " is being changed by others, retry later"));
+        } else if (x instanceof ZefiroBusyException bx) {
+            LOG.warning(() -> x.getMessage());
+            return busy(bx);
+        } else if (x instanceof ZefiroTimeoutException tx) {
+            LOG.warning(() -> x.getMessage());
+            return timeout(operation, tx);
+        }
+        LOG.log(Level.SEVERE, x, () -> "Error processing document: " + path);
+        return ResponseEntity.internalServerError().body(
+                new ErrorResponse("Error processing document", x.getMessage()));
+    }
+
+    /**
+     * Takes a token from the rate limiter of the given operation and account;
+     * if none is available, returns a 429 response telling when to retry.
+     */
+    private ResponseEntity<ErrorResponse> limited(final StorageRateLimiter.Operation operation, final String key) {
+        final long wait = rateLimiter.acquire(operation, key);
+        if (wait == 0) {
+            return null;
+        }
+
+        LOG.warning(() -> "Too many " + operation.tag() + " requests for '" + key + "'");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(StorageRateLimiter.retryAfterSeconds(wait)))
+            .body(new ErrorResponse(
+                "Too many requests, retry later", "rate limit of " + operation.tag() + " requests exceeded"
+            ));
+    }
+
+    /**
+     * Answers 503 to a low priority request shed because Zefiro calls are
+     * backing up; it is rejected before any Zefiro call is made.
+     */
+    private ResponseEntity<ErrorResponse> overloaded(final String operation) {
+        LOG.warning(() -> "Service overloaded, " + operation + " request shed");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, "1")
+            .body(new ErrorResponse(
+                "Service overloaded, retry later", operation + " requests are shed while Zefiro calls are backing up"
+            ));
+    }
+
+    /**
+     * Answers 504 to a request whose deadline passed, counting it in
+     * {@code storage.timeouts} by operation and phase (the Zefiro call that
+     * was in progress).
+     */
+    private ResponseEntity<ErrorResponse> timeout(final String operation, final ZefiroTimeoutException x) {
+        zefiroMetrics.registry().counter(
+            MetricsRegistry.name("storage.timeouts", "operation", operation, "phase", x.endpoint.tag)
+        ).increment();
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(
+            new ErrorResponse("Storage service timeout", x.getMessage())
+        );
+    }
+
+    private ResponseEntity<ErrorResponse> busy(final ZefiroBusyException x) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(x.retryAfterSeconds()))
+            .body(new ErrorResponse(
+                (x instanceof ZefiroCircuitOpenException) ? "Storage service unavailable, retry later" : "Service busy, retry later",
+                x.getMessage()
+            ));
+    }
+
+    /**
+     * Serves the last known content of a file while Zefiro is unavailable, if
+     * this node has one; the response is marked as stale.
+     */
+    private ResponseEntity<?> stale(
+        final KeyEntry keyEntry, final ReadRequest readRequest, final Date ifModifiedSince,
+        final ZefiroCircuitOpenException x
+    ) {
+        final Optional<StaleReadCache.Entry> cached = (keyEntry != null)
+                                                    ? staleReadCache.get(keyEntry.account(), readRequest.path())
+                                                    : Optional.empty();
+        if (cached.isEmpty()) {
+            LOG.warning(() -> x.getMessage());
+            return busy(x);
+        }
+
+        LOG.warning(() -> x.getMessage() + " - serving the last known content of " + readRequest.path());
+        if (ifModifiedSince != null && cached.get().lastModified().getTime() <= ifModifiedSince.getTime()) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).header(HttpHeaders.WARNING, StaleReadCache.WARNING).build();
+        }
+        return ResponseEntity
+                .ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .lastModified(cached.get().lastModified().toInstant())
+                .header(HttpHeaders.WARNING, StaleReadCache.WARNING)
+                .body(cached.get().content());
+    }
+
+    private ZefiroClient newZefiroClient(final KeyEntry keyEntry) {
+        return newZefiroClient(keyEntry.account(), keyEntry.secret())
+            .withValidationKey(keyEntry.validationKey());
+    }
+
+    /**
+     * Creates a client for the current request, instrumented with the upstream
+     * metrics, the per-request call counter set up by {@link AccessLogInterceptor}
+     * and, if enabled, the request's {@link ServerTiming}.
+     */
+    private ZefiroClient newZefiroClient(final String account, final String secret) {
+        final ZefiroClient zefiroClient = new ZefiroClient(account, secret)
+            .withHttpClientBuilder(httpClientBuilder)
+            .withApiUrl(zefiroApiUrl)
+            .withUploadUrl(zefiroUploadUrl)
+            .withBulkhead(zefiroBulkhead)
+            .withRetryPolicy(zefiroRetryPolicy)
+            .withHedgingPolicy(zefiroHedgingPolicy)
+            .withCircuitBreaker(zefiroCircuitBreaker)
+            .withConcurrencyLimiter(zefiroConcurrencyLimiter)
+            .withListener(zefiroMetrics)
+            .withListener(zefiroLoadMonitor);
+
+        if (requestAttribute(AccessLogInterceptor.UPSTREAM_CALLS_ATTRIBUTE) instanceof ZefiroListener counter) {
+            zefiroClient.withListener(counter);
+        }
+        final ServerTiming timing = serverTiming();
+        if (timing != null) {
+            zefiroClient.withListener(timing);
+        }
+
+        return zefiroClient;
+    }
+
+    /**
+     * Accounts the time between the start of the request and the invocation
+     * of the handler (mostly reading, deserializing and validating the request
+     * body) to the {@link Phase#SER} phase.
+     */
+    private void deserialized() {
+        final ServerTiming timing = serverTiming();
+        if (timing != null) {
+            timing.record(Phase.SER, System.nanoTime() - timing.start());
+        }
+    }
+
+    private int upstreamCalls() {
+        return (requestAttribute(AccessLogInterceptor.UPSTREAM_CALLS_ATTRIBUTE) instanceof ZefiroCallCounter counter)
+             ? counter.calls() : 0;
+    }
+
+    private ServerTiming serverTiming() {
+        return (requestAttribute(ServerTiming.ATTRIBUTE) instanceof ServerTiming timing) ? timing : null;
+    }
+
+    private Object requestAttribute(final String name) {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return (attributes != null) ? attributes.getAttribute(name, RequestAttributes.SCOPE_REQUEST) : null;
     }
 }
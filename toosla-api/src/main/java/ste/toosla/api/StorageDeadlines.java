@@ -0,0 +1,101 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.time.Duration;
+import ste.toosla.zefiro.ZefiroDeadline;
+
+/**
+ * The time given to the storage endpoints to complete their Zefiro calls,
+ * after which they answer {@code 504 Gateway Timeout}. Each endpoint has its
+ * own budget; a client can ask for a shorter one with the {@link #HEADER}
+ * header (milliseconds), e.g. because it gives up waiting earlier itself.
+ * Longer or invalid values are ignored.
+ */
+public class StorageDeadlines {
+
+    public static final String HEADER = "X-Request-Timeout";
+
+    private final Duration login;
+    private final Duration read;
+    private final Duration write;
+
+    /**
+     * @param login the budget of logins - NOT NULL, greater than zero
+     * @param read the budget of reads - NOT NULL, greater than zero
+     * @param write the budget of writes - NOT NULL, greater than zero
+     */
+    public StorageDeadlines(final Duration login, final Duration read, final Duration write) {
+        this.login = check(login, "login");
+        this.read = check(read, "read");
+        this.write = check(write, "write");
+    }
+
+    /**
+     * @param header the value of the {@link #HEADER} header - MAY BE NULL
+     *
+     * @return the deadline of a login starting now
+     */
+    public ZefiroDeadline login(final String header) {
+        return deadline(login, header);
+    }
+
+    /**
+     * @param header the value of the {@link #HEADER} header - MAY BE NULL
+     *
+     * @return the deadline of a read starting now
+     */
+    public ZefiroDeadline read(final String header) {
+        return deadline(read, header);
+    }
+
+    /**
+     * @param header the value of the {@link #HEADER} header - MAY BE NULL
+     *
+     * @return the deadline of a write starting now
+     */
+    public ZefiroDeadline write(final String header) {
+        return deadline(write, header);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static ZefiroDeadline deadline(final Duration budget, final String header) {
+        if (header != null) {
+            try {
+                final long requested = Long.parseLong(header.trim());
+                if (requested > 0 && requested < budget.toMillis()) {
+                    return ZefiroDeadline.in(Duration.ofMillis(requested));
+                }
+            } catch (NumberFormatException x) {
+                // ignored, as documented
+            }
+        }
+        return ZefiroDeadline.in(budget);
+    }
+
+    private static Duration check(final Duration budget, final String name) {
+        if (budget == null || budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException(name + " can not be null, zero or negative");
+        }
+        return budget;
+    }
+}
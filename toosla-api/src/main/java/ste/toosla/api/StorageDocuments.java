@@ -0,0 +1,659 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroDeadline;
+import ste.toosla.zefiro.ZefiroEndpoint;
+import ste.toosla.zefiro.ZefiroException;
+import ste.toosla.zefiro.ZefiroFileNotFoundException;
+import ste.toosla.zefiro.ZefiroModificationException;
+import ste.toosla.zefiro.ZefiroTimeoutException;
+
+/**
+ * Gives access to the top-level keys of JSON documents stored on Zefiro (e.g.
+ * {@code /Toosla/data.json}, the client's localStorage), so that changing a
+ * key does not require to download and upload the whole document.
+ *
+ * <p>A hot copy of each document is kept in memory per account and path, for
+ * up to {@code maxEntries} recently used documents; reads are served from it
+ * and it is checked against Zefiro when older than {@code maxAge}, by one
+ * request at a time while the others wait for it. Changes
+ * are applied to the hot copy right away and written to Zefiro by a flush
+ * {@code flushDelay} after the first of them: all the changes made in the
+ * meantime, by any client, are written with a single upload. A change returns
+ * once the flush including it has completed.
+ *
+ * <p>Before uploading, the flush checks whether the document has been
+ * changed on Zefiro by someone else (e.g. with {@code /api/storage/write}); if
+ * so, the changes are applied again on top of the current document, so that
+ * only the changed keys are overwritten. The upload is made only if the
+ * document is still the version the changes have been applied to.
+ *
+ * <p>Reads and changes wait for Zefiro up to the deadline of the request, if
+ * given, and then fail with {@link ZefiroTimeoutException}; a change still
+ * gets written by its flush.
+ */
+public class StorageDocuments implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(StorageDocuments.class.getName());
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Tells when a document has been written to Zefiro.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param account the account owning the document - NOT NULL
+         * @param path the path of the document - NOT NULL
+         * @param content the content written - NOT NULL
+         * @param lastModified the new last modification time - NOT NULL
+         */
+        void flushed(String account, String path, String content, Date lastModified);
+    }
+
+    /**
+     * The value of a key and the last modification time of the document on
+     * Zefiro, null if it does not exist yet.
+     */
+    public record Value(JsonNode value, Date lastModified) {}
+
+    /**
+     * Thrown if a document is not a JSON object.
+     */
+    public static class NotAnObjectException extends ZefiroException {
+        public NotAnObjectException(final String path) {
+            super(path + " is not a JSON object");
+        }
+    }
+
+    private record Key(String account, String path) {}
+
+    private final long flushDelay;
+    private final long maxAge;
+    private final Map<Key, Document> documents;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("storage-documents").daemon().factory()
+    );
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    private Listener listener = (account, path, content, lastModified) -> {};
+
+    public StorageDocuments(final Duration flushDelay, final Duration maxAge, final int maxEntries) {
+        if (flushDelay == null || flushDelay.isNegative()) {
+            throw new IllegalArgumentException("flushDelay can not be null or negative");
+        }
+        if (maxAge == null || maxAge.isNegative()) {
+            throw new IllegalArgumentException("maxAge can not be null or negative");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries can not be less than 1");
+        }
+        this.flushDelay = flushDelay.toMillis();
+        this.maxAge = maxAge.toNanos();
+        this.documents = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Document> eldest) {
+                //
+                // documents with changes not yet written are never evicted
+                //
+                return size() > maxEntries && eldest.getValue().clean();
+            }
+        };
+    }
+
+    /**
+     * @param listener the listener told about every document written - NOT NULL
+     *
+     * @return this
+     */
+    public StorageDocuments withListener(final Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Reads a key of a document.
+     *
+     * @param account the account owning the document - NOT NULL
+     * @param path the path of the document - NOT NULL
+     * @param key the key - NOT NULL
+     * @param deadline the deadline of the request - MAY BE NULL
+     * @param client creates the client to read the document with, if not hot - NOT NULL
+     *
+     * @return the value of the key, null if the key (or the document) does not exist
+     *
+     * @throws NotAnObjectException if the document is not a JSON object
+     * @throws ZefiroTimeoutException if the deadline passed while waiting for the document
+     * @throws ZefiroException if the document could not be read
+     */
+    public Value get(
+        final String account, final String path, final String key,
+        final ZefiroDeadline deadline, final Supplier<ZefiroClient> client
+    ) throws ZefiroException {
+        final Document document = document(account, path);
+        while (true) {
+            final CompletableFuture<Void> loading;
+            final boolean loader;
+            final Date since;
+            final long generation;
+            synchronized (document) {
+                if (document.hot()) {
+                    return document.value(key);
+                }
+                loader = (document.loading == null);
+                if (loader) {
+                    document.loading = new CompletableFuture<>();
+                }
+                loading = document.loading;
+                since = (document.content != null) ? document.lastModified : null;
+                generation = document.generation;
+            }
+
+            //
+            // one request loads the document, out of its lock, the others
+            // wait for it; the hot copy just loaded is read as is, unless
+            // dropped in the meantime
+            //
+            if (loader) {
+                document.load(client, since, generation, loading);
+            } else {
+                await(loading, deadline, ZefiroEndpoint.CONTENT, "reading " + path);
+            }
+            synchronized (document) {
+                if (document.content != null) {
+                    return document.value(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets a key of a document, creating the document if it does not exist,
+     * and waits for the change to be written to Zefiro.
+     *
+     * @param account the account owning the document - NOT NULL
+     * @param path the path of the document - NOT NULL
+     * @param key the key - NOT NULL
+     * @param value the new value - NOT NULL
+     * @param deadline the deadline of the request - MAY BE NULL
+     * @param client creates the client to write the document with - NOT NULL
+     *
+     * @return the last modification time of the document written
+     *
+     * @throws NotAnObjectException if the document is not a JSON object
+     * @throws ZefiroTimeoutException if the deadline passed before the change was written
+     * @throws ZefiroException if the document could not be written
+     */
+    public Date put(
+        final String account, final String path, final String key, final JsonNode value,
+        final ZefiroDeadline deadline, final Supplier<ZefiroClient> client
+    ) throws ZefiroException {
+        if (value == null) {
+            throw new IllegalArgumentException("value can not be null");
+        }
+        return change(account, path, key, value, deadline, client);
+    }
+
+    /**
+     * Removes a key of a document and waits for the change to be written to
+     * Zefiro.
+     *
+     * @return the last modification time of the document written
+     *
+     * @throws NotAnObjectException if the document is not a JSON object
+     * @throws ZefiroTimeoutException if the deadline passed before the change was written
+     * @throws ZefiroException if the document could not be written
+     *
+     * @see #put(String, String, String, JsonNode, ZefiroDeadline, Supplier)
+     */
+    public Date remove(
+        final String account, final String path, final String key,
+        final ZefiroDeadline deadline, final Supplier<ZefiroClient> client
+    ) throws ZefiroException {
+        return change(account, path, key, null, deadline, client);
+    }
+
+    /**
+     * Drops the hot copy of a document written by other means (e.g. with
+     * {@code /api/storage/write}); changes not written yet are kept and will
+     * be applied on top of the new content.
+     */
+    public void forget(final String account, final String path) {
+        final Document document;
+        synchronized (documents) {
+            document = documents.get(new Key(account, path));
+        }
+        if (document != null) {
+            synchronized (document) {
+                document.drop();
+            }
+        }
+    }
+
+    /**
+     * @return the number of documents kept in memory
+     */
+    public int documents() {
+        synchronized (documents) {
+            return documents.size();
+        }
+    }
+
+    /**
+     * @return the number of key changes received so far
+     */
+    public long updates() {
+        return updates.sum();
+    }
+
+    /**
+     * @return the number of uploads made so far
+     */
+    public long flushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Writes right away the changes waiting for a flush and stops flushing.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+
+        final List<Document> dirty;
+        synchronized (documents) {
+            dirty = documents.values().stream().filter((document) -> !document.clean()).toList();
+        }
+        dirty.forEach((document) -> executor.execute(() -> {
+            synchronized (document) {
+                if (document.flushing || document.flushed == null) {
+                    return;
+                }
+            }
+            flush(document);
+        }));
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOG.warning("Some documents could not be written before closing");
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Document document(final String account, final String path) {
+        synchronized (documents) {
+            return documents.computeIfAbsent(new Key(account, path), Document::new);
+        }
+    }
+
+    private Date change(
+        final String account, final String path, final String key, final JsonNode value,
+        final ZefiroDeadline deadline, final Supplier<ZefiroClient> client
+    ) throws ZefiroException {
+        updates.increment();
+
+        final Document document = document(account, path);
+        final CompletableFuture<Date> flushed;
+        synchronized (document) {
+            document.pending.put(key, value);
+            document.client = client;
+            if (document.content != null) {
+                apply(document.content, key, value);
+            }
+            if (document.flushed == null) {
+                document.flushed = new CompletableFuture<>();
+                if (!document.flushing) {
+                    schedule(document);
+                }
+            }
+            flushed = document.flushed;
+        }
+
+        return await(flushed, deadline, ZefiroEndpoint.UPLOAD, "writing " + path);
+    }
+
+    /**
+     * Waits for a load or a flush made for (also) the calling request, up to
+     * the deadline of the request if given.
+     */
+    private static <T> T await(
+        final CompletableFuture<T> future, final ZefiroDeadline deadline, final ZefiroEndpoint endpoint, final String what
+    ) throws ZefiroException {
+        try {
+            return (deadline == null)
+                 ? future.get()
+                 : future.get(Math.max(deadline.remaining(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException x) {
+            throw new ZefiroTimeoutException(endpoint, deadline.budget(), null);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new ZefiroException("Interrupted while " + what, x);
+        } catch (ExecutionException x) {
+            throw (x.getCause() instanceof ZefiroException zx) ? zx : new ZefiroException("Error " + what, x.getCause());
+        }
+    }
+
+    private void schedule(final Document document) {
+        scheduler.schedule(() -> executor.execute(() -> flush(document)), flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the pending changes of a document; changes coming in the meantime
+     * are written by the next flush, which is scheduled once this one is done.
+     */
+    private void flush(final Document document) {
+        final Map<String, JsonNode> changes;
+        final CompletableFuture<Date> flushed;
+        final Supplier<ZefiroClient> client;
+        synchronized (document) {
+            changes = document.pending;
+            flushed = document.flushed;
+            client = document.client;
+            document.pending = new LinkedHashMap<>();
+            document.flushed = null;
+            document.flushing = true;
+            //
+            // a load in progress would not have the changes taken here
+            //
+            ++document.generation;
+        }
+
+        try {
+            final Date lastModified = upload(document, changes, client.get());
+            flushes.increment();
+            flushed.complete(lastModified);
+        } catch (Throwable x) {
+            LOG.log(Level.WARNING, x, () -> "Error writing " + document.key.path() + " of account '" + document.key.account() + "'");
+            synchronized (document) {
+                //
+                // the hot copy has changes that were not written
+                //
+                document.drop();
+            }
+            flushed.completeExceptionally(x);
+        } finally {
+            synchronized (document) {
+                document.flushing = false;
+                if (document.flushed != null && !scheduler.isShutdown()) {
+                    schedule(document);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads the document with the given changes; if someone else writes it
+     * between the check and the upload, it tries again up to
+     * {@code MAX_ATTEMPTS} times.
+     */
+    private Date upload(
+        final Document document, final Map<String, JsonNode> changes, final ZefiroClient client
+    ) throws ZefiroException, JsonProcessingException {
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                return uploadOnce(document, changes, client);
+            } catch (ZefiroModificationException x) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw x;
+                }
+                synchronized (document) {
+                    document.drop();
+                }
+            }
+        }
+    }
+
+    private Date uploadOnce(
+        final Document document, final Map<String, JsonNode> changes, final ZefiroClient client
+    ) throws ZefiroException, JsonProcessingException {
+        final String path = document.key.path();
+
+        final ObjectNode base;
+        final Date baseModified;
+        synchronized (document) {
+            base = (document.content != null) ? document.base.deepCopy() : null;
+            baseModified = document.lastModified;
+        }
+
+        //
+        // reload the document if dropped or changed on Zefiro in the meantime
+        //
+        Optional<Date> current;
+        try {
+            current = Optional.of(client.info(path).lastModified());
+        } catch (ZefiroFileNotFoundException x) {
+            current = Optional.empty();
+        }
+        final ObjectNode content;
+        final Date since;
+        if (base == null || !current.equals(Optional.ofNullable(baseModified))) {
+            LOG.info(() -> path + " changed on Zefiro, applying the changes to the current version");
+            final Loaded loaded = load(client, path);
+            content = loaded.content();
+            since = loaded.lastModified();
+        } else {
+            content = base;
+            since = baseModified;
+        }
+        changes.forEach((key, value) -> apply(content, key, value));
+
+        //
+        // the upload is made only if the document is still the version the
+        // changes have been applied to (or still does not exist); the new
+        // version is stamped with the current time, unless the clocks disagree
+        //
+        final Date now = new Date();
+        final String text = JSON.writeValueAsString(content);
+        final Date lastModified = client.upload(
+            path, text,
+            (since != null) ? since : new Date(0),
+            (since != null && !since.before(now)) ? new Date(since.getTime() + 1) : now
+        ).lastModified();
+
+        synchronized (document) {
+            document.base = content;
+            document.lastModified = lastModified;
+            document.loaded = System.nanoTime();
+            document.content = content.deepCopy();
+            document.pending.forEach((key, value) -> apply(document.content, key, value));
+            ++document.generation;
+        }
+        listener.flushed(document.key.account(), path, text, lastModified);
+
+        return lastModified;
+    }
+
+    private record Loaded(ObjectNode content, Date lastModified) {}
+
+    private static Loaded load(final ZefiroClient client, final String path) throws ZefiroException {
+        try {
+            return parse(path, client.download(path, null).get());
+        } catch (ZefiroFileNotFoundException x) {
+            return new Loaded(JSON.createObjectNode(), null);
+        }
+    }
+
+    /**
+     * Downloads the document if changed since the given time, or anyway if
+     * {@code since} is null.
+     *
+     * @return the document, null if not changed
+     */
+    private static Loaded load(final ZefiroClient client, final String path, final Date since) throws ZefiroException {
+        if (since == null) {
+            return load(client, path);
+        }
+        try {
+            final Optional<ZefiroClient.DownloadResult> result = client.download(path, since);
+            return result.isEmpty() ? null : parse(path, result.get());
+        } catch (ZefiroFileNotFoundException x) {
+            return new Loaded(JSON.createObjectNode(), null);
+        }
+    }
+
+    private static Loaded parse(final String path, final ZefiroClient.DownloadResult result) throws NotAnObjectException {
+        try {
+            if (JSON.readTree(result.content()) instanceof ObjectNode content) {
+                return new Loaded(content, result.lastModified());
+            }
+        } catch (JsonProcessingException x) {
+            LOG.fine(() -> path + " is not valid JSON: " + x.getMessage());
+        }
+        throw new NotAnObjectException(path);
+    }
+
+    private static void apply(final ObjectNode content, final String key, final JsonNode value) {
+        if (value == null) {
+            content.remove(key);
+        } else {
+            content.set(key, value);
+        }
+    }
+
+    /**
+     * The hot copy of a document; all its fields are guarded by its lock.
+     */
+    private class Document {
+        final Key key;
+
+        /** the content on Zefiro, NULL if not loaded */
+        ObjectNode base;
+        /** base with the pending changes applied, NULL if not loaded or dropped */
+        ObjectNode content;
+        /** the last modification time of base, NULL if the document does not exist */
+        Date lastModified;
+        /** when base was loaded or checked (nano time) */
+        long loaded;
+        /** the changes not written yet, by key; a null value removes the key */
+        Map<String, JsonNode> pending = new LinkedHashMap<>();
+        /** completed by the flush writing the pending changes; NULL if none */
+        CompletableFuture<Date> flushed;
+        Supplier<ZefiroClient> client;
+        boolean flushing;
+        /** completed by the load in progress; NULL if none */
+        CompletableFuture<Void> loading;
+        /** changed whenever base or content are changed by others than a load */
+        long generation;
+
+        Document(final Key key) {
+            this.key = key;
+        }
+
+        boolean clean() {
+            synchronized (this) {
+                return pending.isEmpty() && !flushing;
+            }
+        }
+
+        /**
+         * @return true if the hot copy can be read as is: loaded less than
+         *         {@code maxAge} ago or being written
+         */
+        boolean hot() {
+            return content != null && (flushing || System.nanoTime() - loaded < maxAge);
+        }
+
+        /**
+         * @return the value of the key in the hot copy, null if missing
+         */
+        Value value(final String key) {
+            final JsonNode value = content.get(key);
+            return (value == null) ? null : new Value(value, lastModified);
+        }
+
+        /**
+         * Drops the hot copy, so that the document is loaded again.
+         */
+        void drop() {
+            content = null;
+            ++generation;
+        }
+
+        /**
+         * Loads the document, or checks whether it changed since {@code since}
+         * if not null, without holding its lock; the result is kept only if
+         * the hot copy has not been changed in the meantime.
+         */
+        void load(
+            final Supplier<ZefiroClient> client, final Date since, final long generation, final CompletableFuture<Void> loading
+        ) throws ZefiroException {
+            try {
+                final Loaded current = StorageDocuments.load(client.get(), key.path(), since);
+                synchronized (this) {
+                    loading.complete(null);
+                    this.loading = null;
+                    if (this.generation != generation) {
+                        return;
+                    }
+                    loaded = System.nanoTime();
+                    if (current != null) {
+                        base = current.content();
+                        lastModified = current.lastModified();
+                        content = base.deepCopy();
+                        pending.forEach((key, value) -> apply(content, key, value));
+                    }
+                }
+            } catch (RuntimeException x) {
+                synchronized (this) {
+                    this.loading = null;
+                }
+                loading.completeExceptionally(x);
+                throw x;
+            }
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroException;
+import ste.toosla.zefiro.ZefiroModificationException;
+
+/**
+ * Writes JSON files by patch (RFC 7396 merge patches or RFC 6902 JSON
+ * patches) instead of by content, so that clients send only what they
+ * changed.
+ *
+ * <p>A patch is made against a version of the file (the client's
+ * {@code If-Unmodified-Since}). If the file has been written since, the patch
+ * is merged with the changes made in the meantime as long as they do not
+ * touch the same values (see {@link JsonPatches}), instead of making the
+ * client read the file, apply its changes again and write it; the client is
+ * then given the changes made by others as a merge patch. To do so, the
+ * last {@code maxVersions} versions of up to {@code maxEntries} recently used
+ * files are remembered per account, as read or written through this node;
+ * patches made against a version no longer known are rejected as stale.
+ *
+ * <p>A patched file is uploaded only if it is still the version the patch has
+ * been applied to; otherwise the patch is applied again to the newer version.
+ * Patches of the same file are written one at a time by this node, since the
+ * versions they write are stamped in seconds.
+ */
+public class StoragePatches {
+
+    private static final Logger LOG = Logger.getLogger(StoragePatches.class.getName());
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int MAX_ATTEMPTS = 3;
+
+    public enum Type { MERGE_PATCH, JSON_PATCH }
+
+    /**
+     * The content written, its last modification time and, if the patch has
+     * been merged with changes made after its base version, the merge patch
+     * that turns the base version into the content written (null if it can not
+     * be expressed as a merge patch).
+     */
+    public record Result(String content, Date lastModified, boolean merged, String changes) {}
+
+    /**
+     * Thrown if a patch changes values changed by someone else since its base
+     * version, or can not be applied to the current version.
+     */
+    public static class ConflictException extends ZefiroException {
+        public final Date lastModified;
+
+        public ConflictException(final String message, final Date lastModified) {
+            super(message);
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Thrown if the base version of a patch is older than the current one and
+     * not known, hence changes can not be merged.
+     */
+    public static class UnknownBaseException extends ZefiroModificationException {
+        public UnknownBaseException(final String path, final Date lastModified) {
+            super("the version of " + path + " the patch was made against is not available, read it again", lastModified);
+        }
+    }
+
+    /**
+     * Thrown if a file to patch is not JSON.
+     */
+    public static class NotJsonException extends ZefiroException {
+        public NotJsonException(final String path) {
+            super(path + " is not JSON");
+        }
+    }
+
+    private record Key(String account, String path) {}
+
+    private record Version(Date lastModified, String content) {}
+
+    /**
+     * The versions of a file, from the newest, and the last modification time
+     * of the newest version dropped, NULL if none.
+     */
+    private static class History {
+        final Deque<Version> versions = new ArrayDeque<>();
+        Date forgotten;
+    }
+
+    /**
+     * The lock taken to write a file and the number of writes holding or
+     * waiting for it.
+     */
+    private static class Writers {
+        final ReentrantLock lock = new ReentrantLock();
+        int count;
+    }
+
+    private final int maxVersions;
+    private final Map<Key, History> versions;
+    private final Map<Key, Writers> writers = new HashMap<>();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder merged = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    public StoragePatches(final int maxVersions, final int maxEntries) {
+        if (maxVersions < 1) {
+            throw new IllegalArgumentException("maxVersions can not be less than 1");
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries can not be less than 1");
+        }
+        this.maxVersions = maxVersions;
+        this.versions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, History> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Remembers a version of a file read or written, so that patches made
+     * against it can be merged later.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     * @param content the content of the file - MAY BE NULL (nothing is remembered)
+     * @param lastModified the last modification time of the file - MAY BE NULL (nothing is remembered)
+     */
+    public void remember(final String account, final String path, final String content, final Date lastModified) {
+        if (content == null || lastModified == null) {
+            return;
+        }
+        synchronized (versions) {
+            final History history = versions.computeIfAbsent(new Key(account, path), (key) -> new History());
+            history.versions.removeIf((version) -> version.lastModified().equals(lastModified));
+            history.versions.addFirst(new Version(lastModified, content));
+            while (history.versions.size() > maxVersions) {
+                final Date dropped = history.versions.removeLast().lastModified();
+                if (history.forgotten == null || dropped.after(history.forgotten)) {
+                    history.forgotten = dropped;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a patch to the current version of a file and writes it.
+     *
+     * @param account the account owning the file - NOT NULL
+     * @param path the path of the file - NOT NULL
+     * @param type the type of patch - NOT NULL
+     * @param patch the patch - NOT NULL
+     * @param base the last modification time of the version the patch was
+     *             made against; the patch is applied to the current version
+     *             as is if NULL - MAY BE NULL
+     * @param client the client to read and write the file with - NOT NULL
+     *
+     * @return the content written and its last modification time
+     *
+     * @throws JsonPatches.InvalidPatchException if the patch is not well formed
+     * @throws ConflictException if the patch conflicts with the current version
+     * @throws UnknownBaseException if the file changed since base and base is not known
+     * @throws NotJsonException if the file is not JSON
+     * @throws ZefiroException if the file could not be read or written
+     */
+    public Result write(
+        final String account, final String path, final Type type, final JsonNode patch,
+        final Date base, final ZefiroClient client
+    ) throws ZefiroException {
+        final Key key = new Key(account, path);
+        final Writers writer = enter(key);
+        try {
+            writer.lock.lockInterruptibly();
+        } catch (InterruptedException x) {
+            leave(key, writer);
+            Thread.currentThread().interrupt();
+            throw new ZefiroException("Interrupted while writing " + path, x);
+        }
+        try {
+            for (int attempt = 1; ; ++attempt) {
+                try {
+                    return writeOnce(account, path, type, patch, base, client);
+                } catch (UnknownBaseException x) {
+                    throw x;
+                } catch (ZefiroModificationException x) {
+                    //
+                    // written by someone else between the check and the upload
+                    //
+                    if (attempt >= MAX_ATTEMPTS) {
+                        throw x;
+                    }
+                }
+            }
+        } finally {
+            writer.lock.unlock();
+            leave(key, writer);
+        }
+    }
+
+    /**
+     * @return the number of files whose versions are remembered
+     */
+    public int files() {
+        synchronized (versions) {
+            return versions.size();
+        }
+    }
+
+    /**
+     * @return the number of files written by patch
+     */
+    public long writes() {
+        return writes.sum();
+    }
+
+    /**
+     * @return the number of patches merged with changes made after their base version
+     */
+    public long merged() {
+        return merged.sum();
+    }
+
+    /**
+     * @return the number of patches rejected because conflicting
+     */
+    public long conflicts() {
+        return conflicts.sum();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Result writeOnce(
+        final String account, final String path, final Type type, final JsonNode patch,
+        final Date base, final ZefiroClient client
+    ) throws ZefiroException {
+        //
+        // the current version is downloaded only if not known already
+        //
+        Date lastModified = client.info(path).lastModified();
+        String text = current(account, path, lastModified);
+        if (text == null) {
+            final ZefiroClient.DownloadResult current = client.download(path, null).get();
+            text = current.content();
+            lastModified = current.lastModified();
+            remember(account, path, text, lastModified);
+        }
+        final JsonNode current = parse(path, text);
+
+        final boolean stale = (base != null) && (lastModified != null)
+                            && (lastModified.getTime() / 1000 > base.getTime() / 1000);
+        final List<JsonNode> bases = new ArrayList<>();
+        if (stale) {
+            for (final String version: bases(account, path, base)) {
+                bases.add(parse(path, version));
+            }
+            if (bases.isEmpty()) {
+                throw new UnknownBaseException(path, lastModified);
+            }
+            final List<String> found = (type == Type.MERGE_PATCH)
+                                     ? JsonPatches.mergeConflicts(bases.get(0), current, patch)
+                                     : JsonPatches.patchConflicts(bases.get(0), current, patch);
+            if (!found.isEmpty()) {
+                conflicts.increment();
+                throw new ConflictException(path + " has been changed at " + String.join(", ", found), lastModified);
+            }
+            LOG.info(() -> path + " changed since the patch base, merging");
+        }
+
+        final JsonNode updated;
+        final String content;
+        try {
+            updated = (type == Type.MERGE_PATCH) ? JsonPatches.merge(current, patch) : JsonPatches.patch(current, patch);
+            content = JSON.writeValueAsString(updated);
+        } catch (JsonPatches.PatchConflictException x) {
+            conflicts.increment();
+            throw new ConflictException(x.getMessage(), lastModified);
+        } catch (JsonProcessingException x) {
+            throw new ZefiroException("Error writing " + path, x);
+        }
+
+        //
+        // the upload is made only if the file is still the version patched;
+        // the new version is stamped with the current time in seconds, at
+        // least a second after the current version, so that the HTTP dates
+        // the clients get tell the versions apart
+        //
+        final long now = System.currentTimeMillis() / 1000 * 1000;
+        final Date written = client.upload(
+            path, content,
+            (lastModified == null) ? new Date(0) : lastModified,
+            new Date((lastModified == null) ? now : Math.max(now, (lastModified.getTime() / 1000 + 1) * 1000))
+        ).lastModified();
+        remember(account, path, content, written);
+
+        writes.increment();
+        if (!stale) {
+            return new Result(content, written, false, null);
+        }
+        merged.increment();
+
+        //
+        // the merge patch must bring any of the possible bases up to date
+        //
+        JsonNode changes = null;
+        for (final JsonNode version: bases) {
+            final JsonNode diff = JsonPatches.diff(version, updated);
+            if (diff == null) {
+                changes = null;
+                break;
+            }
+            changes = (changes == null) ? diff : JsonPatches.union(changes, diff);
+        }
+        try {
+            return new Result(content, written, true, (changes == null) ? null : JSON.writeValueAsString(changes));
+        } catch (JsonProcessingException x) {
+            throw new ZefiroException("Error writing " + path, x);
+        }
+    }
+
+    private Writers enter(final Key key) {
+        synchronized (writers) {
+            final Writers writer = writers.computeIfAbsent(key, (k) -> new Writers());
+            ++writer.count;
+            return writer;
+        }
+    }
+
+    private void leave(final Key key, final Writers writer) {
+        synchronized (writers) {
+            if (--writer.count == 0) {
+                writers.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return the content of the version modified at lastModified, null if not known
+     */
+    private String current(final String account, final String path, final Date lastModified) {
+        if (lastModified == null) {
+            return null;
+        }
+        synchronized (versions) {
+            final History history = versions.get(new Key(account, path));
+            if (history == null) {
+                return null;
+            }
+            return history.versions.stream()
+                .filter((version) -> version.lastModified().equals(lastModified))
+                .map(Version::content)
+                .findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * Clients know last modification times in seconds (HTTP dates), thus a
+     * base may match several versions: conflicts are looked for against the
+     * oldest of them, so that changes made after it count as changes made by
+     * others. This may find conflicts where there are none, but not miss any,
+     * as long as no version modified in the same second has been forgotten.
+     *
+     * @return the contents of the versions the base may be, from the oldest;
+     *         empty if not known
+     */
+    private List<String> bases(final String account, final String path, final Date base) {
+        final long second = base.getTime() / 1000;
+        synchronized (versions) {
+            final History history = versions.get(new Key(account, path));
+            if (history == null || (history.forgotten != null && history.forgotten.getTime() / 1000 >= second)) {
+                return List.of();
+            }
+            return history.versions.stream()
+                .filter((version) -> version.lastModified().getTime() / 1000 == second)
+                .sorted(Comparator.comparing(Version::lastModified))
+                .map(Version::content)
+                .toList();
+        }
+    }
+
+    private static JsonNode parse(final String path, final String content) throws NotJsonException {
+        try {
+            final JsonNode node = JSON.readTree(content);
+            if (node != null && !node.isMissingNode()) {
+                return node;
+            }
+        } catch (JsonProcessingException x) {
+            LOG.fine(() -> path + " is not valid JSON: " + x.getMessage());
+        }
+        throw new NotJsonException(path);
+    }
+}
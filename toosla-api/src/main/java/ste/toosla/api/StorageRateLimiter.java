@@ -0,0 +1,259 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control of the storage endpoints: a token bucket per operation
+ * ({@link Operation}) and account, so that a misbehaving client can not flood
+ * Zefiro (each read or write costs several Zefiro calls). Logins are limited
+ * per account and caller (see {@link #loginKey(String, String)}), since the
+ * caller is not authenticated yet.
+ *
+ * <p>Each bucket holds up to {@code burst} tokens and is refilled at
+ * {@code rate} tokens per second; a request takes one token or is rejected
+ * with the time to wait for the next one. Buckets are implemented with the
+ * generic cell rate algorithm: a bucket is just the theoretical arrival time
+ * of the next request, updated with a single compare and set, so that the
+ * hot path takes no locks and allocates nothing for known accounts.
+ *
+ * <p>Limits can be changed at any time with {@link #limit(Operation, Limit)}
+ * and apply from the next request. Buckets that are full carry no information
+ * and are dropped once more than {@link #MAX_KEYS} accounts are tracked for an
+ * operation, so that memory stays bounded even if logins are attempted with
+ * random accounts.
+ */
+public class StorageRateLimiter {
+
+    public static final int MAX_KEYS = 10_000;
+
+    public enum Operation {
+        LOGIN, READ, WRITE;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @param rate the tokens per second; 0 means no limit
+     * @param burst the size of the bucket
+     */
+    public record Limit(double rate, int burst) {
+        public Limit {
+            if (!(rate >= 0) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("rate must be zero (no limit) or greater");
+            }
+            if (burst <= 0) {
+                throw new IllegalArgumentException("burst must be greater than zero");
+            }
+        }
+
+        public static final Limit NONE = new Limit(0, 1);
+    }
+
+    private final Map<Operation, Buckets> buckets = new EnumMap<>(Operation.class);
+
+    /**
+     * @param login the limit of logins - NOT NULL
+     * @param read the limit of reads - NOT NULL
+     * @param write the limit of writes - NOT NULL
+     */
+    public StorageRateLimiter(final Limit login, final Limit read, final Limit write) {
+        buckets.put(Operation.LOGIN, new Buckets(login));
+        buckets.put(Operation.READ, new Buckets(read));
+        buckets.put(Operation.WRITE, new Buckets(write));
+    }
+
+    /**
+     * Takes a token from the bucket of the given operation and account.
+     *
+     * @param operation the operation - NOT NULL
+     * @param account the account, or the {@link #loginKey(String, String)} for logins - NOT NULL
+     *
+     * @return 0 if the request is admitted, otherwise the nanoseconds to wait before a token is available
+     */
+    public long acquire(final Operation operation, final String account) {
+        return buckets.get(operation).acquire(account, System.nanoTime());
+    }
+
+    /**
+     * @param operation the operation - NOT NULL
+     *
+     * @return the current limit of the given operation
+     */
+    public Limit limit(final Operation operation) {
+        return buckets.get(operation).rate.limit;
+    }
+
+    /**
+     * Changes the limit of the given operation; all buckets of the operation
+     * start over full, so that a looser limit applies at once also to the
+     * accounts that were being throttled.
+     *
+     * @param operation the operation - NOT NULL
+     * @param limit the new limit - NOT NULL
+     */
+    public void limit(final Operation operation, final Limit limit) {
+        if (limit == null) {
+            throw new IllegalArgumentException("limit can not be null");
+        }
+        final Buckets b = buckets.get(operation);
+        b.rate = new Rate(limit);
+        b.arrivals.clear();
+    }
+
+    /**
+     * @return the current limits by operation tag
+     */
+    public Map<String, Limit> limits() {
+        final Map<String, Limit> ret = new LinkedHashMap<>();
+        buckets.forEach((operation, b) -> ret.put(operation.tag(), b.rate.limit));
+        return ret;
+    }
+
+    /**
+     * @param operation the operation - NOT NULL
+     *
+     * @return the number of requests rejected so far for the given operation
+     */
+    public long rejected(final Operation operation) {
+        return buckets.get(operation).rejected.sum();
+    }
+
+    /**
+     * @param operation the operation - NOT NULL
+     *
+     * @return the number of accounts currently tracked for the given operation
+     */
+    public int size(final Operation operation) {
+        return buckets.get(operation).arrivals.size();
+    }
+
+    /**
+     * The key of the login buckets: the account being logged into by the
+     * given caller, so that anyone knowing an account can not keep its owner
+     * out by failing logins on it.
+     *
+     * @param address the address of the caller - MAY BE NULL
+     * @param account the account being logged into - NOT NULL
+     *
+     * @return the key to take login tokens with
+     */
+    public static String loginKey(final String address, final String account) {
+        //
+        // addresses have no '/', hence keys of different callers never match
+        //
+        return ((address == null) ? "" : address) + "/" + account;
+    }
+
+    /**
+     * @param wait the nanoseconds returned by {@link #acquire(Operation, String)}
+     *
+     * @return the value of the {@code Retry-After} header for the given wait (at least one second)
+     */
+    public static long retryAfterSeconds(final long wait) {
+        return Math.max(1, (wait + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * A limit in the terms of the algorithm: a request is admitted if the
+     * next theoretical arrival time is not further than {@code tolerance} in
+     * the future.
+     */
+    private static final class Rate {
+        private final Limit limit;
+        private final long interval;
+        private final long tolerance;
+
+        private Rate(final Limit limit) {
+            if (limit == null) {
+                throw new IllegalArgumentException("limit can not be null");
+            }
+            this.limit = limit;
+            this.interval = (limit.rate() == 0) ? 0 : (long)(TimeUnit.SECONDS.toNanos(1) / limit.rate());
+            this.tolerance = interval * limit.burst();
+        }
+    }
+
+    private static final class Buckets {
+        private final ConcurrentMap<String, AtomicLong> arrivals = new ConcurrentHashMap<>();
+        private final LongAdder rejected = new LongAdder();
+        private final AtomicBoolean sweeping = new AtomicBoolean();
+        private volatile Rate rate;
+
+        private Buckets(final Limit limit) {
+            this.rate = new Rate(limit);
+        }
+
+        private long acquire(final String account, final long now) {
+            final Rate r = rate;
+            if (r.interval == 0) {
+                return 0;
+            }
+
+            AtomicLong arrival = arrivals.get(account);
+            if (arrival == null) {
+                sweep(now);
+                arrival = arrivals.computeIfAbsent(account, k -> new AtomicLong(now));
+            }
+
+            while (true) {
+                final long tat = arrival.get();
+                final long next = Math.max(tat, now) + r.interval;
+                final long wait = next - now - r.tolerance;
+                if (wait > 0) {
+                    rejected.increment();
+                    return wait;
+                }
+                if (arrival.compareAndSet(tat, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Drops the buckets that are full, if too many accounts are tracked.
+         */
+        private void sweep(final long now) {
+            if (arrivals.size() < MAX_KEYS || !sweeping.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                arrivals.values().removeIf(arrival -> arrival.get() <= now);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.MessageHandler;
+import jakarta.websocket.Session;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * The {@code /api/storage/sync} WebSocket endpoint (JSR 356), an instance
+ * per connection: text messages are handed to a {@link StorageSyncSession},
+ * whose responses and pushed changes are sent back as text messages.
+ *
+ * <p>See {@link ste.toosla.api.config.WebSocketConfig} for its registration.
+ */
+public class StorageSyncEndpoint extends Endpoint {
+
+    private static final Logger LOG = Logger.getLogger(StorageSyncEndpoint.class.getName());
+
+    public static final String PATH = "/api/storage/sync";
+
+    private final StorageController controller;
+    private final ObjectMapper json;
+    private final AtomicInteger connections;
+    private final LongAdder messages;
+    private final int maxRequests;
+    private final int maxBatch;
+
+    private StorageSyncSession sync;
+
+    /**
+     * @param controller the controller serving the requests - NOT NULL
+     * @param json the mapper of the messages - NOT NULL
+     * @param connections the number of connections open, updated by this endpoint - NOT NULL
+     * @param messages the number of messages received, updated by this endpoint - NOT NULL
+     * @param maxRequests the max number of requests of a connection served at the same time
+     * @param maxBatch the max number of requests in a batch
+     */
+    public StorageSyncEndpoint(
+        final StorageController controller, final ObjectMapper json,
+        final AtomicInteger connections, final LongAdder messages,
+        final int maxRequests, final int maxBatch
+    ) {
+        if (connections == null) {
+            throw new IllegalArgumentException("connections can not be null");
+        }
+        if (messages == null) {
+            throw new IllegalArgumentException("messages can not be null");
+        }
+        this.controller = controller;
+        this.json = json;
+        this.connections = connections;
+        this.messages = messages;
+        this.maxRequests = maxRequests;
+        this.maxBatch = maxBatch;
+    }
+
+    @Override
+    public void onOpen(final Session session, final EndpointConfig config) {
+        connections.incrementAndGet();
+        sync = new StorageSyncSession(controller, json, new StorageSyncSession.Connection() {
+            @Override
+            public void send(final String message) throws IOException {
+                session.getBasicRemote().sendText(message);
+            }
+
+            @Override
+            public void close() {
+                try {
+                    session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "server shutting down"));
+                } catch (IOException x) {
+                    LOG.fine(() -> "Error closing a sync connection: " + x.getMessage());
+                }
+            }
+        }, maxRequests, maxBatch);
+        session.addMessageHandler(String.class, (MessageHandler.Whole<String>) (message) -> {
+            messages.increment();
+            sync.receive(message);
+        });
+    }
+
+    @Override
+    public void onClose(final Session session, final CloseReason reason) {
+        connections.decrementAndGet();
+        sync.close();
+    }
+
+    @Override
+    public void onError(final Session session, final Throwable x) {
+        LOG.fine(() -> "Sync connection error: " + x.getMessage());
+    }
+}
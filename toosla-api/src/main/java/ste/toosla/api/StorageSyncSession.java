@@ -0,0 +1,398 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ste.toosla.api.dto.ChangeEvent;
+import ste.toosla.api.dto.ErrorResponse;
+import ste.toosla.api.dto.ReadRequest;
+import ste.toosla.api.dto.SyncRequest;
+import ste.toosla.api.dto.SyncResponse;
+import ste.toosla.api.dto.WriteRequest;
+import ste.toosla.zefiro.ZefiroLoginException;
+
+/**
+ * A client connected to {@code /api/storage/sync}: it decodes the client's
+ * {@link SyncRequest}s, serves them with the {@link StorageController}, thus
+ * with the same key check, rate limits, deadlines, caches and Zefiro clients
+ * of the REST endpoints, and sends back a {@link SyncResponse} with the same
+ * id and the status the REST endpoint would have answered with. Changes of
+ * the files the client subscribed to are pushed as they come.
+ *
+ * <p>The client authenticates once, with an {@code auth} request carrying
+ * its access key; the key is then given to all the following requests. Each
+ * request is served on its own virtual thread, so that a slow write does not
+ * hold back the reads behind it; hence responses may come in any order. Up to
+ * {@code maxRequests} requests of a connection are served at the same time:
+ * the ones received beyond that are answered right away with {@code 429}, as
+ * batches with more than {@code maxBatch} requests are with {@code 400}, so
+ * that a single client can not take an unbounded share of the node.
+ *
+ * <p>It does not depend on the WebSocket API, which is dealt with by
+ * {@link StorageSyncEndpoint}.
+ */
+public class StorageSyncSession implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(StorageSyncSession.class.getName());
+
+    /**
+     * The connection to the client.
+     */
+    public interface Connection {
+        /**
+         * Sends a message to the client; it is never called by two threads
+         * at the same time.
+         *
+         * @param message the message - NOT NULL
+         *
+         * @throws IOException if the message could not be sent
+         */
+        void send(String message) throws IOException;
+
+        /**
+         * Closes the connection, e.g. because the server is shutting down.
+         */
+        void close();
+    }
+
+    private final StorageController controller;
+    private final ObjectMapper json;
+    private final Connection connection;
+    private final Semaphore requests;
+    private final int maxBatch;
+    private final Map<String, StorageChangeFeed.Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private volatile String authorization;
+    private volatile boolean closed;
+
+    /**
+     * @param controller the controller serving the requests - NOT NULL
+     * @param json the mapper of the messages - NOT NULL
+     * @param connection the connection to the client - NOT NULL
+     * @param maxRequests the max number of requests served at the same time; greater than zero
+     * @param maxBatch the max number of requests in a batch; greater than zero
+     */
+    public StorageSyncSession(
+        final StorageController controller, final ObjectMapper json, final Connection connection,
+        final int maxRequests, final int maxBatch
+    ) {
+        if (controller == null) {
+            throw new IllegalArgumentException("controller can not be null");
+        }
+        if (json == null) {
+            throw new IllegalArgumentException("json can not be null");
+        }
+        if (connection == null) {
+            throw new IllegalArgumentException("connection can not be null");
+        }
+        if (maxRequests <= 0) {
+            throw new IllegalArgumentException("maxRequests must be greater than zero");
+        }
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch must be greater than zero");
+        }
+        this.controller = controller;
+        this.json = json;
+        this.connection = connection;
+        this.requests = new Semaphore(maxRequests);
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * Serves a message received from the client in the background or, if
+     * {@code maxRequests} requests are being served already, answers it with
+     * {@code 429} right away.
+     *
+     * @param message the message - NOT NULL
+     */
+    public void receive(final String message) {
+        if (!requests.tryAcquire()) {
+            send(new SyncResponse(
+                id(message), HttpStatus.TOO_MANY_REQUESTS.value(), null, null, null, null, 1L,
+                new ErrorResponse("Too many requests, retry later", "too many requests in progress on this connection"),
+                null, null
+            ));
+            return;
+        }
+        try {
+            Thread.ofVirtual().name("storage-sync").start(() -> {
+                try {
+                    send(serve(message));
+                } finally {
+                    requests.release();
+                }
+            });
+        } catch (RuntimeException x) {
+            requests.release();
+            throw x;
+        }
+    }
+
+    /**
+     * Serves a message received from the client.
+     *
+     * @param message the message - NOT NULL
+     *
+     * @return the response to send back - NOT NULL
+     */
+    public SyncResponse serve(final String message) {
+        final SyncRequest request;
+        try {
+            request = json.readValue(message, SyncRequest.class);
+        } catch (JsonProcessingException x) {
+            return badRequest(null, "invalid message: " + x.getOriginalMessage());
+        }
+        if (request == null) {
+            return badRequest(null, "invalid message: empty");
+        }
+
+        final String op = String.valueOf(request.op());
+        return switch (op) {
+            case "auth" -> auth(request);
+            case "read" -> read(request);
+            case "write" -> write(request);
+            case "batch" -> batch(request);
+            case "subscribe" -> subscribe(request);
+            case "unsubscribe" -> unsubscribe(request);
+            default -> badRequest(request.id(), "unknown operation '" + op + "'");
+        };
+    }
+
+    /**
+     * @return the number of files the client subscribed to
+     */
+    public int subscriptions() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Stops pushing changes to the client; to be called when the connection
+     * is closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        subscriptions.values().forEach(StorageChangeFeed.Subscription::close);
+        subscriptions.clear();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private SyncResponse auth(final SyncRequest request) {
+        final String authorization = "Bearer " + request.key();
+        try {
+            controller.getValidKey(authorization);
+        } catch (ZefiroLoginException x) {
+            return SyncResponse.error(request.id(), 401, new ErrorResponse("Unauthorized", x.getMessage()));
+        }
+        this.authorization = authorization;
+
+        return SyncResponse.status(request.id(), 200);
+    }
+
+    private SyncResponse read(final SyncRequest request) {
+        if (isBlank(request.path())) {
+            return badRequest(request.id(), "path can not be blank");
+        }
+        return response(request.id(), controller.read(
+            new ReadRequest(request.path()), date(request.ifModifiedSince()), authorization, null
+        ));
+    }
+
+    private SyncResponse write(final SyncRequest request) {
+        if (isBlank(request.path())) {
+            return badRequest(request.id(), "path can not be blank");
+        }
+        final WriteRequest write = new WriteRequest(request.path(), request.content(), request.mergePatch(), request.patch());
+        if (!write.isComplete()) {
+            return badRequest(request.id(), "one of content, mergePatch or patch is required");
+        }
+        return response(request.id(), controller.write(
+            write, date(request.ifUnmodifiedSince()), authorization, null
+        ));
+    }
+
+    /**
+     * Serves the reads and writes of a batch one after the other, as if they
+     * were sent in sequence.
+     */
+    private SyncResponse batch(final SyncRequest request) {
+        if (request.requests() == null) {
+            return badRequest(request.id(), "requests can not be null");
+        }
+        if (request.requests().size() > maxBatch) {
+            return badRequest(request.id(), "a batch can have up to " + maxBatch + " requests");
+        }
+
+        final List<SyncResponse> responses = new ArrayList<>(request.requests().size());
+        for (SyncRequest r: request.requests()) {
+            final String op = String.valueOf(r.op());
+            responses.add(switch (op) {
+                case "read" -> read(r);
+                case "write" -> write(r);
+                default -> badRequest(r.id(), "operation '" + op + "' can not be batched");
+            });
+        }
+
+        return SyncResponse.batch(request.id(), responses);
+    }
+
+    private SyncResponse subscribe(final SyncRequest request) {
+        if (isBlank(request.path())) {
+            return badRequest(request.id(), "path can not be blank");
+        }
+
+        final String path = request.path();
+        final Object subscribed = controller.subscribe(authorization, path, new StorageChangeFeed.Subscriber() {
+            @Override
+            public boolean onChange(final ChangeEvent change) {
+                return !closed && send(SyncResponse.change(change));
+            }
+
+            @Override
+            public boolean onCheck() {
+                return !closed;
+            }
+
+            @Override
+            public void onClose() {
+                connection.close();
+            }
+        });
+        if (subscribed instanceof ResponseEntity<?> error) {
+            return response(request.id(), error);
+        }
+
+        final StorageChangeFeed.Subscription previous = subscriptions.put(path, (StorageChangeFeed.Subscription)subscribed);
+        if (previous != null) {
+            previous.close();
+        }
+        if (closed) {
+            close();
+        }
+
+        return SyncResponse.status(request.id(), 200);
+    }
+
+    private SyncResponse unsubscribe(final SyncRequest request) {
+        final StorageChangeFeed.Subscription subscription = subscriptions.remove(String.valueOf(request.path()));
+        if (subscription == null) {
+            return SyncResponse.error(request.id(), 404, new ErrorResponse(
+                "Not subscribed", "no subscription to the changes of " + request.path()
+            ));
+        }
+        subscription.close();
+
+        return SyncResponse.status(request.id(), 200);
+    }
+
+    /**
+     * Turns the response of a REST endpoint into a {@link SyncResponse}.
+     */
+    private SyncResponse response(final String id, final ResponseEntity<?> response) {
+        final HttpHeaders headers = response.getHeaders();
+        final long lastModified = headers.getLastModified();
+        final String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        final Object body = response.getBody();
+        final boolean changes = StorageController.MERGE_PATCH.equals(headers.getContentType());
+
+        return new SyncResponse(
+            id,
+            response.getStatusCode().value(),
+            (lastModified < 0) ? null : lastModified,
+            (body instanceof String content && !changes) ? content : null,
+            (body instanceof String patch && changes) ? patch : null,
+            headers.getFirst(HttpHeaders.WARNING),
+            (retryAfter == null) ? null : Long.valueOf(retryAfter),
+            (body instanceof ErrorResponse error) ? error : null,
+            null,
+            null
+        );
+    }
+
+    private SyncResponse badRequest(final String id, final String details) {
+        return SyncResponse.error(id, HttpStatus.BAD_REQUEST.value(), new ErrorResponse("Bad request", details));
+    }
+
+    /**
+     * @return false if the message could not be sent, e.g. because the client
+     *         went away
+     */
+    private boolean send(final SyncResponse response) {
+        try {
+            final String message = json.writeValueAsString(response);
+            synchronized (connection) {
+                connection.send(message);
+            }
+            return true;
+        } catch (IOException | IllegalStateException x) {
+            LOG.log(Level.FINE, "Error sending to a sync client: {0}", x.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * The id of the given message, read without decoding the whole message.
+     *
+     * @return the id or null if the message has no id or is not valid
+     */
+    private String id(final String message) {
+        try (JsonParser parser = json.getFactory().createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                parser.nextToken();
+                if ("id".equals(name)) {
+                    return parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException x) {
+            // not valid, no id
+        }
+        return null;
+    }
+
+    private static Date date(final Long millis) {
+        return (millis == null) ? null : new Date(millis);
+    }
+
+    private static boolean isBlank(final String value) {
+        return (value == null) || value.isBlank();
+    }
+}
@@ -4,39 +4,115 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
+import ste.toosla.util.metrics.MetricsRegistry;
+import ste.toosla.zefiro.ZefiroCallCounter;
 
 /**
  * An interceptor that logs access messages for each request.
  * It logs the request method, URI, status, and duration.
+ *
+ * <p>Durations are also recorded in {@link MetricsRegistry} as per-route,
+ * per-status timers ({@code http.server.requests}), together with per-route
+ * request and error counters and an error rate gauge. Routes are identified by
+ * the handler mapping pattern (not the raw URI) to keep the number of metrics
+ * bounded.
+ *
+ * <p>Each request also gets a {@link ZefiroCallCounter} (request attribute
+ * {@link #UPSTREAM_CALLS_ATTRIBUTE}) that controllers attach to the Zefiro
+ * clients they create; the resulting number of upstream calls is logged and
+ * recorded in {@code http.server.upstream.calls{route}}.
  */
 @Component
 public class AccessLogInterceptor implements HandlerInterceptor {
 
     private static final Logger LOGGER = Logger.getLogger(AccessLogInterceptor.class.getName());
 
+    public static final String UPSTREAM_CALLS_ATTRIBUTE = "ste.toosla.upstreamCalls";
+
     private static final String START_TIME_ATTRIBUTE = "startTime";
+    private static final String UNMAPPED_ROUTE = "unmapped";
+
+    private final MetricsRegistry metrics;
+    private final ConcurrentMap<String, RouteCounters> routes = new ConcurrentHashMap<>();
+
+    public AccessLogInterceptor(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        request.setAttribute(START_TIME_ATTRIBUTE, System.currentTimeMillis());
+        request.setAttribute(START_TIME_ATTRIBUTE, System.nanoTime());
+        request.setAttribute(UPSTREAM_CALLS_ATTRIBUTE, new ZefiroCallCounter());
         return true; // Continue processing the request
     }
 
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         Long startTime = (Long) request.getAttribute(START_TIME_ATTRIBUTE);
-        long duration = (startTime != null) ? (System.currentTimeMillis() - startTime) : -1;
+        long duration = (startTime != null) ? (System.nanoTime() - startTime) : -1;
 
         String status = String.valueOf(response.getStatus());
         if (ex != null) {
             status = "ERROR (" + ex.getClass().getSimpleName() + ")";
         }
 
-        LOGGER.info(String.format("Request: %s %s - Status: %s - Duration: %dms",
+        final ZefiroCallCounter upstream = (ZefiroCallCounter) request.getAttribute(UPSTREAM_CALLS_ATTRIBUTE);
+        final int upstreamCalls = (upstream != null) ? upstream.calls() : 0;
+
+        if (duration >= 0) {
+            record(request, response, ex, duration, upstreamCalls);
+        }
+
+        LOGGER.info(String.format("Request: %s %s - Status: %s - Duration: %dms - Upstream calls: %d",
                 request.getMethod(),
                 request.getRequestURI(),
                 status,
-                duration));
+                (duration < 0) ? -1 : TimeUnit.NANOSECONDS.toMillis(duration),
+                upstreamCalls));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void record(HttpServletRequest request, HttpServletResponse response, Exception ex, long duration, int upstreamCalls) {
+        final Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        final String route = request.getMethod() + " " + ((pattern != null) ? pattern : UNMAPPED_ROUTE);
+        final String status = (ex != null) ? "error" : String.valueOf(response.getStatus());
+
+        metrics.timer(MetricsRegistry.name("http.server.requests", "route", route, "status", status)).record(duration);
+        if (upstreamCalls > 0) {
+            metrics.distribution(MetricsRegistry.name("http.server.upstream.calls", "route", route)).record(upstreamCalls);
+        }
+
+        final RouteCounters counters = routes.computeIfAbsent(route, this::register);
+        counters.total().increment();
+        if (ex != null || response.getStatus() >= 500) {
+            counters.errors().increment();
+        }
     }
-}
\ No newline at end of file
+
+    /**
+     * Creates the request and error counters of a route and registers its
+     * error rate gauge; called once per route.
+     */
+    private RouteCounters register(final String route) {
+        final LongAdder total = metrics.counter(MetricsRegistry.name("http.server.requests.total", "route", route));
+        final LongAdder errors = metrics.counter(MetricsRegistry.name("http.server.requests.errors", "route", route));
+        metrics.gauge(
+            MetricsRegistry.name("http.server.requests.errorRate", "route", route),
+            () -> {
+                final long n = total.sum();
+                return (n == 0) ? 0.0 : (double)errors.sum() / n;
+            }
+        );
+
+        return new RouteCounters(total, errors);
+    }
+
+    private record RouteCounters(LongAdder total, LongAdder errors) {}
+}
@@ -21,13 +21,34 @@
 
 package ste.toosla.api.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.web.context.annotation.ApplicationScope;
 
 import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import ste.toosla.api.KeyManager;
+import ste.toosla.api.NotFoundCache;
+import ste.toosla.api.StaleReadCache;
+import ste.toosla.api.StorageChangeFeed;
+import ste.toosla.api.StorageDeadlines;
+import ste.toosla.api.StorageDocuments;
+import ste.toosla.api.StoragePatches;
+import ste.toosla.api.StorageRateLimiter;
+import ste.toosla.util.metrics.MetricsRegistry;
+import ste.toosla.zefiro.ZefiroBulkhead;
+import ste.toosla.zefiro.ZefiroCircuitBreaker;
+import ste.toosla.zefiro.ZefiroConcurrencyLimiter;
+import ste.toosla.zefiro.ZefiroMetrics;
+import ste.toosla.zefiro.ZefiroRetryPolicy;
+import ste.toosla.zefiro.ZefiroHedgingPolicy;
+import ste.toosla.zefiro.ZefiroLoadMonitor;
+import ste.toosla.zefiro.SharedHttpClientBuilder;
 
 /**
  * The main application configuration.
@@ -35,13 +56,278 @@ import ste.toosla.api.KeyManager;
 @Configuration
 public class ApplicationConfig {
 
+    /**
+     * All Zefiro clients share the same HTTP client (and thus its connection
+     * pool and selector thread). When virtual threads are enabled
+     * ({@code spring.threads.virtual.enabled}), the HTTP client's internal
+     * tasks run on virtual threads too. Connections not established within
+     * {@code toosla.zefiro.connect-timeout-ms} fail.
+     */
     @Bean
-    public HttpClient.Builder httpClientBuilder() {
-        return HttpClient.newBuilder();
+    public HttpClient.Builder httpClientBuilder(
+        @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+        @Value("${toosla.zefiro.connect-timeout-ms:5000}") long connectTimeout
+    ) {
+        final HttpClient.Builder builder = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(connectTimeout));
+        if (virtualThreads) {
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        return new SharedHttpClientBuilder(builder);
     }
 
     @Bean
     public ObjectMapper objectMapper() {
         return new ObjectMapper();
     }
+
+    @Bean
+    public MetricsRegistry metricsRegistry() {
+        return new MetricsRegistry();
+    }
+
+    @Bean
+    public ZefiroMetrics zefiroMetrics(MetricsRegistry metricsRegistry) {
+        return new ZefiroMetrics(metricsRegistry);
+    }
+
+    @Bean
+    public ZefiroBulkhead zefiroBulkhead(
+        @Value("${toosla.zefiro.max-concurrent-calls:128}") int maxCalls,
+        @Value("${toosla.zefiro.max-concurrent-calls-per-account:8}") int maxCallsPerAccount,
+        @Value("${toosla.zefiro.max-wait-ms:5000}") long maxWait,
+        @Value("${toosla.zefiro.account-weights:}") String weights,
+        MetricsRegistry metricsRegistry
+    ) {
+        return new ZefiroBulkhead(maxCalls, maxCallsPerAccount, Duration.ofMillis(maxWait))
+            .withWeights(weights)
+            .withMetrics(metricsRegistry);
+    }
+
+    @Bean
+    public ZefiroRetryPolicy zefiroRetryPolicy(
+        @Value("${toosla.zefiro.retry.max-attempts:3}") int maxAttempts,
+        @Value("${toosla.zefiro.retry.base-delay-ms:50}") long baseDelay,
+        @Value("${toosla.zefiro.retry.max-delay-ms:1000}") long maxDelay,
+        @Value("${toosla.zefiro.retry.budget-ratio:0.1}") double budgetRatio,
+        @Value("${toosla.zefiro.retry.min-retries-per-second:5}") double minRetriesPerSecond,
+        MetricsRegistry metricsRegistry
+    ) {
+        final ZefiroRetryPolicy retryPolicy = new ZefiroRetryPolicy(
+            maxAttempts, Duration.ofMillis(baseDelay), Duration.ofMillis(maxDelay), budgetRatio, minRetriesPerSecond
+        );
+
+        metricsRegistry.gauge("zefiro.retry.budget", retryPolicy::budget);
+        metricsRegistry.gauge("zefiro.retry.exhausted", retryPolicy::exhausted);
+
+        return retryPolicy;
+    }
+
+    @Bean
+    public ZefiroHedgingPolicy zefiroHedgingPolicy(
+        @Value("${toosla.zefiro.hedging.percentile:95}") double percentile,
+        @Value("${toosla.zefiro.hedging.min-delay-ms:10}") long minDelay,
+        @Value("${toosla.zefiro.hedging.max-ratio:0}") double maxRatio,
+        MetricsRegistry metricsRegistry
+    ) {
+        final ZefiroHedgingPolicy hedgingPolicy = new ZefiroHedgingPolicy(percentile, Duration.ofMillis(minDelay), maxRatio);
+
+        metricsRegistry.gauge("zefiro.hedge.issued", hedgingPolicy::hedges);
+        metricsRegistry.gauge("zefiro.hedge.won", hedgingPolicy::wins);
+
+        return hedgingPolicy;
+    }
+
+    @Bean
+    public ZefiroCircuitBreaker zefiroCircuitBreaker(
+        @Value("${toosla.zefiro.circuit-breaker.window:20}") int window,
+        @Value("${toosla.zefiro.circuit-breaker.failure-rate:0.5}") double failureRate,
+        @Value("${toosla.zefiro.circuit-breaker.slow-call-ms:5000}") long slowCall,
+        @Value("${toosla.zefiro.circuit-breaker.slow-call-rate:0.8}") double slowCallRate,
+        @Value("${toosla.zefiro.circuit-breaker.open-ms:10000}") long open,
+        @Value("${toosla.zefiro.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+        MetricsRegistry metricsRegistry
+    ) {
+        final ZefiroCircuitBreaker circuitBreaker = new ZefiroCircuitBreaker(
+            window, failureRate, Duration.ofMillis(slowCall), slowCallRate, Duration.ofMillis(open), halfOpenCalls
+        );
+
+        metricsRegistry.gauge("zefiro.circuit.rejected", circuitBreaker::rejected);
+
+        return circuitBreaker;
+    }
+
+    @Bean
+    public ZefiroConcurrencyLimiter zefiroConcurrencyLimiter(
+        @Value("${toosla.zefiro.concurrency-limit.initial:20}") int initialLimit,
+        @Value("${toosla.zefiro.concurrency-limit.min:4}") int minLimit,
+        @Value("${toosla.zefiro.concurrency-limit.max:128}") int maxLimit,
+        @Value("${toosla.zefiro.concurrency-limit.max-wait-ms:1000}") long maxWait,
+        MetricsRegistry metricsRegistry
+    ) {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(
+            initialLimit, minLimit, maxLimit, Duration.ofMillis(maxWait)
+        );
+
+        metricsRegistry.gauge("zefiro.concurrency.limit", limiter::limit);
+        metricsRegistry.gauge("zefiro.concurrency.inflight", limiter::inFlight);
+        metricsRegistry.gauge("zefiro.concurrency.rejected", limiter::rejected);
+
+        return limiter;
+    }
+
+    @Bean
+    public ZefiroLoadMonitor zefiroLoadMonitor(
+        ZefiroBulkhead bulkhead, ZefiroConcurrencyLimiter concurrencyLimiter, ZefiroCircuitBreaker circuitBreaker,
+        @Value("${toosla.zefiro.overload.max-waiting:32}") int maxWaiting,
+        @Value("${toosla.zefiro.overload.max-latency-ms:2000}") long maxLatency,
+        MetricsRegistry metricsRegistry
+    ) {
+        final ZefiroLoadMonitor monitor = new ZefiroLoadMonitor(
+            bulkhead, concurrencyLimiter, circuitBreaker, maxWaiting, Duration.ofMillis(maxLatency)
+        );
+
+        metricsRegistry.gauge("zefiro.overload.ready", () -> monitor.ready() ? 1 : 0);
+        metricsRegistry.gauge("zefiro.overload.shed", monitor::shed);
+
+        return monitor;
+    }
+
+    @Bean
+    public StaleReadCache staleReadCache(
+        @Value("${toosla.storage.stale-cache.max-entries:1000}") int maxEntries,
+        MetricsRegistry metricsRegistry
+    ) {
+        final StaleReadCache cache = new StaleReadCache(maxEntries);
+
+        metricsRegistry.gauge("storage.stale-cache.entries", cache::size);
+        metricsRegistry.gauge("storage.stale-cache.hits", cache::hits);
+
+        return cache;
+    }
+
+    @Bean
+    public NotFoundCache notFoundCache(
+        @Value("${toosla.storage.not-found-cache.ttl-ms:5000}") long ttl,
+        @Value("${toosla.storage.not-found-cache.max-entries:1000}") int maxEntries,
+        MetricsRegistry metricsRegistry
+    ) {
+        final NotFoundCache cache = new NotFoundCache(Duration.ofMillis(ttl), maxEntries);
+
+        metricsRegistry.gauge("storage.not-found-cache.entries", cache::size);
+        metricsRegistry.gauge("storage.not-found-cache.hits", cache::hits);
+
+        return cache;
+    }
+
+    @Bean
+    public StorageChangeFeed storageChangeFeed(
+        @Value("${toosla.storage.changes.min-interval-ms:5000}") long minInterval,
+        @Value("${toosla.storage.changes.max-interval-ms:60000}") long maxInterval,
+        @Value("${toosla.storage.changes.max-watchers:1000}") int maxWatchers,
+        MetricsRegistry metricsRegistry
+    ) {
+        final StorageChangeFeed feed = new StorageChangeFeed(
+            Duration.ofMillis(minInterval), Duration.ofMillis(maxInterval), maxWatchers
+        );
+
+        metricsRegistry.gauge("storage.changes.watchers", feed::watchers);
+        metricsRegistry.gauge("storage.changes.subscribers", feed::subscribers);
+        metricsRegistry.gauge("storage.changes.checks", feed::checks);
+        metricsRegistry.gauge("storage.changes.events", feed::events);
+
+        return feed;
+    }
+
+    /**
+     * Closes the open change streams as soon as the application starts
+     * shutting down, otherwise the web server would wait for them to end
+     * before stopping.
+     */
+    @Bean
+    public ApplicationListener<ContextClosedEvent> storageChangeFeedCloser(StorageChangeFeed storageChangeFeed) {
+        return (event) -> storageChangeFeed.close();
+    }
+
+    /**
+     * Documents written by key are also remembered for stale reads and
+     * patches and pushed to the subscribers of their changes, as if written
+     * with {@code /api/storage/write}.
+     */
+    @Bean
+    public StorageDocuments storageDocuments(
+        @Value("${toosla.storage.documents.flush-delay-ms:200}") long flushDelay,
+        @Value("${toosla.storage.documents.max-age-ms:5000}") long maxAge,
+        @Value("${toosla.storage.documents.max-entries:1000}") int maxEntries,
+        StaleReadCache staleReadCache,
+        NotFoundCache notFoundCache,
+        StorageChangeFeed storageChangeFeed,
+        StoragePatches storagePatches,
+        MetricsRegistry metricsRegistry
+    ) {
+        final StorageDocuments documents = new StorageDocuments(
+            Duration.ofMillis(flushDelay), Duration.ofMillis(maxAge), maxEntries
+        ).withListener((account, path, content, lastModified) -> {
+            notFoundCache.remove(account, path);
+            staleReadCache.put(account, path, content, lastModified);
+            storagePatches.remember(account, path, content, lastModified);
+            storageChangeFeed.changed(account, path, lastModified.getTime());
+        });
+
+        metricsRegistry.gauge("storage.documents.entries", documents::documents);
+        metricsRegistry.gauge("storage.documents.updates", documents::updates);
+        metricsRegistry.gauge("storage.documents.flushes", documents::flushes);
+
+        return documents;
+    }
+
+    @Bean
+    public StoragePatches storagePatches(
+        @Value("${toosla.storage.patches.max-versions:8}") int maxVersions,
+        @Value("${toosla.storage.patches.max-entries:1000}") int maxEntries,
+        MetricsRegistry metricsRegistry
+    ) {
+        final StoragePatches patches = new StoragePatches(maxVersions, maxEntries);
+
+        metricsRegistry.gauge("storage.patches.files", patches::files);
+        metricsRegistry.gauge("storage.patches.writes", patches::writes);
+        metricsRegistry.gauge("storage.patches.merged", patches::merged);
+        metricsRegistry.gauge("storage.patches.conflicts", patches::conflicts);
+
+        return patches;
+    }
+
+    @Bean
+    public StorageRateLimiter storageRateLimiter(
+        @Value("${toosla.storage.rate-limit.login.rate:1}") double loginRate,
+        @Value("${toosla.storage.rate-limit.login.burst:10}") int loginBurst,
+        @Value("${toosla.storage.rate-limit.read.rate:50}") double readRate,
+        @Value("${toosla.storage.rate-limit.read.burst:100}") int readBurst,
+        @Value("${toosla.storage.rate-limit.write.rate:20}") double writeRate,
+        @Value("${toosla.storage.rate-limit.write.burst:50}") int writeBurst,
+        MetricsRegistry metricsRegistry
+    ) {
+        final StorageRateLimiter limiter = new StorageRateLimiter(
+            new StorageRateLimiter.Limit(loginRate, loginBurst),
+            new StorageRateLimiter.Limit(readRate, readBurst),
+            new StorageRateLimiter.Limit(writeRate, writeBurst)
+        );
+
+        for (StorageRateLimiter.Operation operation: StorageRateLimiter.Operation.values()) {
+            metricsRegistry.gauge(
+                MetricsRegistry.name("storage.rate-limit.rejected", "operation", operation.tag()),
+                () -> limiter.rejected(operation)
+            );
+        }
+
+        return limiter;
+    }
+
+    @Bean
+    public StorageDeadlines storageDeadlines(
+        @Value("${toosla.storage.deadline.login-ms:10000}") long login,
+        @Value("${toosla.storage.deadline.read-ms:15000}") long read,
+        @Value("${toosla.storage.deadline.write-ms:30000}") long write
+    ) {
+        return new StorageDeadlines(Duration.ofMillis(login), Duration.ofMillis(read), Duration.ofMillis(write));
+    }
 }
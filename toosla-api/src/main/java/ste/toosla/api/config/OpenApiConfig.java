@@ -2,16 +2,43 @@ package ste.toosla.api.config;
 
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.info.Info;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 /**
  * Configuration for OpenAPI documentation.
+ *
+ * <p>The documentation is rarely requested, therefore springdoc's beans are
+ * created on first use (e.g. the first call to {@code /v3/api-docs}) instead of
+ * at startup.
  */
 @Configuration
 public class OpenApiConfig {
 
+    private static final String[] OPENAPI_PACKAGES = { "org.springdoc.", "io.swagger." };
+
+    /**
+     * Marks as lazy the beans whose type, or whose declaring configuration,
+     * belongs to springdoc or swagger.
+     */
+    @Bean
+    public static BeanFactoryPostProcessor lazyOpenApi() {
+        return (beanFactory) -> {
+            for (String name: beanFactory.getBeanDefinitionNames()) {
+                final BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (definition.getRole() != BeanDefinition.ROLE_INFRASTRUCTURE && isOpenApi(beanFactory, name, definition)) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
     @Bean
+    @Lazy
     public OpenAPI customOpenAPI() {
         return new OpenAPI()
                 .info(new Info()
@@ -19,4 +46,26 @@ public class OpenApiConfig {
                         .version("1.0.0")
                         .description("API for the Toosla application, providing services for a Tesla cockpit."));
     }
+
+    // --------------------------------------------------------- private methods
+
+    private static boolean isOpenApi(
+        final ConfigurableListableBeanFactory beanFactory, final String name, final BeanDefinition definition
+    ) {
+        String type = definition.getBeanClassName();
+        if (type == null) {
+            final Class<?> resolved = beanFactory.getType(name, false);
+            type = (resolved == null) ? null : resolved.getName();
+        }
+        final String factory = (definition.getFactoryBeanName() == null || !beanFactory.containsBeanDefinition(definition.getFactoryBeanName()))
+                             ? null
+                             : beanFactory.getBeanDefinition(definition.getFactoryBeanName()).getBeanClassName();
+
+        for (String pkg: OPENAPI_PACKAGES) {
+            if ((type != null && type.startsWith(pkg)) || (factory != null && factory.startsWith(pkg))) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
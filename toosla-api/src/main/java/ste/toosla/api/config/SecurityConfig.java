@@ -36,6 +36,8 @@ import org.springframework.security.config.http.SessionCreationPolicy;
  *
  * This configuration:
  * - Permits unauthenticated access to storage APIs, documentation, health check, and static resources
+ * - Restricts the admin APIs to users with role ADMIN, authenticated with HTTP
+ *   basic (see spring.security.user.* in application.properties)
  * - Disables CSRF for stateless API usage
  * - Enables CORS with a default configuration
  * - Sets strict HTTP security headers
@@ -62,13 +64,21 @@ public class SecurityConfig {
                 .requestMatchers("/api/storage/login").permitAll()
                 .requestMatchers("/api/storage/read").permitAll()
                 .requestMatchers("/api/storage/write").permitAll()
-                .requestMatchers("/api/health").permitAll()
+                .requestMatchers("/api/storage/changes").permitAll()
+                .requestMatchers("/api/storage/sync").permitAll()
+                .requestMatchers("/api/storage/document").permitAll()
+                .requestMatchers("/health", "/health/live", "/health/ready", "/api/health").permitAll()
+                .requestMatchers("/api/metrics").permitAll()
+                .requestMatchers("/api/admin/**").hasRole("ADMIN")
                 .requestMatchers("/swagger-ui.html", "/swagger-ui/**", "/v3/api-docs", "/v3/api-docs/**").permitAll()
                 // Allow access to static resources and the root page
                 .requestMatchers("/", "/index.html", "/css/**", "/js/**", "/images/**", "/modules/**", "/angularjs/**", "/metroui/**", "/scripts/**", "/tasktimer/**").permitAll()
                 .anyRequest().authenticated()
             )
 
+            // Admin users authenticate with HTTP basic
+            .httpBasic(Customizer.withDefaults())
+
             // Configure headers for security best practices
             .headers(headers -> headers
                 .frameOptions(frameOptions -> frameOptions.deny())
@@ -0,0 +1,74 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import ste.toosla.api.ServerTiming;
+
+/**
+ * Adds the {@code Server-Timing} header to the storage API responses when
+ * {@code toosla.server-timing.enabled} is set; when it is not, the filter is not
+ * even registered.
+ *
+ * <p>The filter creates the request's {@link ServerTiming} (request attribute
+ * {@link ServerTiming#ATTRIBUTE}), which the controller feeds with the time
+ * spent in each phase. Since headers can not be changed once the response is
+ * committed, the response is buffered and the header is added after the
+ * handler returned, so that the reported total includes the serialization of
+ * the response body.
+ */
+@Component
+@ConditionalOnProperty(name = "toosla.server-timing.enabled", havingValue = "true")
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final String STORAGE_API = "/api/storage/";
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(STORAGE_API);
+    }
+
+    @Override
+    protected void doFilterInternal(
+        HttpServletRequest request, HttpServletResponse response, FilterChain chain
+    ) throws ServletException, IOException {
+        final ServerTiming timing = new ServerTiming(System.nanoTime());
+        final ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+
+        request.setAttribute(ServerTiming.ATTRIBUTE, timing);
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            if (!response.isCommitted()) {
+                response.setHeader(ServerTiming.HEADER, timing.header());
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+
+package ste.toosla.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletContext;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.ServletContextAware;
+import ste.toosla.api.StorageController;
+import ste.toosla.api.StorageSyncEndpoint;
+import ste.toosla.util.metrics.MetricsRegistry;
+
+/**
+ * Registers {@link StorageSyncEndpoint} with the WebSocket container of the
+ * embedded Tomcat (JSR 356, no Spring WebSocket needed). Messages can be up
+ * to {@code toosla.storage.sync.max-message-bytes} long (default 4 MB) and
+ * connections with no messages for {@code toosla.storage.sync.idle-timeout-ms}
+ * (default 600000, 0 for never) are closed. Each connection gets up to
+ * {@code toosla.storage.sync.max-requests} requests served at the same time
+ * (default 16) and batches of up to {@code toosla.storage.sync.max-batch}
+ * requests (default 100). Open connections and messages received are
+ * exported as {@code storage.sync.connections} and
+ * {@code storage.sync.messages}.
+ *
+ * <p>Without a WebSocket container (e.g. in MockMvc tests) the endpoint is
+ * not available.
+ */
+@Configuration
+public class WebSocketConfig implements ServletContextAware {
+
+    private static final Logger LOG = Logger.getLogger(WebSocketConfig.class.getName());
+
+    private final StorageController controller;
+    private final ObjectMapper json;
+    private final int maxMessageBytes;
+    private final long idleTimeout;
+    private final int maxRequests;
+    private final int maxBatch;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder messages;
+
+    public WebSocketConfig(
+        StorageController controller, ObjectMapper json, MetricsRegistry metricsRegistry,
+        @Value("${toosla.storage.sync.max-message-bytes:4194304}") int maxMessageBytes,
+        @Value("${toosla.storage.sync.idle-timeout-ms:600000}") long idleTimeout,
+        @Value("${toosla.storage.sync.max-requests:16}") int maxRequests,
+        @Value("${toosla.storage.sync.max-batch:100}") int maxBatch
+    ) {
+        this.controller = controller;
+        this.json = json;
+        this.maxMessageBytes = maxMessageBytes;
+        this.idleTimeout = idleTimeout;
+        this.maxRequests = maxRequests;
+        this.maxBatch = maxBatch;
+        this.messages = metricsRegistry.counter("storage.sync.messages");
+        metricsRegistry.gauge("storage.sync.connections", connections::get);
+    }
+
+    @Override
+    public void setServletContext(ServletContext servletContext) {
+        final ServerContainer container = (ServerContainer)servletContext.getAttribute(ServerContainer.class.getName());
+        if (container == null) {
+            LOG.info(() -> "No WebSocket container, " + StorageSyncEndpoint.PATH + " is not available");
+            return;
+        }
+
+        container.setDefaultMaxTextMessageBufferSize(maxMessageBytes);
+        container.setDefaultMaxSessionIdleTimeout(idleTimeout);
+        try {
+            container.addEndpoint(
+                ServerEndpointConfig.Builder.create(StorageSyncEndpoint.class, StorageSyncEndpoint.PATH)
+                    .configurator(new ServerEndpointConfig.Configurator() {
+                        @Override
+                        public <T> T getEndpointInstance(Class<T> endpointClass) {
+                            return endpointClass.cast(new StorageSyncEndpoint(
+                                controller, json, connections, messages, maxRequests, maxBatch
+                            ));
+                        }
+                    })
+                    .build()
+            );
+        } catch (DeploymentException x) {
+            throw new IllegalStateException("Unable to register " + StorageSyncEndpoint.PATH, x);
+        }
+    }
+}
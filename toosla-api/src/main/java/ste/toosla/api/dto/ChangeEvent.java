@@ -0,0 +1,12 @@
+package ste.toosla.api.dto;
+
+/**
+ * Represents a change of a file, as pushed to the subscribers of
+ * {@code /api/storage/changes}.
+ *
+ * @param path The path of the file.
+ * @param lastModified The last modification time of the file, in milliseconds since the epoch.
+ * @param etag The Zefiro etag of the file, null if not known (e.g. just written through this server).
+ */
+public record ChangeEvent(String path, long lastModified, String etag) {
+}
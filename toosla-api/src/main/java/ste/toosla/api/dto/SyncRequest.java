@@ -0,0 +1,32 @@
+package ste.toosla.api.dto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.List;
+
+/**
+ * Represents a message sent by a client over the {@code /api/storage/sync}
+ * WebSocket.
+ *
+ * @param id The request id, echoed in the response.
+ * @param op The operation: {@code auth}, {@code read}, {@code write}, {@code batch}, {@code subscribe} or {@code unsubscribe}.
+ * @param key The access key obtained from {@code /api/storage/login} ({@code auth}).
+ * @param path The path of the file ({@code read}, {@code write}, {@code subscribe}, {@code unsubscribe}).
+ * @param content The content of the file to write ({@code write}).
+ * @param ifModifiedSince Read the file only if modified after this time, in milliseconds since the epoch ({@code read}).
+ * @param ifUnmodifiedSince Write the file only if not modified after this time, in milliseconds since the epoch ({@code write}).
+ * @param requests The reads and writes to perform in order ({@code batch}).
+ * @param mergePatch A JSON Merge Patch to write instead of content ({@code write}).
+ * @param patch A JSON Patch to write instead of content ({@code write}).
+ */
+public record SyncRequest(
+    String id,
+    String op,
+    String key,
+    String path,
+    String content,
+    Long ifModifiedSince,
+    Long ifUnmodifiedSince,
+    List<SyncRequest> requests,
+    JsonNode mergePatch,
+    JsonNode patch
+) {}
@@ -0,0 +1,52 @@
+package ste.toosla.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+/**
+ * Represents a message sent by the server over the {@code /api/storage/sync}
+ * WebSocket: either the response to a {@link SyncRequest}, with the same id
+ * and the status the equivalent REST request would have got, or the push of
+ * a change of a subscribed file, with {@code change} only. Fields that do not
+ * apply are omitted.
+ *
+ * @param id The id of the request.
+ * @param status The HTTP status of the response.
+ * @param lastModified The last modification time of the file, in milliseconds since the epoch.
+ * @param content The content of the file read.
+ * @param mergePatch The changes merged with a patch written, as a merge patch of the version it was made against.
+ * @param warning The {@code Warning} of the response (e.g. content served stale).
+ * @param retryAfter The seconds to wait before retrying, if throttled or unavailable.
+ * @param error The error, if the request failed.
+ * @param responses The responses to the requests of a batch, in order.
+ * @param change The change pushed to a subscriber.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record SyncResponse(
+    String id,
+    Integer status,
+    Long lastModified,
+    String content,
+    String mergePatch,
+    String warning,
+    Long retryAfter,
+    ErrorResponse error,
+    List<SyncResponse> responses,
+    ChangeEvent change
+) {
+    public static SyncResponse status(final String id, final int status) {
+        return new SyncResponse(id, status, null, null, null, null, null, null, null, null);
+    }
+
+    public static SyncResponse error(final String id, final int status, final ErrorResponse error) {
+        return new SyncResponse(id, status, null, null, null, null, null, error, null, null);
+    }
+
+    public static SyncResponse batch(final String id, final List<SyncResponse> responses) {
+        return new SyncResponse(id, 200, null, null, null, null, null, null, responses, null);
+    }
+
+    public static SyncResponse change(final ChangeEvent change) {
+        return new SyncResponse(null, null, null, null, null, null, null, null, null, change);
+    }
+}
@@ -1,14 +1,36 @@
 package ste.toosla.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.NotBlank;
+import java.util.stream.Stream;
 
 /**
- * Represents a request to write a file to storage.
+ * Represents a request to write a file to storage, either with its whole
+ * content or with a patch of its current content.
  *
  * @param path The path to the file to write.
  * @param content The content of the file to write.
+ * @param mergePatch A JSON Merge Patch (RFC 7396) to apply to the file instead.
+ * @param patch A JSON Patch (RFC 6902), i.e. an array of operations, to apply to the file instead.
  */
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record WriteRequest(
     @NotBlank String path,
-    @NotBlank String content
-) {}
+    String content,
+    JsonNode mergePatch,
+    JsonNode patch
+) {
+    public WriteRequest(final String path, final String content) {
+        this(path, content, null, null);
+    }
+
+    @JsonIgnore
+    @AssertTrue(message = "one of content, mergePatch or patch is required")
+    public boolean isComplete() {
+        return Stream.of(content, mergePatch, patch).filter((value) -> value != null).count() == 1
+            && (content == null || !content.isBlank());
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a storage API read; the event duration is the
+ * time spent by the controller to serve the request.
+ */
+@Name(StorageReadEvent.NAME)
+@Label("Storage Read")
+@Category({"Toosla", "Storage"})
+@Description("A read of a document through the storage API")
+@StackTrace(false)
+public class StorageReadEvent extends jdk.jfr.Event {
+
+    public static final String NAME = "ste.toosla.StorageRead";
+
+    @Label("Account")
+    @Description("Hash of the account, see TooslaEvents.account()")
+    public String account;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Cache Hit")
+    @Description("The document was not transferred because the client copy is still valid (Not Modified)")
+    public boolean cacheHit;
+
+    @Label("Upstream Calls")
+    public int upstreamCalls;
+}
@@ -0,0 +1,69 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.util.jfr;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Utilities shared by the Toosla Flight Recorder events.
+ */
+public final class TooslaEvents {
+
+    /**
+     * The names of all Toosla events, to enable them in a recording.
+     */
+    public static final List<String> NAMES = List.of(
+        ZefiroHttpCallEvent.NAME, StorageReadEvent.NAME, StorageWriteEvent.NAME, KeyLookupEvent.NAME
+    );
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private TooslaEvents() {}
+
+    /**
+     * Accounts are not recorded in clear; this returns the first 8 bytes of
+     * the SHA-256 of the given account, hex encoded, which is enough to
+     * correlate events of the same account.
+     *
+     * @param account the account - MAY BE NULL
+     *
+     * @return the hashed account or null if account is null
+     */
+    public static String account(final String account) {
+        if (account == null) {
+            return null;
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(account.getBytes(StandardCharsets.UTF_8));
+            return HEX.formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException x) {
+            //
+            // SHA-256 is mandatory in every JDK
+            //
+            throw new IllegalStateException(x);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A constant memory, lock free histogram of non negative long values (typically
+ * durations in nanoseconds).
+ *
+ * <p>Buckets follow the HDR histogram layout: values below {@code 2^SUB_BUCKET_BITS}
+ * are counted exactly, bigger values are grouped by their most significant bit
+ * and split in {@code 2^(SUB_BUCKET_BITS-1)} linear sub-buckets. This keeps the
+ * relative error of any reported value within ~3% over the whole long range
+ * with fewer than a thousand counters.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int LINEAR_BUCKETS = 1 << SUB_BUCKET_BITS;         // 32
+    private static final int HALF_BUCKETS = LINEAR_BUCKETS >> 1;            // 16
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the given value; negative values are recorded as zero.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        final long n = count.get();
+        return (n == 0) ? 0 : (double)sum.get() / n;
+    }
+
+    /**
+     * Returns the value at the given percentile; the returned value is the
+     * mid point of the bucket the percentile falls into, capped to the max
+     * recorded value.
+     *
+     * @param percentile the percentile in the range [0, 100]
+     *
+     * @return the value at the given percentile or 0 if nothing was recorded yet
+     */
+    public long percentile(double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long)Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(middle(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts.set(i, 0);
+        }
+        count.set(0); sum.set(0); max.set(0);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    static int index(final long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int)value;
+        }
+        final int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        final int sub = (int)(value >>> shift);  // in [HALF_BUCKETS, LINEAR_BUCKETS)
+
+        return LINEAR_BUCKETS + (shift - 1) * HALF_BUCKETS + (sub - HALF_BUCKETS);
+    }
+
+    static long middle(final int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        final int k = index - LINEAR_BUCKETS;
+        final int shift = k / HALF_BUCKETS + 1;
+        final long sub = k % HALF_BUCKETS + HALF_BUCKETS;
+
+        final long lower = sub << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+}
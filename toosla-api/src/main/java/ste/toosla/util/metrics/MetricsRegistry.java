@@ -0,0 +1,170 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.util.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A minimal in-process registry of named timers, distributions, counters and
+ * gauges. Timers and distributions are both backed by a {@link Histogram}; the
+ * former record nanoseconds and are reported in milliseconds, the latter record
+ * plain values (e.g. bytes or number of calls) and are reported as they are.
+ *
+ * <p>Metric names may carry tags in the form {@code name{key=value,...}}; see
+ * {@link #name(String, String...)}. Callers are expected to keep tag values
+ * bounded (e.g. route patterns, not raw URIs) so that memory stays constant;
+ * values that are not (e.g. accounts) can be reported with
+ * {@link #gauges(String, String, Supplier)}, a group of gauges computed when
+ * the snapshot is taken.
+ */
+public class MetricsRegistry {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final long startNanos = System.nanoTime();
+
+    private final ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> distributions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, GaugeGroup> gaugeGroups = new ConcurrentHashMap<>();
+
+    /**
+     * Builds a tagged metric name like {@code http.server.requests{route=/health,status=200}}.
+     *
+     * @param base the metric name
+     * @param tags key/value pairs
+     *
+     * @return the tagged name
+     */
+    public static String name(final String base, final String... tags) {
+        if (tags.length == 0) {
+            return base;
+        }
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("tags must be key/value pairs");
+        }
+        final StringBuilder sb = new StringBuilder(base).append('{');
+        for (int i = 0; i < tags.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(tags[i]).append('=').append(tags[i+1]);
+        }
+        return sb.append('}').toString();
+    }
+
+    public Histogram timer(final String name) {
+        return timers.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    public Histogram distribution(final String name) {
+        return distributions.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    public LongAdder counter(final String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge; if a gauge with the same name already exists it is
+     * left untouched.
+     *
+     * @param name the gauge name
+     * @param value the supplier of the current value
+     */
+    public void gauge(final String name, final Supplier<? extends Number> value) {
+        gauges.putIfAbsent(name, value);
+    }
+
+    /**
+     * Registers a group of gauges tagged with the given key, one for each
+     * entry of the map returned by the supplier when the snapshot is taken
+     * (e.g. {@code zefiro.bulkhead.queued{account=...}} for the accounts with
+     * most calls waiting); the supplier is expected to return a bounded number
+     * of entries. If a group with the same name already exists it is left
+     * untouched.
+     *
+     * @param name the gauges name
+     * @param tag the tag key
+     * @param values the supplier of the current values by tag value
+     */
+    public void gauges(final String name, final String tag, final Supplier<? extends Map<String, ? extends Number>> values) {
+        gaugeGroups.putIfAbsent(name, new GaugeGroup(tag, values));
+    }
+
+    /**
+     * @return the seconds elapsed since this registry was created
+     */
+    public double uptime() {
+        return (System.nanoTime() - startNanos) / (NANOS_PER_MILLI * 1000);
+    }
+
+    /**
+     * Returns a point in time view of all metrics, sorted by name. Timers and
+     * distributions report count, throughput (events per second since start),
+     * mean, p50, p90, p99, p999 and max.
+     *
+     * @return the metrics snapshot
+     */
+    public Map<String, Object> snapshot() {
+        final double uptime = Math.max(uptime(), 0.001);
+
+        final Map<String, Object> ret = new TreeMap<>();
+        timers.forEach((name, h) -> ret.put(name, summary(h, uptime, NANOS_PER_MILLI)));
+        distributions.forEach((name, h) -> ret.put(name, summary(h, uptime, 1)));
+        counters.forEach((name, c) -> ret.put(name, c.sum()));
+        gauges.forEach((name, g) -> ret.put(name, g.get()));
+        gaugeGroups.forEach(
+            (name, group) -> group.values().get().forEach((value, g) -> ret.put(name(name, group.tag(), value), g))
+        );
+
+        return ret;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static Map<String, Object> summary(final Histogram h, final double uptime, final double scale) {
+        final Map<String, Object> values = new LinkedHashMap<>();
+        values.put("count", h.count());
+        values.put("throughput", round(h.count() / uptime));
+        values.put("mean", round(h.mean() / scale));
+        values.put("p50", round(h.percentile(50) / scale));
+        values.put("p90", round(h.percentile(90) / scale));
+        values.put("p99", round(h.percentile(99) / scale));
+        values.put("p999", round(h.percentile(99.9) / scale));
+        values.put("max", round(h.max() / scale));
+
+        return values;
+    }
+
+    private static double round(final double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    private record GaugeGroup(String tag, Supplier<? extends Map<String, ? extends Number>> values) {}
+}
@@ -0,0 +1,79 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * A {@link HttpClient.Builder} that builds its client once and then always
+ * hands out the same instance.
+ *
+ * <p>{@link ZefiroClient} builds a client for each operation; with a plain
+ * builder every operation would get its own connections and its own selector
+ * thread. Sharing one client lets all operations multiplex on a single
+ * selector thread and reuse pooled (keep-alive) connections to Zefiro.
+ * Configuration methods are applied to the wrapped builder and have no effect
+ * once the client has been built. The client must not carry per-user state
+ * (e.g. a cookie handler).
+ */
+public class SharedHttpClientBuilder implements HttpClient.Builder {
+
+    private final HttpClient.Builder builder;
+    private volatile HttpClient client;
+
+    public SharedHttpClientBuilder(final HttpClient.Builder builder) {
+        if (builder == null) {
+            throw new IllegalArgumentException("builder can not be null");
+        }
+        this.builder = builder;
+    }
+
+    @Override
+    public HttpClient build() {
+        HttpClient ret = client;
+        if (ret == null) {
+            synchronized (this) {
+                if ((ret = client) == null) {
+                    client = ret = builder.build();
+                }
+            }
+        }
+        return ret;
+    }
+
+    @Override public HttpClient.Builder cookieHandler(CookieHandler cookieHandler) { builder.cookieHandler(cookieHandler); return this; }
+    @Override public HttpClient.Builder connectTimeout(Duration duration) { builder.connectTimeout(duration); return this; }
+    @Override public HttpClient.Builder sslContext(SSLContext sslContext) { builder.sslContext(sslContext); return this; }
+    @Override public HttpClient.Builder sslParameters(SSLParameters sslParameters) { builder.sslParameters(sslParameters); return this; }
+    @Override public HttpClient.Builder executor(Executor executor) { builder.executor(executor); return this; }
+    @Override public HttpClient.Builder followRedirects(HttpClient.Redirect policy) { builder.followRedirects(policy); return this; }
+    @Override public HttpClient.Builder version(HttpClient.Version version) { builder.version(version); return this; }
+    @Override public HttpClient.Builder priority(int priority) { builder.priority(priority); return this; }
+    @Override public HttpClient.Builder proxy(ProxySelector proxySelector) { builder.proxy(proxySelector); return this; }
+    @Override public HttpClient.Builder authenticator(Authenticator authenticator) { builder.authenticator(authenticator); return this; }
+}
@@ -0,0 +1,526 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import ste.toosla.util.jfr.TooslaEvents;
+import ste.toosla.util.metrics.MetricsRegistry;
+
+/**
+ * Limits the number of calls to Zefiro in flight at any time, globally and per
+ * account, so that a large number of request threads (e.g. virtual threads)
+ * can not overwhelm the remote service, and schedules the calls waiting for a
+ * free slot so that a single heavy account can not starve the others.
+ *
+ * <p>Callers wait in per-account FIFO queues, one for each {@link Priority}.
+ * When a slot frees up, it goes to the account with the least service
+ * received so far relative to its weight (stride scheduling: each call served
+ * advances the account's virtual time by {@code 1 / weight}, and an account
+ * that was idle starts from the current virtual time rather than from where
+ * it left), skipping accounts that already have {@code maxCallsPerAccount}
+ * calls in flight. {@link Priority#INTERACTIVE} callers are always served
+ * before {@link Priority#BACKGROUND} ones. Accounts have weight 1 unless
+ * given a different one with {@link #withWeight(String, double)}.
+ *
+ * <p>A caller that can not get a permit within {@code maxWait} gets a
+ * {@link ZefiroBusyException}. Per-account state is created on first use and
+ * dropped as soon as the account has no calls in flight or waiting, unless the
+ * account has a weight of its own, so that it is proportional to the accounts
+ * currently calling Zefiro rather than to all the accounts ever served. An
+ * account that comes back starts from the current virtual time, as any idle
+ * account does.
+ */
+public class ZefiroBulkhead {
+
+    /**
+     * The priority of a call; interactive calls (e.g. reads a user is waiting
+     * for) are served before background ones (e.g. writes of synced data).
+     */
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    /**
+     * The number of accounts reported in the per-account gauges
+     */
+    private static final int TOP_ACCOUNTS = 10;
+
+    private final int maxCalls;
+    private final int maxCallsPerAccount;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Account> accounts = new HashMap<>();
+    private final Map<String, Double> weights = new HashMap<>();
+    private int inFlight;
+    private int waiting;
+    private long rejected;
+    private double virtualTime;
+
+    /**
+     * A permit to perform one call; it must be closed once the call completed.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    public ZefiroBulkhead(final int maxCalls, final int maxCallsPerAccount, final Duration maxWait) {
+        if (maxCalls <= 0) {
+            throw new IllegalArgumentException("maxCalls must be greater than zero");
+        }
+        if (maxCallsPerAccount <= 0) {
+            throw new IllegalArgumentException("maxCallsPerAccount must be greater than zero");
+        }
+        if (maxWait == null || maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait can not be null or negative");
+        }
+        this.maxCalls = maxCalls;
+        this.maxCallsPerAccount = maxCallsPerAccount;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * Gives an account a larger (or smaller) share of the slots when accounts
+     * compete for them.
+     *
+     * @param account the account - NOT NULL
+     * @param weight the weight; must be greater than zero
+     *
+     * @return this bulkhead
+     */
+    public ZefiroBulkhead withWeight(final String account, final double weight) {
+        if (account == null) {
+            throw new IllegalArgumentException("account can not be null");
+        }
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("weight must be greater than zero");
+        }
+        lock.lock();
+        try {
+            weights.put(account, weight);
+            final Account a = accounts.get(account);
+            if (a != null) {
+                a.weight = weight;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return this;
+    }
+
+    /**
+     * Gives accounts the weights in the given list.
+     *
+     * @param weights a comma separated list of {@code account=weight} - MAY BE NULL
+     *
+     * @return this bulkhead
+     */
+    public ZefiroBulkhead withWeights(final String weights) {
+        if (weights == null || weights.isBlank()) {
+            return this;
+        }
+        for (String weight: weights.split(",")) {
+            final int i = weight.lastIndexOf('=');
+            if (i <= 0) {
+                throw new IllegalArgumentException("invalid account weight '" + weight.trim() + "', expected account=weight");
+            }
+            withWeight(weight.substring(0, i).trim(), Double.parseDouble(weight.substring(i + 1).trim()));
+        }
+        return this;
+    }
+
+    /**
+     * Registers the bulkhead gauges ({@code zefiro.bulkhead.inflight},
+     * {@code zefiro.bulkhead.waiting}, {@code zefiro.bulkhead.rejected},
+     * {@code zefiro.bulkhead.accounts}) and the per-account ones
+     * ({@code zefiro.bulkhead.inflight{account=...}},
+     * {@code zefiro.bulkhead.queued{account=...}}) for the
+     * {@value #TOP_ACCOUNTS} accounts with most calls in flight or waiting;
+     * /api/metrics is public, thus accounts are tagged hashed as in the JFR
+     * events (see {@link TooslaEvents#account(String)}).
+     *
+     * @param metrics the registry - MAY BE NULL (no metrics)
+     *
+     * @return this bulkhead
+     */
+    public ZefiroBulkhead withMetrics(final MetricsRegistry metrics) {
+        if (metrics != null) {
+            metrics.gauge("zefiro.bulkhead.inflight", this::inFlight);
+            metrics.gauge("zefiro.bulkhead.waiting", this::waiting);
+            metrics.gauge("zefiro.bulkhead.rejected", this::rejected);
+            metrics.gauge("zefiro.bulkhead.accounts", this::accounts);
+            metrics.gauges("zefiro.bulkhead.inflight", "account", () -> top(a -> a.inFlight));
+            metrics.gauges("zefiro.bulkhead.queued", "account", () -> top(Account::queued));
+        }
+        return this;
+    }
+
+    /**
+     * Waits up to {@code maxWait} for a permit to call Zefiro on behalf of the
+     * given account with interactive priority.
+     *
+     * @param account the account - NOT NULL
+     *
+     * @return the permit to close once the call is done
+     *
+     * @throws ZefiroBusyException if no permit became available in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquire(final String account) throws InterruptedException {
+        return acquire(account, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Waits up to {@code maxWait} for a permit to call Zefiro on behalf of the
+     * given account.
+     *
+     * @param account the account - NOT NULL
+     * @param priority the priority of the call - NOT NULL
+     *
+     * @return the permit to close once the call is done
+     *
+     * @throws ZefiroBusyException if no permit became available in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Permit acquire(final String account, final Priority priority) throws InterruptedException {
+        return acquire(account, priority, maxWaitNanos);
+    }
+
+    /**
+     * Like {@link #acquire(String, Priority)}, but waiting no longer than the
+     * given time if shorter than {@code maxWait} (e.g. the time left to a
+     * {@link ZefiroDeadline}).
+     */
+    Permit acquire(final String account, final Priority priority, final long maxWait) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            final Account a = account(account);
+            if (free(a)) {
+                return grant(a);
+            }
+
+            final Waiter w = new Waiter(lock.newCondition());
+            a.queue(priority).addLast(w);
+            ++waiting;
+            try {
+                long wait = Math.min(maxWait, maxWaitNanos);
+                while (!w.granted && wait > 0) {
+                    wait = w.condition.awaitNanos(wait);
+                }
+            } catch (InterruptedException x) {
+                if (w.granted) {
+                    release(a);
+                } else {
+                    a.queue(priority).remove(w); --waiting;
+                    prune(a);
+                }
+                throw x;
+            }
+            if (w.granted) {
+                return permit(a);
+            }
+
+            a.queue(priority).remove(w); --waiting;
+            prune(a);
+            ++rejected;
+            throw new ZefiroBusyException(
+                (a.inFlight >= maxCallsPerAccount)
+                ? "Too many concurrent Zefiro calls for the account"
+                : "Too many concurrent Zefiro calls"
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets a permit to call Zefiro on behalf of the given account only if one
+     * is available right away and no other caller is waiting for it (e.g. for
+     * optional calls like hedges). Unlike {@link #acquire(String)}, failing to
+     * get a permit is not counted as a rejection.
+     *
+     * @param account the account - NOT NULL
+     *
+     * @return the permit to close once the call is done or null if no permit is available
+     *
+     * @throws InterruptedException if interrupted
+     */
+    public Permit tryAcquire(final String account) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            final Account a = account(account);
+            if (waiting == 0 && free(a)) {
+                return grant(a);
+            }
+            prune(a);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls currently in flight
+     */
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of callers currently waiting for a permit
+     */
+    public int waiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param account the account - NOT NULL
+     *
+     * @return the number of callers currently waiting for a permit on behalf of the given account
+     */
+    public int waiting(final String account) {
+        lock.lock();
+        try {
+            final Account a = accounts.get(account);
+            return (a == null) ? 0 : a.queued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param account the account - NOT NULL
+     *
+     * @return the number of calls currently in flight on behalf of the given account
+     */
+    public int inFlight(final String account) {
+        lock.lock();
+        try {
+            final Account a = accounts.get(account);
+            return (a == null) ? 0 : a.inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of accounts with calls in flight or waiting (or a weight of their own)
+     */
+    public int accounts() {
+        lock.lock();
+        try {
+            return accounts.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of callers currently waiting for a permit by account, sorted by account
+     */
+    public Map<String, Integer> queues() {
+        lock.lock();
+        try {
+            final Map<String, Integer> ret = new TreeMap<>();
+            accounts.forEach((name, a) -> ret.put(name, a.queued()));
+            return ret;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls rejected so far because no permit was available in time
+     */
+    public long rejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int maxCalls() {
+        return maxCalls;
+    }
+
+    public int maxCallsPerAccount() {
+        return maxCallsPerAccount;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    //
+    // the following methods must be called holding the lock
+    //
+
+    private Account account(final String name) {
+        return accounts.computeIfAbsent(name, k -> new Account(k, weights.getOrDefault(k, 1.0)));
+    }
+
+    /**
+     * Drops the state of the given account if it has no calls in flight or
+     * waiting and no weight of its own.
+     */
+    private void prune(final Account a) {
+        if (a.inFlight == 0 && a.queued() == 0 && !weights.containsKey(a.name)) {
+            accounts.remove(a.name);
+        }
+    }
+
+    /**
+     * The given value of the {@value #TOP_ACCOUNTS} accounts with most calls
+     * in flight or waiting, by hashed account.
+     */
+    private Map<String, Integer> top(final ToIntFunction<Account> value) {
+        lock.lock();
+        try {
+            final Map<String, Integer> ret = new TreeMap<>();
+            accounts.values().stream()
+                .filter(a -> a.inFlight + a.queued() > 0)
+                .sorted(Comparator.comparingInt((Account a) -> a.inFlight + a.queued()).reversed())
+                .limit(TOP_ACCOUNTS)
+                .forEach(a -> ret.put(TooslaEvents.account(a.name), value.applyAsInt(a)));
+            return ret;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether a call on behalf of the given account can start right away.
+     * Since slots are handed over to waiting callers as soon as they free up
+     * (see {@link #dispatch()}), no waiting caller can take the slot if there
+     * is one.
+     */
+    private boolean free(final Account a) {
+        return inFlight < maxCalls && a.inFlight < maxCallsPerAccount;
+    }
+
+    private Permit grant(final Account a) {
+        ++inFlight; ++a.inFlight;
+        a.pass = Math.max(a.pass, virtualTime);
+        virtualTime = a.pass;
+        a.pass += 1 / a.weight;
+
+        return permit(a);
+    }
+
+    private Permit permit(final Account a) {
+        return () -> {
+            lock.lock();
+            try {
+                release(a);
+            } finally {
+                lock.unlock();
+            }
+        };
+    }
+
+    private void release(final Account a) {
+        --inFlight; --a.inFlight;
+        dispatch();
+        prune(a);
+    }
+
+    /**
+     * Hands the free slots over to waiting callers: interactive ones first,
+     * then background ones, each time to the account with the lowest virtual
+     * time among those that can take one more call.
+     */
+    private void dispatch() {
+        while (inFlight < maxCalls && waiting > 0) {
+            Account next = null;
+            for (Priority priority: Priority.values()) {
+                for (Account a: accounts.values()) {
+                    if (!a.queue(priority).isEmpty() && a.inFlight < maxCallsPerAccount
+                        && (next == null || Math.max(a.pass, virtualTime) < Math.max(next.pass, virtualTime))) {
+                        next = a;
+                    }
+                }
+                if (next != null) {
+                    final Waiter w = next.queue(priority).removeFirst();
+                    --waiting;
+                    grant(next);
+                    w.granted = true;
+                    w.condition.signal();
+                    break;
+                }
+            }
+            if (next == null) {
+                return; // all waiting accounts are at their limit
+            }
+        }
+    }
+
+    private static final class Account {
+        private final String name;
+        private final Deque<Waiter> interactive = new ArrayDeque<>();
+        private final Deque<Waiter> background = new ArrayDeque<>();
+        private double weight;
+        private double pass;
+        private int inFlight;
+
+        private Account(final String name, final double weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        private Deque<Waiter> queue(final Priority priority) {
+            return (priority == Priority.INTERACTIVE) ? interactive : background;
+        }
+
+        private int queued() {
+            return interactive.size() + background.size();
+        }
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(final Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when a call to Zefiro can not be performed because too many
+ * calls are already in flight (see {@link ZefiroBulkhead}).
+ */
+public class ZefiroBusyException extends ZefiroException {
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final Duration retryAfter;
+
+    public ZefiroBusyException(String message) {
+        this(message, DEFAULT_RETRY_AFTER);
+    }
+
+    public ZefiroBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return how long the caller should wait before trying again
+     */
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return {@link #retryAfter()} in whole seconds, rounded up, as expected
+     *         by the {@code Retry-After} header
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+/**
+ * Describes a single HTTP exchange with Zefiro, as reported to
+ * {@link ZefiroListener}s.
+ *
+ * @param endpoint the logical endpoint called
+ * @param status the HTTP status code or -1 if no response was received
+ * @param requestBytes the size of the request body
+ * @param responseBytes the size of the response body
+ * @param duration the duration of the exchange in nanoseconds
+ * @param attempt the attempt number, starting from 1
+ * @param error the I/O error that prevented a response, or null
+ */
+public record ZefiroCall(
+    ZefiroEndpoint endpoint,
+    int status,
+    long requestBytes,
+    long responseBytes,
+    long duration,
+    int attempt,
+    Throwable error
+) {
+}
@@ -0,0 +1,41 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ZefiroListener} counting the exchanges performed on behalf of a
+ * single API request, possibly through multiple {@link ZefiroClient}s.
+ */
+public class ZefiroCallCounter implements ZefiroListener {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public void onCall(final ZefiroCall call) {
+        calls.incrementAndGet();
+    }
+
+    public int calls() {
+        return calls.get();
+    }
+}
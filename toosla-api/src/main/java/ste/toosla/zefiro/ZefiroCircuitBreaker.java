@@ -0,0 +1,244 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Stops calling a Zefiro host that is failing or too slow, so that requests
+ * fail fast with a {@link ZefiroCircuitOpenException} instead of each of them
+ * waiting for its own timeout. It is meant to be shared by all clients (see
+ * {@link ZefiroClient#withCircuitBreaker(ZefiroCircuitBreaker)}); each host
+ * (e.g. the API host and the upload host) has its own circuit, created on
+ * first use.
+ *
+ * <p>A circuit starts closed and records the outcome of the last
+ * {@code window} calls: a call fails if it gets an I/O error or a {@code 5xx}
+ * and is slow if it takes at least {@code slowCallDuration}. Once the window
+ * is full, the circuit opens if the share of failed calls reaches
+ * {@code failureRate} or the share of slow calls reaches {@code slowCallRate}.
+ *
+ * <p>An open circuit rejects all calls for {@code openDuration}, then turns
+ * half open and lets {@code halfOpenCalls} trial calls through: if all of them
+ * succeed in time the circuit closes with an empty window, otherwise it opens
+ * again. Trial calls that never report back (e.g. cancelled) do not keep the
+ * circuit half open for more than another {@code openDuration}.
+ */
+public class ZefiroCircuitBreaker {
+
+    private static final Logger LOG = Logger.getLogger(ZefiroCircuitBreaker.class.getName());
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int window;
+    private final double failureRate;
+    private final long slowCallNanos;
+    private final double slowCallRate;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param window the number of calls the failure and slow call rates are computed on
+     * @param failureRate the share of failed calls that opens the circuit, in (0, 1]
+     * @param slowCallDuration the duration after which a call is slow - NOT NULL
+     * @param slowCallRate the share of slow calls that opens the circuit, in (0, 1]
+     * @param openDuration how long an open circuit rejects calls - NOT NULL
+     * @param halfOpenCalls the number of trial calls of a half open circuit
+     */
+    public ZefiroCircuitBreaker(
+        final int window, final double failureRate,
+        final Duration slowCallDuration, final double slowCallRate,
+        final Duration openDuration, final int halfOpenCalls
+    ) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be greater than zero");
+        }
+        if (failureRate <= 0 || failureRate > 1 || slowCallRate <= 0 || slowCallRate > 1) {
+            throw new IllegalArgumentException("failureRate and slowCallRate must be in (0, 1]");
+        }
+        if (slowCallDuration == null || slowCallDuration.isNegative() || slowCallDuration.isZero()) {
+            throw new IllegalArgumentException("slowCallDuration can not be null, negative or zero");
+        }
+        if (openDuration == null || openDuration.isNegative()) {
+            throw new IllegalArgumentException("openDuration can not be null or negative");
+        }
+        if (halfOpenCalls <= 0) {
+            throw new IllegalArgumentException("halfOpenCalls must be greater than zero");
+        }
+        this.window = window;
+        this.failureRate = failureRate;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.slowCallRate = slowCallRate;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * Checks that a call to the given host can be performed.
+     *
+     * @param host the host to call - NOT NULL
+     *
+     * @throws ZefiroCircuitOpenException if the circuit of the host is open
+     */
+    public void acquire(final String host) {
+        circuit(host).acquire();
+    }
+
+    /**
+     * Records the outcome of a call allowed by {@link #acquire(String)}.
+     *
+     * @param host the host called - NOT NULL
+     * @param failed true if the call failed
+     * @param duration the duration of the call in nanoseconds
+     */
+    public void record(final String host, final boolean failed, final long duration) {
+        circuit(host).record(failed, duration >= slowCallNanos);
+    }
+
+    /**
+     * @param host the host - NOT NULL
+     *
+     * @return the state of the circuit of the given host
+     */
+    public State state(final String host) {
+        return circuit(host).state();
+    }
+
+    /**
+     * @return the state of the circuits of the hosts called so far, by host
+     */
+    public Map<String, State> states() {
+        final Map<String, State> ret = new TreeMap<>();
+        circuits.forEach((host, circuit) -> ret.put(host, circuit.state()));
+        return ret;
+    }
+
+    /**
+     * @return the number of calls rejected so far because a circuit was open
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Circuit circuit(final String host) {
+        return circuits.computeIfAbsent(host, Circuit::new);
+    }
+
+    private final class Circuit {
+        private final String host;
+
+        private final boolean[] failures = new boolean[window];
+        private final boolean[] slows = new boolean[window];
+        private int calls, next, failed, slow;
+
+        private State state = State.CLOSED;
+        private long since = System.nanoTime();
+        private int trials, succeeded;
+
+        private Circuit(final String host) {
+            this.host = host;
+        }
+
+        private synchronized State state() {
+            elapse(System.nanoTime());
+            return state;
+        }
+
+        private synchronized void acquire() {
+            final long now = System.nanoTime();
+            elapse(now);
+            if (state == State.OPEN || (state == State.HALF_OPEN && trials >= halfOpenCalls)) {
+                rejected.increment();
+                throw new ZefiroCircuitOpenException(host, Duration.ofNanos(Math.max(0, openNanos - (now - since))));
+            }
+            if (state == State.HALF_OPEN) {
+                ++trials;
+            }
+        }
+
+        private synchronized void record(final boolean failedCall, final boolean slowCall) {
+            if (state == State.HALF_OPEN) {
+                if (failedCall || slowCall) {
+                    transition(State.OPEN, System.nanoTime());
+                } else if (++succeeded >= halfOpenCalls) {
+                    transition(State.CLOSED, System.nanoTime());
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                return; // late outcome of a call started while closed
+            }
+
+            if (calls == window) {
+                failed -= failures[next] ? 1 : 0;
+                slow -= slows[next] ? 1 : 0;
+            } else {
+                ++calls;
+            }
+            failures[next] = failedCall; slows[next] = slowCall;
+            failed += failedCall ? 1 : 0;
+            slow += slowCall ? 1 : 0;
+            next = (next + 1) % window;
+
+            if (calls == window && (failed >= failureRate * window || slow >= slowCallRate * window)) {
+                transition(State.OPEN, System.nanoTime());
+            }
+        }
+
+        /**
+         * Applies the transitions due to the passing of time, so that the
+         * state is current also for circuits not called for a while.
+         */
+        private void elapse(final long now) {
+            if (state == State.OPEN && now - since >= openNanos) {
+                transition(State.HALF_OPEN, now);
+            }
+            if (state == State.HALF_OPEN && trials >= halfOpenCalls && now - since >= openNanos) {
+                transition(State.HALF_OPEN, now); // stale trials, start over
+            }
+        }
+
+        private void transition(final State to, final long now) {
+            if (to != state) {
+                final State from = state;
+                LOG.warning(() -> String.format(
+                    "circuit for %s %s -> %s (failed %d, slow %d of the last %d calls)", host, from, to, failed, slow, calls
+                ));
+            }
+            state = to; since = now;
+            trials = 0; succeeded = 0;
+            if (to == State.CLOSED) {
+                calls = next = failed = slow = 0;
+            }
+        }
+    }
+}
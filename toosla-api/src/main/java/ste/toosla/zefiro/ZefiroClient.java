@@ -7,15 +7,30 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import ste.toosla.util.jfr.ZefiroHttpCallEvent;
 
 /**
  * A client for the Zefiro object storage service. It handles authentication and
@@ -23,6 +38,34 @@ import java.util.logging.Logger;
  *
  * <p>This client automatically prepends the {@code /OneMediaHub} base path to all
  * file paths, as required by the Zefiro backend.
+ *
+ * <p>All HTTP exchanges go through a single private {@code exchange()} method
+ * which tags each call with its {@link ZefiroEndpoint} and notifies the
+ * registered {@link ZefiroListener}s (e.g. {@link ZefiroMetrics}); each exchange
+ * is also reported to Flight Recorder as a {@link ZefiroHttpCallEvent}. If a
+ * {@link ZefiroBulkhead} is given, each exchange holds one of its permits,
+ * waiting for it with this client's priority. If a
+ * {@link ZefiroRetryPolicy} is given, failed exchanges it deems safe to repeat
+ * are retried there, so that a transient failure costs one more call instead
+ * of the whole sequence; each attempt is reported to the listeners with its
+ * attempt number and the bulkhead permit is released while waiting to retry.
+ * If a {@link ZefiroHedgingPolicy} is given, an idempotent exchange that does
+ * not get a response within the policy's delay is sent again (if a bulkhead
+ * permit is available right away) and the first response wins, the other
+ * exchange being cancelled; cancelled exchanges are not reported to the
+ * listeners, and hedged exchanges are reported on the HTTP client's threads.
+ * If a {@link ZefiroCircuitBreaker} is given, each attempt first checks the
+ * circuit of the host it calls and fails fast with a
+ * {@link ZefiroCircuitOpenException} if it is open; the outcome of each
+ * attempt is then recorded in the circuit. If a {@link ZefiroConcurrencyLimiter}
+ * is given, each exchange also holds one of its permits, taken after the
+ * bulkhead's one, and its round trip time and outcome drive the limit.
+ * If a {@link ZefiroDeadline} is given, each exchange gets the time left as
+ * timeout, permits are not waited for and failed exchanges are not retried
+ * past it, and a {@link ZefiroTimeoutException} is thrown once it has passed;
+ * exchanges cut by the deadline count as slow (not failed) calls for the
+ * circuit breaker and are ignored by the concurrency limiter, so that short
+ * deadlines asked by clients do not affect other requests.
  */
 public class ZefiroClient {
 
@@ -38,6 +81,15 @@ public class ZefiroClient {
     private final String username;
     private final String password;
     private String validationKey;
+    private final List<ZefiroListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private ZefiroBulkhead bulkhead = null;
+    private ZefiroBulkhead.Priority priority = ZefiroBulkhead.Priority.INTERACTIVE;
+    private ZefiroRetryPolicy retryPolicy = null;
+    private ZefiroHedgingPolicy hedgingPolicy = null;
+    private ZefiroCircuitBreaker circuitBreaker = null;
+    private ZefiroConcurrencyLimiter concurrencyLimiter = null;
+    private ZefiroDeadline deadline = null;
 
     /**
      * Creates a new instance of the ZefiroClient with a default HttpClient builder.
@@ -71,10 +123,115 @@ public class ZefiroClient {
         this.uploadUrl = uploadUrl; return this;
     }
 
+    /**
+     * Adds a listener notified after each HTTP exchange with Zefiro.
+     *
+     * @param listener the listener - NOT NULL
+     *
+     * @return this client
+     */
+    public ZefiroClient withListener(final ZefiroListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener can not be null");
+        }
+        listeners.add(listener); return this;
+    }
+
+    /**
+     * Limits the calls this client performs concurrently with other clients
+     * sharing the same bulkhead; calls are performed on behalf of this client's
+     * username.
+     *
+     * @param bulkhead the bulkhead - MAY BE NULL (no limits)
+     *
+     * @return this client
+     */
+    public ZefiroClient withBulkhead(final ZefiroBulkhead bulkhead) {
+        this.bulkhead = bulkhead; return this;
+    }
+
+    /**
+     * Sets the priority of the calls of this client when waiting for a
+     * bulkhead permit (default {@link ZefiroBulkhead.Priority#INTERACTIVE}).
+     *
+     * @param priority the priority - NOT NULL
+     *
+     * @return this client
+     */
+    public ZefiroClient withPriority(final ZefiroBulkhead.Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("priority can not be null");
+        }
+        this.priority = priority; return this;
+    }
+
+    /**
+     * Retries failed exchanges as decided by the given policy.
+     *
+     * @param retryPolicy the policy - MAY BE NULL (no retries)
+     *
+     * @return this client
+     */
+    public ZefiroClient withRetryPolicy(final ZefiroRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy; return this;
+    }
+
+    /**
+     * Hedges slow exchanges as decided by the given policy.
+     *
+     * @param hedgingPolicy the policy - MAY BE NULL (no hedges)
+     *
+     * @return this client
+     */
+    public ZefiroClient withHedgingPolicy(final ZefiroHedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy; return this;
+    }
+
+    /**
+     * Stops calling hosts whose circuit is open.
+     *
+     * @param circuitBreaker the circuit breaker - MAY BE NULL (no circuit breaking)
+     *
+     * @return this client
+     */
+    public ZefiroClient withCircuitBreaker(final ZefiroCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker; return this;
+    }
+
+    /**
+     * Limits the calls this client performs concurrently with other clients
+     * sharing the same limiter to a limit adapting to Zefiro's latency.
+     *
+     * @param concurrencyLimiter the limiter - MAY BE NULL (no adaptive limit)
+     *
+     * @return this client
+     */
+    public ZefiroClient withConcurrencyLimiter(final ZefiroConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter; return this;
+    }
+
+    /**
+     * Bounds the time of all the exchanges of this client.
+     *
+     * @param deadline the deadline - MAY BE NULL (no deadline)
+     *
+     * @return this client
+     */
+    public ZefiroClient withDeadline(final ZefiroDeadline deadline) {
+        this.deadline = deadline; return this;
+    }
+
     public String validationKey() {
         return validationKey;
     }
 
+    /**
+     * @return the number of HTTP exchanges performed so far by this client
+     */
+    public int calls() {
+        return calls.get();
+    }
+
     /**
      * Logs in to the Zefiro service to obtain a validation key.
      *
@@ -95,7 +252,7 @@ public class ZefiroClient {
                     .POST(HttpRequest.BodyPublishers.ofString(zefiroRequestBody))
                     .build();
 
-            HttpResponse<String> response = httpClientBuilder.build().send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = exchange(ZefiroEndpoint.LOGIN, httpClientBuilder.build(), request);
 
             if (response.statusCode() == 401) {
                 throw new ZefiroLoginException();
@@ -152,8 +309,36 @@ public class ZefiroClient {
      * @throws ZefiroException if a general error occurs during the upload process
      */
     public ZefiroUploadResponse upload(String path, String content, Date ifUnmodifiedSince)
+    throws ZefiroException {
+        //
+        // the new version is stamped with the precondition date (or now)
+        //
+        final Date date = (ifUnmodifiedSince != null) ? ifUnmodifiedSince : new Date();
+        return upload(path, content, date, date);
+    }
+
+    /**
+     * Uploads a file to the Zefiro service if it has not been modified since
+     * the given date, stamping the new version with a date of its own; unlike
+     * {@link #upload(String, String, Date)}, the precondition does not depend
+     * on the stamp, so that a version newer than the one the content was made
+     * from is always detected.
+     *
+     * @param path the absolute file path within the user's space (e.g., {@code /Toosla/new_file.json})
+     * @param content the content of the file as a String
+     * @param ifUnmodifiedSince if not null, the upload will only proceed if the file on Zefiro has not been
+     *                          modified since this date (use the epoch for a file that must not exist)
+     * @param modified the modification date of the new version - MAY BE NULL (now)
+     * @return a {@link ZefiroUploadResponse} containing the ID and modification date of the uploaded file
+     * @throws ZefiroModificationException if the {@code ifUnmodifiedSince} check fails
+     * @throws ZefiroException if a general error occurs during the upload process
+     */
+    public ZefiroUploadResponse upload(String path, String content, Date ifUnmodifiedSince, Date modified)
     throws ZefiroException {
         path = "/OneMediaHub" + path;
+        if (modified == null) {
+            modified = new Date();
+        }
         try {
             debug("uploading %s if unmodified since %tc", path, ifUnmodifiedSince);
 
@@ -166,13 +351,10 @@ public class ZefiroClient {
             long fileId = 0;
 
             // Check If-Unmodified-Since precondition
-            if (ifUnmodifiedSince == null) {
-                ifUnmodifiedSince = new Date();
-            }
             Optional<JsonNode> existingFileMetadata = getFileMetadata(httpClient, folderId, fileName);
             if (existingFileMetadata.isPresent()) {
                 long creationDate = existingFileMetadata.get().at("/modificationdate").asLong();
-                if (creationDate > ifUnmodifiedSince.getTime()) {
+                if (ifUnmodifiedSince != null && creationDate > ifUnmodifiedSince.getTime()) {
                     throw new ZefiroModificationException(new Date(creationDate));
                 } else {
                     // Precondition met, get existing file id to update it
@@ -181,7 +363,7 @@ public class ZefiroClient {
             }
 
             final Multipart body = buildMultipartBody(
-                fileName, content, folderId, fileId, ifUnmodifiedSince
+                fileName, content, folderId, fileId, modified
             );
 
             debug("upload body: %s");
@@ -193,9 +375,7 @@ public class ZefiroClient {
                     .POST(HttpRequest.BodyPublishers.ofByteArray(body.content()))
                     .build();
 
-            HttpResponse<String> uploadResponse = httpClient.send(
-                uploadRequest, HttpResponse.BodyHandlers.ofString()
-            );
+            HttpResponse<String> uploadResponse = exchange(ZefiroEndpoint.UPLOAD, httpClient, uploadRequest);
 
             final String responseBody = uploadResponse.body();
             debug("response body: %s");
@@ -207,7 +387,7 @@ public class ZefiroClient {
             JsonNode uploadJson = jsonMapper.readTree(responseBody);
             String uploadedFileId = uploadJson.at("/id").asText();
 
-            return new ZefiroUploadResponse(uploadedFileId, ifUnmodifiedSince);
+            return new ZefiroUploadResponse(uploadedFileId, modified);
         } catch (JsonParseException x) {
             debug("json error %s", x.getMessage());
             throw new ZefiroException("Invalid JSON response from Zefiro", x);
@@ -248,14 +428,8 @@ public class ZefiroClient {
             final String[] pathParts = path.substring(1).split("/"); // Remove leading / and split
             long folderId = findFolderId(httpClient, pathParts);
 
-            long fileId = 0;
-            JsonNode files = jsonMapper.readTree(listFiles(httpClient, folderId));
-            for (JsonNode file: files.at("/data/media")) {
-                if (pathParts[pathParts.length - 1].equals(file.at("/name").asText())) {
-                    fileId = file.at("/id").asLong();
-                    break;
-                }
-            }
+            final long fileId = findFile(listFiles(httpClient, folderId), pathParts[pathParts.length - 1])
+                .map(file -> file.at("/id").asLong()).orElse(0L);
 
             if (fileId == 0) {
                 throw new ZefiroFileNotFoundException("File not found: " + path.substring(12)); // stripping out /OneMediaHub
@@ -269,9 +443,7 @@ public class ZefiroClient {
                     .header("Content-Type", "application/json")
                     .build();
 
-            HttpResponse<String> downloadUrlResponse = httpClient.send(
-                downloadUrlRequest, HttpResponse.BodyHandlers.ofString()
-            );
+            HttpResponse<String> downloadUrlResponse = exchange(ZefiroEndpoint.MEDIA_GET, httpClient, downloadUrlRequest);
 
             if (downloadUrlResponse.statusCode() >= 400) {
                 throw new ZefiroException("Failed to get download URL: " + downloadUrlResponse.statusCode());
@@ -293,9 +465,7 @@ public class ZefiroClient {
                     .uri(URI.create(downloadUrl))
                     .GET()
                     .build();
-            HttpResponse<String> fileContentResponse = httpClient.send(
-                downloadFileRequest, HttpResponse.BodyHandlers.ofString()
-            );
+            HttpResponse<String> fileContentResponse = exchange(ZefiroEndpoint.CONTENT, httpClient, downloadFileRequest);
 
             if (fileContentResponse.statusCode() >= 400) {
                 throw new ZefiroException("Failed to download file content: " + fileContentResponse.statusCode());
@@ -309,32 +479,497 @@ public class ZefiroClient {
         }
     }
 
+    /**
+     * Gets the metadata of a file from the listing of its folder, without
+     * asking for the download url nor downloading the content; this is the
+     * cheapest way to tell whether a file has changed.
+     *
+     * @param path the absolute file path within the user's space (e.g., {@code /Toosla/toosla.json})
+     * @return the metadata of the file
+     * @throws ZefiroException if a general error occurs while reading the metadata
+     * @throws ZefiroFileNotFoundException if the specified file or any subdirectory in the path is not found
+     */
+    public ZefiroFileInfo info(String path) throws ZefiroException {
+        path = "/OneMediaHub" + path;
+        try {
+            final HttpClient httpClient = httpClientBuilder.build();
+            final String[] pathParts = path.substring(1).split("/"); // Remove leading / and split
+            final long folderId = findFolderId(httpClient, pathParts);
+
+            final Optional<JsonNode> file = findFile(listFiles(httpClient, folderId), pathParts[pathParts.length - 1]);
+            if (file.isEmpty()) {
+                throw new ZefiroFileNotFoundException("File not found: " + path.substring(12)); // stripping out /OneMediaHub
+            }
+
+            final JsonNode etag = file.get().get("etag");
+            return new ZefiroFileInfo(
+                file.get().at("/id").asText(),
+                new Date(file.get().at("/modificationdate").asLong()),
+                (etag == null || etag.isNull()) ? null : etag.asText()
+            );
+        } catch (JsonParseException x) {
+            throw new ZefiroException("Invalid JSON response from Zefiro", x);
+        } catch (IOException | InterruptedException x) {
+            throw new ZefiroException("Error connecting to Zefiro", x);
+        }
+    }
+
     // --------------------------------------------------------- private methods
 
-    private Optional<JsonNode> getFileMetadata(HttpClient httpClient, long folderId, String fileName) throws ZefiroException, IOException, InterruptedException {
-        JsonNode files = jsonMapper.readTree(listFiles(httpClient, folderId));
-        for (JsonNode file: files.at("/data/media")) {
-            if (fileName.equals(file.at("/name").asText())) {
-                // Found the file, now get its metadata
-                HttpRequest metadataRequest = HttpRequest.newBuilder()
-                        .uri(URI.create(apiUrl + "/sapi/media?action=get&origin=omh,dropbox&validationkey=" + this.validationKey))
-                        .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((this.username + ":" + this.password).getBytes()))
-                        .POST(HttpRequest.BodyPublishers.ofString("{\"data\":{\"ids\":[" + file.at("/id").asLong() + "],\"fields\":[\"url\",\"modificationdate\"]}}"))
-                        .header("Content-Type", "application/json")
-                        .build();
-                HttpResponse<String> metadataResponse = httpClient.send(
-                    metadataRequest, HttpResponse.BodyHandlers.ofString()
-                );
-
-                if (metadataResponse.statusCode() >= 400) {
-                    throw new ZefiroException("Failed to get file metadata: " + metadataResponse.statusCode());
+    /**
+     * Sends the given request, retrying it as decided by the retry policy (if
+     * any). This is the only place where this client talks to Zefiro.
+     */
+    private HttpResponse<String> exchange(
+        final ZefiroEndpoint endpoint, final HttpClient httpClient, final HttpRequest request
+    ) throws IOException, InterruptedException {
+        if (retryPolicy != null) {
+            retryPolicy.onExchange();
+        }
+        if (hedgingPolicy != null) {
+            hedgingPolicy.onExchange();
+        }
+        for (int attempt = 1; ; ++attempt) {
+            HttpResponse<String> response = null;
+            IOException error = null;
+            try {
+                response = send(endpoint, httpClient, request, attempt);
+            } catch (IOException x) {
+                if (deadlineExceeded(x)) {
+                    throw new ZefiroTimeoutException(endpoint, deadline.budget(), x);
+                }
+                error = x;
+            }
+
+            final long backoff = (retryPolicy != null)
+                               ? retryPolicy.backoff(endpoint, attempt, response, error)
+                               : -1;
+            //
+            // no retry if the next attempt would start past the deadline
+            //
+            final long delay = (deadline != null && TimeUnit.MILLISECONDS.toNanos(backoff) >= deadline.remaining()) ? -1 : backoff;
+            if (delay < 0) {
+                if (error != null) {
+                    throw error;
                 }
-                return Optional.of(jsonMapper.readTree(metadataResponse.body()).at("/data/media/0"));
+                return response;
             }
+
+            final int failedAttempt = attempt;
+            final String outcome = (error != null) ? error.toString() : String.valueOf(response.statusCode());
+            LOG.fine(() -> String.format(
+                "%s attempt %d failed (%s), retrying in %dms", endpoint.tag, failedAttempt, outcome, delay
+            ));
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Sends the given request once, hedging it if the hedging policy (if any)
+     * says so, and notifies the listeners about the outcome.
+     */
+    private HttpResponse<String> send(
+        final ZefiroEndpoint endpoint, final HttpClient httpClient, final HttpRequest request, final int attempt
+    ) throws IOException, InterruptedException {
+        final String host = request.uri().getHost();
+
+        final long hedgeDelay = (hedgingPolicy != null) ? hedgingPolicy.delay(endpoint) : -1;
+        if (hedgeDelay >= 0) {
+            return sendHedged(endpoint, httpClient, request, attempt, hedgeDelay);
+        }
+
+        final ZefiroBulkhead.Permit permit = acquire(endpoint);
+        final HttpRequest timed = timed(endpoint, request, permit);
+        allow(host, permit);
+
+        calls.incrementAndGet();
+
+        final long requestBytes = request.bodyPublisher()
+            .map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+        final ZefiroHttpCallEvent event = new ZefiroHttpCallEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        try (permit) {
+            final HttpResponse<String> response = httpClient.send(timed, HttpResponse.BodyHandlers.ofString());
+            notify(event, host, new ZefiroCall(
+                endpoint, response.statusCode(), Math.max(0, requestBytes),
+                responseBytes(response), System.nanoTime() - start, attempt, null
+            ));
+            return response;
+        } catch (IOException | InterruptedException x) {
+            notify(event, host, new ZefiroCall(
+                endpoint, -1, Math.max(0, requestBytes), 0, System.nanoTime() - start, attempt, x
+            ));
+            throw x;
+        }
+    }
+
+    /**
+     * Sends the given request and, if no response arrives within the given
+     * delay, sends it again; the first response wins and the other exchange is
+     * cancelled. If both exchanges fail, the last failure is thrown.
+     */
+    private HttpResponse<String> sendHedged(
+        final ZefiroEndpoint endpoint, final HttpClient httpClient, final HttpRequest request,
+        final int attempt, final long delay
+    ) throws IOException, InterruptedException {
+        final ZefiroBulkhead.Permit permit = acquire(endpoint);
+        final HttpRequest timed = timed(endpoint, request, permit);
+        allow(request.uri().getHost(), permit);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CompletableFuture<HttpResponse<String>> first = sendAsync(endpoint, httpClient, timed, attempt, permit, cancelled);
+        try {
+            return first.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException x) {
+            // too slow, hedge it below
+        } catch (ExecutionException x) {
+            throw failure(x.getCause());
+        } catch (InterruptedException x) {
+            cancelled.set(true); first.cancel(true); throw x;
+        }
+
+        if (circuitBreaker != null && circuitBreaker.state(request.uri().getHost()) != ZefiroCircuitBreaker.State.CLOSED) {
+            return await(first); // do not spend trial calls in hedges
+        }
+        if (deadline != null && deadline.expired()) {
+            return await(first); // about to time out
+        }
+        final ZefiroBulkhead.Permit hedgePermit = tryAcquire();
+        if (((bulkhead != null || concurrencyLimiter != null) && hedgePermit == null) || !hedgingPolicy.tryHedge()) {
+            if (hedgePermit != null) {
+                hedgePermit.close();
+            }
+            return await(first);
+        }
+
+        LOG.fine(() -> String.format(
+            "%s attempt %d took longer than %dms, hedging", endpoint.tag, attempt, TimeUnit.NANOSECONDS.toMillis(delay)
+        ));
+        final CompletableFuture<HttpResponse<String>> hedge;
+        try {
+            hedge = sendAsync(endpoint, httpClient, timed(endpoint, request, hedgePermit), attempt, hedgePermit, cancelled);
+        } catch (RuntimeException x) {
+            //
+            // the hedge could not be sent (e.g. the deadline has just passed)
+            // and its permit has been released: the first attempt is still
+            // the one to wait for
+            //
+            LOG.fine(() -> endpoint.tag + " hedge not sent: " + x.getMessage());
+            return await(first);
+        }
+
+        final CompletableFuture<HttpResponse<String>> winner = new CompletableFuture<>();
+        final AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<HttpResponse<String>> exchange: List.of(first, hedge)) {
+            exchange.whenComplete((response, x) -> {
+                if (x == null) {
+                    winner.complete(response);
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(x);
+                }
+            });
+        }
+        try {
+            final HttpResponse<String> response = await(winner);
+            if (response == hedge.getNow(null)) {
+                hedgingPolicy.won();
+            }
+            return response;
+        } finally {
+            cancelled.set(true); first.cancel(true); hedge.cancel(true);
+        }
+    }
+
+    /**
+     * Sends the given (already timed) request asynchronously; once done, the
+     * given permit is closed and, unless the exchange failed after
+     * {@code cancelled} was set, the listeners are notified. Depending on timing, a cancelled exchange of
+     * the JDK client fails with an {@code IOException} rather than a
+     * {@code CancellationException}, hence the explicit flag.
+     */
+    private CompletableFuture<HttpResponse<String>> sendAsync(
+        final ZefiroEndpoint endpoint, final HttpClient httpClient, final HttpRequest request,
+        final int attempt, final ZefiroBulkhead.Permit permit, final AtomicBoolean cancelled
+    ) {
+        calls.incrementAndGet();
+
+        final long requestBytes = Math.max(0, request.bodyPublisher()
+            .map(HttpRequest.BodyPublisher::contentLength).orElse(0L));
+        final ZefiroHttpCallEvent event = new ZefiroHttpCallEvent();
+        event.begin();
+        final long start = System.nanoTime();
+
+        final CompletableFuture<HttpResponse<String>> ret;
+        try {
+            ret = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        } catch (RuntimeException x) {
+            if (permit != null) {
+                permit.close();
+            }
+            throw x;
+        }
+        ret.whenComplete((response, x) -> {
+            if (permit != null) {
+                permit.close();
+            }
+            if (response != null) {
+                notify(event, request.uri().getHost(), new ZefiroCall(
+                    endpoint, response.statusCode(), requestBytes,
+                    responseBytes(response), System.nanoTime() - start, attempt, null
+                ));
+            } else if (!cancelled.get() && !(x instanceof CancellationException)) {
+                notify(event, request.uri().getHost(), new ZefiroCall(
+                    endpoint, -1, requestBytes, 0, System.nanoTime() - start, attempt, unwrap(x)
+                ));
+            }
+        });
+
+        return ret;
+    }
+
+    /**
+     * Takes a permit from the bulkhead and then from the concurrency limiter,
+     * whichever is given, waiting no longer than the deadline (if any).
+     *
+     * @return a permit releasing both or null if there are no limits
+     *
+     * @throws ZefiroTimeoutException if the deadline passed while waiting
+     */
+    private ZefiroBulkhead.Permit acquire(final ZefiroEndpoint endpoint) throws InterruptedException {
+        try {
+            final ZefiroBulkhead.Permit permit = (bulkhead != null)
+                                               ? bulkhead.acquire(username, priority, maxWait())
+                                               : null;
+            if (concurrencyLimiter == null) {
+                return permit;
+            }
+            try {
+                return both(permit, concurrencyLimiter.acquire(maxWait()));
+            } catch (InterruptedException | RuntimeException x) {
+                if (permit != null) {
+                    permit.close();
+                }
+                throw x;
+            }
+        } catch (ZefiroBusyException x) {
+            if (deadline != null && deadline.expired()) {
+                throw new ZefiroTimeoutException(endpoint, deadline.budget(), x);
+            }
+            throw x;
+        }
+    }
+
+    private long maxWait() {
+        return (deadline != null) ? Math.max(0, deadline.remaining()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * The given request with the time left to the deadline (if any) as
+     * timeout.
+     *
+     * @throws ZefiroTimeoutException if the deadline has passed, after closing the given permit (if any)
+     */
+    private HttpRequest timed(
+        final ZefiroEndpoint endpoint, final HttpRequest request, final ZefiroBulkhead.Permit permit
+    ) {
+        if (deadline == null) {
+            return request;
+        }
+        final long remaining = deadline.remaining();
+        if (remaining <= 0) {
+            if (permit != null) {
+                permit.close();
+            }
+            throw new ZefiroTimeoutException(endpoint, deadline.budget(), null);
+        }
+        return HttpRequest.newBuilder(request, (name, value) -> true).timeout(Duration.ofNanos(remaining)).build();
+    }
+
+    /**
+     * Whether the given failure is an exchange cut by the deadline; a connect
+     * timeout is, only if the deadline has passed (otherwise it is the HTTP
+     * client's own connect timeout).
+     */
+    private boolean deadlineExceeded(final Throwable x) {
+        return deadline != null
+            && x instanceof HttpTimeoutException
+            && (!(x instanceof HttpConnectTimeoutException) || deadline.expired());
+    }
+
+    /**
+     * Checks the circuit of the given host (if there is a circuit breaker),
+     * closing the given permit if it is open. It is called after all the other
+     * permits have been taken and the deadline checked, so that a trial call
+     * of a half open circuit is always sent and its outcome recorded.
+     *
+     * @throws ZefiroCircuitOpenException if the circuit of the host is open
+     */
+    private void allow(final String host, final ZefiroBulkhead.Permit permit) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        try {
+            circuitBreaker.acquire(host);
+        } catch (RuntimeException x) {
+            if (permit != null) {
+                permit.close();
+            }
+            throw x;
+        }
+    }
+
+    /**
+     * Like {@link #acquire(ZefiroEndpoint)}, but without waiting.
+     *
+     * @return a permit releasing both, null if there are no limits or no permit is available
+     */
+    private ZefiroBulkhead.Permit tryAcquire() throws InterruptedException {
+        final ZefiroBulkhead.Permit permit = (bulkhead != null) ? bulkhead.tryAcquire(username) : null;
+        if (concurrencyLimiter == null || (bulkhead != null && permit == null)) {
+            return permit;
+        }
+        final ZefiroBulkhead.Permit limit = concurrencyLimiter.tryAcquire();
+        if (limit == null) {
+            if (permit != null) {
+                permit.close();
+            }
+            return null;
+        }
+        return both(permit, limit);
+    }
+
+    private static ZefiroBulkhead.Permit both(final ZefiroBulkhead.Permit permit, final ZefiroBulkhead.Permit limit) {
+        if (permit == null) {
+            return limit;
+        }
+        return () -> {
+            limit.close();
+            permit.close();
+        };
+    }
+
+    private static HttpResponse<String> await(final CompletableFuture<HttpResponse<String>> exchange)
+    throws IOException, InterruptedException {
+        try {
+            return exchange.get();
+        } catch (ExecutionException x) {
+            throw failure(x.getCause());
+        }
+    }
+
+    /**
+     * The failure of an asynchronous exchange as it would have been thrown by
+     * a synchronous one.
+     */
+    private static IOException failure(final Throwable cause) {
+        final Throwable x = unwrap(cause);
+        if (x instanceof IOException io) {
+            return io;
+        }
+        if (x instanceof RuntimeException rt) {
+            throw rt;
+        }
+        if (x instanceof Error error) {
+            throw error;
+        }
+        return new IOException(x);
+    }
+
+    private static Throwable unwrap(final Throwable x) {
+        return ((x instanceof CompletionException || x instanceof ExecutionException) && x.getCause() != null)
+             ? x.getCause()
+             : x;
+    }
+
+    private void notify(final ZefiroHttpCallEvent event, final String host, final ZefiroCall call) {
+        if (hedgingPolicy != null && call.error() == null) {
+            hedgingPolicy.record(call.endpoint(), call.duration());
+        }
+        final boolean timedOut = deadlineExceeded(call.error());
+        if (circuitBreaker != null && !(call.error() instanceof InterruptedException)) {
+            circuitBreaker.record(host, !timedOut && (call.status() < 0 || call.status() >= 500), call.duration());
+        }
+        if (concurrencyLimiter != null && !timedOut && !(call.error() instanceof InterruptedException)) {
+            concurrencyLimiter.record(
+                call.duration(), call.status() < 0 || call.status() == 429 || call.status() >= 500
+            );
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.endpoint = call.endpoint().tag;
+            event.status = call.status();
+            event.requestBytes = call.requestBytes();
+            event.responseBytes = call.responseBytes();
+            event.attempt = call.attempt();
+            event.commit();
+        }
+        notify(call);
+    }
+
+    private void notify(final ZefiroCall call) {
+        for (ZefiroListener listener: listeners) {
+            try {
+                listener.onCall(call);
+            } catch (RuntimeException x) {
+                LOG.log(Level.WARNING, x, () -> "listener " + listener + " failed on " + call.endpoint());
+            }
+        }
+    }
+
+    /**
+     * The size of the response body as advertised by Content-Length or, if not
+     * available, the number of characters received.
+     */
+    private static long responseBytes(final HttpResponse<String> response) {
+        if (response.headers() != null) {
+            final var length = response.headers().firstValueAsLong("Content-Length");
+            if (length.isPresent()) {
+                return length.getAsLong();
+            }
+        }
+        return (response.body() == null) ? 0 : response.body().length();
+    }
+
+    private Optional<JsonNode> getFileMetadata(HttpClient httpClient, long folderId, String fileName) throws ZefiroException, IOException, InterruptedException {
+        final Optional<JsonNode> file = findFile(listFiles(httpClient, folderId), fileName);
+        if (file.isPresent()) {
+            // Found the file, now get its metadata
+            HttpRequest metadataRequest = HttpRequest.newBuilder()
+                    .uri(URI.create(apiUrl + "/sapi/media?action=get&origin=omh,dropbox&validationkey=" + this.validationKey))
+                    .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((this.username + ":" + this.password).getBytes()))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"data\":{\"ids\":[" + file.get().at("/id").asLong() + "],\"fields\":[\"url\",\"modificationdate\"]}}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> metadataResponse = exchange(ZefiroEndpoint.MEDIA_GET, httpClient, metadataRequest);
+
+            if (metadataResponse.statusCode() >= 400) {
+                throw new ZefiroException("Failed to get file metadata: " + metadataResponse.statusCode());
+            }
+            return Optional.of(jsonMapper.readTree(metadataResponse.body()).at("/data/media/0"));
         }
         return Optional.empty(); // File not found
     }
 
+    /**
+     * Looks up a file by name in a files listing as returned by
+     * {@code /sapi/media?action=get&folderid=...}.
+     *
+     * @param listing the listing JSON
+     * @param fileName the name of the file to look for
+     *
+     * @return the listing entry of the file, if any
+     *
+     * @throws IOException if the listing is not valid JSON
+     */
+    Optional<JsonNode> findFile(final String listing, final String fileName) throws IOException {
+        for (JsonNode file: jsonMapper.readTree(listing).at("/data/media")) {
+            if (fileName.equals(file.at("/name").asText())) {
+                return Optional.of(file);
+            }
+        }
+        return Optional.empty();
+    }
+
     private long findFolderId(final HttpClient httpClient, final String[] pathParts)
     throws IOException, InterruptedException {
         long folderId = 0;
@@ -345,9 +980,7 @@ public class ZefiroClient {
                 .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((this.username + ":" + this.password).getBytes()))
                 .GET()
                 .build();
-        HttpResponse<String> response = httpClient.send(
-            request, HttpResponse.BodyHandlers.ofString()
-        );
+        HttpResponse<String> response = exchange(ZefiroEndpoint.ROOT_FOLDER, httpClient, request);
 
         if (response.statusCode() >= 400) {
             throw new ZefiroException("Failed to get root folder: " + response.statusCode());
@@ -393,7 +1026,7 @@ public class ZefiroClient {
                 .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((this.username + ":" + this.password).getBytes()))
                 .GET()
                 .build();
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = exchange(ZefiroEndpoint.FOLDER_LIST, httpClient, request);
 
         if (response.statusCode() >= 400) {
             throw new ZefiroException("Failed to list folder content: " + response.statusCode());
@@ -418,7 +1051,7 @@ public class ZefiroClient {
                 .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((this.username + ":" + this.password).getBytes()))
                 .POST(HttpRequest.BodyPublishers.ofString("{\"data\":{\"fields\":[\"name\",\"modificationdate\",\"size\",\"thumbnails\",\"videometadata\",\"audiometadata\",\"favorite\",\"shared\",\"etag\"]}}"))
                 .build();
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> response = exchange(ZefiroEndpoint.MEDIA_LIST, httpClient, request);
 
         if (response.statusCode() >= 400) {
             throw new ZefiroException("Failed to list folder content: " + response.statusCode());
@@ -446,7 +1079,7 @@ public class ZefiroClient {
         return jsonData.toString();
     }
 
-    private Multipart buildMultipartBody(
+    Multipart buildMultipartBody(
         final String fileName, final String content,
         final long folderId, final long fileId,
         final Date lastUpdate
@@ -478,7 +1111,7 @@ public class ZefiroClient {
         return new Multipart(contentType, bodyBuilder.toString().getBytes());
     }
 
-    private record Multipart(String contentType, byte[] content) {
+    record Multipart(String contentType, byte[] content) {
         @Override
         public String toString() {
             final StringBuilder sb = new StringBuilder();
@@ -0,0 +1,267 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of calls to Zefiro in flight to a limit that adapts to
+ * the latency Zefiro is currently showing, so that more calls are let through
+ * while Zefiro keeps up and fewer as soon as it slows down, instead of relying
+ * on a fixed number that is either too conservative or too generous.
+ *
+ * <p>The limit follows the TCP Vegas algorithm: the lowest round trip time
+ * (RTT) observed approximates the RTT of a call that does not queue anywhere,
+ * so that {@code limit * (1 - minRtt / rtt)} estimates how many of the calls
+ * in flight are queued in Zefiro rather than served. The limit grows while
+ * that queue is small (by {@code 3 * log10(limit)} while there is none) and
+ * shrinks by {@code log10(limit)} once it is over {@code 6 * log10(limit)};
+ * it does not grow while less than half of it is in use (the load, not
+ * Zefiro, is the bottleneck). Calls that fail with a network error, a 5xx or
+ * a 429 are a sign of overload and shrink the limit multiplicatively. Every
+ * {@code 30 * limit} calls the lowest RTT is set again to the lowest of the
+ * calls in the meantime, so that the limit follows permanent changes of
+ * Zefiro's latency.
+ *
+ * <p>A caller that can not get a permit within {@code maxWait} gets a
+ * {@link ZefiroBusyException}. The limit is always in
+ * {@code [minLimit, maxLimit]}.
+ */
+public class ZefiroConcurrencyLimiter {
+
+    private static final Logger LOG = Logger.getLogger(ZefiroConcurrencyLimiter.class.getName());
+
+    private static final int PROBE_MULTIPLIER = 30;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private long minRtt = Long.MAX_VALUE;
+    private long probeMinRtt = Long.MAX_VALUE;
+    private long probeCountdown;
+    private int inFlight;
+    private long rejected;
+
+    public ZefiroConcurrencyLimiter(
+        final int initialLimit, final int minLimit, final int maxLimit, final Duration maxWait
+    ) {
+        if (minLimit <= 0) {
+            throw new IllegalArgumentException("minLimit must be greater than zero");
+        }
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("maxLimit can not be lower than minLimit");
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit must be in [minLimit, maxLimit]");
+        }
+        if (maxWait == null || maxWait.isNegative()) {
+            throw new IllegalArgumentException("maxWait can not be null or negative");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.limit = initialLimit;
+        this.probeCountdown = PROBE_MULTIPLIER * initialLimit;
+    }
+
+    /**
+     * Waits up to {@code maxWait} for the calls in flight to go below the
+     * current limit.
+     *
+     * @return the permit to close once the call is done
+     *
+     * @throws ZefiroBusyException if no permit became available in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ZefiroBulkhead.Permit acquire() throws InterruptedException {
+        return acquire(maxWaitNanos);
+    }
+
+    /**
+     * Like {@link #acquire()}, but waiting no longer than the given time if
+     * shorter than {@code maxWait} (e.g. the time left to a {@link ZefiroDeadline}).
+     */
+    ZefiroBulkhead.Permit acquire(final long maxWait) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long wait = Math.min(maxWait, maxWaitNanos);
+            while (inFlight >= (int)limit) {
+                if (wait <= 0) {
+                    ++rejected;
+                    throw new ZefiroBusyException("Zefiro concurrency limit reached (" + (int)limit + ")");
+                }
+                wait = available.awaitNanos(wait);
+            }
+            ++inFlight;
+        } finally {
+            lock.unlock();
+        }
+
+        return this::release;
+    }
+
+    /**
+     * Gets a permit only if the limit is not reached right away (e.g. for
+     * optional calls like hedges). Unlike {@link #acquire()}, failing to get a
+     * permit is not counted as a rejection.
+     *
+     * @return the permit to close once the call is done or null if the limit is reached
+     */
+    public ZefiroBulkhead.Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int)limit || lock.hasWaiters(available)) {
+                return null;
+            }
+            ++inFlight;
+        } finally {
+            lock.unlock();
+        }
+
+        return this::release;
+    }
+
+    /**
+     * Updates the limit with the outcome of a call.
+     *
+     * @param rtt the round trip time of the call in nanoseconds
+     * @param dropped true if the call failed in a way that signals overload
+     */
+    public void record(final long rtt, final boolean dropped) {
+        lock.lock();
+        try {
+            final double oldLimit = limit;
+            if (dropped) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+            } else if (rtt > 0) {
+                update(rtt);
+            }
+            if ((int)limit > (int)oldLimit) {
+                available.signalAll();
+            }
+            if (LOG.isLoggable(Level.FINE) && (int)limit != (int)oldLimit) {
+                LOG.fine(String.format("concurrency limit %d -> %d", (int)oldLimit, (int)limit));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int)limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls currently in flight
+     */
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of callers currently waiting for a permit
+     */
+    public int waiting() {
+        lock.lock();
+        try {
+            return lock.getWaitQueueLength(available);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of calls rejected so far because the limit was reached for longer than {@code maxWait}
+     */
+    public long rejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void release() {
+        lock.lock();
+        try {
+            --inFlight;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    private void update(final long rtt) {
+        probeMinRtt = Math.min(probeMinRtt, rtt);
+        if (--probeCountdown <= 0) {
+            minRtt = probeMinRtt;
+            probeMinRtt = Long.MAX_VALUE;
+            probeCountdown = PROBE_MULTIPLIER * (long)limit;
+        } else {
+            minRtt = Math.min(minRtt, rtt);
+        }
+
+        if (inFlight * 2 < limit) {
+            return; // not enough load to tell
+        }
+
+        final double log = Math.max(1, Math.log10(limit));
+        final double queue = limit * (1 - (double)minRtt / rtt);
+        if (queue <= log) {
+            limit += 3 * log;
+        } else if (queue < 3 * log) {
+            limit += log;
+        } else if (queue > 6 * log) {
+            limit -= log;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+}
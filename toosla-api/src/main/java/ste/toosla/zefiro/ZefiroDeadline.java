@@ -0,0 +1,71 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which all the Zefiro calls made to serve a request must
+ * be completed. A {@link ZefiroClient} given a deadline sets the time left as
+ * timeout of each HTTP exchange, does not wait for permits or retries past it
+ * and fails with {@link ZefiroTimeoutException} once it has passed, so that
+ * each step of a sequence of calls gets only what the previous ones left.
+ */
+public final class ZefiroDeadline {
+
+    private final long budget;
+    private final long expiration;
+
+    private ZefiroDeadline(final long budget) {
+        this.budget = budget;
+        this.expiration = System.nanoTime() + budget;
+    }
+
+    /**
+     * @param budget the time from now to the deadline - NOT NULL, greater than zero
+     *
+     * @return a deadline expiring after the given time from now
+     */
+    public static ZefiroDeadline in(final Duration budget) {
+        if (budget == null || budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("budget can not be null, zero or negative");
+        }
+        return new ZefiroDeadline(budget.toNanos());
+    }
+
+    /**
+     * @return the whole time given to the calls
+     */
+    public Duration budget() {
+        return Duration.ofNanos(budget);
+    }
+
+    /**
+     * @return the nanoseconds left to the deadline, zero or negative if it has passed
+     */
+    public long remaining() {
+        return expiration - System.nanoTime();
+    }
+
+    public boolean expired() {
+        return remaining() <= 0;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+/**
+ * The logical Zefiro endpoints {@link ZefiroClient} talks to. Each HTTP
+ * exchange is tagged with one of them so that timings, bytes and status codes
+ * can be tracked per endpoint.
+ */
+public enum ZefiroEndpoint {
+    LOGIN("login", false),          // POST /sapi/login?action=login
+    ROOT_FOLDER("root", true),      // GET  /sapi/media/folder/root?action=get
+    FOLDER_LIST("folders", true),   // GET  /sapi/media/folder?action=list
+    MEDIA_LIST("list", true),       // POST /sapi/media?action=get&folderid=...
+    MEDIA_GET("metadata", true),    // POST /sapi/media?action=get&origin=...
+    UPLOAD("upload", false),        // POST /sapi/upload?action=save
+    CONTENT("content", true);       // GET  <download url>
+
+    public final String tag;
+
+    /**
+     * Whether calling the endpoint more than once has the same effect as
+     * calling it once (i.e. it only reads), hence it can be safely retried
+     */
+    public final boolean idempotent;
+
+    ZefiroEndpoint(final String tag, final boolean idempotent) {
+        this.tag = tag;
+        this.idempotent = idempotent;
+    }
+}
@@ -11,4 +11,12 @@ public class ZefiroException extends RuntimeException {
     public ZefiroException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    /**
+     * For exceptions that are part of the normal flow and do not need a stack
+     * trace, which is the most expensive part of creating an exception.
+     */
+    protected ZefiroException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
\ No newline at end of file
@@ -2,9 +2,13 @@ package ste.toosla.zefiro;
 
 /**
  * An exception thrown when a file or path is not found in Zefiro.
+ *
+ * <p>Missing files are an expected outcome (e.g. clients polling for a file
+ * not created yet), hence this exception has no stack trace and can be cached
+ * and thrown again.
  */
 public class ZefiroFileNotFoundException extends ZefiroException {
     public ZefiroFileNotFoundException(String message) {
-        super(message);
+        super(message, false);
     }
 }
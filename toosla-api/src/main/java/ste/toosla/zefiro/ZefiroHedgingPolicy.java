@@ -0,0 +1,201 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import ste.toosla.util.metrics.Histogram;
+
+/**
+ * Decides whether and when a slow exchange with Zefiro is hedged, i.e. sent a
+ * second time while the first attempt is still in flight, the first response
+ * winning. Like {@link ZefiroRetryPolicy}, it is meant to be shared by all
+ * clients (see {@link ZefiroClient#withHedgingPolicy(ZefiroHedgingPolicy)}), so
+ * that the latencies it learns from and its hedge budget are global.
+ *
+ * <p>Only exchanges with idempotent endpoints (see {@link ZefiroEndpoint#idempotent})
+ * are hedged. The hedge delay is adaptive: for each endpoint, it is the given
+ * percentile of the latencies of the last {@code samples} responses, but not
+ * lower than {@code minDelay}; no exchange with an endpoint is hedged until
+ * its first {@code samples} responses have been observed.
+ *
+ * <p>Hedges add load to Zefiro exactly when it is slow, therefore they are
+ * limited by a budget: each exchange adds {@code maxHedgeRatio} tokens (up to
+ * {@value #MAX_TOKENS}) and each hedge takes one, so that at most that share
+ * of exchanges is hedged. A {@code maxHedgeRatio} of zero disables hedging.
+ */
+public class ZefiroHedgingPolicy {
+
+    public static final int DEFAULT_SAMPLES = 100;
+
+    private static final long MILLI_TOKENS = 1000;
+    private static final long MAX_TOKENS = 10;
+
+    private final double percentile;
+    private final long minDelayNanos;
+    private final int samples;
+    private final long depositMilliTokens;
+
+    private long balanceMilliTokens = 0;
+
+    private final Map<ZefiroEndpoint, Window> windows = new EnumMap<>(ZefiroEndpoint.class);
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+
+    /**
+     * @param percentile the percentile of the observed latencies after which an exchange is hedged, in (0, 100]
+     * @param minDelay the min time to wait for a response before hedging - NOT NULL
+     * @param maxHedgeRatio the max share of exchanges that can be hedged, in [0, 1]
+     */
+    public ZefiroHedgingPolicy(final double percentile, final Duration minDelay, final double maxHedgeRatio) {
+        this(percentile, minDelay, maxHedgeRatio, DEFAULT_SAMPLES);
+    }
+
+    /**
+     * @param percentile the percentile of the observed latencies after which an exchange is hedged, in (0, 100]
+     * @param minDelay the min time to wait for a response before hedging - NOT NULL
+     * @param maxHedgeRatio the max share of exchanges that can be hedged, in [0, 1]
+     * @param samples the number of responses the hedge delay of an endpoint is computed on
+     */
+    public ZefiroHedgingPolicy(
+        final double percentile, final Duration minDelay, final double maxHedgeRatio, final int samples
+    ) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]");
+        }
+        if (minDelay == null || minDelay.isNegative()) {
+            throw new IllegalArgumentException("minDelay can not be null or negative");
+        }
+        if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("maxHedgeRatio must be in [0, 1]");
+        }
+        if (samples <= 0) {
+            throw new IllegalArgumentException("samples must be greater than zero");
+        }
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.depositMilliTokens = Math.round(maxHedgeRatio * MILLI_TOKENS);
+        this.samples = samples;
+
+        for (ZefiroEndpoint endpoint: ZefiroEndpoint.values()) {
+            if (endpoint.idempotent) {
+                windows.put(endpoint, new Window());
+            }
+        }
+    }
+
+    /**
+     * Accounts for a new exchange in the hedge budget.
+     */
+    public synchronized void onExchange() {
+        balanceMilliTokens = Math.min(MAX_TOKENS * MILLI_TOKENS, balanceMilliTokens + depositMilliTokens);
+    }
+
+    /**
+     * @param endpoint the endpoint called - NOT NULL
+     *
+     * @return how long to wait for a response before hedging an exchange with
+     *         the given endpoint, in nanoseconds, or -1 if it must not be hedged
+     */
+    public long delay(final ZefiroEndpoint endpoint) {
+        if (depositMilliTokens == 0) {
+            return -1;
+        }
+        final Window window = windows.get(endpoint);
+        return (window == null) ? -1 : window.delay;
+    }
+
+    /**
+     * Records the latency of a response received from the given endpoint.
+     *
+     * @param endpoint the endpoint called - NOT NULL
+     * @param latency the time it took to get the response, in nanoseconds
+     */
+    public void record(final ZefiroEndpoint endpoint, final long latency) {
+        final Window window = windows.get(endpoint);
+        if (window != null) {
+            window.record(latency);
+        }
+    }
+
+    /**
+     * Takes a hedge from the budget, if available.
+     *
+     * @return true if the exchange can be hedged, false otherwise
+     */
+    public synchronized boolean tryHedge() {
+        if (balanceMilliTokens < MILLI_TOKENS) {
+            return false;
+        }
+        balanceMilliTokens -= MILLI_TOKENS;
+        hedges.increment();
+
+        return true;
+    }
+
+    /**
+     * Accounts for a hedge that responded before the exchange it hedged.
+     */
+    public void won() {
+        wins.increment();
+    }
+
+    /**
+     * @return the number of hedges issued so far
+     */
+    public long hedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return the number of hedges that responded first so far
+     */
+    public long wins() {
+        return wins.sum();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * The latencies of an endpoint; once {@code samples} latencies are
+     * recorded, the hedge delay is updated and a new window starts. Latencies
+     * recorded concurrently with the update may be lost, which is fine for an
+     * estimate.
+     */
+    private final class Window {
+        private final Histogram latencies = new Histogram();
+        private volatile long delay = -1;
+
+        private void record(final long latency) {
+            latencies.record(latency);
+            if (latencies.count() >= samples) {
+                synchronized (this) {
+                    if (latencies.count() >= samples) {
+                        delay = Math.max(minDelayNanos, latencies.percentile(percentile));
+                        latencies.reset();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tells whether this node is saturated by its Zefiro calls, so that it can
+ * report itself not ready to the load balancer and shed low priority requests
+ * before they queue up, instead of letting latency grow without bound.
+ *
+ * <p>The node is saturated when more than {@code maxWaiting} calls are waiting
+ * for a permit of the {@link ZefiroBulkhead} or of the
+ * {@link ZefiroConcurrencyLimiter}, or when the recent latency of Zefiro calls
+ * is over {@code maxLatency}. The recent latency is a moving average of the
+ * calls notified to this listener (each call weighs 1/8) and is not
+ * considered once no call completed for {@code 10 * maxLatency}, so that a
+ * node taken out of rotation because of a latency spike can get back in.
+ *
+ * <p>The node is ready when it is not saturated. Open circuits of the
+ * {@link ZefiroCircuitBreaker} are reported in {@link #status()} but do not
+ * make the node not ready: Zefiro is shared by all nodes, so taking a node out
+ * of rotation would not help, and it would take all of them out at once
+ * (including the stale reads they can serve while a circuit is open). Whether
+ * the node is alive is a different matter: a saturated node must not be
+ * restarted.
+ */
+public class ZefiroLoadMonitor implements ZefiroListener {
+
+    private final ZefiroBulkhead bulkhead;
+    private final ZefiroConcurrencyLimiter concurrencyLimiter;
+    private final ZefiroCircuitBreaker circuitBreaker;
+    private final int maxWaiting;
+    private final long maxLatency;
+
+    private final AtomicLong latency = new AtomicLong();
+    private volatile long lastCall = System.nanoTime() - Long.MAX_VALUE / 2;
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * @param bulkhead the bulkhead of the Zefiro calls - NOT NULL
+     * @param concurrencyLimiter the concurrency limiter of the Zefiro calls - NOT NULL
+     * @param circuitBreaker the circuit breaker of the Zefiro calls - NOT NULL
+     * @param maxWaiting the max number of calls waiting for a permit before the node is saturated; zero or greater
+     * @param maxLatency the recent latency of Zefiro calls over which the node is saturated - NOT NULL, greater than zero
+     */
+    public ZefiroLoadMonitor(
+        final ZefiroBulkhead bulkhead, final ZefiroConcurrencyLimiter concurrencyLimiter,
+        final ZefiroCircuitBreaker circuitBreaker, final int maxWaiting, final Duration maxLatency
+    ) {
+        if (bulkhead == null || concurrencyLimiter == null || circuitBreaker == null) {
+            throw new IllegalArgumentException("bulkhead, concurrencyLimiter and circuitBreaker can not be null");
+        }
+        if (maxWaiting < 0) {
+            throw new IllegalArgumentException("maxWaiting can not be negative");
+        }
+        if (maxLatency == null || maxLatency.isNegative() || maxLatency.isZero()) {
+            throw new IllegalArgumentException("maxLatency can not be null, zero or negative");
+        }
+        this.bulkhead = bulkhead;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.maxWaiting = maxWaiting;
+        this.maxLatency = maxLatency.toNanos();
+    }
+
+    @Override
+    public void onCall(final ZefiroCall call) {
+        final long now = System.nanoTime();
+        final boolean stale = (now - lastCall) > 10 * maxLatency;
+        latency.getAndUpdate((average) -> (stale || average == 0) ? call.duration() : average + (call.duration() - average) / 8);
+        lastCall = now;
+    }
+
+    /**
+     * @return the recent latency of Zefiro calls in nanoseconds, zero if no call completed recently
+     */
+    public long latency() {
+        return ((System.nanoTime() - lastCall) > 10 * maxLatency) ? 0 : latency.get();
+    }
+
+    /**
+     * @return the number of calls waiting for a permit
+     */
+    public int waiting() {
+        return bulkhead.waiting() + concurrencyLimiter.waiting();
+    }
+
+    public boolean saturated() {
+        return waiting() > maxWaiting || latency() > maxLatency;
+    }
+
+    public boolean ready() {
+        return !saturated();
+    }
+
+    /**
+     * Tells whether a request of the given priority must be rejected right
+     * away: {@link ZefiroBulkhead.Priority#BACKGROUND} requests are while the
+     * node is saturated; interactive ones are not and wait for a permit as
+     * usual.
+     *
+     * @param priority the priority of the request - NOT NULL
+     *
+     * @return true if the request must be rejected
+     */
+    public boolean shed(final ZefiroBulkhead.Priority priority) {
+        if (priority == ZefiroBulkhead.Priority.BACKGROUND && saturated()) {
+            shed.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of requests shed so far
+     */
+    public long shed() {
+        return shed.sum();
+    }
+
+    /**
+     * @return the signals readiness is based on, for reporting
+     */
+    public Map<String, Object> status() {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("inFlight", bulkhead.inFlight());
+        ret.put("maxCalls", bulkhead.maxCalls());
+        ret.put("concurrencyLimit", concurrencyLimiter.limit());
+        ret.put("waiting", waiting());
+        ret.put("latency", TimeUnit.NANOSECONDS.toMillis(latency()));
+        ret.put("circuits", circuitBreaker.states());
+
+        return ret;
+    }
+}
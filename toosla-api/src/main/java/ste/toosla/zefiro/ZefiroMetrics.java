@@ -0,0 +1,65 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import static ste.toosla.util.metrics.MetricsRegistry.name;
+import ste.toosla.util.metrics.MetricsRegistry;
+
+/**
+ * A {@link ZefiroListener} recording upstream exchanges into a
+ * {@link MetricsRegistry}. For each endpoint it tracks:
+ *
+ * <ul>
+ *   <li>{@code zefiro.latency{endpoint}}: exchange duration</li>
+ *   <li>{@code zefiro.calls{endpoint,status}}: number of exchanges by status</li>
+ *   <li>{@code zefiro.bytes.sent{endpoint}} and {@code zefiro.bytes.received{endpoint}}: body sizes</li>
+ *   <li>{@code zefiro.errors{endpoint}}: exchanges failed with an I/O error</li>
+ *   <li>{@code zefiro.retries{endpoint}}: exchanges that were a retry of a previous attempt</li>
+ * </ul>
+ */
+public class ZefiroMetrics implements ZefiroListener {
+
+    private final MetricsRegistry metrics;
+
+    public ZefiroMetrics(final MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public MetricsRegistry registry() {
+        return metrics;
+    }
+
+    @Override
+    public void onCall(final ZefiroCall call) {
+        final String endpoint = call.endpoint().tag;
+
+        metrics.timer(name("zefiro.latency", "endpoint", endpoint)).record(call.duration());
+        metrics.counter(name("zefiro.calls", "endpoint", endpoint, "status", String.valueOf(call.status()))).increment();
+        metrics.distribution(name("zefiro.bytes.sent", "endpoint", endpoint)).record(call.requestBytes());
+        metrics.distribution(name("zefiro.bytes.received", "endpoint", endpoint)).record(call.responseBytes());
+        if (call.error() != null) {
+            metrics.counter(name("zefiro.errors", "endpoint", endpoint)).increment();
+        }
+        if (call.attempt() > 1) {
+            metrics.counter(name("zefiro.retries", "endpoint", endpoint)).increment();
+        }
+    }
+}
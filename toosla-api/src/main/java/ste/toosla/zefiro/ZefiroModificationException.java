@@ -30,4 +30,9 @@ public class ZefiroModificationException extends ZefiroException {
         super("Modification conflict detected");
         this.lastModified = Optional.ofNullable(lastModified); // Use Optional.ofNullable to handle null Date input
     }
+
+    public ZefiroModificationException(String message, Date lastModified) {
+        super(message);
+        this.lastModified = Optional.ofNullable(lastModified);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether and when a failed exchange with Zefiro is retried. It is
+ * meant to be shared by all clients (see {@link ZefiroClient#withRetryPolicy(ZefiroRetryPolicy)}),
+ * so that its retry budget is global.
+ *
+ * <p>Exchanges with idempotent endpoints (see {@link ZefiroEndpoint#idempotent})
+ * are retried on I/O errors and on {@code 429}, {@code 500}, {@code 502},
+ * {@code 503} and {@code 504}. Uploads are retried only when they are known
+ * not to have reached Zefiro: the connection could not be established or the
+ * call was throttled ({@code 429}).
+ *
+ * <p>Retries wait for an exponential backoff with full jitter (a random delay
+ * between zero and {@code baseDelay * 2^(attempt-1)}, capped to
+ * {@code maxDelay}) or, if given, for the response's {@code Retry-After}; a
+ * {@code Retry-After} longer than {@code maxDelay} is not waited for and the
+ * failure is returned as it is.
+ *
+ * <p>To avoid retry storms when Zefiro is down, retries are limited by a
+ * budget: each exchange adds {@code budgetRatio} tokens, each retry takes
+ * one and, so that retries are possible with low traffic too, the budget is
+ * refilled with {@code minRetriesPerSecond} tokens per second. The budget
+ * starts full and holds at most {@code max(10, minRetriesPerSecond)} tokens,
+ * so that a burst of failures can not use more than that.
+ */
+public class ZefiroRetryPolicy {
+
+    private static final long MILLI_TOKENS = 1000;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long depositMilliTokens;
+    private final double minRetriesPerSecond;
+    private final long capMilliTokens;
+
+    private long balanceMilliTokens;
+    private long lastRefill = System.nanoTime();
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * @param maxAttempts the max number of attempts of each exchange, the first one included (1 disables retries)
+     * @param baseDelay the backoff before the first retry - NOT NULL
+     * @param maxDelay the max backoff and the max {@code Retry-After} waited for - NOT NULL
+     * @param budgetRatio the share of exchanges that can be retried
+     * @param minRetriesPerSecond the retries always allowed per second, regardless of the traffic
+     */
+    public ZefiroRetryPolicy(
+        final int maxAttempts, final Duration baseDelay, final Duration maxDelay,
+        final double budgetRatio, final double minRetriesPerSecond
+    ) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be greater than zero");
+        }
+        if (baseDelay == null || baseDelay.isNegative()) {
+            throw new IllegalArgumentException("baseDelay can not be null or negative");
+        }
+        if (maxDelay == null || maxDelay.compareTo(baseDelay) < 0) {
+            throw new IllegalArgumentException("maxDelay can not be null or lower than baseDelay");
+        }
+        if (budgetRatio < 0 || minRetriesPerSecond < 0) {
+            throw new IllegalArgumentException("budgetRatio and minRetriesPerSecond can not be negative");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+        this.depositMilliTokens = Math.round(budgetRatio * MILLI_TOKENS);
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.capMilliTokens = Math.max(10, Math.round(minRetriesPerSecond)) * MILLI_TOKENS;
+        this.balanceMilliTokens = capMilliTokens;
+    }
+
+    /**
+     * Accounts for a new exchange (not a retry) in the retry budget.
+     */
+    public synchronized void onExchange() {
+        balanceMilliTokens = Math.min(capMilliTokens, balanceMilliTokens + depositMilliTokens);
+    }
+
+    /**
+     * Tells whether the given attempt should be retried and after how long.
+     * If so, the retry is taken from the budget.
+     *
+     * @param endpoint the endpoint called - NOT NULL
+     * @param attempt the attempt that just completed, starting from 1
+     * @param response the response received, if any
+     * @param error the I/O error that prevented a response, if any
+     *
+     * @return the milliseconds to wait before the next attempt or -1 if the
+     *         outcome must be returned as it is
+     */
+    public long backoff(
+        final ZefiroEndpoint endpoint, final int attempt,
+        final HttpResponse<String> response, final IOException error
+    ) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+        if (error != null) {
+            if (!retryable(endpoint, error)) {
+                return -1;
+            }
+        } else if (response == null || !retryable(endpoint, response.statusCode())) {
+            return -1;
+        }
+
+        long delay = retryAfter(response);
+        if (delay > maxDelayMillis) {
+            return -1;
+        }
+        if (delay < 0) {
+            final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+            delay = (ceiling <= 0) ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+        }
+
+        if (!withdraw()) {
+            exhausted.increment();
+            return -1;
+        }
+        retries.increment();
+
+        return delay;
+    }
+
+    /**
+     * @return the number of retries allowed so far
+     */
+    public long retries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of retries denied so far because the budget was exhausted
+     */
+    public long exhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * @return the retries currently available in the budget
+     */
+    public synchronized double budget() {
+        refill();
+        return (double)balanceMilliTokens / MILLI_TOKENS;
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static boolean retryable(final ZefiroEndpoint endpoint, final IOException error) {
+        if (endpoint.idempotent) {
+            return true;
+        }
+        //
+        // the request was not sent at all
+        //
+        return (error instanceof ConnectException) || (error instanceof HttpConnectTimeoutException);
+    }
+
+    private static boolean retryable(final ZefiroEndpoint endpoint, final int status) {
+        if (status == 429) {
+            return true; // throttled, not processed
+        }
+        return endpoint.idempotent
+            && (status == 500 || status == 502 || status == 503 || status == 504);
+    }
+
+    /**
+     * @return the delay requested by the response's {@code Retry-After} in
+     *         milliseconds or -1 if none (or not valid)
+     */
+    static long retryAfter(final HttpResponse<String> response) {
+        if (response == null || response.headers() == null) {
+            return -1;
+        }
+        final String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException x) {
+            try {
+                final ZonedDateTime when = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, when.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException y) {
+                return -1;
+            }
+        }
+    }
+
+    private synchronized boolean withdraw() {
+        refill();
+        if (balanceMilliTokens < MILLI_TOKENS) {
+            return false;
+        }
+        balanceMilliTokens -= MILLI_TOKENS;
+        return true;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        final long refill = Math.round((now - lastRefill) * minRetriesPerSecond * MILLI_TOKENS / 1e9);
+        if (refill > 0) {
+            balanceMilliTokens = Math.min(capMilliTokens, balanceMilliTokens + refill);
+            lastRefill = now;
+        }
+    }
+}
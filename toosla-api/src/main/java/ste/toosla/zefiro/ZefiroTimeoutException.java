@@ -0,0 +1,38 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when the {@link ZefiroDeadline} of a client passes before
+ * its calls are completed; {@code endpoint} is the call that was in progress
+ * (or waiting to be made) at that time.
+ */
+public class ZefiroTimeoutException extends ZefiroException {
+
+    public final ZefiroEndpoint endpoint;
+
+    public ZefiroTimeoutException(final ZefiroEndpoint endpoint, final Duration budget, final Throwable cause) {
+        super("Zefiro calls did not complete within " + budget.toMillis() + "ms (" + endpoint.tag + ")", cause);
+        this.endpoint = endpoint;
+    }
+}
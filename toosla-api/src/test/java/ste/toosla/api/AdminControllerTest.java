@@ -0,0 +1,153 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ *
+ */
+@SpringBootTest(properties = {
+    "spring.security.user.name=admin",
+    "spring.security.user.password=secret",
+    "spring.security.user.roles=ADMIN"
+})
+@AutoConfigureMockMvc
+public class AdminControllerTest {
+
+    private static final String ADMIN = basic("admin", "secret");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StorageRateLimiter rateLimiter;
+
+    @Test
+    public void jfr_requires_admin() throws Exception {
+        mockMvc.perform(get("/api/admin/jfr").param("duration", "1"))
+            .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/admin/jfr").param("duration", "1")
+                .header("Authorization", basic("admin", "wrong")))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void jfr_rejects_invalid_durations() throws Exception {
+        for (String duration: new String[] {"0", "-1", String.valueOf(AdminController.MAX_RECORDING_SECONDS + 1)}) {
+            mockMvc.perform(get("/api/admin/jfr").param("duration", duration).header("Authorization", ADMIN))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid duration"));
+        }
+    }
+
+    @Test
+    public void jfr_streams_a_time_boxed_recording() throws Exception {
+        final MvcResult result = mockMvc.perform(
+                get("/api/admin/jfr").param("duration", "1").header("Authorization", ADMIN)
+            )
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        //
+        // one recording at a time
+        //
+        mockMvc.perform(get("/api/admin/jfr").param("duration", "1").header("Authorization", ADMIN))
+            .andExpect(status().isConflict());
+
+        final byte[] jfr = mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Content-Type", "application/octet-stream"))
+            .andExpect(header().string("Content-Disposition", "attachment; filename=\"toosla.jfr\""))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        then(new String(jfr, 0, 4, StandardCharsets.ISO_8859_1)).isEqualTo("FLR\0");
+    }
+
+    @Test
+    public void rate_limits_require_admin() throws Exception {
+        mockMvc.perform(get("/api/admin/rate-limits"))
+            .andExpect(status().isUnauthorized());
+        mockMvc.perform(put("/api/admin/rate-limits/read").param("rate", "1").param("burst", "1"))
+            .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void rate_limits_can_be_read_and_changed() throws Exception {
+        final StorageRateLimiter.Limit read = rateLimiter.limit(StorageRateLimiter.Operation.READ);
+        try {
+            mockMvc.perform(get("/api/admin/rate-limits").header("Authorization", ADMIN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.login.rate").value(1.0))
+                .andExpect(jsonPath("$.login.burst").value(10))
+                .andExpect(jsonPath("$.read.rate").value(50.0))
+                .andExpect(jsonPath("$.write.burst").value(50));
+
+            mockMvc.perform(put("/api/admin/rate-limits/read")
+                    .param("rate", "5.5").param("burst", "7").header("Authorization", ADMIN))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rate").value(5.5))
+                .andExpect(jsonPath("$.burst").value(7));
+
+            then(rateLimiter.limit(StorageRateLimiter.Operation.READ)).isEqualTo(new StorageRateLimiter.Limit(5.5, 7));
+        } finally {
+            rateLimiter.limit(StorageRateLimiter.Operation.READ, read);
+        }
+    }
+
+    @Test
+    public void rate_limits_rejects_invalid_limits() throws Exception {
+        mockMvc.perform(put("/api/admin/rate-limits/delete")
+                .param("rate", "1").param("burst", "1").header("Authorization", ADMIN))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("Invalid rate limit"))
+            .andExpect(jsonPath("$.details").value("operation must be one of [login, read, write]"));
+        mockMvc.perform(put("/api/admin/rate-limits/read")
+                .param("rate", "-1").param("burst", "1").header("Authorization", ADMIN))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.details").value("rate must be zero (no limit) or greater"));
+        mockMvc.perform(put("/api/admin/rate-limits/read")
+                .param("rate", "1").param("burst", "0").header("Authorization", ADMIN))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.details").value("burst must be greater than zero"));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static String basic(final String user, final String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+}
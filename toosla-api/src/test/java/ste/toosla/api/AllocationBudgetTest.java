@@ -0,0 +1,215 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpClient;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import static org.assertj.core.api.Assumptions.assumeThat;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroUploadResponse;
+import static ste.toosla.zefiro.ZefiroClientTest.FIXED_LATER_DATE;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_ACCOUNT;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_SECRET;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_VALIDATION_KEY;
+import static ste.toosla.zefiro.ZefiroClientTest.setUpFileStubs;
+import ste.xtest.net.http.HttpClientStubber;
+import ste.xtest.net.http.StubHttpClient.StubHttpResponse;
+import ste.xtest.net.http.URIMatcher;
+
+/**
+ * Allocation budgets of the storage request paths: bytes allocated per
+ * {@code /api/storage/read} and {@code /api/storage/write} through MockMvc and
+ * per {@link ZefiroClient#download(String)} and {@link ZefiroClient#upload(String, String)},
+ * with Zefiro stubbed by {@link HttpClientStubber}. Allocations are measured
+ * with {@code ThreadMXBean} on the calling thread, which is where MockMvc and
+ * the stubbed client do all the work.
+ *
+ * <p>Each operation is warmed up and then measured in a few rounds; the
+ * lowest per operation mean is compared with the budget in
+ * {@code allocation-budgets.properties}, so that one-off allocations (class
+ * loading, lazy caches, a JIT deoptimization) do not make the test flaky. A
+ * budget can be overridden with the system property
+ * {@code toosla.allocation.budget.<name>}. When an optimization lowers the
+ * measured value (it is printed), lower the budget too, so that the gain is
+ * kept.
+ */
+@SpringBootTest(
+    properties = {
+        "logging.level.ste.toosla=WARN"
+    }
+)
+@AutoConfigureMockMvc
+public class AllocationBudgetTest {
+
+    private static final String BUDGET_PROPERTY = "toosla.allocation.budget.";
+    private static final int WARMUP = 500;
+    private static final int ROUNDS = 5;
+    private static final int OPERATIONS = 100;
+
+    private static final String CONTENT = "{\"key\":\"updated_value\"}";
+
+    private static final Properties BUDGETS = new Properties();
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HttpClientStubber httpClientBuilder;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        @Primary
+        public HttpClient.Builder httpClientBuilder() {
+            return new HttpClientStubber();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        Object run() throws Exception;
+    }
+
+    @BeforeAll
+    public static void beforeAll() throws IOException {
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            BUDGETS.load(in);
+        }
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+            threads = bean;
+        }
+    }
+
+    @BeforeEach
+    public void before() {
+        assumeThat(threads != null && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled())
+            .as("per thread allocation accounting available").isTrue();
+
+        httpClientBuilder.stubs().clear();
+        setUpFileStubs(httpClientBuilder).withStub(
+            new URIMatcher("https://upload.zefiro.me/sapi/upload?action=save&acceptasynchronous=false&validationkey=" + TEST_VALIDATION_KEY),
+            new StubHttpResponse<String>().text(
+                "{\"success\":\"Media uploaded successfully\",\"id\":\"11111\",\"status\":\"V\","
+                + "\"etag\":\"J7XxRng02rtVeS3X9Wj58Q==\",\"responsetime\":1755272687861,\"type\":\"file\"}"
+            )
+        );
+    }
+
+    @Test
+    public void storage_read_within_budget() throws Exception {
+        final String authorization = "Bearer " + keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+        final Operation read = () -> mockMvc.perform(post("/api/storage/read")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", authorization)
+            .content("{\"path\":\"/Toosla/toosla.json\"}")
+        ).andReturn();
+
+        then(((MvcResult)read.run()).getResponse().getStatus()).isEqualTo(200);
+        thenWithinBudget("storage.read", read);
+    }
+
+    @Test
+    public void storage_write_within_budget() throws Exception {
+        final String authorization = "Bearer " + keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+        final String ifUnmodifiedSince = DateTimeFormatter.ISO_INSTANT.format(FIXED_LATER_DATE.toInstant());
+        final Operation write = () -> mockMvc.perform(post("/api/storage/write")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", authorization)
+            .header("If-Unmodified-Since", ifUnmodifiedSince)
+            .content("{\"path\":\"/Toosla/toosla.json\",\"content\":\"{\\\"key\\\":\\\"updated_value\\\"}\"}")
+        ).andReturn();
+
+        then(((MvcResult)write.run()).getResponse().getStatus()).isEqualTo(200);
+        thenWithinBudget("storage.write", write);
+    }
+
+    @Test
+    public void zefiro_download_within_budget() throws Exception {
+        final ZefiroClient zefiro = newZefiroClient();
+        final Operation download = () -> zefiro.download("/Toosla/toosla.json");
+
+        then(download.run()).isEqualTo("{\"content\":\"this is toosla\"}");
+        thenWithinBudget("zefiro.download", download);
+    }
+
+    @Test
+    public void zefiro_upload_within_budget() throws Exception {
+        final ZefiroClient zefiro = newZefiroClient();
+        final Operation upload = () -> zefiro.upload("/Toosla/toosla.json", CONTENT, FIXED_LATER_DATE);
+
+        then(((ZefiroUploadResponse)upload.run()).id()).isEqualTo("11111");
+        thenWithinBudget("zefiro.upload", upload);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void thenWithinBudget(final String name, final Operation operation) throws Exception {
+        final long budget = Long.parseLong(
+            System.getProperty(BUDGET_PROPERTY + name, BUDGETS.getProperty(name))
+        );
+
+        for (int i = 0; i < WARMUP; ++i) {
+            operation.run();
+        }
+
+        long allocated = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; ++r) {
+            final long start = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < OPERATIONS; ++i) {
+                operation.run();
+            }
+            allocated = Math.min(allocated, (threads.getCurrentThreadAllocatedBytes() - start) / OPERATIONS);
+        }
+
+        System.out.printf("%s: %d bytes/op (budget %d)%n", name, allocated, budget);
+
+        then(allocated).as("bytes allocated per %s", name).isLessThanOrEqualTo(budget);
+    }
+
+    private ZefiroClient newZefiroClient() {
+        return new ZefiroClient(TEST_ACCOUNT, TEST_SECRET)
+            .withHttpClientBuilder(httpClientBuilder)
+            .withValidationKey(TEST_VALIDATION_KEY);
+    }
+}
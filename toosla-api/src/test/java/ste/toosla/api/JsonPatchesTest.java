@@ -0,0 +1,236 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class JsonPatchesTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final String BASE = "{\"title\":\"car\",\"settings\":{\"theme\":\"dark\",\"units\":\"km\"},\"todo\":[\"charge\",\"wash\"]}";
+
+    @Test
+    public void merge_patch() throws Exception {
+        //
+        // RFC 7396, appendix A
+        //
+        then(JsonPatches.merge(json("{\"a\":\"b\"}"), json("{\"a\":\"c\"}"))).isEqualTo(json("{\"a\":\"c\"}"));
+        then(JsonPatches.merge(json("{\"a\":\"b\"}"), json("{\"b\":\"c\"}"))).isEqualTo(json("{\"a\":\"b\",\"b\":\"c\"}"));
+        then(JsonPatches.merge(json("{\"a\":\"b\"}"), json("{\"a\":null}"))).isEqualTo(json("{}"));
+        then(JsonPatches.merge(json("{\"a\":[\"b\"]}"), json("{\"a\":\"c\"}"))).isEqualTo(json("{\"a\":\"c\"}"));
+        then(JsonPatches.merge(json("{\"a\":\"foo\"}"), json("null"))).isEqualTo(json("null"));
+        then(JsonPatches.merge(json("{\"e\":null}"), json("{\"a\":1}"))).isEqualTo(json("{\"e\":null,\"a\":1}"));
+        then(JsonPatches.merge(json("[1,2]"), json("{\"a\":\"b\",\"c\":null}"))).isEqualTo(json("{\"a\":\"b\"}"));
+        then(JsonPatches.merge(json("{}"), json("{\"a\":{\"bb\":{\"ccc\":null}}}"))).isEqualTo(json("{\"a\":{\"bb\":{}}}"));
+        then(JsonPatches.merge(null, json("{\"a\":1}"))).isEqualTo(json("{\"a\":1}"));
+
+        //
+        // the target is not changed
+        //
+        final JsonNode target = json(BASE);
+        JsonPatches.merge(target, json("{\"settings\":{\"theme\":\"light\"}}"));
+        then(target).isEqualTo(json(BASE));
+    }
+
+    @Test
+    public void json_patch() throws Exception {
+        then(JsonPatches.patch(json(BASE), json("""
+            [
+              {"op":"replace","path":"/settings/theme","value":"light"},
+              {"op":"add","path":"/todo/1","value":"park"},
+              {"op":"add","path":"/todo/-","value":"sleep"},
+              {"op":"remove","path":"/title"},
+              {"op":"copy","from":"/settings/units","path":"/units"},
+              {"op":"move","from":"/todo/0","path":"/next"},
+              {"op":"test","path":"/next","value":"charge"}
+            ]
+        """))).isEqualTo(json(
+            "{\"settings\":{\"theme\":\"light\",\"units\":\"km\"},\"todo\":[\"park\",\"wash\",\"sleep\"],\"units\":\"km\",\"next\":\"charge\"}"
+        ));
+        then(JsonPatches.patch(json(BASE), json("[{\"op\":\"replace\",\"path\":\"\",\"value\":[]}]"))).isEqualTo(json("[]"));
+        then(JsonPatches.patch(json("{\"a~b/c\":1}"), json("[{\"op\":\"remove\",\"path\":\"/a~0b~1c\"}]"))).isEqualTo(json("{}"));
+    }
+
+    @Test
+    public void json_patch_is_applied_all_or_none() throws Exception {
+        final JsonNode target = json(BASE);
+
+        thenThrownBy(() -> JsonPatches.patch(target, json("""
+            [{"op":"remove","path":"/title"},{"op":"test","path":"/todo/0","value":"wash"}]
+        """)))
+            .isInstanceOf(JsonPatches.PatchConflictException.class)
+            .hasMessage("test failed at /todo/0");
+        then(target).isEqualTo(json(BASE));
+    }
+
+    @Test
+    public void json_patch_is_not_changed() throws Exception {
+        final JsonNode operations = json("""
+            [
+              {"op":"add","path":"/a","value":[]},
+              {"op":"add","path":"/a/-","value":1},
+              {"op":"replace","path":"/b","value":{}},
+              {"op":"add","path":"/b/c","value":2}
+            ]
+        """);
+        final JsonNode copy = operations.deepCopy();
+
+        then(JsonPatches.patch(json("{\"b\":0}"), operations)).isEqualTo(json("{\"a\":[1],\"b\":{\"c\":2}}"));
+        then(operations).isEqualTo(copy);
+        then(JsonPatches.patch(json("{\"b\":0}"), operations)).isEqualTo(json("{\"a\":[1],\"b\":{\"c\":2}}"));
+    }
+
+    @Test
+    public void json_patch_errors() throws Exception {
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("{\"op\":\"remove\",\"path\":\"/title\"}")))
+            .isInstanceOf(JsonPatches.InvalidPatchException.class)
+            .hasMessage("patch must be an array of operations");
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"delete\",\"path\":\"/title\"}]")))
+            .isInstanceOf(JsonPatches.InvalidPatchException.class)
+            .hasMessage("unknown operation 'delete'");
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"add\",\"path\":\"/title\"}]")))
+            .isInstanceOf(JsonPatches.InvalidPatchException.class)
+            .hasMessageStartingWith("missing 'value'");
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"remove\",\"path\":\"title\"}]")))
+            .isInstanceOf(JsonPatches.InvalidPatchException.class)
+            .hasMessageStartingWith("invalid 'path'");
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"move\",\"from\":\"/settings\",\"path\":\"/settings/old\"}]")))
+            .isInstanceOf(JsonPatches.InvalidPatchException.class)
+            .hasMessage("can not move /settings into itself");
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"add\",\"path\":\"/todo/01\",\"value\":1}]")))
+            .isInstanceOf(JsonPatches.InvalidPatchException.class)
+            .hasMessage("invalid array index in /todo/01");
+
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"remove\",\"path\":\"/none\"}]")))
+            .isInstanceOf(JsonPatches.PatchConflictException.class)
+            .hasMessage("no value at /none");
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"add\",\"path\":\"/none/key\",\"value\":1}]")))
+            .isInstanceOf(JsonPatches.PatchConflictException.class)
+            .hasMessage("no container at /none");
+        thenThrownBy(() -> JsonPatches.patch(json(BASE), json("[{\"op\":\"add\",\"path\":\"/todo/3\",\"value\":1}]")))
+            .isInstanceOf(JsonPatches.PatchConflictException.class)
+            .hasMessage("no index 3 in /todo");
+    }
+
+    @Test
+    public void diff_and_union() throws Exception {
+        final JsonNode target = json("{\"title\":\"car\",\"settings\":{\"theme\":\"light\",\"units\":\"km\"},\"todo\":[\"charge\"],\"new\":{\"a\":1}}");
+
+        final JsonNode diff = JsonPatches.diff(json(BASE), target);
+        then(diff).isEqualTo(json("{\"settings\":{\"theme\":\"light\"},\"todo\":[\"charge\"],\"new\":{\"a\":1}}"));
+        then(JsonPatches.merge(json(BASE), diff)).isEqualTo(target);
+
+        then(JsonPatches.diff(json("{\"a\":1,\"b\":2}"), json("{\"a\":1}"))).isEqualTo(json("{\"b\":null}"));
+        then(JsonPatches.diff(json("{\"a\":1}"), json("[1]"))).isEqualTo(json("[1]"));
+        then(JsonPatches.diff(json("[1]"), json("{\"a\":1}"))).isEqualTo(json("{\"a\":1}"));
+        then(JsonPatches.diff(null, json("{\"a\":1}"))).isEqualTo(json("{\"a\":1}"));
+
+        //
+        // null values can not be set by a merge patch
+        //
+        then(JsonPatches.diff(json("{\"a\":1}"), json("{\"a\":null}"))).isNull();
+        then(JsonPatches.diff(json("{\"a\":1}"), json("{\"a\":{\"b\":null}}"))).isNull();
+        then(JsonPatches.diff(json("{\"a\":{\"c\":1}}"), json("{\"a\":{\"b\":[null]}}"))).isEqualTo(json("{\"a\":{\"c\":null,\"b\":[null]}}"));
+
+        //
+        // a union of diffs works for any of the sources
+        //
+        final JsonNode other = json("{\"title\":\"my car\",\"settings\":\"default\",\"todo\":[\"charge\"]}");
+        final JsonNode union = JsonPatches.union(diff, JsonPatches.diff(other, target));
+        then(JsonPatches.merge(json(BASE), union)).isEqualTo(target);
+        then(JsonPatches.merge(other, union)).isEqualTo(target);
+    }
+
+    @Test
+    public void merge_conflicts() throws Exception {
+        final JsonNode base = json(BASE);
+        final JsonNode current = json("{\"title\":\"my car\",\"settings\":{\"theme\":\"dark\",\"units\":\"mi\"},\"todo\":[\"charge\",\"wash\"],\"new\":1}");
+
+        //
+        // changes to different values
+        //
+        then(JsonPatches.mergeConflicts(base, current, json("{\"settings\":{\"theme\":\"light\"},\"todo\":[],\"other\":2}"))).isEmpty();
+
+        //
+        // changes to the same values, unless the same change
+        //
+        then(JsonPatches.mergeConflicts(base, current, json("{\"title\":\"auto\",\"settings\":{\"units\":\"km\"},\"new\":null}")))
+            .containsExactly("/title", "/settings/units", "/new");
+        then(JsonPatches.mergeConflicts(base, current, json("{\"title\":\"my car\",\"settings\":{\"units\":\"mi\"}}"))).isEmpty();
+
+        //
+        // replacing a changed object, or a value in an object replaced
+        //
+        then(JsonPatches.mergeConflicts(base, current, json("{\"settings\":null}"))).containsExactly("/settings");
+        then(JsonPatches.mergeConflicts(base, json("{\"settings\":\"default\"}"), json("{\"settings\":{\"theme\":\"light\"}}")))
+            .containsExactly("/settings");
+
+        //
+        // replacing the whole document
+        //
+        then(JsonPatches.mergeConflicts(base, current, json("[]"))).containsExactly("");
+        then(JsonPatches.mergeConflicts(base, base, json("[]"))).isEmpty();
+    }
+
+    @Test
+    public void patch_conflicts() throws Exception {
+        final JsonNode base = json(BASE);
+        final JsonNode current = json("{\"title\":\"my car\",\"settings\":{\"theme\":\"dark\",\"units\":\"mi\"},\"todo\":[\"charge\",\"wash\",\"park\"]}");
+
+        then(JsonPatches.patchConflicts(base, current, json("""
+            [{"op":"replace","path":"/settings/theme","value":"light"},{"op":"add","path":"/notes","value":"ok"}]
+        """))).isEmpty();
+        then(JsonPatches.patchConflicts(base, current, json("""
+            [{"op":"replace","path":"/title","value":"auto"},{"op":"remove","path":"/settings/units"}]
+        """))).containsExactly("/title", "/settings/units");
+        then(JsonPatches.patchConflicts(base, current, json("""
+            [{"op":"replace","path":"/title","value":"my car"}]
+        """))).isEmpty();
+
+        //
+        // any change to an array conflicts with the changes of its elements
+        //
+        then(JsonPatches.patchConflicts(base, current, json("""
+            [{"op":"remove","path":"/todo/0"},{"op":"add","path":"/todo/-","value":"sleep"}]
+        """))).containsExactly("/todo");
+
+        //
+        // the source of moves and copies is checked too
+        //
+        then(JsonPatches.patchConflicts(base, current, json("""
+            [{"op":"copy","from":"/title","path":"/name"}]
+        """))).containsExactly("/title");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static JsonNode json(final String text) throws Exception {
+        return JSON.readTree(text);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ *
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class MetricsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void metrics_include_per_route_and_status_percentiles() throws Exception {
+        mockMvc.perform(get("/health")).andExpect(status().isOk());
+        mockMvc.perform(get("/health")).andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.uptime").isNumber())
+            .andExpect(jsonPath("$.metrics['http.server.requests{route=GET /health,status=200}'].count").value(2))
+            .andExpect(jsonPath("$.metrics['http.server.requests{route=GET /health,status=200}'].p50").isNumber())
+            .andExpect(jsonPath("$.metrics['http.server.requests{route=GET /health,status=200}'].p99").isNumber())
+            .andExpect(jsonPath("$.metrics['http.server.requests{route=GET /health,status=200}'].p999").isNumber())
+            .andExpect(jsonPath("$.metrics['http.server.requests{route=GET /health,status=200}'].throughput").isNumber())
+            .andExpect(jsonPath("$.metrics['http.server.requests.total{route=GET /health}']").value(2))
+            .andExpect(jsonPath("$.metrics['http.server.requests.errorRate{route=GET /health}']").value(0.0));
+    }
+}
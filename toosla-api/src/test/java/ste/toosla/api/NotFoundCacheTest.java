@@ -0,0 +1,105 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+import ste.toosla.zefiro.ZefiroFileNotFoundException;
+
+/**
+ *
+ */
+public class NotFoundCacheTest {
+
+    private static final ZefiroFileNotFoundException NOT_FOUND = new ZefiroFileNotFoundException("File not found: /Toosla/data.json");
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new NotFoundCache(null, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("ttl can not be null or negative");
+        thenThrownBy(() -> new NotFoundCache(Duration.ofMillis(-1), 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("ttl can not be null or negative");
+        thenThrownBy(() -> new NotFoundCache(Duration.ofSeconds(1), -1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxEntries can not be negative");
+    }
+
+    @Test
+    public void put_get_and_remove() {
+        final NotFoundCache cache = new NotFoundCache(Duration.ofMinutes(1), 10);
+
+        then(cache.get("account", "/Toosla/data.json")).isNull();
+        cache.put("account", "/Toosla/data.json", NOT_FOUND);
+        then(cache.get("account", "/Toosla/data.json")).isSameAs(NOT_FOUND);
+        then(cache.get("other", "/Toosla/data.json")).isNull();
+        then(cache.get("account", "/Toosla/other.json")).isNull();
+        then(cache.hits()).isEqualTo(1);
+        then(cache.size()).isEqualTo(1);
+
+        cache.remove("account", "/Toosla/data.json");
+        then(cache.get("account", "/Toosla/data.json")).isNull();
+        then(cache.size()).isZero();
+    }
+
+    @Test
+    public void entries_expire() throws Exception {
+        final NotFoundCache cache = new NotFoundCache(Duration.ofMillis(50), 10);
+
+        cache.put("account", "/Toosla/data.json", NOT_FOUND);
+        then(cache.get("account", "/Toosla/data.json")).isSameAs(NOT_FOUND);
+
+        Thread.sleep(100);
+        then(cache.get("account", "/Toosla/data.json")).isNull();
+        then(cache.size()).isZero();
+    }
+
+    @Test
+    public void evict_least_recently_used() {
+        final NotFoundCache cache = new NotFoundCache(Duration.ofMinutes(1), 2);
+
+        cache.put("account", "/one", NOT_FOUND);
+        cache.put("account", "/two", NOT_FOUND);
+        cache.get("account", "/one");
+        cache.put("account", "/three", NOT_FOUND);
+
+        then(cache.size()).isEqualTo(2);
+        then(cache.get("account", "/one")).isNotNull();
+        then(cache.get("account", "/two")).isNull();
+        then(cache.get("account", "/three")).isNotNull();
+    }
+
+    @Test
+    public void disabled() {
+        NotFoundCache cache = new NotFoundCache(Duration.ZERO, 10);
+        cache.put("account", "/Toosla/data.json", NOT_FOUND);
+        then(cache.get("account", "/Toosla/data.json")).isNull();
+        then(cache.size()).isZero();
+
+        cache = new NotFoundCache(Duration.ofMinutes(1), 0);
+        cache.put("account", "/Toosla/data.json", NOT_FOUND);
+        then(cache.get("account", "/Toosla/data.json")).isNull();
+        then(cache.size()).isZero();
+    }
+}
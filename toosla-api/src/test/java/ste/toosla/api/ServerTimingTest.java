@@ -0,0 +1,93 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.Test;
+import ste.toosla.api.ServerTiming.Phase;
+import ste.toosla.zefiro.ZefiroCall;
+import ste.toosla.zefiro.ZefiroEndpoint;
+
+/**
+ *
+ */
+public class ServerTimingTest {
+
+    @Test
+    public void upstream_calls_are_accounted_to_their_phase() {
+        final ServerTiming timing = new ServerTiming(System.nanoTime());
+
+        timing.onCall(call(ZefiroEndpoint.ROOT_FOLDER, 10));
+        timing.onCall(call(ZefiroEndpoint.FOLDER_LIST, 20));
+        timing.onCall(call(ZefiroEndpoint.FOLDER_LIST, 30));
+        timing.onCall(call(ZefiroEndpoint.MEDIA_LIST, 5));
+        timing.onCall(call(ZefiroEndpoint.MEDIA_GET, 7));
+        timing.onCall(call(ZefiroEndpoint.CONTENT, 3));
+        timing.onCall(call(ZefiroEndpoint.UPLOAD, 4));
+        timing.onCall(call(ZefiroEndpoint.LOGIN, 2));
+
+        then(timing.duration(Phase.FOLDER)).isEqualTo(ms(60));
+        then(timing.duration(Phase.LIST)).isEqualTo(ms(5));
+        then(timing.duration(Phase.META)).isEqualTo(ms(7));
+        then(timing.duration(Phase.CONTENT)).isEqualTo(ms(7));
+        then(timing.duration(Phase.LOGIN)).isEqualTo(ms(2));
+        then(timing.duration(Phase.AUTH)).isZero();
+    }
+
+    @Test
+    public void header_lists_recorded_phases_and_total() {
+        final ServerTiming timing = new ServerTiming(System.nanoTime() - ms(100));
+
+        then(timing.header()).matches("total;dur=\\d+\\.\\d{3}");
+
+        timing.record(Phase.AUTH, 250_000);
+        timing.record(Phase.SER, ms(1));
+        timing.onCall(call(ZefiroEndpoint.MEDIA_GET, 12));
+
+        then(timing.header()).startsWith(
+            "ser;desc=\"request deserialization\";dur=1.000, "
+          + "auth;desc=\"access key lookup\";dur=0.250, "
+          + "meta;desc=\"file metadata\";dur=12.000, total;dur="
+        );
+        then(Double.parseDouble(timing.header().replaceAll(".*total;dur=", ""))).isGreaterThanOrEqualTo(100.0);
+    }
+
+    @Test
+    public void negative_durations_are_recorded_as_zero() {
+        final ServerTiming timing = new ServerTiming(System.nanoTime());
+
+        timing.record(Phase.AUTH, -10);
+
+        then(timing.duration(Phase.AUTH)).isZero();
+        then(timing.header()).startsWith("auth;desc=\"access key lookup\";dur=0.000, ");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static ZefiroCall call(final ZefiroEndpoint endpoint, final long millis) {
+        return new ZefiroCall(endpoint, 200, 0, 0, ms(millis), 1, null);
+    }
+
+    private static long ms(final long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launches a server in a separate JVM and measures the time from the launch to
+ * the first successful {@code /health} response and the resident memory of
+ * the process (read from {@code /proc}, thus Linux only). Used to compare the
+ * startup of the different launch paths (war, AOT, AOT with a CDS archive, edge
+ * server).
+ *
+ * <p>Like {@link StorageBenchmark}, benchmarks using it are enabled with
+ * {@code -Dtoosla.benchmark=true}; the JVM options of the launched server can
+ * be given with {@code toosla.benchmark.jvmopts}.
+ */
+public class StartupBenchmark implements AutoCloseable {
+
+    public static final String JAVA = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+    private static final long TIMEOUT_MS = 120_000;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final Process process;
+    private final int port;
+    private final long startupMillis;
+
+    /**
+     * Launches the given command and waits for {@code /health} to answer 200.
+     *
+     * @param command the command line - NOT NULL
+     * @param port the port the server listens to
+     * @param dir the working directory of the server - NOT NULL
+     *
+     * @throws IOException if the process can not be started
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the server does not start in two minutes
+     */
+    public StartupBenchmark(final List<String> command, final int port, final Path dir)
+    throws IOException, InterruptedException {
+        this.port = port;
+
+        final long start = System.nanoTime();
+        process = new ProcessBuilder(command).directory(dir.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(dir.resolve("startup-benchmark.log").toFile())
+            .start();
+
+        final HttpRequest health = HttpRequest.newBuilder(uri("/health")).build();
+        while (true) {
+            try {
+                if (http.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    break;
+                }
+            } catch (ConnectException x) {
+                // not listening yet
+            }
+            if (!process.isAlive() || (System.nanoTime() - start) > TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS)) {
+                close();
+                throw new IllegalStateException("server did not start, see " + dir.resolve("startup-benchmark.log"));
+            }
+            Thread.sleep(5);
+        }
+        startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * @return the milliseconds from launch to the first successful {@code /health}
+     */
+    public long startupMillis() {
+        return startupMillis;
+    }
+
+    /**
+     * @return the current resident memory in kB
+     */
+    public long rss() throws IOException {
+        return status("VmRSS:");
+    }
+
+    /**
+     * @return the peak resident memory in kB
+     */
+    public long peakRss() throws IOException {
+        return status("VmHWM:");
+    }
+
+    public URI uri(final String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * @return a free local port
+     */
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * @param defaults the options to use if {@code toosla.benchmark.jvmopts} is not set
+     *
+     * @return the JVM options of the launched server
+     */
+    public static List<String> jvmOptions(final String defaults) {
+        final List<String> ret = new ArrayList<>();
+        for (String option: System.getProperty("toosla.benchmark.jvmopts", defaults).trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                ret.add(option);
+            }
+        }
+        return ret;
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private long status(final String field) throws IOException {
+        for (String line: Files.readAllLines(Path.of("/proc", String.valueOf(process.pid()), "status"))) {
+            if (line.startsWith(field)) {
+                return Long.parseLong(line.substring(field.length()).replace("kB", "").trim());
+            }
+        }
+        return -1;
+    }
+}
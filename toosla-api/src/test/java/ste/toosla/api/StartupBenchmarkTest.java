@@ -0,0 +1,167 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Compares the time to the first successful {@code /health} of the launch
+ * paths of the distribution: the war (Spring Boot's {@code WarLauncher}), the
+ * exploded AOT processed application and the latter with a class data sharing
+ * archive created by a training run (what {@code bin/toosla-cds} does). It
+ * needs the packaged war; run it with:
+ * <pre>
+ * mvn package -DskipTests
+ * mvn test -Dtest=StartupBenchmarkTest -Dtoosla.benchmark=true [-Dtoosla.benchmark.runs=3] [-Dtoosla.benchmark.jvmopts=-Xmx256m]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "toosla.benchmark", matches = "true")
+@EnabledOnOs(OS.LINUX)
+public class StartupBenchmarkTest {
+
+    private static final int RUNS = Integer.getInteger("toosla.benchmark.runs", 3);
+    private static final String JVM_OPTS = "-Xmx256m";
+    private static final List<String> QUIET_CDS = List.of("-Xlog:cds=off", "-Xlog:cds+dynamic=off");
+
+    private record Launch(List<String> options, String classpath, String main) {}
+
+    @TempDir
+    Path home;
+
+    @Test
+    public void war_aot_and_cds() throws Exception {
+        final Path war = find("*.war"), classes = find("*-classes.jar");
+        assumeTrue(war != null && classes != null, "no packaged war found, run mvn package first");
+
+        final String classpath = explode(war, classes, Files.createDirectory(home.resolve("app")));
+        final Path archive = home.resolve("app").resolve("toosla-api.jsa");
+        Files.createDirectory(home.resolve("log"));
+
+        //
+        // training run
+        //
+        final List<String> training = new ArrayList<>(QUIET_CDS);
+        training.addAll(List.of("-XX:ArchiveClassesAtExit=" + archive, "-Dspring.aot.enabled=true", "-Dspring.context.exit=onRefresh"));
+        final Process process = new ProcessBuilder(command(new Launch(training, classpath, TooslaApiApplication.class.getName()), 0))
+            .directory(home.toFile()).redirectErrorStream(true).redirectOutput(home.resolve("training.log").toFile())
+            .start();
+        then(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+        then(archive).exists();
+
+        final List<String> cds = new ArrayList<>(QUIET_CDS);
+        cds.addAll(List.of("-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true"));
+
+        final Map<String, Launch> paths = new LinkedHashMap<>();
+        paths.put("war", new Launch(List.of(), war.toString(), "org.springframework.boot.loader.launch.WarLauncher"));
+        paths.put("aot", new Launch(List.of("-Dspring.aot.enabled=true"), classpath, TooslaApiApplication.class.getName()));
+        paths.put("aot+cds", new Launch(cds, classpath, TooslaApiApplication.class.getName()));
+
+        final Map<String, Long> medians = new LinkedHashMap<>();
+        System.out.println("JVM options: " + StartupBenchmark.jvmOptions(JVM_OPTS));
+        for (Map.Entry<String, Launch> path: paths.entrySet()) {
+            final long[] startup = new long[RUNS], rss = new long[RUNS];
+            for (int i = 0; i < RUNS; ++i) {
+                final int port = StartupBenchmark.freePort();
+                try (StartupBenchmark server = new StartupBenchmark(command(path.getValue(), port), port, home)) {
+                    startup[i] = server.startupMillis(); rss[i] = server.rss();
+                }
+            }
+            medians.put(path.getKey(), median(startup));
+            System.out.println(String.format(
+                "%-8s time to first /health: %6d ms (median of %d) RSS: %4d MB",
+                path.getKey(), median(startup), RUNS, median(rss) / 1024
+            ));
+        }
+
+        then(medians.get("aot+cds")).isLessThan(medians.get("war"));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static Path find(final String glob) throws IOException {
+        try (var files = Files.newDirectoryStream(Path.of("target"), glob)) {
+            for (Path file: files) {
+                return file.toAbsolutePath();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the application classes and the libraries of the war in the given
+     * directory, like the distribution does in {@code lib/app}.
+     *
+     * @return the classpath of the exploded application
+     */
+    private static String explode(final Path war, final Path classes, final Path dir) throws IOException {
+        final List<String> ret = new ArrayList<>();
+
+        ret.add(Files.copy(classes, dir.resolve(classes.getFileName())).toString());
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(war))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                final String name = entry.getName();
+                if (!entry.isDirectory() && name.endsWith(".jar") && (name.startsWith("WEB-INF/lib/") || name.startsWith("WEB-INF/lib-provided/"))) {
+                    final Path jar = dir.resolve(name.replace('/', '_'));
+                    Files.copy((InputStream)in, jar, StandardCopyOption.REPLACE_EXISTING);
+                    ret.add(jar.toString());
+                }
+            }
+        }
+
+        return String.join(File.pathSeparator, ret);
+    }
+
+    private static List<String> command(final Launch launch, final int port) {
+        final List<String> ret = new ArrayList<>();
+        ret.add(StartupBenchmark.JAVA);
+        ret.addAll(StartupBenchmark.jvmOptions(JVM_OPTS));
+        ret.addAll(launch.options());
+        ret.addAll(List.of("-cp", launch.classpath(), launch.main(), "--server.port=" + port));
+        return ret;
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import ste.toosla.util.metrics.Histogram;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * Drives the storage API of a running server with many concurrent clients,
+ * each one logging in once and then reading {@link FakeZefiro#FILE} over
+ * and over, like a fleet of dashboards polling for changes. The same driver is
+ * used for the servlet ({@code StorageControllerBenchmarkTest}) and the
+ * reactive ({@code toosla-api-reactive}) stacks so that results can be
+ * compared.
+ *
+ * <p>Clients run on virtual threads and share one HTTP/1.1 client, thus each
+ * client holds its own connection to the server. Besides throughput and
+ * latency, the peak number of platform threads of the JVM is reported.
+ *
+ * <p>Benchmarks are not part of the regular build; they are enabled with
+ * {@code -Dtoosla.benchmark=true} and tuned with {@code toosla.benchmark.clients},
+ * {@code toosla.benchmark.requests} and {@code toosla.benchmark.latency} (the
+ * latency of each {@link FakeZefiro} call in milliseconds).
+ */
+public class StorageBenchmark {
+
+    public static final int CLIENTS = Integer.getInteger("toosla.benchmark.clients", 1000);
+    public static final int REQUESTS = Integer.getInteger("toosla.benchmark.requests", 5000);
+    public static final long LATENCY_MS = Long.getLong("toosla.benchmark.latency", 100);
+
+    public record Result(
+        String stack, int clients, int requests, int errors, double seconds, Histogram latency, int peakThreads
+    ) {
+        public double throughput() {
+            return requests / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%-8s clients: %5d requests: %6d errors: %4d throughput: %8.1f req/s latency p50: %7.1f ms p99: %7.1f ms max: %7.1f ms peak threads: %4d",
+                stack, clients, requests, errors, throughput(),
+                latency.percentile(50) / 1e6, latency.percentile(99) / 1e6, latency.max() / 1e6, peakThreads
+            );
+        }
+    }
+
+    private final ObjectMapper json = new ObjectMapper();
+    private final String baseUrl;
+    private final HttpClient http;
+
+    /**
+     * @param baseUrl the server url (e.g. {@code http://localhost:9090})
+     */
+    public StorageBenchmark(final String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    }
+
+    /**
+     * Runs the given number of reads spread across the given number of
+     * concurrent clients.
+     *
+     * @param stack the label of the results
+     * @param clients the number of concurrent clients
+     * @param requests the total number of reads
+     *
+     * @return the results
+     *
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public Result run(final String stack, final int clients, final int requests) throws InterruptedException {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final Histogram latency = new Histogram();
+        final AtomicInteger errors = new AtomicInteger();
+
+        threads.resetPeakThreadCount();
+        final long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; ++c) {
+                final int client = c;
+                final int reads = requests / clients + ((client < requests % clients) ? 1 : 0);
+                executor.execute(() -> {
+                    try {
+                        final String key = login("account" + client + ":secret");
+                        for (int i = 0; i < reads; ++i) {
+                            final long begin = System.nanoTime();
+                            final HttpResponse<String> response = post(
+                                "/api/storage/read", "{\"path\":\"" + FakeZefiro.FILE + "\"}", key
+                            );
+                            if (response.statusCode() == 200) {
+                                latency.record(System.nanoTime() - begin);
+                            } else if (errors.getAndIncrement() == 0) {
+                                System.err.println("read failed with status " + response.statusCode() + ": " + response.body());
+                            }
+                        }
+                    } catch (Exception x) {
+                        if (errors.getAndIncrement() == 0) {
+                            x.printStackTrace();
+                        }
+                    }
+                });
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        return new Result(stack, clients, requests, errors.get(), seconds, latency, threads.getPeakThreadCount());
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private String login(final String credentials) throws Exception {
+        final HttpResponse<String> response = post(
+            "/api/storage/login", "{\"credentials\":\"" + credentials + "\"}", null
+        );
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("login failed with status " + response.statusCode() + ": " + response.body());
+        }
+        return json.readTree(response.body()).at("/accessKey").asText();
+    }
+
+    private HttpResponse<String> post(final String path, final String body, final String key) throws Exception {
+        final HttpRequest.Builder request = HttpRequest.newBuilder()
+            .uri(URI.create(baseUrl + path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (key != null) {
+            request.header("Authorization", "Bearer " + key);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ste.toosla.api.dto.ChangeEvent;
+import ste.toosla.zefiro.FakeZefiro;
+import ste.toosla.zefiro.ZefiroClient;
+
+/**
+ *
+ */
+public class StorageChangeFeedTest {
+
+    private static final ChangeEvent CURRENT = new ChangeEvent(FakeZefiro.FILE, 1755561600000L, "58IEhYENeW04HhTImidzBw==");
+
+    private FakeZefiro zefiro;
+    private Supplier<ZefiroClient> client;
+    private StorageChangeFeed feed;
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+        client = () -> new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey");
+    }
+
+    @AfterEach
+    public void after() {
+        if (feed != null) {
+            feed.close();
+        }
+        zefiro.close();
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new StorageChangeFeed(null, Duration.ofSeconds(1), 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("minInterval can not be null, zero or negative");
+        thenThrownBy(() -> new StorageChangeFeed(Duration.ZERO, Duration.ofSeconds(1), 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("minInterval can not be null, zero or negative");
+        thenThrownBy(() -> new StorageChangeFeed(Duration.ofSeconds(1), null, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxInterval can not be null or shorter than minInterval");
+        thenThrownBy(() -> new StorageChangeFeed(Duration.ofSeconds(2), Duration.ofSeconds(1), 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxInterval can not be null or shorter than minInterval");
+        thenThrownBy(() -> new StorageChangeFeed(Duration.ofSeconds(1), Duration.ofSeconds(1), -1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxWatchers can not be negative");
+    }
+
+    @Test
+    public void one_watcher_for_all_subscribers() throws Exception {
+        feed = new StorageChangeFeed(Duration.ofMillis(50), Duration.ofMillis(200), 10);
+
+        final BlockingQueue<ChangeEvent> one = new LinkedBlockingQueue<>(), two = new LinkedBlockingQueue<>();
+        feed.subscribe("account", FakeZefiro.FILE, client, one::offer);
+        feed.subscribe("account", FakeZefiro.FILE, client, two::offer);
+
+        then(one.poll(5, TimeUnit.SECONDS)).isEqualTo(CURRENT);
+        then(two.poll(5, TimeUnit.SECONDS)).isEqualTo(CURRENT);
+        then(feed.watchers()).isEqualTo(1);
+        then(feed.subscribers()).isEqualTo(2);
+
+        //
+        // the file does not change: checks back off and push nothing
+        //
+        final long checks = feed.checks();
+        then(one.poll(1, TimeUnit.SECONDS)).isNull();
+        then(feed.checks() - checks).isBetween(2L, 8L);
+        then(two).isEmpty();
+
+        //
+        // late subscribers get the last known state right away
+        //
+        final BlockingQueue<ChangeEvent> three = new LinkedBlockingQueue<>();
+        feed.subscribe("account", FakeZefiro.FILE, client, three::offer);
+        then(three.poll()).isEqualTo(CURRENT);
+        then(feed.watchers()).isEqualTo(1);
+    }
+
+    @Test
+    public void changes_through_this_node_are_pushed_right_away() throws Exception {
+        feed = new StorageChangeFeed(Duration.ofMinutes(1), Duration.ofMinutes(1), 10);
+
+        final BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+        feed.subscribe("account", FakeZefiro.FILE, client, events::offer);
+        then(events.poll(5, TimeUnit.SECONDS)).isEqualTo(CURRENT);
+
+        feed.changed("account", FakeZefiro.FILE, 1755561700000L);
+        then(events.poll()).isEqualTo(new ChangeEvent(FakeZefiro.FILE, 1755561700000L, null));
+
+        //
+        // nobody watching
+        //
+        feed.changed("someoneelse", FakeZefiro.FILE, 1755561700000L);
+        feed.changed("account", "/Toosla/other.json", 1755561700000L);
+        then(events).isEmpty();
+        then(feed.events()).isEqualTo(2);
+    }
+
+    @Test
+    public void stop_watching_when_nobody_listens() throws Exception {
+        feed = new StorageChangeFeed(Duration.ofMillis(50), Duration.ofMillis(50), 10);
+
+        final BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+        final StorageChangeFeed.Subscription subscription = feed.subscribe("account", FakeZefiro.FILE, client, events::offer);
+        feed.subscribe("account", FakeZefiro.FILE, client, (change) -> false);  // gone at the first change
+        feed.subscribe("account", FakeZefiro.FILE, client, new StorageChangeFeed.Subscriber() {
+            @Override
+            public boolean onChange(final ChangeEvent change) {
+                return true;
+            }
+
+            @Override
+            public boolean onCheck() {
+                return false; // gone at the first check with no changes
+            }
+        });
+
+        then(events.poll(5, TimeUnit.SECONDS)).isEqualTo(CURRENT);
+        Thread.sleep(500);
+        then(feed.subscribers()).isEqualTo(1);
+
+        subscription.close(); subscription.close();
+        then(feed.watchers()).isZero();
+        then(feed.subscribers()).isZero();
+
+        Thread.sleep(100); // a check in progress may complete
+        final long checks = feed.checks();
+        Thread.sleep(300);
+        then(feed.checks()).isEqualTo(checks);
+    }
+
+    @Test
+    public void close_tells_the_subscribers() throws Exception {
+        feed = new StorageChangeFeed(Duration.ofMinutes(1), Duration.ofMinutes(1), 10);
+
+        final CountDownLatch closed = new CountDownLatch(1);
+        feed.subscribe("account", FakeZefiro.FILE, client, new StorageChangeFeed.Subscriber() {
+            @Override
+            public boolean onChange(final ChangeEvent change) {
+                return true;
+            }
+
+            @Override
+            public void onClose() {
+                closed.countDown();
+            }
+        });
+
+        feed.close();
+        then(closed.getCount()).isZero();
+        then(feed.watchers()).isZero();
+    }
+
+    @Test
+    public void too_many_watchers() throws Exception {
+        feed = new StorageChangeFeed(Duration.ofMinutes(1), Duration.ofMinutes(1), 1);
+
+        then(feed.subscribe("account", FakeZefiro.FILE, client, (change) -> true)).isNotNull();
+        then(feed.subscribe("account", FakeZefiro.FILE, client, (change) -> true)).isNotNull();
+        then(feed.subscribe("account", "/Toosla/other.json", client, (change) -> true)).isNull();
+        then(feed.subscribe("someoneelse", FakeZefiro.FILE, client, (change) -> true)).isNull();
+        then(feed.watchers()).isEqualTo(1);
+    }
+}
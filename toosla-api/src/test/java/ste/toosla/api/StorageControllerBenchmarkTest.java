@@ -0,0 +1,86 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import static ste.toosla.api.StorageBenchmark.CLIENTS;
+import static ste.toosla.api.StorageBenchmark.LATENCY_MS;
+import static ste.toosla.api.StorageBenchmark.REQUESTS;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * Runs {@link StorageBenchmark} against the servlet stack (Tomcat) backed by a
+ * {@link FakeZefiro}; run it with:
+ * <pre>
+ * mvn test -Dtest=StorageControllerBenchmarkTest -Dtoosla.benchmark=true [-Dtoosla.benchmark.clients=1000] [-Dtoosla.benchmark.requests=5000] [-Dtoosla.benchmark.latency=100]
+ * </pre>
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "toosla.zefiro.max-concurrent-calls=4096",
+        "toosla.zefiro.max-wait-ms=60000",
+        "toosla.storage.rate-limit.login.rate=0",
+        "toosla.storage.rate-limit.read.rate=0",
+        "logging.level.ste.toosla=WARN"
+    }
+)
+@EnabledIfSystemProperty(named = "toosla.benchmark", matches = "true")
+public class StorageControllerBenchmarkTest {
+
+    private static FakeZefiro zefiro;
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(LATENCY_MS);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @Test
+    public void servlet_stack() throws Exception {
+        final StorageBenchmark benchmark = new StorageBenchmark("http://localhost:" + port);
+
+        benchmark.run("warm-up", Math.min(CLIENTS, 100), Math.min(REQUESTS, 500));
+        final StorageBenchmark.Result result = benchmark.run("servlet", CLIENTS, REQUESTS);
+
+        System.out.println("Zefiro latency: " + LATENCY_MS + " ms");
+        System.out.println(result);
+
+        then(result.errors()).isZero();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * The changes feed over a real connection, against a {@link FakeZefiro}.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "toosla.storage.changes.min-interval-ms=100",
+        "toosla.storage.changes.max-interval-ms=200"
+    }
+)
+public class StorageControllerChangesTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static FakeZefiro zefiro;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<Stream<String>> streams = new ArrayList<>();
+
+    private String accessKey;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(0);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @BeforeEach
+    public void before() {
+        accessKey = keyManager.newKey("account", "secret", "validationkey");
+    }
+
+    @AfterEach
+    public void after() {
+        streams.forEach(Stream::close);
+    }
+
+    @Test
+    public void push_changes_to_all_subscribers() throws Exception {
+        final BlockingQueue<String> one = subscribe(FakeZefiro.FILE), two;
+
+        JsonNode change = JSON.readTree(next(one));
+        then(change.get("path").asText()).isEqualTo(FakeZefiro.FILE);
+        then(change.get("lastModified").asLong()).isEqualTo(1755561600000L);
+        then(change.get("etag").asText()).isEqualTo("58IEhYENeW04HhTImidzBw==");
+
+        //
+        // the second device gets the current state right away and shares the
+        // same watcher
+        //
+        two = subscribe(FakeZefiro.FILE);
+        then(JSON.readTree(next(two)).get("lastModified").asLong()).isEqualTo(1755561600000L);
+
+        JsonNode metrics = JSON.readTree(get("/api/metrics").body()).get("metrics");
+        then(metrics.get("storage.changes.watchers").asInt()).isEqualTo(1);
+        then(metrics.get("storage.changes.subscribers").asInt()).isEqualTo(2);
+
+        //
+        // writes through this node are pushed right away
+        //
+        final HttpResponse<String> write = http.send(
+            HttpRequest.newBuilder(uri("/api/storage/write"))
+                .header("Authorization", "Bearer " + accessKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"path\": \"" + FakeZefiro.FILE + "\", \"content\": \"{}\"}"))
+                .build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        then(write.statusCode()).isEqualTo(200);
+
+        for (BlockingQueue<String> events: new BlockingQueue[] {one, two}) {
+            change = JSON.readTree(next(events));
+            then(change.get("lastModified").asLong()).isGreaterThan(1755561600000L);
+            then(change.get("etag").isNull()).isTrue();
+        }
+    }
+
+    @Test
+    public void subscribe_unauthorized() throws Exception {
+        final HttpResponse<String> response = http.send(
+            HttpRequest.newBuilder(uri("/api/storage/changes?path=" + FakeZefiro.FILE)).GET().build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+
+        then(response.statusCode()).isEqualTo(401);
+        then(JSON.readTree(response.body()).get("message").asText()).isEqualTo("Unauthorized");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Subscribes to the changes of the given file, collecting the data of the
+     * events as they come.
+     */
+    private BlockingQueue<String> subscribe(final String path) throws Exception {
+        final HttpResponse<Stream<String>> response = http.send(
+            HttpRequest.newBuilder(uri("/api/storage/changes?path=" + path))
+                .header("Authorization", "Bearer " + accessKey)
+                .GET().build(),
+            HttpResponse.BodyHandlers.ofLines()
+        );
+        then(response.statusCode()).isEqualTo(200);
+        then(response.headers().firstValue("Content-Type")).hasValueSatisfying(
+            (type) -> then(type).startsWith("text/event-stream")
+        );
+
+        streams.add(response.body());
+
+        final BlockingQueue<String> ret = new LinkedBlockingQueue<>();
+        Thread.ofVirtual().start(() -> response.body()
+            .filter((line) -> line.startsWith("data:"))
+            .forEach((line) -> ret.add(line.substring(5)))
+        );
+        return ret;
+    }
+
+    private String next(final BlockingQueue<String> events) throws InterruptedException {
+        final String ret = events.poll(10, TimeUnit.SECONDS);
+        then(ret).as("no change received").isNotNull();
+        return ret;
+    }
+
+    private HttpResponse<String> get(final String path) throws Exception {
+        return http.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
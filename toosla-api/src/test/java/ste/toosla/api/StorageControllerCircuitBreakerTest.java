@@ -0,0 +1,190 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.net.http.HttpClient;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.toosla.zefiro.ZefiroCircuitBreaker;
+import ste.xtest.net.http.HttpClientStubber;
+import static ste.toosla.zefiro.ZefiroClientTest.FIXED_EARLIER_DATE;
+import static ste.toosla.zefiro.ZefiroClientTest.FIXED_LATER_DATE;
+import static ste.toosla.zefiro.ZefiroClientTest.FIXED_MODIFICATION_DATE;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_ACCOUNT;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_SECRET;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_VALIDATION_KEY;
+import static ste.toosla.zefiro.ZefiroClientTest.setUpFileStubs;
+
+/**
+ * Behaviour of the storage API while the circuit breaker towards Zefiro is
+ * open; the circuit is opened recording failures on the breaker directly,
+ * hence each test gets a fresh context.
+ */
+@SpringBootTest(properties = {
+    "toosla.zefiro.circuit-breaker.window=2",
+    "toosla.zefiro.circuit-breaker.open-ms=60000"
+})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StorageControllerCircuitBreakerTest {
+
+    private static final String ZEFIRO_HOST = "zefiro.me";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HttpClientStubber httpClientBuilder;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @Autowired
+    private ZefiroCircuitBreaker circuitBreaker;
+
+    private String accessKey;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        @Primary
+        public HttpClient.Builder httpClientBuilder() {
+            return new HttpClientStubber();
+        }
+    }
+
+    @BeforeEach
+    public void before() throws Exception {
+        httpClientBuilder.stubs().clear();
+        accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+    }
+
+    @Test
+    public void serve_stale_content_while_open() throws Exception {
+        final DateTimeFormatter HTTP_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz").withZone(ZoneId.of("GMT"));
+
+        //
+        // a successful read leaves a copy behind...
+        //
+        setUpFileStubs(httpClientBuilder);
+        read("/Toosla/toosla.json")
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist("Warning"));
+
+        //
+        // ... that is served, marked as stale, without calling Zefiro
+        //
+        httpClientBuilder.stubs().clear();
+        open();
+
+        read("/Toosla/toosla.json")
+            .andExpect(status().isOk())
+            .andExpect(content().string("{\"content\":\"this is toosla\"}"))
+            .andExpect(header().string("Warning", StaleReadCache.WARNING))
+            .andExpect(header().string("Last-Modified", HTTP_FORMAT.format(FIXED_MODIFICATION_DATE.toInstant().truncatedTo(ChronoUnit.SECONDS))));
+
+        mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Modified-Since", DateTimeFormatter.ISO_INSTANT.format(FIXED_LATER_DATE.toInstant()))
+                .content("{\"path\":\"/Toosla/toosla.json\"}"))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string("Warning", StaleReadCache.WARNING));
+
+        mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("If-Modified-Since", DateTimeFormatter.ISO_INSTANT.format(FIXED_EARLIER_DATE.toInstant()))
+                .content("{\"path\":\"/Toosla/toosla.json\"}"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Warning", StaleReadCache.WARNING));
+    }
+
+    @Test
+    public void fail_fast_while_open() throws Exception {
+        open();
+
+        read("/Toosla/unknown.json")
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", matchesPattern("[1-5]?[0-9]|60")))
+            .andExpect(jsonPath("$.message").value("Storage service unavailable, retry later"))
+            .andExpect(jsonPath("$.details").value("Zefiro is unavailable (circuit open for zefiro.me)"));
+
+        mockMvc.perform(post("/api/storage/write")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\": \"/Toosla/toosla.json\", \"content\": \"{}\"}"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().exists("Retry-After"))
+            .andExpect(jsonPath("$.message").value("Storage service unavailable, retry later"));
+    }
+
+    @Test
+    public void health_reports_circuit_state() throws Exception {
+        open();
+
+        mockMvc.perform(get("/health"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.zefiro['zefiro.me']").value("OPEN"));
+
+        //
+        // still ready: the circuit is open for the other nodes too
+        //
+        mockMvc.perform(get("/health/ready"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("UP"))
+            .andExpect(jsonPath("$.zefiro.circuits['zefiro.me']").value("OPEN"));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void open() {
+        circuitBreaker.record(ZEFIRO_HOST, true, 0);
+        circuitBreaker.record(ZEFIRO_HOST, true, 0);
+    }
+
+    private ResultActions read(final String path) throws Exception {
+        return mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"" + path + "\"}"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * Deadlines of the storage API against a {@link FakeZefiro} slowed down on
+ * purpose.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+public class StorageControllerDeadlineTest {
+
+    private static FakeZefiro zefiro;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(0);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @Test
+    public void gateway_timeout_when_the_deadline_passes() throws Exception {
+        final String accessKey = keyManager.newKey("account", "secret", "validationkey");
+        read(accessKey, null).andExpect(status().isOk()); // warm up
+
+        zefiro.slowNext("/sapi/download", 1, 3000);
+        read(accessKey, "1000")
+            .andExpect(status().isGatewayTimeout())
+            .andExpect(jsonPath("$.message").value("Storage service timeout"))
+            .andExpect(jsonPath("$.details").value("Zefiro calls did not complete within 1000ms (content)"));
+
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.metrics['storage.timeouts{operation=read,phase=content}']").value(1));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ResultActions read(final String accessKey, final String timeout) throws Exception {
+        final MockHttpServletRequestBuilder request = post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        if (timeout != null) {
+            request.header(StorageDeadlines.HEADER, timeout);
+        }
+        return mockMvc.perform(request);
+    }
+}
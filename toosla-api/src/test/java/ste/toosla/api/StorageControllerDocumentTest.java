@@ -0,0 +1,129 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * The key-level document endpoints, against a {@link FakeZefiro}; each test
+ * gets a fresh context (and hot copies).
+ */
+@SpringBootTest(properties = "toosla.storage.documents.flush-delay-ms=10")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StorageControllerDocumentTest {
+
+    private static final String DOCUMENT = "/api/storage/document?path=" + FakeZefiro.FILE + "&key=";
+
+    private static FakeZefiro zefiro;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    private String accessKey;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(0);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @BeforeEach
+    public void before() {
+        accessKey = keyManager.newKey("account", "secret", "validationkey");
+    }
+
+    @Test
+    public void read_write_and_remove_keys() throws Exception {
+        mockMvc.perform(get(DOCUMENT + "content").header("Authorization", "Bearer " + accessKey))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Last-Modified", "Tue, 19 Aug 2025 00:00:00 GMT"))
+            .andExpect(content().json("\"this is toosla\""));
+        mockMvc.perform(get(DOCUMENT + "things").header("Authorization", "Bearer " + accessKey))
+            .andExpect(status().isNotFound())
+            .andExpect(jsonPath("$.message").value("Key not found"))
+            .andExpect(jsonPath("$.details").value("no key 'things' in " + FakeZefiro.FILE));
+
+        mockMvc.perform(put(DOCUMENT + "things")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"todo\":[\"charge\"]}"))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("Last-Modified"));
+        mockMvc.perform(get(DOCUMENT + "things").header("Authorization", "Bearer " + accessKey))
+            .andExpect(status().isOk())
+            .andExpect(content().json("{\"todo\":[\"charge\"]}"));
+
+        mockMvc.perform(delete(DOCUMENT + "things").header("Authorization", "Bearer " + accessKey))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("Last-Modified"));
+        mockMvc.perform(get(DOCUMENT + "things").header("Authorization", "Bearer " + accessKey))
+            .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.metrics['storage.documents.entries']").value(1))
+            .andExpect(jsonPath("$.metrics['storage.documents.updates']").value(2))
+            .andExpect(jsonPath("$.metrics['storage.documents.flushes']").value(2));
+    }
+
+    @Test
+    public void unauthorized() throws Exception {
+        mockMvc.perform(get(DOCUMENT + "content"))
+            .andExpect(status().isUnauthorized())
+            .andExpect(jsonPath("$.message").value("Unauthorized"));
+        mockMvc.perform(put(DOCUMENT + "content")
+                .header("Authorization", "Bearer nokey")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("1"))
+            .andExpect(status().isUnauthorized());
+        mockMvc.perform(delete(DOCUMENT + "content"))
+            .andExpect(status().isUnauthorized());
+    }
+}
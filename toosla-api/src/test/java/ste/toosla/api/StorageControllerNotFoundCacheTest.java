@@ -0,0 +1,135 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * Reads of missing files answered from the {@link NotFoundCache}, against a
+ * {@link FakeZefiro} counting the calls; each test gets a fresh context (and
+ * cache).
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StorageControllerNotFoundCacheTest {
+
+    private static final String MISSING = "/Toosla/missing.json";
+
+    private static FakeZefiro zefiro;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    private String accessKey;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(0);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @BeforeEach
+    public void before() {
+        accessKey = keyManager.newKey("account", "secret", "validationkey");
+    }
+
+    @Test
+    public void do_not_call_zefiro_again_for_a_missing_file() throws Exception {
+        read(MISSING)
+            .andExpect(status().isNotFound())
+            .andExpect(jsonPath("$.details").value("File not found: " + MISSING));
+        final int calls = zefiro.calls();
+
+        read(MISSING)
+            .andExpect(status().isNotFound())
+            .andExpect(jsonPath("$.message").value("File not found"))
+            .andExpect(jsonPath("$.details").value("File not found: " + MISSING));
+        read(MISSING).andExpect(status().isNotFound());
+        then(zefiro.calls()).isEqualTo(calls);
+
+        //
+        // other accounts and files are not affected
+        //
+        accessKey = keyManager.newKey("someoneelse", "secret", "validationkey");
+        read(MISSING).andExpect(status().isNotFound());
+        then(zefiro.calls()).isGreaterThan(calls);
+
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.metrics['storage.not-found-cache.hits']").value(2))
+            .andExpect(jsonPath("$.metrics['storage.not-found-cache.entries']").value(2));
+    }
+
+    @Test
+    public void writes_invalidate_the_missing_file() throws Exception {
+        read(MISSING).andExpect(status().isNotFound());
+
+        mockMvc.perform(post("/api/storage/write")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\": \"" + MISSING + "\", \"content\": \"{}\"}"))
+            .andExpect(status().isOk());
+
+        //
+        // the file may exist now: ask Zefiro (the fake one does not know it)
+        //
+        final int calls = zefiro.calls();
+        read(MISSING).andExpect(status().isNotFound());
+        then(zefiro.calls()).isGreaterThan(calls);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ResultActions read(final String path) throws Exception {
+        return mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"" + path + "\"}"));
+    }
+}
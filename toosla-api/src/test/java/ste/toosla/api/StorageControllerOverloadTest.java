@@ -0,0 +1,142 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.toosla.zefiro.ZefiroCall;
+import ste.toosla.zefiro.ZefiroEndpoint;
+import ste.toosla.zefiro.ZefiroLoadMonitor;
+import ste.xtest.net.http.HttpClientStubber;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_ACCOUNT;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_SECRET;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_VALIDATION_KEY;
+import static ste.toosla.zefiro.ZefiroClientTest.setUpFileStubs;
+
+/**
+ * Readiness and load shedding of the storage API; Zefiro calls are made slow
+ * notifying the load monitor directly, hence each test gets a fresh context.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StorageControllerOverloadTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HttpClientStubber httpClientBuilder;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @Autowired
+    private ZefiroLoadMonitor loadMonitor;
+
+    private String accessKey;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        @Primary
+        public HttpClient.Builder httpClientBuilder() {
+            return new HttpClientStubber();
+        }
+    }
+
+    @BeforeEach
+    public void before() throws Exception {
+        httpClientBuilder.stubs().clear();
+        setUpFileStubs(httpClientBuilder);
+        accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+    }
+
+    @Test
+    public void ready_while_zefiro_keeps_up() throws Exception {
+        mockMvc.perform(get("/health/ready"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("UP"))
+            .andExpect(jsonPath("$.zefiro.inFlight").value(0))
+            .andExpect(jsonPath("$.zefiro.waiting").value(0))
+            .andExpect(jsonPath("$.zefiro.maxCalls").value(128));
+    }
+
+    @Test
+    public void shed_writes_while_overloaded() throws Exception {
+        overload();
+
+        mockMvc.perform(get("/health/ready"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(jsonPath("$.status").value("OUT_OF_SERVICE"));
+        mockMvc.perform(get("/health"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("UP"));
+        mockMvc.perform(get("/health/live"))
+            .andExpect(status().isOk());
+
+        mockMvc.perform(post("/api/storage/write")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\": \"/Toosla/toosla.json\", \"content\": \"{}\"}"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "1"))
+            .andExpect(jsonPath("$.message").value("Service overloaded, retry later"))
+            .andExpect(jsonPath("$.details").value("write requests are shed while Zefiro calls are backing up"));
+
+        //
+        // reads are not shed
+        //
+        mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"/Toosla/toosla.json\"}"))
+            .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.metrics['zefiro.overload.shed']").value(1));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void overload() {
+        for (int i = 0; i < 50; ++i) {
+            loadMonitor.onCall(new ZefiroCall(ZefiroEndpoint.CONTENT, 200, 0, 0, TimeUnit.SECONDS.toNanos(10), 1, null));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Date;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * Writes by patch, against a {@link FakeZefiro} whose file was last modified
+ * on Tue, 19 Aug 2025 00:00:00 GMT; each test gets a fresh context (and
+ * remembered versions).
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StorageControllerPatchTest {
+
+    private static final String LAST_MODIFIED = "Tue, 19 Aug 2025 00:00:00 GMT";
+    private static final String CURRENT = "2025-08-19T00:00:00Z";
+    private static final String BEFORE = "2025-08-18T23:59:00Z";
+
+    private static FakeZefiro zefiro;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @Autowired
+    private StoragePatches patches;
+
+    private String accessKey;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(0);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @BeforeEach
+    public void before() {
+        accessKey = keyManager.newKey("account", "secret", "validationkey");
+    }
+
+    @Test
+    public void write_by_patch() throws Exception {
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"mergePatch\":{\"key\":\"value\"}}", CURRENT)
+            .andExpect(status().isOk())
+            .andExpect(header().exists("Last-Modified"))
+            .andExpect(content().string(""));
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"patch\":[{\"op\":\"add\",\"path\":\"/key\",\"value\":\"value\"}]}", null)
+            .andExpect(status().isOk())
+            .andExpect(header().exists("Last-Modified"))
+            .andExpect(content().string(""));
+    }
+
+    @Test
+    public void outdated_patches_are_merged() throws Exception {
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"this was toosla\",\"old\":true}", date(BEFORE));
+
+        //
+        // the response brings the client's version up to date
+        //
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"mergePatch\":{\"key\":\"value\"}}", BEFORE)
+            .andExpect(status().isOk())
+            .andExpect(header().exists("Last-Modified"))
+            .andExpect(content().contentType("application/merge-patch+json"))
+            .andExpect(content().json("{\"content\":\"this is toosla\",\"old\":null,\"key\":\"value\"}", true));
+
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"mergePatch\":{\"content\":\"mine\"}}", BEFORE)
+            .andExpect(status().isConflict())
+            .andExpect(header().string("Last-Modified", LAST_MODIFIED))
+            .andExpect(jsonPath("$.message").value("Conflict"))
+            .andExpect(jsonPath("$.details").value(FakeZefiro.FILE + " has been changed at /content"));
+
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.metrics['storage.patches.writes']").value(1))
+            .andExpect(jsonPath("$.metrics['storage.patches.merged']").value(1))
+            .andExpect(jsonPath("$.metrics['storage.patches.conflicts']").value(1));
+    }
+
+    @Test
+    public void unknown_base_versions_are_rejected() throws Exception {
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"mergePatch\":{\"key\":\"value\"}}", BEFORE)
+            .andExpect(status().isPreconditionFailed())
+            .andExpect(header().string("Last-Modified", LAST_MODIFIED))
+            .andExpect(jsonPath("$.details").value(
+                "the version of " + FakeZefiro.FILE + " the patch was made against is not available, read it again"
+            ));
+
+        //
+        // versions read are remembered
+        //
+        mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"" + FakeZefiro.FILE + "\"}"))
+            .andExpect(status().isOk());
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(jsonPath("$.metrics['storage.patches.files']").value(1));
+    }
+
+    @Test
+    public void invalid_patches() throws Exception {
+        write("{\"path\":\"" + FakeZefiro.FILE + "\"}", null)
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("one of content, mergePatch or patch is required"));
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"content\":\"{}\",\"mergePatch\":{}}", null)
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("one of content, mergePatch or patch is required"));
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"patch\":{\"op\":\"add\"}}", null)
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("Invalid patch"))
+            .andExpect(jsonPath("$.details").value("patch must be an array of operations"));
+        write("{\"path\":\"" + FakeZefiro.FILE + "\",\"patch\":[{\"op\":\"remove\",\"path\":\"/none\"}]}", null)
+            .andExpect(status().isConflict())
+            .andExpect(jsonPath("$.details").value("no value at /none"));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ResultActions write(final String body, final String ifUnmodifiedSince) throws Exception {
+        final var request = post("/api/storage/write")
+            .header("Authorization", "Bearer " + accessKey)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body);
+        if (ifUnmodifiedSince != null) {
+            request.header("If-Unmodified-Since", ifUnmodifiedSince);
+        }
+        return mockMvc.perform(request);
+    }
+
+    private static Date date(final String iso) {
+        return Date.from(Instant.parse(iso));
+    }
+}
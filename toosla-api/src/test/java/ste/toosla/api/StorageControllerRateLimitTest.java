@@ -0,0 +1,203 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.net.http.HttpClient;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.not;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.xtest.net.http.HttpClientStubber;
+import ste.xtest.net.http.StubHttpClient.StubHttpResponse;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_ACCOUNT;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_SECRET;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_VALIDATION_KEY;
+import static ste.toosla.zefiro.ZefiroClientTest.setUpFileStubs;
+
+/**
+ * Rate limiting of the storage API; limits are low enough that they can not
+ * be refilled during a test, hence each test gets a fresh context.
+ */
+@SpringBootTest(properties = {
+    "toosla.storage.rate-limit.login.rate=0.001",
+    "toosla.storage.rate-limit.login.burst=2",
+    "toosla.storage.rate-limit.read.rate=0.001",
+    "toosla.storage.rate-limit.read.burst=2",
+    "toosla.storage.rate-limit.write.rate=0.001",
+    "toosla.storage.rate-limit.write.burst=1"
+})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StorageControllerRateLimitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HttpClientStubber httpClientBuilder;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        @Primary
+        public HttpClient.Builder httpClientBuilder() {
+            return new HttpClientStubber();
+        }
+    }
+
+    @BeforeEach
+    public void before() throws Exception {
+        httpClientBuilder.stubs().clear();
+    }
+
+    @Test
+    public void too_many_logins() throws Exception {
+        httpClientBuilder.withStub(
+            "https://zefiro.me/sapi/login?action=login",
+            new StubHttpResponse<String>().statusCode(401).text("{\"success\": false}")
+        );
+
+        login("user1:wrong").andExpect(status().isUnauthorized());
+        login("user1:wrong").andExpect(status().isUnauthorized());
+        login("user1:wrong")
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", matchesPattern("[0-9]+")))
+            .andExpect(jsonPath("$.message").value("Too many requests, retry later"))
+            .andExpect(jsonPath("$.details").value("rate limit of login requests exceeded"));
+
+        //
+        // other accounts are not affected
+        //
+        login("user2:wrong").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void logins_are_limited_per_caller() throws Exception {
+        httpClientBuilder.withStub(
+            "https://zefiro.me/sapi/login?action=login",
+            new StubHttpResponse<String>().statusCode(401).text("{\"success\": false}")
+        );
+
+        //
+        // someone failing logins on user1's account...
+        //
+        login("user1:wrong", "10.0.0.1").andExpect(status().isUnauthorized());
+        login("user1:wrong", "10.0.0.1").andExpect(status().isUnauthorized());
+        login("user1:wrong", "10.0.0.1").andExpect(status().isTooManyRequests());
+
+        //
+        // ... does not keep user1 out
+        //
+        login("user1:wrong", "10.0.0.2").andExpect(status().isUnauthorized());
+        login("user1:wrong", "10.0.0.2").andExpect(status().isUnauthorized());
+        login("user1:wrong", "10.0.0.2").andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    public void too_many_reads() throws Exception {
+        setUpFileStubs(httpClientBuilder);
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+
+        read(accessKey).andExpect(status().isOk());
+        read(accessKey).andExpect(status().isOk());
+        read(accessKey)
+            .andExpect(status().isTooManyRequests())
+            .andExpect(header().string("Retry-After", matchesPattern("[0-9]+")))
+            .andExpect(jsonPath("$.details").value("rate limit of read requests exceeded"));
+
+        //
+        // other accounts are not affected (Zefiro is stubbed for TEST_ACCOUNT only)
+        //
+        read(keyManager.newKey("someoneelse", TEST_SECRET, TEST_VALIDATION_KEY)).andExpect(status().is(not(429)));
+    }
+
+    @Test
+    public void writes_are_limited_independently_of_reads() throws Exception {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+
+        //
+        // the first write goes through to Zefiro (not stubbed, hence the error)
+        //
+        write(accessKey).andExpect(status().is5xxServerError());
+        write(accessKey)
+            .andExpect(status().isTooManyRequests())
+            .andExpect(jsonPath("$.details").value("rate limit of write requests exceeded"));
+
+        setUpFileStubs(httpClientBuilder);
+        read(accessKey).andExpect(status().isOk());
+    }
+
+    @Test
+    public void rejections_are_measured() throws Exception {
+        login("user1:wrong");
+        login("user1:wrong");
+        login("user1:wrong").andExpect(status().isTooManyRequests());
+
+        mockMvc.perform(get("/api/metrics"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.metrics['storage.rate-limit.rejected{operation=login}']").value(1));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ResultActions login(final String credentials) throws Exception {
+        return login(credentials, "127.0.0.1");
+    }
+
+    private ResultActions login(final String credentials, final String address) throws Exception {
+        return mockMvc.perform(post("/api/storage/login")
+                .with(request -> { request.setRemoteAddr(address); return request; })
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"credentials\":\"" + credentials + "\"}"));
+    }
+
+    private ResultActions read(final String accessKey) throws Exception {
+        return mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"/Toosla/toosla.json\"}"));
+    }
+
+    private ResultActions write(final String accessKey) throws Exception {
+        return mockMvc.perform(post("/api/storage/write")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\": \"/Toosla/toosla.json\", \"content\": \"{}\"}"));
+    }
+}
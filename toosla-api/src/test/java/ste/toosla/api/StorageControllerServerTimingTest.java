@@ -0,0 +1,148 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.net.http.HttpClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import ste.xtest.net.http.ANDMatcher;
+import ste.xtest.net.http.HeaderMatcher;
+import ste.xtest.net.http.HttpClientStubber;
+import ste.xtest.net.http.StubHttpClient.StubHttpResponse;
+import ste.xtest.net.http.URIMatcher;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_ACCOUNT;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_BASIC_CREDENTIALS;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_SECRET;
+import static ste.toosla.zefiro.ZefiroClientTest.TEST_VALIDATION_KEY;
+import static ste.toosla.zefiro.ZefiroClientTest.setUpFileStubs;
+
+/**
+ * Server-Timing header of the storage API when {@code toosla.server-timing.enabled}
+ * is set; see {@link StorageControllerTest} for the default (disabled) behaviour.
+ */
+@SpringBootTest(properties = "toosla.server-timing.enabled=true")
+@AutoConfigureMockMvc
+public class StorageControllerServerTimingTest {
+
+    private static final String DUR = ";dur=\\d+\\.\\d{3}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private HttpClientStubber httpClientBuilder;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        @Primary
+        public HttpClient.Builder httpClientBuilder() {
+            return new HttpClientStubber();
+        }
+    }
+
+    @BeforeEach
+    public void before() {
+        httpClientBuilder.stubs().clear();
+    }
+
+    @Test
+    public void read_reports_all_phases() throws Exception {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+
+        setUpFileStubs(httpClientBuilder);
+
+        mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"/Toosla/toosla.json\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ServerTiming.HEADER, matchesPattern(
+                    "ser;desc=\"[^\"]+\"" + DUR + ", "
+                  + "auth;desc=\"[^\"]+\"" + DUR + ", "
+                  + "folder;desc=\"[^\"]+\"" + DUR + ", "
+                  + "list;desc=\"[^\"]+\"" + DUR + ", "
+                  + "meta;desc=\"[^\"]+\"" + DUR + ", "
+                  + "content;desc=\"[^\"]+\"" + DUR + ", "
+                  + "total" + DUR
+                )));
+    }
+
+    @Test
+    public void write_without_body_reports_upload() throws Exception {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+
+        setUpFileStubs(httpClientBuilder).withStub(
+            new ANDMatcher(
+                new URIMatcher("https://upload.zefiro.me/sapi/upload?action=save&acceptasynchronous=false&validationkey=" + TEST_VALIDATION_KEY),
+                new HeaderMatcher("Authorization", "Basic " + TEST_BASIC_CREDENTIALS)
+            ),
+            new StubHttpResponse<String>().text("{\"success\":\"Media uploaded successfully\",\"id\":\"12345\","
+                + "\"status\":\"V\",\"etag\":\"J7XxRng02rtVeS3X9Wj58Q==\","
+                + "\"responsetime\":1755272687861,\"type\":\"file\"}"
+            )
+        );
+
+        mockMvc.perform(post("/api/storage/write")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\": \"/Toosla/new_file.json\", \"content\": \"{}\"}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ServerTiming.HEADER, containsString("content;desc=\"content transfer\";dur=")))
+                .andExpect(header().string(ServerTiming.HEADER, containsString("total;dur=")));
+    }
+
+    @Test
+    public void unauthorized_read_reports_auth_only() throws Exception {
+        mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer invalid")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"/Toosla/toosla.json\"}"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string(ServerTiming.HEADER, matchesPattern(
+                    "ser;desc=\"[^\"]+\"" + DUR + ", auth;desc=\"[^\"]+\"" + DUR + ", total" + DUR
+                )));
+    }
+
+    @Test
+    public void no_server_timing_outside_storage_api() throws Exception {
+        mockMvc.perform(get("/health"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(ServerTiming.HEADER));
+    }
+}
@@ -31,11 +31,17 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import static org.assertj.core.api.BDDAssertions.then;
 import org.junit.jupiter.api.BeforeEach;
 
@@ -63,6 +69,10 @@ import static ste.toosla.zefiro.ZefiroClientTest.TEST_VALIDATION_KEY;
 import static ste.toosla.zefiro.ZefiroClientTest.setUpFileStubs;
 import ste.xtest.logging.ListLogHandler;
 import ste.xtest.logging.LogAssertions;
+import ste.toosla.util.jfr.KeyLookupEvent;
+import ste.toosla.util.jfr.StorageReadEvent;
+import ste.toosla.util.jfr.TooslaEvents;
+import ste.toosla.util.metrics.MetricsRegistry;
 
 
 //
@@ -70,7 +80,11 @@ import ste.xtest.logging.LogAssertions;
 // all stubbing stuff shall be provided by ZefiroClientTest or even better,
 // we should have a fake implementation of the remote service.
 //
-@SpringBootTest
+//
+// missing files are not cached: tests read the same missing files with
+// different stubs
+//
+@SpringBootTest(properties = "toosla.storage.not-found-cache.ttl-ms=0")
 @AutoConfigureMockMvc
 public class StorageControllerTest {
 
@@ -87,6 +101,9 @@ public class StorageControllerTest {
     @Autowired
     private KeyManager keyManager;
 
+    @Autowired
+    private MetricsRegistry metrics;
+
     private ListLogHandler logHandler;
 
     @TestConfiguration
@@ -785,7 +802,71 @@ public class StorageControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("application/json"))
                 .andExpect(content().string("{\"content\":\"this is toosla\"}"))
-                .andExpect(header().string("Last-Modified", HTTP_FORMAT.format(FIXED_MODIFICATION_DATE.toInstant().truncatedTo(ChronoUnit.SECONDS))));
+                .andExpect(header().string("Last-Modified", HTTP_FORMAT.format(FIXED_MODIFICATION_DATE.toInstant().truncatedTo(ChronoUnit.SECONDS))))
+                .andExpect(header().doesNotExist(ServerTiming.HEADER));
+    }
+
+    @Test
+    public void read_records_upstream_calls_and_metrics() throws Exception {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+
+        setUpFileStubs(httpClientBuilder);
+
+        final long reads = metrics.distribution("http.server.upstream.calls{route=POST /api/storage/read}").count();
+        final long contents = metrics.timer("zefiro.latency{endpoint=content}").count();
+
+        // When
+        mockMvc.perform(post("/api/storage/read")
+                .header("Authorization", "Bearer " + accessKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"path\":\"/Toosla/toosla.json\"}"))
+                .andExpect(status().isOk());
+
+        // Then: root, 2 x folders, list, metadata, content
+        then(metrics.distribution("http.server.upstream.calls{route=POST /api/storage/read}").count()).isEqualTo(reads + 1);
+        then(metrics.distribution("http.server.upstream.calls{route=POST /api/storage/read}").max()).isGreaterThanOrEqualTo(6);
+        then(metrics.timer("zefiro.latency{endpoint=content}").count()).isEqualTo(contents + 1);
+        then(metrics.counter("zefiro.calls{endpoint=metadata,status=200}").sum()).isPositive();
+        then(metrics.distribution("zefiro.bytes.received{endpoint=content}").max()).isEqualTo("{\"content\":\"this is toosla\"}".length());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void read_is_recorded_as_jfr_event() throws Exception {
+        final String accessKey = keyManager.newKey(TEST_ACCOUNT, TEST_SECRET, TEST_VALIDATION_KEY);
+
+        setUpFileStubs(httpClientBuilder);
+
+        final Path jfr = Files.createTempFile("storage-", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(StorageReadEvent.NAME);
+            recording.enable(KeyLookupEvent.NAME);
+            recording.start();
+
+            // When
+            mockMvc.perform(post("/api/storage/read")
+                    .header("Authorization", "Bearer " + accessKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"path\":\"/Toosla/toosla.json\"}"))
+                    .andExpect(status().isOk());
+
+            recording.stop();
+            recording.dump(jfr);
+
+            // Then
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+            then(events).filteredOn(e -> e.getEventType().getName().equals(KeyLookupEvent.NAME))
+                .hasSize(1).allMatch(e -> e.getBoolean("found"));
+
+            final List<RecordedEvent> reads = events.stream()
+                .filter(e -> e.getEventType().getName().equals(StorageReadEvent.NAME)).toList();
+            then(reads).hasSize(1);
+            then(reads.get(0).getString("path")).isEqualTo("/Toosla/toosla.json");
+            then(reads.get(0).getString("account")).isEqualTo(TooslaEvents.account(TEST_ACCOUNT)).isNotEqualTo(TEST_ACCOUNT);
+            then(reads.get(0).getInt("status")).isEqualTo(200);
+            then(reads.get(0).getBoolean("cacheHit")).isFalse();
+            then(reads.get(0).getInt("upstreamCalls")).isEqualTo(6);
+        } finally {
+            Files.deleteIfExists(jfr);
+        }
+    }
+}
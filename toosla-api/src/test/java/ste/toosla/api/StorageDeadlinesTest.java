@@ -0,0 +1,73 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class StorageDeadlinesTest {
+
+    private final StorageDeadlines deadlines = new StorageDeadlines(
+        Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(3)
+    );
+
+    @Test
+    public void invalid_budgets() {
+        thenThrownBy(() -> new StorageDeadlines(null, Duration.ofSeconds(2), Duration.ofSeconds(3)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("login can not be null, zero or negative");
+        thenThrownBy(() -> new StorageDeadlines(Duration.ofSeconds(1), Duration.ZERO, Duration.ofSeconds(3)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("read can not be null, zero or negative");
+        thenThrownBy(() -> new StorageDeadlines(Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(-3)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("write can not be null, zero or negative");
+    }
+
+    @Test
+    public void configured_budgets_by_default() {
+        then(deadlines.login(null).budget()).isEqualTo(Duration.ofSeconds(1));
+        then(deadlines.read(null).budget()).isEqualTo(Duration.ofSeconds(2));
+        then(deadlines.write(null).budget()).isEqualTo(Duration.ofSeconds(3));
+    }
+
+    @Test
+    public void clients_can_ask_for_less_but_not_for_more() {
+        then(deadlines.read("500").budget()).isEqualTo(Duration.ofMillis(500));
+        then(deadlines.write(" 2500 ").budget()).isEqualTo(Duration.ofMillis(2500));
+        then(deadlines.read("60000").budget()).isEqualTo(Duration.ofSeconds(2));
+        then(deadlines.login("1000").budget()).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void ignore_invalid_values() {
+        then(deadlines.read("").budget()).isEqualTo(Duration.ofSeconds(2));
+        then(deadlines.read("soon").budget()).isEqualTo(Duration.ofSeconds(2));
+        then(deadlines.read("0").budget()).isEqualTo(Duration.ofSeconds(2));
+        then(deadlines.read("-100").budget()).isEqualTo(Duration.ofSeconds(2));
+        then(deadlines.read("1.5").budget()).isEqualTo(Duration.ofSeconds(2));
+    }
+}
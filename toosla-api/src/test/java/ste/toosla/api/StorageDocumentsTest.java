@@ -0,0 +1,251 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import static org.awaitility.Awaitility.await;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ste.toosla.zefiro.FakeZefiro;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroDeadline;
+import ste.toosla.zefiro.ZefiroEndpoint;
+import ste.toosla.zefiro.ZefiroException;
+import ste.toosla.zefiro.ZefiroTimeoutException;
+
+/**
+ *
+ */
+public class StorageDocumentsTest {
+
+    private static final Date CURRENT = new Date(1755561600000L);
+
+    private FakeZefiro zefiro;
+    private Supplier<ZefiroClient> client;
+    private StorageDocuments documents;
+    private final List<String> flushed = new ArrayList<>();
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+        client = () -> new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey");
+        documents = new StorageDocuments(Duration.ofMillis(200), Duration.ofMinutes(1), 10)
+            .withListener((account, path, content, lastModified) -> {
+                synchronized (flushed) {
+                    flushed.add(account + ":" + path + ":" + content);
+                }
+            });
+    }
+
+    @AfterEach
+    public void after() {
+        documents.close();
+        zefiro.close();
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new StorageDocuments(null, Duration.ZERO, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("flushDelay can not be null or negative");
+        thenThrownBy(() -> new StorageDocuments(Duration.ofMillis(-1), Duration.ZERO, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("flushDelay can not be null or negative");
+        thenThrownBy(() -> new StorageDocuments(Duration.ZERO, null, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxAge can not be null or negative");
+        thenThrownBy(() -> new StorageDocuments(Duration.ZERO, Duration.ZERO, 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxEntries can not be less than 1");
+        thenThrownBy(() -> documents.withListener(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("listener can not be null");
+    }
+
+    @Test
+    public void read_keys_from_the_hot_copy() {
+        StorageDocuments.Value value = documents.get("account", FakeZefiro.FILE, "content", null, client);
+        then(value.value()).isEqualTo(new TextNode("this is toosla"));
+        then(value.lastModified()).isEqualTo(CURRENT);
+
+        final int calls = zefiro.calls();
+        then(documents.get("account", FakeZefiro.FILE, "content", null, client).value()).isEqualTo(new TextNode("this is toosla"));
+        then(documents.get("account", FakeZefiro.FILE, "missing", null, client)).isNull();
+        then(zefiro.calls()).isEqualTo(calls);
+        then(documents.documents()).isOne();
+
+        //
+        // each account has its own copy
+        //
+        then(documents.get("someoneelse", FakeZefiro.FILE, "content", null, client)).isNotNull();
+        then(zefiro.calls()).isGreaterThan(calls);
+        then(documents.documents()).isEqualTo(2);
+    }
+
+    @Test
+    public void check_old_copies_on_zefiro() {
+        documents = new StorageDocuments(Duration.ofMillis(200), Duration.ZERO, 10);
+
+        documents.get("account", FakeZefiro.FILE, "content", null, client);
+        final int downloads = zefiro.calls("/sapi/download");
+
+        //
+        // not modified, the content is not downloaded again
+        //
+        then(documents.get("account", FakeZefiro.FILE, "content", null, client).value()).isEqualTo(new TextNode("this is toosla"));
+        then(zefiro.calls("/sapi/download")).isEqualTo(downloads);
+    }
+
+    @Test
+    public void changes_are_written_together() throws Exception {
+        final List<Future<Date>> writes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 5; ++i) {
+                final int n = i;
+                writes.add(executor.submit(() -> documents.put("account", FakeZefiro.FILE, "key" + n, new IntNode(n), null, client)));
+            }
+            writes.add(executor.submit(() -> documents.remove("account", FakeZefiro.FILE, "content", null, client)));
+        }
+
+        final Date lastModified = writes.get(0).get();
+        then(lastModified).isAfter(CURRENT);
+        for (Future<Date> write: writes) {
+            then(write.get()).isEqualTo(lastModified);
+        }
+        then(zefiro.calls("/sapi/upload")).isOne();
+        then(documents.updates()).isEqualTo(6);
+        then(documents.flushes()).isOne();
+        then(flushed).containsExactly(
+            "account:" + FakeZefiro.FILE + ":{\"key0\":0,\"key1\":1,\"key2\":2,\"key3\":3,\"key4\":4}"
+        );
+
+        //
+        // the hot copy has the changes
+        //
+        then(documents.get("account", FakeZefiro.FILE, "key3", null, client).value()).isEqualTo(new IntNode(3));
+        then(documents.get("account", FakeZefiro.FILE, "content", null, client)).isNull();
+    }
+
+    @Test
+    public void changes_are_applied_to_the_current_version() {
+        documents.get("account", FakeZefiro.FILE, "content", null, client);
+
+        //
+        // someone else wrote the document in the meantime
+        //
+        documents.forget("account", FakeZefiro.FILE);
+
+        documents.put("account", FakeZefiro.FILE, "key", new TextNode("value"), null, client);
+        then(flushed).containsExactly(
+            "account:" + FakeZefiro.FILE + ":{\"content\":\"this is toosla\",\"key\":\"value\"}"
+        );
+    }
+
+    @Test
+    public void failed_writes_drop_the_hot_copy() {
+        documents.get("account", FakeZefiro.FILE, "content", null, client);
+
+        zefiro.failNext("/sapi/upload", 1, 500, null);
+        thenThrownBy(() -> documents.put("account", FakeZefiro.FILE, "key", new TextNode("value"), null, client))
+            .isInstanceOf(ZefiroException.class);
+        then(flushed).isEmpty();
+
+        then(documents.get("account", FakeZefiro.FILE, "key", null, client)).isNull();
+        then(documents.get("account", FakeZefiro.FILE, "content", null, client)).isNotNull();
+    }
+
+    @Test
+    public void writes_landing_before_the_upload_are_not_overwritten() {
+        documents.get("account", FakeZefiro.FILE, "content", null, client);
+
+        //
+        // someone else writes the document after the check of the flush and
+        // before its upload
+        //
+        final Date changed = new Date(CURRENT.getTime() + 60000);
+        zefiro.changeAfter("/sapi/media", 1, changed.getTime(), "{\"content\":\"changed\",\"other\":1}");
+
+        final Date lastModified = documents.put("account", FakeZefiro.FILE, "key", new TextNode("value"), null, client);
+        then(lastModified).isAfter(changed);
+        then(zefiro.calls("/sapi/upload")).isOne();
+        then(flushed).containsExactly(
+            "account:" + FakeZefiro.FILE + ":{\"content\":\"changed\",\"other\":1,\"key\":\"value\"}"
+        );
+    }
+
+    @Test
+    public void reads_wait_for_the_load_in_progress() throws Exception {
+        zefiro.slowNext("/sapi/download", 1, 500);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final Future<StorageDocuments.Value> first = executor.submit(
+                () -> documents.get("account", FakeZefiro.FILE, "content", null, client)
+            );
+            await().atMost(1, TimeUnit.SECONDS).until(() -> zefiro.calls("/sapi/download") == 1);
+
+            //
+            // up to its deadline
+            //
+            thenThrownBy(() -> documents.get("account", FakeZefiro.FILE, "content", ZefiroDeadline.in(Duration.ofMillis(100)), client))
+                .isInstanceOf(ZefiroTimeoutException.class)
+                .extracting("endpoint").isEqualTo(ZefiroEndpoint.CONTENT);
+
+            final Future<StorageDocuments.Value> second = executor.submit(
+                () -> documents.get("account", FakeZefiro.FILE, "content", null, client)
+            );
+            then(first.get().value()).isEqualTo(new TextNode("this is toosla"));
+            then(second.get().value()).isEqualTo(new TextNode("this is toosla"));
+        }
+        then(zefiro.calls("/sapi/download")).isOne();
+    }
+
+    @Test
+    public void changes_wait_for_the_flush_up_to_the_deadline() {
+        documents.get("account", FakeZefiro.FILE, "content", null, client);
+
+        zefiro.slowNext("/sapi/upload", 1, 500);
+        thenThrownBy(() -> documents.put("account", FakeZefiro.FILE, "key", new TextNode("value"), ZefiroDeadline.in(Duration.ofMillis(300)), client))
+            .isInstanceOf(ZefiroTimeoutException.class)
+            .extracting("endpoint").isEqualTo(ZefiroEndpoint.UPLOAD);
+
+        //
+        // the change is written anyway
+        //
+        await().atMost(2, TimeUnit.SECONDS).until(() -> documents.flushes() == 1);
+        then(documents.get("account", FakeZefiro.FILE, "key", null, client).value()).isEqualTo(new TextNode("value"));
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ste.toosla.zefiro.FakeZefiro;
+import ste.toosla.zefiro.ZefiroClient;
+import static ste.toosla.api.StoragePatches.Type.JSON_PATCH;
+import static ste.toosla.api.StoragePatches.Type.MERGE_PATCH;
+
+/**
+ *
+ */
+public class StoragePatchesTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final Date CURRENT = new Date(1755561600000L);
+    private static final Date BEFORE = new Date(CURRENT.getTime() - 60000);
+
+    private FakeZefiro zefiro;
+    private ZefiroClient client;
+    private StoragePatches patches;
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+        client = new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey");
+        patches = new StoragePatches(2, 10);
+    }
+
+    @AfterEach
+    public void after() {
+        zefiro.close();
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new StoragePatches(0, 10))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxVersions can not be less than 1");
+        thenThrownBy(() -> new StoragePatches(1, 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxEntries can not be less than 1");
+    }
+
+    @Test
+    public void patch_the_current_version() throws Exception {
+        final Date now = new Date(System.currentTimeMillis() / 1000 * 1000);
+        final StoragePatches.Result result = patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"value\"}"), null, client
+        );
+
+        then(result.content()).isEqualTo("{\"content\":\"this is toosla\",\"key\":\"value\"}");
+        then(result.lastModified()).isAfterOrEqualTo(now);
+        then(result.merged()).isFalse();
+        then(result.changes()).isNull();
+        then(zefiro.calls("/sapi/download")).isEqualTo(1);
+        then(zefiro.calls("/sapi/upload")).isEqualTo(1);
+        then(patches.writes()).isEqualTo(1);
+        then(patches.merged()).isZero();
+
+        //
+        // same base as the current version
+        //
+        patches.write("account", FakeZefiro.FILE, JSON_PATCH, json("""
+            [{"op":"test","path":"/content","value":"this is toosla"},{"op":"add","path":"/key","value":1}]
+        """), CURRENT, client);
+        then(patches.writes()).isEqualTo(2);
+        then(patches.merged()).isZero();
+    }
+
+    @Test
+    public void known_versions_are_not_downloaded() throws Exception {
+        patches.remember("account", FakeZefiro.FILE, FakeZefiro.CONTENT, CURRENT);
+
+        patches.write("account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"value\"}"), CURRENT, client);
+
+        then(zefiro.calls("/sapi/download")).isZero();
+        then(zefiro.calls("/sapi/upload")).isEqualTo(1);
+    }
+
+    @Test
+    public void changes_made_since_the_base_are_merged() throws Exception {
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"this was toosla\"}", BEFORE);
+
+        final StoragePatches.Result result = patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"value\"}"), BEFORE, client
+        );
+
+        then(result.content()).isEqualTo("{\"content\":\"this is toosla\",\"key\":\"value\"}");
+        then(result.merged()).isTrue();
+        then(result.changes()).isEqualTo("{\"content\":\"this is toosla\",\"key\":\"value\"}");
+        then(patches.merged()).isEqualTo(1);
+        then(patches.conflicts()).isZero();
+    }
+
+    @Test
+    public void conflicting_changes_are_rejected() throws Exception {
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"this was toosla\"}", BEFORE);
+
+        thenThrownBy(() -> patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"content\":\"mine\"}"), BEFORE, client
+        ))
+            .isInstanceOf(StoragePatches.ConflictException.class)
+            .hasMessage(FakeZefiro.FILE + " has been changed at /content")
+            .extracting("lastModified").isEqualTo(CURRENT);
+        thenThrownBy(() -> patches.write(
+            "account", FakeZefiro.FILE, JSON_PATCH, json("[{\"op\":\"test\",\"path\":\"/content\",\"value\":\"nope\"}]"), null, client
+        ))
+            .isInstanceOf(StoragePatches.ConflictException.class)
+            .hasMessage("test failed at /content");
+
+        then(patches.conflicts()).isEqualTo(2);
+        then(zefiro.calls("/sapi/upload")).isZero();
+    }
+
+    @Test
+    public void unknown_base_versions_are_rejected() throws Exception {
+        thenThrownBy(() -> patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"value\"}"), BEFORE, client
+        ))
+            .isInstanceOf(StoragePatches.UnknownBaseException.class)
+            .extracting("lastModified").isEqualTo(Optional.of(CURRENT));
+
+        //
+        // only the last versions are remembered
+        //
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"this was toosla\"}", BEFORE);
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"1\"}", new Date(BEFORE.getTime() + 10000));
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"2\"}", new Date(BEFORE.getTime() + 20000));
+
+        thenThrownBy(() -> patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"value\"}"), BEFORE, client
+        )).isInstanceOf(StoragePatches.UnknownBaseException.class);
+        then(patches.files()).isEqualTo(1);
+    }
+
+    @Test
+    public void bases_in_the_same_second_are_taken_as_the_oldest() throws Exception {
+        patches = new StoragePatches(4, 10);
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"this was toosla\"}", BEFORE);
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"this was toosla\",\"key\":\"v1\"}", new Date(BEFORE.getTime() + 500));
+        patches.remember("account", FakeZefiro.FILE, "{\"content\":\"this is toosla\",\"key\":\"v1\"}", CURRENT);
+
+        //
+        // the client may have had either version: key may have changed since
+        //
+        thenThrownBy(() -> patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"v2\"}"), new Date(BEFORE.getTime() + 500), client
+        ))
+            .isInstanceOf(StoragePatches.ConflictException.class)
+            .hasMessage(FakeZefiro.FILE + " has been changed at /key");
+
+        final StoragePatches.Result result = patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"other\":1}"), BEFORE, client
+        );
+        then(result.content()).isEqualTo("{\"content\":\"this is toosla\",\"key\":\"v1\",\"other\":1}");
+        then(result.changes()).isEqualTo("{\"content\":\"this is toosla\",\"key\":\"v1\",\"other\":1}");
+        then(zefiro.calls("/sapi/download")).isZero();
+    }
+
+    @Test
+    public void patch_only_json_files() throws Exception {
+        patches.remember("account", FakeZefiro.FILE, "not json", CURRENT);
+
+        thenThrownBy(() -> patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"value\"}"), null, client
+        ))
+            .isInstanceOf(StoragePatches.NotJsonException.class)
+            .hasMessage(FakeZefiro.FILE + " is not JSON");
+    }
+
+    @Test
+    public void writes_landing_before_the_upload_are_not_overwritten() throws Exception {
+        patches = new StoragePatches(4, 10);
+        patches.remember("account", FakeZefiro.FILE, FakeZefiro.CONTENT, CURRENT);
+
+        //
+        // someone else writes the file after it has been read and before the
+        // upload: the patch is applied again to the new version
+        //
+        final Date changed = new Date(CURRENT.getTime() + 60000);
+        zefiro.changeAfter("/sapi/media", 1, changed.getTime(), "{\"content\":\"changed\",\"other\":1}");
+
+        final StoragePatches.Result result = patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"key\":\"value\"}"), CURRENT, client
+        );
+        then(result.content()).isEqualTo("{\"content\":\"changed\",\"other\":1,\"key\":\"value\"}");
+        then(result.lastModified()).isAfter(changed);
+        then(result.merged()).isTrue();
+        then(zefiro.calls("/sapi/upload")).isOne();
+
+        //
+        // or rejected if it conflicts with it
+        //
+        final Date conflicting = new Date(changed.getTime() + 60000);
+        zefiro.changeAfter("/sapi/media", 1, conflicting.getTime(), "{\"content\":\"mine\"}");
+
+        thenThrownBy(() -> patches.write(
+            "account", FakeZefiro.FILE, MERGE_PATCH, json("{\"content\":\"yours\"}"), changed, client
+        ))
+            .isInstanceOf(StoragePatches.ConflictException.class)
+            .hasMessage(FakeZefiro.FILE + " has been changed at /content");
+        then(zefiro.calls("/sapi/upload")).isOne();
+    }
+
+    @Test
+    public void json_patches_are_applied_again_as_received() throws Exception {
+        patches = new StoragePatches(4, 10);
+        patches.remember("account", FakeZefiro.FILE, FakeZefiro.CONTENT, CURRENT);
+
+        final Date changed = new Date(CURRENT.getTime() + 60000);
+        zefiro.changeAfter("/sapi/media", 1, changed.getTime(), "{\"content\":\"changed\"}");
+
+        final String operations = "[{\"op\":\"add\",\"path\":\"/a\",\"value\":[]},{\"op\":\"add\",\"path\":\"/a/-\",\"value\":1}]";
+        final JsonNode patch = json(operations);
+        final StoragePatches.Result result = patches.write(
+            "account", FakeZefiro.FILE, JSON_PATCH, patch, CURRENT, client
+        );
+        then(result.content()).isEqualTo("{\"content\":\"changed\",\"a\":[1]}");
+        then(result.merged()).isTrue();
+        then(patch).isEqualTo(json(operations));
+        then(zefiro.calls("/sapi/upload")).isOne();
+    }
+
+    @Test
+    public void patches_of_a_file_are_written_one_at_a_time() throws Exception {
+        patches.remember("account", FakeZefiro.FILE, FakeZefiro.CONTENT, CURRENT);
+        zefiro.slowNext("/sapi/upload", 2, 200);
+
+        final List<Future<StoragePatches.Result>> writes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 2; ++i) {
+                final JsonNode patch = json("{\"key" + i + "\":" + i + "}");
+                writes.add(executor.submit(() -> patches.write("account", FakeZefiro.FILE, MERGE_PATCH, patch, null, client)));
+            }
+        }
+        for (Future<StoragePatches.Result> write: writes) {
+            then(write.get().content()).startsWith("{\"content\":\"this is toosla\"");
+        }
+        then(zefiro.calls("/sapi/upload")).isEqualTo(2);
+        then(zefiro.maxInFlight()).isOne();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static JsonNode json(final String text) throws Exception {
+        return JSON.readTree(text);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.Test;
+import ste.toosla.api.StorageRateLimiter.Limit;
+import static ste.toosla.api.StorageRateLimiter.Operation.LOGIN;
+import static ste.toosla.api.StorageRateLimiter.Operation.READ;
+import static ste.toosla.api.StorageRateLimiter.Operation.WRITE;
+
+/**
+ *
+ */
+public class StorageRateLimiterTest {
+
+    private static final double ONE_PER_HOUR = 1.0 / 3600;
+
+    @Test
+    public void admit_a_burst_then_reject() {
+        final StorageRateLimiter limiter = new StorageRateLimiter(
+            Limit.NONE, new Limit(ONE_PER_HOUR, 3), Limit.NONE
+        );
+
+        then(limiter.acquire(READ, "account")).isZero();
+        then(limiter.acquire(READ, "account")).isZero();
+        then(limiter.acquire(READ, "account")).isZero();
+
+        final long wait = limiter.acquire(READ, "account");
+        then(wait).isGreaterThan(TimeUnit.SECONDS.toNanos(3590)).isLessThanOrEqualTo(TimeUnit.HOURS.toNanos(1));
+        then(limiter.rejected(READ)).isEqualTo(1);
+        then(limiter.rejected(WRITE)).isZero();
+    }
+
+    @Test
+    public void buckets_are_per_account_and_operation() {
+        final StorageRateLimiter limiter = new StorageRateLimiter(
+            new Limit(ONE_PER_HOUR, 1), new Limit(ONE_PER_HOUR, 1), new Limit(ONE_PER_HOUR, 1)
+        );
+
+        then(limiter.acquire(READ, "one")).isZero();
+        then(limiter.acquire(READ, "one")).isPositive();
+        then(limiter.acquire(READ, "two")).isZero();
+        then(limiter.acquire(WRITE, "one")).isZero();
+        then(limiter.acquire(LOGIN, "one")).isZero();
+        then(limiter.size(READ)).isEqualTo(2);
+    }
+
+    @Test
+    public void zero_rate_means_no_limit() {
+        final StorageRateLimiter limiter = new StorageRateLimiter(Limit.NONE, Limit.NONE, Limit.NONE);
+
+        for (int i = 0; i < 1000; ++i) {
+            then(limiter.acquire(WRITE, "account")).isZero();
+        }
+        then(limiter.size(WRITE)).isZero();
+    }
+
+    @Test
+    public void tokens_are_refilled_over_time() throws Exception {
+        final StorageRateLimiter limiter = new StorageRateLimiter(Limit.NONE, new Limit(100, 1), Limit.NONE);
+
+        then(limiter.acquire(READ, "account")).isZero();
+
+        final long wait = limiter.acquire(READ, "account");
+        then(wait).isPositive().isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+
+        TimeUnit.NANOSECONDS.sleep(wait + TimeUnit.MILLISECONDS.toNanos(5));
+        then(limiter.acquire(READ, "account")).isZero();
+    }
+
+    @Test
+    public void limits_can_be_changed_at_runtime() {
+        final StorageRateLimiter limiter = new StorageRateLimiter(
+            new Limit(1, 10), new Limit(ONE_PER_HOUR, 1), new Limit(20, 50)
+        );
+
+        then(limiter.limits()).containsExactly(
+            entry("login", new Limit(1, 10)),
+            entry("read", new Limit(ONE_PER_HOUR, 1)),
+            entry("write", new Limit(20, 50))
+        );
+
+        then(limiter.acquire(READ, "account")).isZero();
+        then(limiter.acquire(READ, "account")).isPositive();
+
+        limiter.limit(READ, Limit.NONE);
+        then(limiter.limit(READ)).isEqualTo(Limit.NONE);
+        then(limiter.acquire(READ, "account")).isZero();
+
+        //
+        // buckets start over full
+        //
+        limiter.limit(READ, new Limit(ONE_PER_HOUR, 1));
+        then(limiter.acquire(READ, "account")).isZero();
+        then(limiter.acquire(READ, "account")).isPositive();
+
+        assertThatThrownBy(() -> limiter.limit(READ, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("limit can not be null");
+    }
+
+    @Test
+    public void invalid_limits() {
+        assertThatThrownBy(() -> new Limit(-1, 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("rate must be zero (no limit) or greater");
+        assertThatThrownBy(() -> new Limit(Double.NaN, 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("rate must be zero (no limit) or greater");
+        assertThatThrownBy(() -> new Limit(Double.POSITIVE_INFINITY, 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("rate must be zero (no limit) or greater");
+        assertThatThrownBy(() -> new Limit(1, 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("burst must be greater than zero");
+    }
+
+    @Test
+    public void retry_after_is_rounded_up_to_seconds() {
+        then(StorageRateLimiter.retryAfterSeconds(1)).isEqualTo(1);
+        then(StorageRateLimiter.retryAfterSeconds(TimeUnit.SECONDS.toNanos(1))).isEqualTo(1);
+        then(StorageRateLimiter.retryAfterSeconds(TimeUnit.SECONDS.toNanos(1) + 1)).isEqualTo(2);
+        then(StorageRateLimiter.retryAfterSeconds(TimeUnit.HOURS.toNanos(1))).isEqualTo(3600);
+    }
+
+    @Test
+    public void concurrent_requests_do_not_exceed_the_burst() throws Exception {
+        final StorageRateLimiter limiter = new StorageRateLimiter(Limit.NONE, new Limit(ONE_PER_HOUR, 100), Limit.NONE);
+        final AtomicInteger admitted = new AtomicInteger();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < 1000; ++j) {
+                    if (limiter.acquire(READ, "account") == 0) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+
+        then(admitted.get()).isEqualTo(100);
+        then(limiter.rejected(READ)).isEqualTo(8 * 1000 - 100);
+    }
+
+    @Test
+    public void full_buckets_are_dropped_when_too_many_accounts_are_tracked() throws Exception {
+        final StorageRateLimiter limiter = new StorageRateLimiter(new Limit(1000, 1), Limit.NONE, Limit.NONE);
+
+        for (int i = 0; i < StorageRateLimiter.MAX_KEYS; ++i) {
+            limiter.acquire(LOGIN, "account" + i);
+        }
+        then(limiter.size(LOGIN)).isEqualTo(StorageRateLimiter.MAX_KEYS);
+
+        //
+        // one token every millisecond: after a while all buckets are full again
+        //
+        TimeUnit.MILLISECONDS.sleep(10);
+        then(limiter.acquire(LOGIN, "newcomer")).isZero();
+        then(limiter.size(LOGIN)).isEqualTo(1);
+    }
+}
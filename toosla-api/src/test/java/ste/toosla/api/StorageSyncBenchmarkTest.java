@@ -0,0 +1,269 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import static ste.toosla.api.StorageBenchmark.CLIENTS;
+import static ste.toosla.api.StorageBenchmark.LATENCY_MS;
+import static ste.toosla.api.StorageBenchmark.REQUESTS;
+import ste.toosla.util.metrics.Histogram;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * Compares the reads of {@link FakeZefiro#FILE} over the REST endpoints (with
+ * {@link StorageBenchmark}) and over the sync WebSocket: latency and bytes on
+ * the wire per read, counted by a proxy between the clients and the server.
+ * In both cases each client logs in once with {@code /api/storage/login}.
+ * Run it with:
+ * <pre>
+ * mvn test -Dtest=StorageSyncBenchmarkTest -Dtoosla.benchmark=true [-Dtoosla.benchmark.clients=1000] [-Dtoosla.benchmark.requests=5000] [-Dtoosla.benchmark.latency=100]
+ * </pre>
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "toosla.zefiro.max-concurrent-calls=4096",
+        "toosla.zefiro.max-wait-ms=60000",
+        "toosla.storage.rate-limit.login.rate=0",
+        "toosla.storage.rate-limit.read.rate=0",
+        "logging.level.ste.toosla=WARN"
+    }
+)
+@EnabledIfSystemProperty(named = "toosla.benchmark", matches = "true")
+public class StorageSyncBenchmarkTest {
+
+    private static FakeZefiro zefiro;
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(LATENCY_MS);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @Test
+    public void rest_versus_websocket() throws Exception {
+        try (CountingProxy proxy = new CountingProxy(port)) {
+            final StorageBenchmark rest = new StorageBenchmark("http://localhost:" + proxy.port());
+            rest.run("warm-up", Math.min(CLIENTS, 100), Math.min(REQUESTS, 500));
+            sync(proxy.port(), "warm-up", Math.min(CLIENTS, 100), Math.min(REQUESTS, 500));
+
+            proxy.reset();
+            final StorageBenchmark.Result restResult = rest.run("rest", CLIENTS, REQUESTS);
+            final double restBytes = proxy.bytes() / (double)REQUESTS;
+
+            proxy.reset();
+            final StorageBenchmark.Result syncResult = sync(proxy.port(), "sync", CLIENTS, REQUESTS);
+            final double syncBytes = proxy.bytes() / (double)REQUESTS;
+
+            System.out.println("Zefiro latency: " + LATENCY_MS + " ms");
+            System.out.println(restResult + String.format(" bytes/read: %6.0f", restBytes));
+            System.out.println(syncResult + String.format(" bytes/read: %6.0f", syncBytes));
+
+            then(restResult.errors()).isZero();
+            then(syncResult.errors()).isZero();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Like {@link StorageBenchmark#run(String, int, int)}, but each client
+     * opens a WebSocket, authenticates once and sends its reads over it, one
+     * at a time.
+     */
+    private StorageBenchmark.Result sync(
+        final int port, final String stack, final int clients, final int requests
+    ) throws InterruptedException {
+        final HttpClient http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        final ObjectMapper json = new ObjectMapper();
+        final Histogram latency = new Histogram();
+        final AtomicInteger errors = new AtomicInteger();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        threads.resetPeakThreadCount();
+        final long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; ++c) {
+                final int client = c;
+                final int reads = requests / clients + ((client < requests % clients) ? 1 : 0);
+                executor.execute(() -> {
+                    final AtomicReference<CompletableFuture<String>> response = new AtomicReference<>();
+                    try {
+                        final WebSocket socket = http.newWebSocketBuilder().buildAsync(
+                            URI.create("ws://localhost:" + port + StorageSyncEndpoint.PATH),
+                            new WebSocket.Listener() {
+                                private final StringBuilder message = new StringBuilder();
+
+                                @Override
+                                public CompletionStage<?> onText(final WebSocket socket, final CharSequence data, final boolean last) {
+                                    message.append(data);
+                                    if (last) {
+                                        response.get().complete(message.toString());
+                                        message.setLength(0);
+                                    }
+                                    socket.request(1);
+                                    return null;
+                                }
+                            }
+                        ).get(60, TimeUnit.SECONDS);
+
+                        final String key = json.readTree(http.send(
+                            HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/storage/login"))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString("{\"credentials\":\"account" + client + ":secret\"}"))
+                                .build(),
+                            HttpResponse.BodyHandlers.ofString()
+                        ).body()).at("/accessKey").asText();
+                        send(socket, response, "{\"id\":\"0\",\"op\":\"auth\",\"key\":\"" + key + "\"}");
+                        for (int i = 0; i < reads; ++i) {
+                            final long begin = System.nanoTime();
+                            final String message = send(
+                                socket, response, "{\"id\":\"" + i + "\",\"op\":\"read\",\"path\":\"" + FakeZefiro.FILE + "\"}"
+                            );
+                            if (json.readTree(message).get("status").asInt() == 200) {
+                                latency.record(System.nanoTime() - begin);
+                            } else if (errors.getAndIncrement() == 0) {
+                                System.err.println("read failed: " + message);
+                            }
+                        }
+                        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(60, TimeUnit.SECONDS);
+                    } catch (Exception x) {
+                        if (errors.getAndIncrement() == 0) {
+                            x.printStackTrace();
+                        }
+                    }
+                });
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        return new StorageBenchmark.Result(stack, clients, requests, errors.get(), seconds, latency, threads.getPeakThreadCount());
+    }
+
+    private String send(
+        final WebSocket socket, final AtomicReference<CompletableFuture<String>> response, final String message
+    ) throws Exception {
+        response.set(new CompletableFuture<>());
+        socket.sendText(message, true).get(60, TimeUnit.SECONDS);
+        return response.get().get(60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A TCP proxy to the server counting the bytes going through it in both
+     * directions.
+     */
+    private static class CountingProxy implements AutoCloseable {
+
+        private final ServerSocket server;
+        private final int target;
+        private final LongAdder bytes = new LongAdder();
+
+        CountingProxy(final int target) throws IOException {
+            this.server = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+            this.target = target;
+            Thread.ofVirtual().start(this::accept);
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        long bytes() {
+            return bytes.sum();
+        }
+
+        void reset() {
+            bytes.reset();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    final Socket client = server.accept();
+                    final Socket upstream = new Socket(InetAddress.getLoopbackAddress(), target);
+                    client.setTcpNoDelay(true);
+                    upstream.setTcpNoDelay(true);
+                    Thread.ofVirtual().start(() -> pipe(client, upstream));
+                    Thread.ofVirtual().start(() -> pipe(upstream, client));
+                }
+            } catch (IOException x) {
+                // closed
+            }
+        }
+
+        private void pipe(final Socket from, final Socket to) {
+            final byte[] buffer = new byte[16384];
+            try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                for (int n; (n = in.read(buffer)) >= 0;) {
+                    out.write(buffer, 0, n);
+                    bytes.add(n);
+                }
+            } catch (IOException x) {
+                // connection closed
+            } finally {
+                try { from.close(); to.close(); } catch (IOException x) { }
+            }
+        }
+    }
+}
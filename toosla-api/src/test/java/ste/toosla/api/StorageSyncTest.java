@@ -0,0 +1,250 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * The sync WebSocket over a real connection, against a {@link FakeZefiro}.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "toosla.storage.changes.min-interval-ms=100",
+        "toosla.storage.changes.max-interval-ms=200",
+        "toosla.storage.sync.max-requests=2",
+        "toosla.storage.sync.max-batch=3"
+    }
+)
+public class StorageSyncTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static FakeZefiro zefiro;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private KeyManager keyManager;
+
+    private final BlockingQueue<JsonNode> responses = new LinkedBlockingQueue<>();
+    private final BlockingQueue<JsonNode> changes = new LinkedBlockingQueue<>();
+
+    private String accessKey;
+    private WebSocket socket;
+
+    @DynamicPropertySource
+    static void zefiro(final DynamicPropertyRegistry registry) throws IOException {
+        zefiro = new FakeZefiro(0);
+        registry.add("toosla.zefiro.api-url", zefiro::url);
+        registry.add("toosla.zefiro.upload-url", zefiro::url);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        zefiro.close();
+    }
+
+    @BeforeEach
+    public void before() throws Exception {
+        accessKey = keyManager.newKey("account", "secret", "validationkey");
+        socket = HttpClient.newHttpClient().newWebSocketBuilder().buildAsync(
+            URI.create("ws://localhost:" + port + StorageSyncEndpoint.PATH),
+            new WebSocket.Listener() {
+                private final StringBuilder message = new StringBuilder();
+
+                @Override
+                public CompletionStage<?> onText(final WebSocket socket, final CharSequence data, final boolean last) {
+                    message.append(data);
+                    if (last) {
+                        try {
+                            final JsonNode node = JSON.readTree(message.toString());
+                            (node.has("change") ? changes : responses).add(node);
+                        } catch (IOException x) {
+                            responses.add(JSON.getNodeFactory().textNode(message.toString()));
+                        }
+                        message.setLength(0);
+                    }
+                    socket.request(1);
+                    return null;
+                }
+            }
+        ).get(10, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    public void after() {
+        socket.abort();
+    }
+
+    @Test
+    public void authenticate_once() throws Exception {
+        JsonNode response = send("{\"id\":\"1\",\"op\":\"read\",\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.get("id").asText()).isEqualTo("1");
+        then(response.get("status").asInt()).isEqualTo(401);
+        then(response.at("/error/message").asText()).isEqualTo("Unauthorized");
+
+        response = send("{\"id\":\"2\",\"op\":\"auth\",\"key\":\"nokey\"}");
+        then(response.get("status").asInt()).isEqualTo(401);
+
+        response = send("{\"id\":\"3\",\"op\":\"auth\",\"key\":\"" + accessKey + "\"}");
+        then(response.get("id").asText()).isEqualTo("3");
+        then(response.get("status").asInt()).isEqualTo(200);
+
+        response = send("{\"id\":\"4\",\"op\":\"read\",\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.get("id").asText()).isEqualTo("4");
+        then(response.get("status").asInt()).isEqualTo(200);
+        then(response.get("lastModified").asLong()).isEqualTo(1755561600000L);
+        then(response.get("content").asText()).isNotEmpty();
+        then(response.has("error")).isFalse();
+
+        response = send("{\"id\":\"5\",\"op\":\"read\",\"path\":\"" + FakeZefiro.FILE + "\",\"ifModifiedSince\":1755561600000}");
+        then(response.get("status").asInt()).isEqualTo(304);
+        then(response.has("content")).isFalse();
+    }
+
+    @Test
+    public void write_batch_and_push_changes() throws Exception {
+        send("{\"id\":\"1\",\"op\":\"auth\",\"key\":\"" + accessKey + "\"}");
+
+        JsonNode response = send("{\"id\":\"2\",\"op\":\"subscribe\",\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.get("id").asText()).isEqualTo("2");
+        then(response.get("status").asInt()).isEqualTo(200);
+
+        JsonNode change = next(changes);
+        then(change.at("/change/path").asText()).isEqualTo(FakeZefiro.FILE);
+        then(change.at("/change/lastModified").asLong()).isEqualTo(1755561600000L);
+        then(change.has("id")).isFalse();
+
+        response = send("{\"id\":\"3\",\"op\":\"batch\",\"requests\":[" +
+            "{\"id\":\"3.1\",\"op\":\"write\",\"path\":\"" + FakeZefiro.FILE + "\",\"content\":\"{}\"}," +
+            "{\"id\":\"3.2\",\"op\":\"read\",\"path\":\"/Toosla/missing.json\"}," +
+            "{\"id\":\"3.3\",\"op\":\"subscribe\",\"path\":\"" + FakeZefiro.FILE + "\"}" +
+        "]}");
+        then(response.get("id").asText()).isEqualTo("3");
+        then(response.get("status").asInt()).isEqualTo(200);
+        then(response.at("/responses/0/id").asText()).isEqualTo("3.1");
+        then(response.at("/responses/0/status").asInt()).isEqualTo(200);
+        then(response.at("/responses/0/lastModified").asLong()).isGreaterThan(1755561600000L);
+        then(response.at("/responses/1/status").asInt()).isEqualTo(404);
+        then(response.at("/responses/2/status").asInt()).isEqualTo(400);
+        then(response.at("/responses/2/error/details").asText()).isEqualTo("operation 'subscribe' can not be batched");
+
+        //
+        // the write is pushed right away (responses have the precision of
+        // the HTTP Last-Modified, changes the one of Zefiro)
+        //
+        change = next(changes);
+        then(change.at("/change/lastModified").asLong() / 1000 * 1000).isEqualTo(response.at("/responses/0/lastModified").asLong());
+
+        response = send("{\"id\":\"4\",\"op\":\"unsubscribe\",\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.get("status").asInt()).isEqualTo(200);
+        response = send("{\"id\":\"5\",\"op\":\"unsubscribe\",\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.get("status").asInt()).isEqualTo(404);
+    }
+
+    @Test
+    public void bad_messages() throws Exception {
+        JsonNode response = send("not json");
+        then(response.get("status").asInt()).isEqualTo(400);
+        then(response.has("id")).isFalse();
+        then(response.at("/error/message").asText()).isEqualTo("Bad request");
+
+        response = send("{\"id\":\"1\",\"op\":\"delete\"}");
+        then(response.get("id").asText()).isEqualTo("1");
+        then(response.get("status").asInt()).isEqualTo(400);
+        then(response.at("/error/details").asText()).isEqualTo("unknown operation 'delete'");
+
+        response = send("{\"id\":\"2\",\"op\":\"read\"}");
+        then(response.at("/error/details").asText()).isEqualTo("path can not be blank");
+    }
+
+    @Test
+    public void requests_of_a_connection_are_limited() throws Exception {
+        send("{\"id\":\"1\",\"op\":\"auth\",\"key\":\"" + accessKey + "\"}");
+
+        //
+        // two slow writes take all the slots
+        //
+        zefiro.slowNext("/sapi/upload", 2, 1000);
+        socket.sendText("{\"id\":\"2\",\"op\":\"write\",\"path\":\"" + FakeZefiro.FILE + "\",\"content\":\"{}\"}", true).get(10, TimeUnit.SECONDS);
+        socket.sendText("{\"id\":\"3\",\"op\":\"write\",\"path\":\"" + FakeZefiro.FILE + "\",\"content\":\"{}\"}", true).get(10, TimeUnit.SECONDS);
+
+        JsonNode response = send("{\"id\":\"4\",\"op\":\"read\",\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.get("id").asText()).isEqualTo("4");
+        then(response.get("status").asInt()).isEqualTo(429);
+        then(response.get("retryAfter").asLong()).isEqualTo(1);
+        then(response.at("/error/details").asText()).isEqualTo("too many requests in progress on this connection");
+
+        then(next(responses).get("status").asInt()).isEqualTo(200);
+        then(next(responses).get("status").asInt()).isEqualTo(200);
+
+        //
+        // slots are free again
+        //
+        response = send("{\"id\":\"5\",\"op\":\"read\",\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.get("status").asInt()).isEqualTo(200);
+
+        final String read = "{\"op\":\"read\",\"path\":\"" + FakeZefiro.FILE + "\"}";
+        response = send("{\"id\":\"6\",\"op\":\"batch\",\"requests\":[" + String.join(",", read, read, read, read) + "]}");
+        then(response.get("id").asText()).isEqualTo("6");
+        then(response.get("status").asInt()).isEqualTo(400);
+        then(response.at("/error/details").asText()).isEqualTo("a batch can have up to 3 requests");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Sends a request and waits for the next response (changes pushed in the
+     * meantime are collected apart).
+     */
+    private JsonNode send(final String message) throws Exception {
+        socket.sendText(message, true).get(10, TimeUnit.SECONDS);
+        return next(responses);
+    }
+
+    private JsonNode next(final BlockingQueue<JsonNode> messages) throws Exception {
+        final JsonNode ret = messages.poll(10, TimeUnit.SECONDS);
+        then(ret).as("no message received").isNotNull();
+        return ret;
+    }
+}
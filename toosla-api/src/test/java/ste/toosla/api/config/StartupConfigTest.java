@@ -0,0 +1,74 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.api.config;
+
+import java.util.Arrays;
+import javax.sql.DataSource;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Startup related configuration: no datasource and OpenAPI beans created on
+ * first use.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class StartupConfigTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void no_datasource() {
+        then(context.getBeanNamesForType(DataSource.class)).isEmpty();
+    }
+
+    @Test
+    public void openapi_beans_are_created_on_first_use() throws Exception {
+        final String[] openapi = Arrays.stream(context.getBeanDefinitionNames())
+            .filter((name) -> {
+                final Class<?> type = context.getBeanFactory().getType(name, false);
+                return (type != null) && type.getName().startsWith("org.springdoc.webmvc.api.");
+            })
+            .toArray(String[]::new);
+
+        then(openapi).isNotEmpty();
+        for (String name: openapi) {
+            then(context.getBeanFactory().getBeanDefinition(name).isLazyInit()).as(name).isTrue();
+            then(context.getBeanFactory().containsSingleton(name)).as(name).isFalse();
+        }
+
+        mockMvc.perform(get("/v3/api-docs"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.info.title").value("Toosla API"));
+    }
+}
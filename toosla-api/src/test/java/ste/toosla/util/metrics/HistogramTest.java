@@ -0,0 +1,100 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.util.metrics;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.data.Percentage.withPercentage;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class HistogramTest {
+
+    @Test
+    public void empty_histogram_reports_zeros() {
+        final Histogram h = new Histogram();
+
+        then(h.count()).isZero();
+        then(h.max()).isZero();
+        then(h.mean()).isZero();
+        then(h.percentile(99)).isZero();
+    }
+
+    @Test
+    public void small_values_are_exact() {
+        final Histogram h = new Histogram();
+        for (long i = 1; i <= 10; ++i) {
+            h.record(i);
+        }
+
+        then(h.count()).isEqualTo(10);
+        then(h.percentile(50)).isEqualTo(5);
+        then(h.percentile(90)).isEqualTo(9);
+        then(h.percentile(100)).isEqualTo(10);
+        then(h.mean()).isEqualTo(5.5);
+    }
+
+    @Test
+    public void percentiles_are_within_few_percents() {
+        final Histogram h = new Histogram();
+        for (long i = 1; i <= 100_000; ++i) {
+            h.record(i * 1000); // 1us .. 100ms
+        }
+
+        then(h.percentile(50)).isCloseTo(50_000_000L, withPercentage(4));
+        then(h.percentile(90)).isCloseTo(90_000_000L, withPercentage(4));
+        then(h.percentile(99)).isCloseTo(99_000_000L, withPercentage(4));
+        then(h.percentile(99.9)).isCloseTo(99_900_000L, withPercentage(4));
+        then(h.max()).isEqualTo(100_000_000L);
+    }
+
+    @Test
+    public void bucket_indexes_are_contiguous_and_bounded() {
+        int last = Histogram.index(0);
+        for (long v = 1; v < 1_000_000; ++v) {
+            final int i = Histogram.index(v);
+            then(i - last).isBetween(0, 1);
+            last = i;
+        }
+        then(Histogram.index(Long.MAX_VALUE)).isLessThan(960);
+    }
+
+    @Test
+    public void negative_values_are_recorded_as_zero() {
+        final Histogram h = new Histogram();
+        h.record(-10);
+
+        then(h.count()).isEqualTo(1);
+        then(h.max()).isZero();
+    }
+
+    @Test
+    public void reset_clears_all_values() {
+        final Histogram h = new Histogram();
+        h.record(1000); h.record(2000);
+
+        h.reset();
+
+        then(h.count()).isZero();
+        then(h.percentile(50)).isZero();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A local fake of the Zefiro API (login, folder tree, file metadata, download
+ * and upload of {@code /Toosla/toosla.json}) that answers each call after a
+ * fixed latency. It is meant for load tests and benchmarks, where the stubbed
+ * HTTP client would hide the cost of real connections, and for tests that need
+ * real failures (see {@link #failNext(String, int, int, String)}).
+ */
+public class FakeZefiro implements AutoCloseable {
+
+    public static final String FILE = "/Toosla/toosla.json";
+    public static final String CONTENT = "{\"content\":\"this is toosla\"}";
+
+    private static final String LOGIN = "{\"data\":{\"validationkey\":\"validationkey\"},\"responsetime\":1754811602118}";
+    private static final String ROOT = "{\"data\":{\"folders\":[{\"name\":\"OneMediaHub\",\"id\":47487}]}}";
+    private static final String TOOSLA = "{\"data\":{\"folders\":[{\"name\":\"Toosla\",\"id\":12345}]}}";
+    private static final String NO_FOLDERS = "{\"data\":{\"folders\":[]}}";
+    private static final long MODIFICATION_DATE = 1755561600000L;
+    private static final String UPLOADED = "{\"success\":\"Media uploaded successfully\",\"id\":\"11111\",\"status\":\"V\"}";
+
+    private final HttpServer server;
+    private final String url;
+    private final long latency;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final Map<String, AtomicInteger> contextCalls = new ConcurrentHashMap<>();
+    private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+    private final Map<String, Slowdown> slowdowns = new ConcurrentHashMap<>();
+    private final Map<String, Change> changes = new ConcurrentHashMap<>();
+    private final AtomicReference<Version> version = new AtomicReference<>(new Version(MODIFICATION_DATE, CONTENT));
+
+    private record Failure(AtomicInteger count, int status, String retryAfter) {}
+    private record Slowdown(AtomicInteger count, long delay) {}
+    private record Change(AtomicInteger count, Version version) {}
+    private record Version(long modificationDate, String content) {}
+
+    /**
+     * Starts the fake on a random port of the loopback interface.
+     *
+     * @param latency the time in milliseconds each call takes
+     *
+     * @throws IOException if the server can not be started
+     */
+    public FakeZefiro(final long latency) throws IOException {
+        this.latency = latency;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        server.createContext("/sapi/login", (exchange) -> respond(exchange, LOGIN));
+        server.createContext("/sapi/media/folder/root", (exchange) -> respond(exchange, ROOT));
+        server.createContext("/sapi/media/folder", (exchange) -> respond(exchange,
+            exchange.getRequestURI().getQuery().contains("parentid=47487") ? TOOSLA : NO_FOLDERS
+        ));
+        server.createContext("/sapi/media", (exchange) -> respond(exchange,
+            exchange.getRequestURI().getQuery().contains("folderid=")
+            ? "{\"data\":{\"media\":[{\"id\":\"11111\",\"name\":\"toosla.json\",\"modificationdate\":" + version(exchange).modificationDate() + ",\"etag\":\"58IEhYENeW04HhTImidzBw==\"}]}}"
+            : "{\"data\":{\"media\":[{\"id\":\"11111\",\"url\":\"" + url + "/sapi/download/file?action=get&k=11111\",\"modificationdate\":" + version(exchange).modificationDate() + "}]}}"
+        ));
+        server.createContext("/sapi/download", (exchange) -> respond(exchange, version(exchange).content()));
+        server.createContext("/sapi/upload", (exchange) -> respond(exchange, UPLOADED));
+        server.start();
+    }
+
+    /**
+     * @return the base url to use as both API and upload url
+     */
+    public String url() {
+        return url;
+    }
+
+    /**
+     * @return the number of calls served so far
+     */
+    public int calls() {
+        return calls.get();
+    }
+
+    /**
+     * @param context the context path, e.g. {@code /sapi/media} or {@code /sapi/upload}
+     *
+     * @return the number of calls served so far by the given context
+     */
+    public int calls(final String context) {
+        final AtomicInteger ret = contextCalls.get(context);
+        return (ret == null) ? 0 : ret.get();
+    }
+
+    /**
+     * Makes the next {@code count} calls to the given context fail.
+     *
+     * @param context the context path, e.g. {@code /sapi/media} or {@code /sapi/upload}
+     * @param count the number of calls to fail
+     * @param status the status to answer with or -1 to close the connection without answering
+     * @param retryAfter the {@code Retry-After} header to add - MAY BE NULL
+     *
+     * @return this fake
+     */
+    public FakeZefiro failNext(final String context, final int count, final int status, final String retryAfter) {
+        failures.put(context, new Failure(new AtomicInteger(count), status, retryAfter)); return this;
+    }
+
+    /**
+     * Makes the next {@code count} calls to the given context take longer.
+     *
+     * @param context the context path, e.g. {@code /sapi/media} or {@code /sapi/download}
+     * @param count the number of calls to slow down
+     * @param delay the time in milliseconds added to the latency of each call
+     *
+     * @return this fake
+     */
+    public FakeZefiro slowNext(final String context, final int count, final long delay) {
+        slowdowns.put(context, new Slowdown(new AtomicInteger(count), delay)); return this;
+    }
+
+    /**
+     * Makes the file look written by someone else, with the given modification
+     * date and content, starting from the call to the given context that comes
+     * after the next {@code count} ones (e.g. between the check and the upload
+     * of a client).
+     *
+     * @param context the context path, e.g. {@code /sapi/media} or {@code /sapi/download}
+     * @param count the number of calls to the context still seeing the current version
+     * @param modificationDate the modification date of the new version
+     * @param content the content of the new version - NOT NULL
+     *
+     * @return this fake
+     */
+    public FakeZefiro changeAfter(final String context, final int count, final long modificationDate, final String content) {
+        changes.put(context, new Change(new AtomicInteger(count), new Version(modificationDate, content))); return this;
+    }
+
+    /**
+     * @return the max number of calls served concurrently so far
+     */
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * The version of the file seen by the given call, after applying the
+     * change due at this call, if any.
+     */
+    private Version version(final HttpExchange exchange) {
+        final Change change = changes.get(exchange.getHttpContext().getPath());
+        if (change != null && change.count().getAndDecrement() == 0) {
+            version.set(change.version());
+        }
+        return version.get();
+    }
+
+    private void respond(final HttpExchange exchange, final String body) throws IOException {
+        calls.incrementAndGet();
+        contextCalls.computeIfAbsent(exchange.getHttpContext().getPath(), k -> new AtomicInteger()).incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            TimeUnit.MILLISECONDS.sleep(latency);
+
+            final Slowdown slowdown = slowdowns.get(exchange.getHttpContext().getPath());
+            if (slowdown != null && slowdown.count().getAndDecrement() > 0) {
+                TimeUnit.MILLISECONDS.sleep(slowdown.delay());
+            }
+
+            final Failure failure = failures.get(exchange.getHttpContext().getPath());
+            if (failure != null && failure.count().getAndDecrement() > 0) {
+                if (failure.status() < 0) {
+                    exchange.close(); // drops the connection, no response at all
+                    return;
+                }
+                if (failure.retryAfter() != null) {
+                    exchange.getResponseHeaders().set("Retry-After", failure.retryAfter());
+                }
+                exchange.sendResponseHeaders(failure.status(), -1);
+                return;
+            }
+
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class SharedHttpClientBuilderTest {
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new SharedHttpClientBuilder(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("builder can not be null");
+    }
+
+    @Test
+    public void build_once_with_the_given_configuration() {
+        final HttpClient.Builder builder = new SharedHttpClientBuilder(HttpClient.newBuilder())
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5));
+
+        final HttpClient client = builder.build();
+
+        then(client.version()).isEqualTo(HttpClient.Version.HTTP_1_1);
+        then(client.connectTimeout()).hasValue(Duration.ofSeconds(5));
+        then(builder.build()).isSameAs(client);
+    }
+}
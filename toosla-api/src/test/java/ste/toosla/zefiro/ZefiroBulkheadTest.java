@@ -0,0 +1,403 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+import static ste.toosla.zefiro.ZefiroBulkhead.Priority.BACKGROUND;
+import static ste.toosla.zefiro.ZefiroBulkhead.Priority.INTERACTIVE;
+import ste.toosla.util.jfr.TooslaEvents;
+import ste.toosla.util.metrics.MetricsRegistry;
+
+/**
+ *
+ */
+public class ZefiroBulkheadTest {
+
+    private static final Duration SHORT_WAIT = Duration.ofMillis(50);
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new ZefiroBulkhead(0, 1, SHORT_WAIT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxCalls must be greater than zero");
+        thenThrownBy(() -> new ZefiroBulkhead(1, 0, SHORT_WAIT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxCallsPerAccount must be greater than zero");
+        thenThrownBy(() -> new ZefiroBulkhead(1, 1, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxWait can not be null or negative");
+        thenThrownBy(() -> new ZefiroBulkhead(1, 1, Duration.ofMillis(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxWait can not be null or negative");
+
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(10, 2, SHORT_WAIT);
+        then(bulkhead.maxCalls()).isEqualTo(10);
+        then(bulkhead.maxCallsPerAccount()).isEqualTo(2);
+        then(bulkhead.inFlight()).isZero();
+        then(bulkhead.rejected()).isZero();
+    }
+
+    @Test
+    public void limit_calls_per_account() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(10, 2, SHORT_WAIT);
+
+        final ZefiroBulkhead.Permit p1 = bulkhead.acquire("one");
+        final ZefiroBulkhead.Permit p2 = bulkhead.acquire("one");
+
+        thenThrownBy(() -> bulkhead.acquire("one"))
+            .isInstanceOf(ZefiroBusyException.class)
+            .hasMessage("Too many concurrent Zefiro calls for the account");
+
+        try (ZefiroBulkhead.Permit p3 = bulkhead.acquire("two")) {
+            then(bulkhead.inFlight()).isEqualTo(3);
+        }
+
+        p1.close();
+        try (ZefiroBulkhead.Permit p4 = bulkhead.acquire("one")) {
+            then(bulkhead.inFlight()).isEqualTo(2);
+        }
+        p2.close();
+
+        then(bulkhead.inFlight()).isZero();
+        then(bulkhead.rejected()).isEqualTo(1);
+    }
+
+    @Test
+    public void limit_calls_globally() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(2, 2, SHORT_WAIT);
+
+        final ZefiroBulkhead.Permit p1 = bulkhead.acquire("one");
+        final ZefiroBulkhead.Permit p2 = bulkhead.acquire("two");
+
+        thenThrownBy(() -> bulkhead.acquire("three"))
+            .isInstanceOf(ZefiroBusyException.class)
+            .hasMessage("Too many concurrent Zefiro calls");
+
+        p2.close();
+        //
+        // the account permit of a rejected caller is given back
+        //
+        try (ZefiroBulkhead.Permit p3 = bulkhead.acquire("three")) {
+            then(bulkhead.inFlight()).isEqualTo(2);
+        }
+        p1.close();
+        try (ZefiroBulkhead.Permit p3 = bulkhead.acquire("three"); ZefiroBulkhead.Permit p4 = bulkhead.acquire("three")) {
+            then(bulkhead.inFlight()).isEqualTo(2);
+        }
+
+        then(bulkhead.rejected()).isEqualTo(1);
+    }
+
+    @Test
+    public void waiting_callers_get_released_permits() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 1, Duration.ofSeconds(5));
+
+        final ZefiroBulkhead.Permit p1 = bulkhead.acquire("one");
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread waiting = Thread.ofVirtual().start(() -> {
+            try (ZefiroBulkhead.Permit p2 = bulkhead.acquire("one")) {
+                done.countDown();
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+
+        while (bulkhead.waiting() == 0) {
+            Thread.sleep(5);
+        }
+        p1.close();
+
+        then(done.await(5, java.util.concurrent.TimeUnit.SECONDS)).isTrue();
+        waiting.join(); // p2 is closed after done is counted down
+        then(error.get()).isNull();
+        then(bulkhead.inFlight()).isZero();
+    }
+
+    @Test
+    public void try_acquire_does_not_wait() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(2, 1, SHORT_WAIT);
+
+        final ZefiroBulkhead.Permit p1 = bulkhead.tryAcquire("one");
+        then(p1).isNotNull();
+        then(bulkhead.tryAcquire("one")).isNull(); // account limit
+
+        final ZefiroBulkhead.Permit p2 = bulkhead.tryAcquire("two");
+        then(p2).isNotNull();
+        then(bulkhead.tryAcquire("three")).isNull(); // global limit
+        then(bulkhead.inFlight()).isEqualTo(2);
+        then(bulkhead.rejected()).isZero();
+
+        p1.close(); p2.close();
+        then(bulkhead.inFlight()).isZero();
+        try (ZefiroBulkhead.Permit p3 = bulkhead.tryAcquire("three")) {
+            then(p3).isNotNull();
+        }
+    }
+
+    @Test
+    public void serve_accounts_fairly() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 8, Duration.ofSeconds(5));
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        final ZefiroBulkhead.Permit permit = bulkhead.acquire("heavy");
+        final List<Thread> waiters = new ArrayList<>();
+        waiters.add(waiter(bulkhead, "heavy", INTERACTIVE, order, "h1"));
+        waiters.add(waiter(bulkhead, "heavy", INTERACTIVE, order, "h2"));
+        waiters.add(waiter(bulkhead, "heavy", INTERACTIVE, order, "h3"));
+        waiters.add(waiter(bulkhead, "light", INTERACTIVE, order, "l1"));
+
+        then(bulkhead.waiting("heavy")).isEqualTo(3);
+        then(bulkhead.waiting("light")).isEqualTo(1);
+        then(bulkhead.queues()).containsExactly(entry("heavy", 3), entry("light", 1));
+
+        permit.close();
+        for (Thread t: waiters) {
+            t.join();
+        }
+
+        //
+        // heavy already had its turn, FIFO would give h1, h2, h3, l1
+        //
+        then(order).containsExactly("l1", "h1", "h2", "h3");
+        then(bulkhead.inFlight()).isZero();
+        then(bulkhead.waiting()).isZero();
+    }
+
+    @Test
+    public void serve_accounts_by_weight() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 8, Duration.ofSeconds(5)).withWeights("one=2, two=1");
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        final ZefiroBulkhead.Permit permit = bulkhead.acquire("three");
+        final List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            waiters.add(waiter(bulkhead, "one", INTERACTIVE, order, "one"));
+        }
+        for (int i = 0; i < 4; ++i) {
+            waiters.add(waiter(bulkhead, "two", INTERACTIVE, order, "two"));
+        }
+
+        permit.close();
+        for (Thread t: waiters) {
+            t.join();
+        }
+
+        then(order.subList(0, 6)).filteredOn("one"::equals).hasSize(4);
+    }
+
+    @Test
+    public void serve_interactive_calls_first() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 8, Duration.ofSeconds(5));
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        final ZefiroBulkhead.Permit permit = bulkhead.acquire("one");
+        final List<Thread> waiters = new ArrayList<>();
+        waiters.add(waiter(bulkhead, "two", BACKGROUND, order, "write two"));
+        waiters.add(waiter(bulkhead, "one", BACKGROUND, order, "write one"));
+        waiters.add(waiter(bulkhead, "one", INTERACTIVE, order, "read one"));
+
+        permit.close();
+        for (Thread t: waiters) {
+            t.join();
+        }
+
+        then(order).containsExactly("read one", "write two", "write one");
+    }
+
+    @Test
+    public void skip_accounts_at_their_limit() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(2, 1, Duration.ofSeconds(5));
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        final ZefiroBulkhead.Permit p1 = bulkhead.acquire("one");
+        final ZefiroBulkhead.Permit p2 = bulkhead.acquire("two");
+        final Thread one = waiter(bulkhead, "one", INTERACTIVE, order, "one");
+        final Thread three = waiter(bulkhead, "three", INTERACTIVE, order, "three");
+
+        p2.close(); // "one" is still at its limit
+        three.join();
+        then(order).containsExactly("three");
+        then(bulkhead.inFlight("one")).isEqualTo(1);
+
+        p1.close();
+        one.join();
+        then(order).containsExactly("three", "one");
+    }
+
+    @Test
+    public void interrupted_callers_leave_the_queue() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 1, Duration.ofSeconds(5));
+
+        final ZefiroBulkhead.Permit permit = bulkhead.acquire("one");
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread waiting = Thread.ofVirtual().start(() -> {
+            try (ZefiroBulkhead.Permit p = bulkhead.acquire("two")) {
+                // never here
+            } catch (Throwable x) {
+                error.set(x);
+            }
+        });
+        while (bulkhead.waiting() == 0) {
+            Thread.sleep(1);
+        }
+
+        waiting.interrupt(); waiting.join();
+        then(error.get()).isInstanceOf(InterruptedException.class);
+        then(bulkhead.waiting()).isZero();
+
+        permit.close();
+        then(bulkhead.inFlight()).isZero();
+    }
+
+    @Test
+    public void weights_sanity_check() {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 1, SHORT_WAIT);
+
+        thenThrownBy(() -> bulkhead.withWeight(null, 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("account can not be null");
+        thenThrownBy(() -> bulkhead.withWeight("one", 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("weight must be greater than zero");
+        thenThrownBy(() -> bulkhead.withWeights("one=2,two"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("invalid account weight 'two', expected account=weight");
+        thenThrownBy(() -> bulkhead.withWeights("one=abc"))
+            .isInstanceOf(NumberFormatException.class);
+
+        then(bulkhead.withWeights(null)).isSameAs(bulkhead);
+        then(bulkhead.withWeights(" ")).isSameAs(bulkhead);
+    }
+
+    @Test
+    public void per_account_metrics() throws Exception {
+        final MetricsRegistry metrics = new MetricsRegistry();
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(10, 2, SHORT_WAIT);
+
+        try (ZefiroBulkhead.Permit p1 = bulkhead.acquire("one")) {
+            bulkhead.withMetrics(metrics);
+            try (ZefiroBulkhead.Permit p2 = bulkhead.acquire("two")) {
+                then(metrics.snapshot())
+                    .containsEntry("zefiro.bulkhead.inflight", 2)
+                    .containsEntry("zefiro.bulkhead.waiting", 0)
+                    .containsEntry("zefiro.bulkhead.rejected", 0L)
+                    .containsEntry("zefiro.bulkhead.inflight{account=" + TooslaEvents.account("one") + "}", 1)
+                    .containsEntry("zefiro.bulkhead.inflight{account=" + TooslaEvents.account("two") + "}", 1)
+                    .containsEntry("zefiro.bulkhead.queued{account=" + TooslaEvents.account("one") + "}", 0)
+                    .containsEntry("zefiro.bulkhead.queued{account=" + TooslaEvents.account("two") + "}", 0)
+                    .containsEntry("zefiro.bulkhead.accounts", 2);
+
+                //
+                // the metrics are public: no account in clear
+                //
+                then(metrics.snapshot().keySet()).noneMatch(name -> name.contains("one") || name.contains("two"));
+            }
+        }
+
+        //
+        // idle accounts are not reported
+        //
+        then(metrics.snapshot())
+            .containsEntry("zefiro.bulkhead.accounts", 0)
+            .doesNotContainKeys(
+                "zefiro.bulkhead.inflight{account=" + TooslaEvents.account("one") + "}",
+                "zefiro.bulkhead.queued{account=" + TooslaEvents.account("one") + "}"
+            );
+    }
+
+    @Test
+    public void per_account_metrics_are_bounded() throws Exception {
+        final MetricsRegistry metrics = new MetricsRegistry();
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(100, 2, SHORT_WAIT).withMetrics(metrics);
+
+        final List<ZefiroBulkhead.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            permits.add(bulkhead.acquire("account" + i));
+            if (i >= 15) {
+                permits.add(bulkhead.acquire("account" + i));
+            }
+        }
+
+        final Map<String, Object> snapshot = metrics.snapshot();
+        then(snapshot).containsEntry("zefiro.bulkhead.accounts", 20);
+        then(snapshot.keySet().stream().filter(name -> name.startsWith("zefiro.bulkhead.inflight{"))).hasSize(10);
+        then(snapshot).containsEntry("zefiro.bulkhead.inflight{account=" + TooslaEvents.account("account19") + "}", 2);
+
+        permits.forEach(ZefiroBulkhead.Permit::close);
+    }
+
+    @Test
+    public void idle_accounts_are_dropped() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(2, 1, SHORT_WAIT).withWeight("weighted", 2);
+
+        try (
+            ZefiroBulkhead.Permit p1 = bulkhead.acquire("one");
+            ZefiroBulkhead.Permit p2 = bulkhead.acquire("weighted")
+        ) {
+            then(bulkhead.accounts()).isEqualTo(2);
+            then(bulkhead.tryAcquire("two")).isNull();
+            thenThrownBy(() -> bulkhead.acquire("three")).isInstanceOf(ZefiroBusyException.class);
+            then(bulkhead.queues()).containsOnlyKeys("one", "weighted");
+        }
+
+        //
+        // accounts with a weight of their own are kept
+        //
+        then(bulkhead.accounts()).isEqualTo(1);
+        then(bulkhead.queues()).containsOnlyKeys("weighted");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    /**
+     * Starts a caller that records its label once it gets a permit and
+     * releases it right away; returns once the caller is queued.
+     */
+    private Thread waiter(
+        final ZefiroBulkhead bulkhead, final String account, final ZefiroBulkhead.Priority priority,
+        final List<String> order, final String label
+    ) throws InterruptedException {
+        final int waiting = bulkhead.waiting();
+        final Thread ret = Thread.ofVirtual().start(() -> {
+            try (ZefiroBulkhead.Permit permit = bulkhead.acquire(account, priority)) {
+                order.add(label);
+            } catch (InterruptedException x) {
+                // test done
+            }
+        });
+        while (bulkhead.waiting() == waiting) {
+            Thread.sleep(1);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+import static ste.toosla.zefiro.ZefiroCircuitBreaker.State.CLOSED;
+import static ste.toosla.zefiro.ZefiroCircuitBreaker.State.HALF_OPEN;
+import static ste.toosla.zefiro.ZefiroCircuitBreaker.State.OPEN;
+
+/**
+ *
+ */
+public class ZefiroCircuitBreakerTest {
+
+    private static final Duration SLOW = Duration.ofSeconds(1);
+    private static final Duration OPEN_TIME = Duration.ofMillis(200);
+    private static final String API = "zefiro.me";
+    private static final String UPLOAD = "upload.zefiro.me";
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new ZefiroCircuitBreaker(0, 0.5, SLOW, 0.5, OPEN_TIME, 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("window must be greater than zero");
+        for (double rate: new double[] {0, -0.1, 1.1}) {
+            thenThrownBy(() -> new ZefiroCircuitBreaker(10, rate, SLOW, 0.5, OPEN_TIME, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("failureRate and slowCallRate must be in (0, 1]");
+            thenThrownBy(() -> new ZefiroCircuitBreaker(10, 0.5, SLOW, rate, OPEN_TIME, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("failureRate and slowCallRate must be in (0, 1]");
+        }
+        for (Duration slow: new Duration[] {null, Duration.ZERO, Duration.ofMillis(-1)}) {
+            thenThrownBy(() -> new ZefiroCircuitBreaker(10, 0.5, slow, 0.5, OPEN_TIME, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("slowCallDuration can not be null, negative or zero");
+        }
+        thenThrownBy(() -> new ZefiroCircuitBreaker(10, 0.5, SLOW, 0.5, null, 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("openDuration can not be null or negative");
+        thenThrownBy(() -> new ZefiroCircuitBreaker(10, 0.5, SLOW, 0.5, Duration.ofMillis(-1), 1))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("openDuration can not be null or negative");
+        thenThrownBy(() -> new ZefiroCircuitBreaker(10, 0.5, SLOW, 0.5, OPEN_TIME, 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("halfOpenCalls must be greater than zero");
+
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(10, 0.5, SLOW, 0.5, OPEN_TIME, 1);
+        then(breaker.states()).isEmpty();
+        then(breaker.rejected()).isZero();
+    }
+
+    @Test
+    public void open_on_failure_rate() {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(4, 0.5, SLOW, 1, OPEN_TIME, 1);
+
+        //
+        // not before the window is full
+        //
+        for (int i = 0; i < 3; ++i) {
+            breaker.acquire(API); breaker.record(API, true, 0);
+        }
+        then(breaker.state(API)).isEqualTo(CLOSED);
+
+        //
+        // failures are computed on the last calls only
+        //
+        breaker.acquire(API); breaker.record(API, false, 0);
+        then(breaker.state(API)).isEqualTo(OPEN);
+
+        then(breaker.states()).containsExactly(entry(API, OPEN));
+    }
+
+    @Test
+    public void failures_are_computed_on_a_sliding_window() {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(4, 0.5, SLOW, 1, OPEN_TIME, 1);
+
+        final boolean[] outcomes = { true, false, false, false, true, false, false, false, true, false };
+        for (boolean failed: outcomes) {
+            breaker.acquire(API); breaker.record(API, failed, 0);
+        }
+        then(breaker.state(API)).isEqualTo(CLOSED); // never 2 failures in 4 calls
+
+        breaker.acquire(API); breaker.record(API, true, 0);
+        then(breaker.state(API)).isEqualTo(OPEN);
+    }
+
+    @Test
+    public void open_on_slow_call_rate() {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(4, 1, SLOW, 0.75, OPEN_TIME, 1);
+
+        breaker.record(API, false, SLOW.toNanos());
+        breaker.record(API, false, SLOW.toNanos() - 1);
+        breaker.record(API, false, SLOW.toNanos() * 2);
+        then(breaker.state(API)).isEqualTo(CLOSED);
+        breaker.record(API, false, SLOW.toNanos());
+        then(breaker.state(API)).isEqualTo(OPEN);
+    }
+
+    @Test
+    public void fail_fast_while_open() {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(2, 0.5, SLOW, 1, Duration.ofSeconds(30), 1);
+
+        breaker.record(API, true, 0); breaker.record(API, true, 0);
+
+        thenThrownBy(() -> breaker.acquire(API))
+            .isInstanceOf(ZefiroCircuitOpenException.class)
+            .isInstanceOf(ZefiroBusyException.class)
+            .hasMessage("Zefiro is unavailable (circuit open for zefiro.me)")
+            .satisfies(x -> {
+                final ZefiroCircuitOpenException open = (ZefiroCircuitOpenException)x;
+                then(open.host).isEqualTo(API);
+                then(open.retryAfter()).isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30));
+                then(open.retryAfterSeconds()).isEqualTo(30);
+            });
+        then(breaker.rejected()).isEqualTo(1);
+
+        //
+        // other hosts are not affected
+        //
+        breaker.acquire(UPLOAD);
+        then(breaker.state(UPLOAD)).isEqualTo(CLOSED);
+    }
+
+    @Test
+    public void close_after_successful_trials() throws Exception {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(2, 0.5, SLOW, 1, OPEN_TIME, 2);
+
+        breaker.record(API, true, 0); breaker.record(API, true, 0);
+        then(breaker.state(API)).isEqualTo(OPEN);
+
+        Thread.sleep(OPEN_TIME.toMillis() + 50);
+
+        breaker.acquire(API); breaker.acquire(API);
+        then(breaker.state(API)).isEqualTo(HALF_OPEN);
+        thenThrownBy(() -> breaker.acquire(API)).isInstanceOf(ZefiroCircuitOpenException.class); // max 2 trials
+
+        breaker.record(API, false, 0);
+        then(breaker.state(API)).isEqualTo(HALF_OPEN);
+        breaker.record(API, false, 0);
+        then(breaker.state(API)).isEqualTo(CLOSED);
+
+        //
+        // the window starts empty
+        //
+        breaker.record(API, true, 0);
+        then(breaker.state(API)).isEqualTo(CLOSED);
+    }
+
+    @Test
+    public void state_is_current_without_calls() throws Exception {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(2, 0.5, SLOW, 1, OPEN_TIME, 1);
+
+        breaker.record(API, true, 0); breaker.record(API, true, 0);
+        then(breaker.states()).containsEntry(API, OPEN);
+
+        Thread.sleep(OPEN_TIME.toMillis() + 50);
+
+        then(breaker.states()).containsEntry(API, HALF_OPEN);
+        then(breaker.state(API)).isEqualTo(HALF_OPEN);
+
+        //
+        // reading the state does not take the trial calls
+        //
+        breaker.acquire(API);
+        breaker.record(API, false, 0);
+        then(breaker.state(API)).isEqualTo(CLOSED);
+    }
+
+    @Test
+    public void open_again_if_a_trial_fails_or_is_slow() throws Exception {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(2, 0.5, SLOW, 1, OPEN_TIME, 2);
+
+        breaker.record(API, true, 0); breaker.record(API, true, 0);
+        Thread.sleep(OPEN_TIME.toMillis() + 50);
+
+        breaker.acquire(API);
+        breaker.record(API, true, 0);
+        then(breaker.state(API)).isEqualTo(OPEN);
+        thenThrownBy(() -> breaker.acquire(API)).isInstanceOf(ZefiroCircuitOpenException.class);
+
+        Thread.sleep(OPEN_TIME.toMillis() + 50);
+
+        breaker.acquire(API);
+        breaker.record(API, false, SLOW.toNanos());
+        then(breaker.state(API)).isEqualTo(OPEN);
+    }
+
+    @Test
+    public void do_not_wait_forever_for_lost_trials() throws Exception {
+        final ZefiroCircuitBreaker breaker = new ZefiroCircuitBreaker(2, 0.5, SLOW, 1, OPEN_TIME, 1);
+
+        breaker.record(API, true, 0); breaker.record(API, true, 0);
+        Thread.sleep(OPEN_TIME.toMillis() + 50);
+
+        breaker.acquire(API); // never recorded
+        thenThrownBy(() -> breaker.acquire(API)).isInstanceOf(ZefiroCircuitOpenException.class);
+
+        Thread.sleep(OPEN_TIME.toMillis() + 50);
+        breaker.acquire(API);
+        breaker.record(API, false, 0);
+        then(breaker.state(API)).isEqualTo(CLOSED);
+    }
+}
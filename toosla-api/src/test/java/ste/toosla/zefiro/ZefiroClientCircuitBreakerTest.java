@@ -0,0 +1,117 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Circuit breaking of {@link ZefiroClient} exchanges against a {@link FakeZefiro}
+ * failing on purpose.
+ */
+public class ZefiroClientCircuitBreakerTest {
+
+    private FakeZefiro zefiro;
+    private ZefiroCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+        circuitBreaker = new ZefiroCircuitBreaker(4, 0.5, Duration.ofSeconds(5), 1, Duration.ofMillis(300), 2);
+    }
+
+    @AfterEach
+    public void after() {
+        zefiro.close();
+    }
+
+    @Test
+    public void fail_fast_while_open_and_recover() throws Exception {
+        zefiro.failNext("/sapi/media/folder/root", 4, 500, null);
+        for (int i = 0; i < 4; ++i) {
+            thenThrownBy(() -> newZefiroClient().download(FakeZefiro.FILE))
+                .isInstanceOf(ZefiroException.class)
+                .hasMessage("Failed to get root folder: 500");
+        }
+        then(circuitBreaker.state("127.0.0.1")).isEqualTo(ZefiroCircuitBreaker.State.OPEN);
+
+        //
+        // Zefiro is not called at all while open
+        //
+        final int calls = zefiro.calls();
+        thenThrownBy(() -> newZefiroClient().download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroCircuitOpenException.class);
+        thenThrownBy(() -> newZefiroClient().upload(FakeZefiro.FILE, "{}"))
+            .isInstanceOf(ZefiroCircuitOpenException.class);
+        then(zefiro.calls()).isEqualTo(calls);
+
+        //
+        // half open: trial calls go through and close the circuit
+        //
+        Thread.sleep(400);
+        then(newZefiroClient().download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(circuitBreaker.state("127.0.0.1")).isEqualTo(ZefiroCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void do_not_retry_while_open() throws Exception {
+        final ZefiroRetryPolicy retryPolicy = new ZefiroRetryPolicy(10, Duration.ofMillis(1), Duration.ofMillis(10), 1, 100);
+
+        zefiro.failNext("/sapi/media/folder/root", 10, 503, null);
+        thenThrownBy(() -> newZefiroClient().withRetryPolicy(retryPolicy).download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroCircuitOpenException.class);
+        then(zefiro.calls("/sapi/media/folder/root")).isEqualTo(4);
+    }
+
+    @Test
+    public void trial_calls_are_not_lost_if_not_sent() throws Exception {
+        zefiro.failNext("/sapi/media/folder/root", 4, 500, null);
+        for (int i = 0; i < 4; ++i) {
+            thenThrownBy(() -> newZefiroClient().download(FakeZefiro.FILE)).isInstanceOf(ZefiroException.class);
+        }
+        Thread.sleep(400);
+
+        //
+        // a call that times out before being sent does not take the only trial
+        // call of the half open circuit
+        //
+        final ZefiroDeadline expired = ZefiroDeadline.in(Duration.ofNanos(1));
+        Thread.sleep(1);
+        thenThrownBy(() -> newZefiroClient().withDeadline(expired).download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroTimeoutException.class);
+        then(newZefiroClient().download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(circuitBreaker.state("127.0.0.1")).isEqualTo(ZefiroCircuitBreaker.State.CLOSED);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ZefiroClient newZefiroClient() {
+        return new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey")
+            .withCircuitBreaker(circuitBreaker);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Adaptive concurrency limit of {@link ZefiroClient} exchanges against a
+ * {@link FakeZefiro}.
+ */
+public class ZefiroClientConcurrencyLimiterTest {
+
+    private FakeZefiro zefiro;
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+    }
+
+    @AfterEach
+    public void after() {
+        zefiro.close();
+    }
+
+    @Test
+    public void fail_when_the_limit_is_reached() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(1, 1, 10, Duration.ofMillis(50));
+
+        try (ZefiroBulkhead.Permit permit = limiter.acquire()) {
+            thenThrownBy(() -> newZefiroClient(limiter).download(FakeZefiro.FILE))
+                .isInstanceOf(ZefiroBusyException.class)
+                .hasMessage("Zefiro concurrency limit reached (1)");
+        }
+        then(zefiro.calls()).isZero();
+        then(limiter.rejected()).isEqualTo(1);
+
+        then(newZefiroClient(limiter).download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    public void overload_shrinks_the_limit() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(20, 1, 100, Duration.ofMillis(50));
+
+        zefiro.failNext("/sapi/media/folder/root", 1, 503, null);
+        thenThrownBy(() -> newZefiroClient(limiter).download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroException.class);
+        then(limiter.limit()).isEqualTo(18);
+        then(limiter.inFlight()).isZero();
+
+        zefiro.failNext("/sapi/media/folder/root", 1, 404, null);
+        thenThrownBy(() -> newZefiroClient(limiter).download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroException.class);
+        then(limiter.limit()).isEqualTo(18);
+    }
+
+    @Test
+    public void limit_and_bulkhead_together() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(1, 1, 10, Duration.ofMillis(50));
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(10, 10, Duration.ofMillis(50));
+
+        try (ZefiroBulkhead.Permit permit = limiter.acquire()) {
+            thenThrownBy(() -> newZefiroClient(limiter).withBulkhead(bulkhead).download(FakeZefiro.FILE))
+                .isInstanceOf(ZefiroBusyException.class);
+            then(bulkhead.inFlight()).isZero(); // the bulkhead permit is given back
+        }
+
+        then(newZefiroClient(limiter).withBulkhead(bulkhead).download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(bulkhead.inFlight()).isZero();
+        then(limiter.inFlight()).isZero();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ZefiroClient newZefiroClient(final ZefiroConcurrencyLimiter limiter) {
+        return new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey")
+            .withConcurrencyLimiter(limiter);
+    }
+}
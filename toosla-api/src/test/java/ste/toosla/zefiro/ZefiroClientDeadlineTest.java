@@ -0,0 +1,126 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Deadlines of {@link ZefiroClient} exchanges against a {@link FakeZefiro}
+ * slowed down on purpose.
+ */
+public class ZefiroClientDeadlineTest {
+
+    private FakeZefiro zefiro;
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+    }
+
+    @AfterEach
+    public void after() {
+        zefiro.close();
+    }
+
+    @Test
+    public void invalid_deadlines() {
+        thenThrownBy(() -> ZefiroDeadline.in(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("budget can not be null, zero or negative");
+        thenThrownBy(() -> ZefiroDeadline.in(Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("budget can not be null, zero or negative");
+        thenThrownBy(() -> ZefiroDeadline.in(Duration.ofMillis(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("budget can not be null, zero or negative");
+    }
+
+    @Test
+    public void complete_within_the_deadline() throws Exception {
+        then(
+            newZefiroClient().withDeadline(ZefiroDeadline.in(Duration.ofSeconds(5))).download(FakeZefiro.FILE)
+        ).isEqualTo(FakeZefiro.CONTENT);
+    }
+
+    @Test
+    public void fail_the_call_in_progress_when_the_deadline_passes() throws Exception {
+        newZefiroClient().download(FakeZefiro.FILE); // warm up
+        zefiro.slowNext("/sapi/download", 1, 2000);
+
+        final long start = System.nanoTime();
+        thenThrownBy(() -> newZefiroClient().withDeadline(ZefiroDeadline.in(Duration.ofMillis(500))).download(FakeZefiro.FILE))
+            .isInstanceOfSatisfying(ZefiroTimeoutException.class, (x) -> then(x.endpoint).isEqualTo(ZefiroEndpoint.CONTENT))
+            .hasMessage("Zefiro calls did not complete within 500ms (content)");
+        then(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(1500));
+    }
+
+    @Test
+    public void do_not_call_zefiro_after_the_deadline() throws Exception {
+        final ZefiroDeadline deadline = ZefiroDeadline.in(Duration.ofMillis(1));
+        Thread.sleep(10);
+
+        thenThrownBy(() -> newZefiroClient().withDeadline(deadline).download(FakeZefiro.FILE))
+            .isInstanceOfSatisfying(ZefiroTimeoutException.class, (x) -> then(x.endpoint).isEqualTo(ZefiroEndpoint.ROOT_FOLDER));
+        then(zefiro.calls()).isZero();
+    }
+
+    @Test
+    public void do_not_retry_past_the_deadline() throws Exception {
+        final ZefiroRetryPolicy retryPolicy = new ZefiroRetryPolicy(5, Duration.ofSeconds(1), Duration.ofSeconds(2), 1, 100);
+
+        zefiro.failNext("/sapi/media/folder/root", 5, 503, "1");
+        final long start = System.nanoTime();
+        thenThrownBy(() ->
+            newZefiroClient().withRetryPolicy(retryPolicy).withDeadline(ZefiroDeadline.in(Duration.ofMillis(300))).download(FakeZefiro.FILE)
+        ).isInstanceOf(ZefiroException.class).hasMessage("Failed to get root folder: 503");
+        then(zefiro.calls("/sapi/media/folder/root")).isEqualTo(1);
+        then(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(300));
+    }
+
+    @Test
+    public void deadline_timeouts_do_not_open_the_circuit() throws Exception {
+        final ZefiroCircuitBreaker circuitBreaker = new ZefiroCircuitBreaker(2, 0.5, Duration.ofSeconds(5), 1, Duration.ofSeconds(5), 1);
+
+        newZefiroClient().download(FakeZefiro.FILE); // warm up
+        zefiro.slowNext("/sapi/download", 3, 1000);
+        for (int i = 0; i < 3; ++i) {
+            thenThrownBy(() ->
+                newZefiroClient().withCircuitBreaker(circuitBreaker)
+                    .withDeadline(ZefiroDeadline.in(Duration.ofMillis(500))).download(FakeZefiro.FILE)
+            ).isInstanceOf(ZefiroTimeoutException.class);
+        }
+        then(circuitBreaker.state("127.0.0.1")).isEqualTo(ZefiroCircuitBreaker.State.CLOSED);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ZefiroClient newZefiroClient() {
+        return new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey");
+    }
+}
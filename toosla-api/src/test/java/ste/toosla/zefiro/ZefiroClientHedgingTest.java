@@ -0,0 +1,164 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Hedging of {@link ZefiroClient} exchanges against a {@link FakeZefiro}
+ * slowing down on purpose.
+ */
+public class ZefiroClientHedgingTest {
+
+    private static final int SAMPLES = 5;
+
+    private FakeZefiro zefiro;
+    private final List<ZefiroCall> calls = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+        calls.clear();
+    }
+
+    @AfterEach
+    public void after() {
+        zefiro.close();
+    }
+
+    @Test
+    public void hedge_slow_downloads_and_take_the_first_response() throws Exception {
+        final ZefiroHedgingPolicy hedgingPolicy = new ZefiroHedgingPolicy(95, Duration.ofMillis(100), 1, SAMPLES);
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(10, 10, Duration.ofSeconds(1));
+        warmUp(hedgingPolicy);
+
+        zefiro.slowNext("/sapi/download", 1, 5000);
+
+        final long start = System.nanoTime();
+        then(newZefiroClient(hedgingPolicy).withBulkhead(bulkhead).download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+
+        then(zefiro.calls("/sapi/download")).isEqualTo(SAMPLES + 2);
+        then(hedgingPolicy.hedges()).isEqualTo(1);
+        then(hedgingPolicy.wins()).isEqualTo(1);
+        then(bulkhead.inFlight()).isZero();
+        then(calls.stream().filter(c -> c.endpoint() == ZefiroEndpoint.CONTENT).count()).isEqualTo(1); // the slow one was cancelled
+    }
+
+    @Test
+    public void do_not_hedge_fast_responses() throws Exception {
+        final ZefiroHedgingPolicy hedgingPolicy = new ZefiroHedgingPolicy(95, Duration.ofMillis(500), 1, SAMPLES);
+        warmUp(hedgingPolicy);
+
+        then(newZefiroClient(hedgingPolicy).download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+
+        then(zefiro.calls("/sapi/download")).isEqualTo(SAMPLES + 1);
+        then(hedgingPolicy.hedges()).isZero();
+        then(calls).hasSize(6).allMatch(c -> c.error() == null && c.status() == 200);
+    }
+
+    @Test
+    public void do_not_hedge_beyond_the_budget() throws Exception {
+        final ZefiroHedgingPolicy hedgingPolicy = new ZefiroHedgingPolicy(95, Duration.ofMillis(100), 0.001, SAMPLES);
+        warmUp(hedgingPolicy);
+
+        zefiro.slowNext("/sapi/download", 1, 500);
+
+        then(newZefiroClient(hedgingPolicy).download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(zefiro.calls("/sapi/download")).isEqualTo(SAMPLES + 1);
+        then(hedgingPolicy.hedges()).isZero();
+    }
+
+    @Test
+    public void do_not_hedge_without_bulkhead_permits() throws Exception {
+        final ZefiroHedgingPolicy hedgingPolicy = new ZefiroHedgingPolicy(95, Duration.ofMillis(100), 1, SAMPLES);
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 1, Duration.ofSeconds(1));
+        warmUp(hedgingPolicy);
+
+        zefiro.slowNext("/sapi/download", 1, 500);
+
+        then(newZefiroClient(hedgingPolicy).withBulkhead(bulkhead).download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(zefiro.calls("/sapi/download")).isEqualTo(SAMPLES + 1);
+        then(hedgingPolicy.hedges()).isZero();
+        then(bulkhead.inFlight()).isZero();
+    }
+
+    @Test
+    public void wait_for_the_first_attempt_if_the_hedge_fails() throws Exception {
+        //
+        // the deadline passes right when the hedge is about to be sent, while
+        // the first attempt is still in progress
+        //
+        final AtomicReference<ZefiroClient> client = new AtomicReference<>();
+        final ZefiroHedgingPolicy hedgingPolicy = new ZefiroHedgingPolicy(95, Duration.ofMillis(100), 1, SAMPLES) {
+            @Override
+            public synchronized boolean tryHedge() {
+                client.get().withDeadline(ZefiroDeadline.in(Duration.ofNanos(1)));
+                return super.tryHedge();
+            }
+        };
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(10, 10, Duration.ofSeconds(1));
+        warmUp(hedgingPolicy);
+
+        zefiro.slowNext("/sapi/download", 1, 500);
+
+        client.set(newZefiroClient(hedgingPolicy).withBulkhead(bulkhead).withDeadline(ZefiroDeadline.in(Duration.ofSeconds(10))));
+        then(client.get().download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+
+        then(zefiro.calls("/sapi/download")).isEqualTo(SAMPLES + 1);
+        then(bulkhead.inFlight()).isZero();
+        then(calls.stream().filter(c -> c.endpoint() == ZefiroEndpoint.CONTENT)).singleElement()
+            .matches(c -> c.status() == 200);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ZefiroClient newZefiroClient(final ZefiroHedgingPolicy hedgingPolicy) {
+        return new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey")
+            .withHedgingPolicy(hedgingPolicy)
+            .withListener(calls::add);
+    }
+
+    /**
+     * Downloads the file enough times for the policy to learn the latencies of
+     * all the endpoints involved.
+     */
+    private void warmUp(final ZefiroHedgingPolicy hedgingPolicy) throws Exception {
+        final ZefiroClient zefiroClient = new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withValidationKey("validationkey")
+            .withHedgingPolicy(hedgingPolicy);
+        for (int i = 0; i < SAMPLES; ++i) {
+            zefiroClient.download(FakeZefiro.FILE);
+        }
+        then(hedgingPolicy.delay(ZefiroEndpoint.CONTENT)).isNotNegative();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Retries of {@link ZefiroClient} against a {@link FakeZefiro} failing on
+ * purpose.
+ */
+public class ZefiroClientRetryTest {
+
+    private FakeZefiro zefiro;
+    private ZefiroRetryPolicy retryPolicy;
+    private final List<ZefiroCall> calls = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void before() throws Exception {
+        zefiro = new FakeZefiro(0);
+        retryPolicy = new ZefiroRetryPolicy(3, Duration.ofMillis(10), Duration.ofMillis(2000), 0.1, 5);
+        calls.clear();
+    }
+
+    @AfterEach
+    public void after() {
+        zefiro.close();
+    }
+
+    @Test
+    public void retry_failed_listing_and_go_on() throws Exception {
+        zefiro.failNext("/sapi/media", 2, 503, null);
+
+        then(newZefiroClient().download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+
+        then(zefiro.calls("/sapi/media")).isEqualTo(4); // 3 attempts to list, 1 metadata
+        then(zefiro.calls("/sapi/media/folder/root")).isEqualTo(1);
+        then(
+            calls.stream().filter(c -> c.endpoint() == ZefiroEndpoint.MEDIA_LIST).map(c -> c.status() + "#" + c.attempt())
+        ).containsExactly("503#1", "503#2", "200#3");
+        then(retryPolicy.retries()).isEqualTo(2);
+    }
+
+    @Test
+    public void give_up_after_max_attempts() throws Exception {
+        zefiro.failNext("/sapi/download", 5, 502, null);
+
+        thenThrownBy(() -> newZefiroClient().download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroException.class)
+            .hasMessage("Failed to download file content: 502");
+        then(zefiro.calls("/sapi/download")).isEqualTo(3);
+    }
+
+    @Test
+    public void wait_retry_after() throws Exception {
+        zefiro.failNext("/sapi/download", 1, 503, "1");
+
+        final long start = System.nanoTime();
+        then(newZefiroClient().download(FakeZefiro.FILE)).isEqualTo(FakeZefiro.CONTENT);
+        then(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(1000));
+        then(zefiro.calls("/sapi/download")).isEqualTo(2);
+    }
+
+    @Test
+    public void do_not_wait_retry_after_longer_than_max_delay() throws Exception {
+        zefiro.failNext("/sapi/download", 1, 503, "10");
+
+        thenThrownBy(() -> newZefiroClient().download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroException.class)
+            .hasMessage("Failed to download file content: 503");
+        then(zefiro.calls("/sapi/download")).isEqualTo(1);
+    }
+
+    @Test
+    public void do_not_retry_uploads_that_may_have_been_processed() throws Exception {
+        zefiro.failNext("/sapi/upload", 1, 503, null);
+        thenThrownBy(() -> newZefiroClient().upload(FakeZefiro.FILE, "{}"))
+            .isInstanceOf(ZefiroException.class)
+            .hasMessage("Failed to upload file: 503");
+        then(zefiro.calls("/sapi/upload")).isEqualTo(1);
+
+        zefiro.failNext("/sapi/upload", 1, -1, null);
+        thenThrownBy(() -> newZefiroClient().upload(FakeZefiro.FILE, "{}"))
+            .isInstanceOf(ZefiroException.class)
+            .hasMessage("Error connecting to Zefiro");
+        then(zefiro.calls("/sapi/upload")).isEqualTo(2);
+    }
+
+    @Test
+    public void retry_throttled_uploads() throws Exception {
+        zefiro.failNext("/sapi/upload", 1, 429, "0");
+
+        then(newZefiroClient().upload(FakeZefiro.FILE, "{}").id()).isEqualTo("11111");
+        then(zefiro.calls("/sapi/upload")).isEqualTo(2);
+    }
+
+    @Test
+    public void retry_uploads_not_sent() throws Exception {
+        final int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+
+        thenThrownBy(() -> newZefiroClient().withUploadUrl("http://127.0.0.1:" + closedPort).upload(FakeZefiro.FILE, "{}"))
+            .isInstanceOf(ZefiroException.class)
+            .hasMessage("Error connecting to Zefiro");
+        then(
+            calls.stream().filter(c -> c.endpoint() == ZefiroEndpoint.UPLOAD).map(ZefiroCall::attempt)
+        ).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void no_retries_without_policy() throws Exception {
+        zefiro.failNext("/sapi/media", 1, 503, null);
+
+        thenThrownBy(() -> newZefiroClient().withRetryPolicy(null).download(FakeZefiro.FILE))
+            .isInstanceOf(ZefiroException.class);
+        then(zefiro.calls("/sapi/media")).isEqualTo(1);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ZefiroClient newZefiroClient() {
+        return new ZefiroClient("account", "secret")
+            .withApiUrl(zefiro.url())
+            .withUploadUrl(zefiro.url())
+            .withValidationKey("validationkey")
+            .withRetryPolicy(retryPolicy)
+            .withListener(calls::add);
+    }
+}
@@ -1,17 +1,25 @@
 package ste.toosla.zefiro;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import java.util.regex.Pattern;
 
 import static org.assertj.core.api.BDDAssertions.then;
 import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.NullAndEmptySource;
 import org.junit.jupiter.params.provider.ValueSource;
+import ste.toosla.util.jfr.ZefiroHttpCallEvent;
 import ste.xtest.net.http.HttpClientStubber;
 import ste.xtest.net.http.StubHttpClient.StubHttpResponse;
 import ste.xtest.net.http.ANDMatcher;
@@ -258,6 +266,29 @@ public class ZefiroClientTest {
         then(response.lastModified()).isAfter(NOW);
     }
 
+    @Test
+    public void upload_with_a_modification_date_of_its_own() throws Exception {
+        // Given
+        ZefiroClient zefiro = newZefiroClient();
+        String path = "/Toosla/toosla.json";
+        String content = "{\"key\":\"updated_value\"}";
+
+        setUpFileStubs(httpClientBuilder).withStub(
+            "https://upload.zefiro.me/sapi/upload?action=save&acceptasynchronous=false&validationkey=" + TEST_VALIDATION_KEY,
+            new StubHttpResponse<String>().text("{\"success\":\"Media uploaded successfully\",\"id\":\"11111\",\"status\":\"V\"}")
+        );
+
+        // When & Then
+        then(zefiro.upload(path, content, FIXED_MODIFICATION_DATE, FIXED_LATER_DATE).lastModified())
+            .isEqualTo(FIXED_LATER_DATE);
+
+        //
+        // the precondition does not depend on the new date
+        //
+        thenThrownBy(() -> zefiro.upload(path, content, new Date(FIXED_MODIFICATION_DATE.getTime()-1), FIXED_LATER_DATE))
+            .isInstanceOf(ZefiroModificationException.class);
+    }
+
     @Test
     public void upload_new_file_does_not_send_id() throws Exception {
         // Given
@@ -482,6 +513,196 @@ public class ZefiroClientTest {
         // The test passes if the stub is matched, which means the Authorization header was sent.
     }
 
+    //
+    // ---------- info ----------
+    //
+
+    @Test
+    public void info_from_the_folder_listing() throws Exception {
+        final List<ZefiroCall> calls = new ArrayList<>();
+        ZefiroClient zefiro = newZefiroClient().withListener(calls::add);
+        setUpTreeStubs(httpClientBuilder).withStub(
+            "https://zefiro.me/sapi/media?action=get&folderid=12345&limit=200&validationkey=" + TEST_VALIDATION_KEY,
+            new StubHttpResponse<String>().text(
+                "{\"data\":{\"media\":[{\"id\":\"11111\",\"name\":\"toosla.json\",\"modificationdate\":1755561600000,\"etag\":\"58IEhYENeW04HhTImidzBw==\"}, {\"id\":\"22222\",\"name\":\"another_toosla.json\",\"modificationdate\":1755561600000}]}}"
+            )
+        );
+
+        then(zefiro.info("/Toosla/toosla.json")).isEqualTo(
+            new ZefiroFileInfo("11111", FIXED_MODIFICATION_DATE, "58IEhYENeW04HhTImidzBw==")
+        );
+        then(zefiro.info("/Toosla/another_toosla.json").etag()).isNull();
+
+        //
+        // no media get nor content download
+        //
+        then(calls).extracting(ZefiroCall::endpoint).doesNotContain(ZefiroEndpoint.MEDIA_GET, ZefiroEndpoint.CONTENT);
+    }
+
+    @Test
+    public void info_file_not_found() throws Exception {
+        ZefiroClient zefiro = newZefiroClient();
+        setUpTreeStubs(httpClientBuilder).withStub(
+            "https://zefiro.me/sapi/media?action=get&folderid=12345&limit=200&validationkey=" + TEST_VALIDATION_KEY,
+            new StubHttpResponse<String>().text("{\"data\":{\"media\":[]}}")
+        );
+
+        thenThrownBy(() -> zefiro.info("/Toosla/not_found.json"))
+            .isInstanceOf(ZefiroFileNotFoundException.class)
+            .hasMessage("File not found: /Toosla/not_found.json");
+    }
+
+    //
+    // ---------- instrumentation ----------
+    //
+
+    @Test
+    public void listeners_are_notified_of_each_exchange() throws Exception {
+        // Given
+        final List<ZefiroCall> calls = new ArrayList<>();
+        ZefiroClient zefiro = newZefiroClient().withListener(calls::add);
+        setUpFileStubs(httpClientBuilder);
+
+        // When
+        zefiro.download("/Toosla/toosla.json");
+
+        // Then
+        then(calls).extracting(ZefiroCall::endpoint).containsExactly(
+            ZefiroEndpoint.ROOT_FOLDER, ZefiroEndpoint.FOLDER_LIST, ZefiroEndpoint.FOLDER_LIST,
+            ZefiroEndpoint.MEDIA_LIST, ZefiroEndpoint.MEDIA_GET, ZefiroEndpoint.CONTENT
+        );
+        then(calls).extracting(ZefiroCall::status).containsOnly(200);
+        then(calls).extracting(ZefiroCall::attempt).containsOnly(1);
+        then(calls.get(5).responseBytes()).isEqualTo("{\"content\":\"this is toosla\"}".length());
+        then(calls.get(4).requestBytes()).isEqualTo("{\"data\":{\"ids\":[11111],\"fields\":[\"url\",\"modificationdate\"]}}".length());
+        then(calls.get(0).duration()).isNotNegative();
+        then(zefiro.calls()).isEqualTo(6);
+    }
+
+    @Test
+    public void listeners_are_notified_of_network_errors() {
+        // Given
+        final List<ZefiroCall> calls = new ArrayList<>();
+        ZefiroClient zefiro = newZefiroClient().withListener(calls::add);
+        httpClientBuilder.withStub("https://zefiro.me/sapi/media/folder/root?action=get&validationkey=" + TEST_VALIDATION_KEY,
+            new ste.xtest.net.http.StubHttpClient.NetworkError()
+        );
+
+        // When
+        thenThrownBy(() -> zefiro.download("/Toosla/toosla.json")).isInstanceOf(ZefiroException.class);
+
+        // Then
+        then(calls).hasSize(1);
+        then(calls.get(0).endpoint()).isEqualTo(ZefiroEndpoint.ROOT_FOLDER);
+        then(calls.get(0).status()).isEqualTo(-1);
+        then(calls.get(0).error()).isNotNull();
+    }
+
+    @Test
+    public void exchanges_are_recorded_as_jfr_events() throws Exception {
+        // Given
+        ZefiroClient zefiro = newZefiroClient();
+        setUpFileStubs(httpClientBuilder);
+
+        final Path jfr = Files.createTempFile("zefiro-", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ZefiroHttpCallEvent.NAME);
+            recording.start();
+
+            // When
+            zefiro.download("/Toosla/toosla.json");
+
+            recording.stop();
+            recording.dump(jfr);
+
+            // Then
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(jfr);
+            then(events).extracting(e -> e.getString("endpoint")).containsExactly(
+                "root", "folders", "folders", "list", "metadata", "content"
+            );
+            then(events).extracting(e -> e.getInt("status")).containsOnly(200);
+            then(events.get(5).getLong("responseBytes")).isEqualTo("{\"content\":\"this is toosla\"}".length());
+        } finally {
+            Files.deleteIfExists(jfr);
+        }
+    }
+
+    @Test
+    public void exchanges_hold_a_bulkhead_permit() throws Exception {
+        // Given
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(10, 1, java.time.Duration.ofMillis(50));
+        final List<ZefiroCall> calls = new ArrayList<>();
+        ZefiroClient zefiro = newZefiroClient().withBulkhead(bulkhead).withListener(calls::add);
+        setUpFileStubs(httpClientBuilder);
+
+        // When & Then: permits are released after each call
+        then(zefiro.download("/Toosla/toosla.json")).isEqualTo("{\"content\":\"this is toosla\"}");
+        then(bulkhead.inFlight()).isZero();
+
+        // When & Then: no call is made if no permit is available
+        calls.clear();
+        try (ZefiroBulkhead.Permit permit = bulkhead.acquire("test_user")) {
+            thenThrownBy(() -> zefiro.download("/Toosla/toosla.json"))
+                .isInstanceOf(ZefiroBusyException.class);
+        }
+        then(calls).isEmpty();
+        then(bulkhead.rejected()).isEqualTo(1);
+    }
+
+    @Test
+    public void background_exchanges_wait_for_interactive_ones() throws Exception {
+        // Given
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(1, 8, java.time.Duration.ofSeconds(5));
+        final List<String> order = java.util.Collections.synchronizedList(new ArrayList<>());
+        ZefiroClient zefiro = newZefiroClient()
+            .withBulkhead(bulkhead)
+            .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+            .withListener(call -> order.add("background " + call.endpoint().tag));
+        setUpFileStubs(httpClientBuilder);
+
+        // When
+        final ZefiroBulkhead.Permit permit = bulkhead.acquire("other");
+        final Thread background = Thread.ofVirtual().start(() -> {
+            try {
+                zefiro.download("/Toosla/toosla.json");
+            } catch (Exception x) {
+                order.add(x.toString());
+            }
+        });
+        while (bulkhead.waiting() == 0) {
+            Thread.sleep(1);
+        }
+        final Thread interactive = Thread.ofVirtual().start(() -> {
+            try (ZefiroBulkhead.Permit p = bulkhead.acquire("other", ZefiroBulkhead.Priority.INTERACTIVE)) {
+                order.add("interactive");
+            } catch (InterruptedException x) {
+                order.add(x.toString());
+            }
+        });
+        while (bulkhead.waiting() == 1) {
+            Thread.sleep(1);
+        }
+        permit.close();
+        background.join(); interactive.join();
+
+        // Then
+        then(order).hasSize(7).startsWith("interactive", "background root");
+    }
+
+    @Test
+    public void withPriority_does_not_accept_null() {
+        thenThrownBy(() -> new ZefiroClient("user", "pass").withPriority(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("priority can not be null");
+    }
+
+    @Test
+    public void withListener_does_not_accept_null() {
+        thenThrownBy(() -> new ZefiroClient("user", "pass").withListener(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("listener can not be null");
+    }
+
     // ---------------------------------------------------------- static methods
 
     public static HttpClientStubber setUpTreeStubs(HttpClientStubber builder) {
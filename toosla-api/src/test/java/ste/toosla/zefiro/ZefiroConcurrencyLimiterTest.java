@@ -0,0 +1,240 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class ZefiroConcurrencyLimiterTest {
+
+    private static final Duration SHORT_WAIT = Duration.ofMillis(50);
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new ZefiroConcurrencyLimiter(1, 0, 10, SHORT_WAIT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("minLimit must be greater than zero");
+        thenThrownBy(() -> new ZefiroConcurrencyLimiter(5, 5, 4, SHORT_WAIT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxLimit can not be lower than minLimit");
+        thenThrownBy(() -> new ZefiroConcurrencyLimiter(1, 2, 10, SHORT_WAIT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("initialLimit must be in [minLimit, maxLimit]");
+        thenThrownBy(() -> new ZefiroConcurrencyLimiter(11, 2, 10, SHORT_WAIT))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("initialLimit must be in [minLimit, maxLimit]");
+        thenThrownBy(() -> new ZefiroConcurrencyLimiter(5, 2, 10, null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxWait can not be null or negative");
+        thenThrownBy(() -> new ZefiroConcurrencyLimiter(5, 2, 10, Duration.ofMillis(-1)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxWait can not be null or negative");
+
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(5, 2, 10, SHORT_WAIT);
+        then(limiter.limit()).isEqualTo(5);
+        then(limiter.inFlight()).isZero();
+        then(limiter.rejected()).isZero();
+    }
+
+    @Test
+    public void reject_calls_over_the_limit_after_max_wait() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(2, 1, 10, SHORT_WAIT);
+
+        final ZefiroBulkhead.Permit p1 = limiter.acquire();
+        final ZefiroBulkhead.Permit p2 = limiter.acquire();
+        then(limiter.inFlight()).isEqualTo(2);
+
+        final long start = System.nanoTime();
+        thenThrownBy(() -> limiter.acquire())
+            .isInstanceOf(ZefiroBusyException.class)
+            .hasMessage("Zefiro concurrency limit reached (2)");
+        then(System.nanoTime() - start).isGreaterThanOrEqualTo(SHORT_WAIT.toNanos());
+        then(limiter.rejected()).isEqualTo(1);
+
+        p1.close(); p2.close();
+        then(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    public void queued_calls_go_through_when_a_permit_is_released() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(1, 1, 10, Duration.ofSeconds(5));
+
+        final ZefiroBulkhead.Permit permit = limiter.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread waiting = Thread.ofVirtual().start(() -> {
+            try (ZefiroBulkhead.Permit p = limiter.acquire()) {
+                acquired.countDown();
+            } catch (Throwable x) {
+                error.set(x);
+            }
+        });
+
+        then(acquired.await(100, TimeUnit.MILLISECONDS)).isFalse();
+        permit.close();
+        then(acquired.await(5, TimeUnit.SECONDS)).isTrue();
+        waiting.join();
+        then(error.get()).isNull();
+        then(limiter.rejected()).isZero();
+    }
+
+    @Test
+    public void try_acquire_does_not_wait() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(1, 1, 10, Duration.ofSeconds(5));
+
+        final ZefiroBulkhead.Permit permit = limiter.tryAcquire();
+        then(permit).isNotNull();
+        then(limiter.tryAcquire()).isNull();
+        then(limiter.rejected()).isZero();
+
+        permit.close();
+        then(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    public void grow_while_calls_do_not_queue() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(10, 1, 100, SHORT_WAIT);
+
+        final List<ZefiroBulkhead.Permit> permits = saturate(limiter);
+        limiter.record(RTT, false);
+        then(limiter.limit()).isEqualTo(13); // + 3 * log10(10)
+        limiter.record(RTT, false);
+        then(limiter.limit()).isEqualTo(16);
+        release(permits);
+
+        for (int i = 0; i < 100; ++i) {
+            final List<ZefiroBulkhead.Permit> more = saturate(limiter);
+            limiter.record(RTT, false);
+            release(more);
+        }
+        then(limiter.limit()).isEqualTo(100);
+    }
+
+    @Test
+    public void do_not_grow_if_not_used() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(10, 1, 100, SHORT_WAIT);
+
+        try (ZefiroBulkhead.Permit permit = limiter.acquire()) {
+            for (int i = 0; i < 10; ++i) {
+                limiter.record(RTT, false);
+            }
+        }
+        then(limiter.limit()).isEqualTo(10);
+    }
+
+    @Test
+    public void shrink_when_calls_queue() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(50, 1, 100, SHORT_WAIT);
+
+        final List<ZefiroBulkhead.Permit> permits = saturate(limiter);
+        limiter.record(RTT, false);
+        final int limit = limiter.limit();
+
+        //
+        // 4 times slower: 3/4 of the calls in flight are queued
+        //
+        limiter.record(4 * RTT, false);
+        then(limiter.limit()).isLessThan(limit);
+
+        //
+        // somewhat slower: a few calls are queued, the limit holds
+        //
+        final int current = limiter.limit();
+        limiter.record(RTT + RTT / 5, false);
+        then(limiter.limit()).isEqualTo(current);
+
+        release(permits);
+    }
+
+    @Test
+    public void shrink_on_drops_down_to_min_limit() {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(20, 5, 100, SHORT_WAIT);
+
+        limiter.record(RTT, true);
+        then(limiter.limit()).isEqualTo(18);
+        for (int i = 0; i < 50; ++i) {
+            limiter.record(RTT, true);
+        }
+        then(limiter.limit()).isEqualTo(5);
+    }
+
+    @Test
+    public void limit_tracks_upstream_capacity() throws Exception {
+        final ZefiroConcurrencyLimiter limiter = new ZefiroConcurrencyLimiter(20, 1, 500, SHORT_WAIT);
+
+        then(simulate(limiter, 10, 1000)).isBetween(5.0, 40.0);
+        then(simulate(limiter, 100, 1000)).isBetween(50.0, 250.0);
+        then(simulate(limiter, 10, 1000)).isBetween(5.0, 40.0);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private List<ZefiroBulkhead.Permit> saturate(final ZefiroConcurrencyLimiter limiter) {
+        final List<ZefiroBulkhead.Permit> permits = new ArrayList<>();
+        ZefiroBulkhead.Permit permit;
+        while ((permit = limiter.tryAcquire()) != null) {
+            permits.add(permit);
+        }
+        return permits;
+    }
+
+    private void release(final List<ZefiroBulkhead.Permit> permits) {
+        permits.forEach(ZefiroBulkhead.Permit::close);
+    }
+
+    /**
+     * Keeps the limiter saturated in rounds against an upstream serving
+     * {@code capacity} calls at a time in {@code RTT} (calls beyond that
+     * queue), with some noise.
+     *
+     * @return the average limit over the second half of the rounds
+     */
+    private double simulate(final ZefiroConcurrencyLimiter limiter, final int capacity, final int rounds) {
+        final Random random = new Random(capacity);
+
+        double sum = 0;
+        for (int i = 0; i < rounds; ++i) {
+            final List<ZefiroBulkhead.Permit> permits = saturate(limiter);
+            final int n = permits.size();
+            for (int j = 0; j < n; ++j) {
+                limiter.record((long)(RTT * Math.max(1.0, (double)n / capacity) * (1 + 0.2 * random.nextDouble())), false);
+            }
+            release(permits);
+            if (i >= rounds / 2) {
+                sum += limiter.limit();
+            }
+        }
+        return sum / (rounds - rounds / 2);
+    }
+}
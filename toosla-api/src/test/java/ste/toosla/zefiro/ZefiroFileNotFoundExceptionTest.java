@@ -10,4 +10,9 @@ public class ZefiroFileNotFoundExceptionTest {
         ZefiroFileNotFoundException exception = new ZefiroFileNotFoundException("File not found");
         then(exception.getMessage()).isEqualTo("File not found");
     }
+
+    @Test
+    public void no_stack_trace() {
+        then(new ZefiroFileNotFoundException("File not found").getStackTrace()).isEmpty();
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import static org.assertj.core.data.Percentage.withPercentage;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class ZefiroHedgingPolicyTest {
+
+    private static final Duration MIN = Duration.ofMillis(10);
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void constructor_sanity_check() {
+        for (double percentile: new double[] {0, -1, 100.1}) {
+            thenThrownBy(() -> new ZefiroHedgingPolicy(percentile, MIN, 0.05))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("percentile must be in (0, 100]");
+        }
+        thenThrownBy(() -> new ZefiroHedgingPolicy(95, null, 0.05))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("minDelay can not be null or negative");
+        thenThrownBy(() -> new ZefiroHedgingPolicy(95, Duration.ofMillis(-1), 0.05))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("minDelay can not be null or negative");
+        for (double ratio: new double[] {-0.1, 1.1}) {
+            thenThrownBy(() -> new ZefiroHedgingPolicy(95, MIN, ratio))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("maxHedgeRatio must be in [0, 1]");
+        }
+        thenThrownBy(() -> new ZefiroHedgingPolicy(95, MIN, 0.05, 0))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("samples must be greater than zero");
+
+        final ZefiroHedgingPolicy policy = new ZefiroHedgingPolicy(95, MIN, 0.05);
+        then(policy.hedges()).isZero();
+        then(policy.wins()).isZero();
+        for (ZefiroEndpoint endpoint: ZefiroEndpoint.values()) {
+            then(policy.delay(endpoint)).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void delay_is_the_percentile_of_the_last_window() {
+        final ZefiroHedgingPolicy policy = new ZefiroHedgingPolicy(90, MIN, 0.05, 10);
+
+        for (int i = 1; i < 10; ++i) {
+            policy.record(ZefiroEndpoint.CONTENT, i * 100 * MS);
+        }
+        then(policy.delay(ZefiroEndpoint.CONTENT)).isEqualTo(-1); // not enough samples yet
+        policy.record(ZefiroEndpoint.CONTENT, 1000 * MS);
+        then(policy.delay(ZefiroEndpoint.CONTENT)).isCloseTo(900 * MS, withPercentage(5));
+        then(policy.delay(ZefiroEndpoint.MEDIA_GET)).isEqualTo(-1);
+
+        //
+        // the delay adapts to the next window
+        //
+        for (int i = 1; i <= 10; ++i) {
+            policy.record(ZefiroEndpoint.CONTENT, i * 10 * MS);
+        }
+        then(policy.delay(ZefiroEndpoint.CONTENT)).isCloseTo(90 * MS, withPercentage(5));
+    }
+
+    @Test
+    public void delay_is_not_lower_than_min_delay() {
+        final ZefiroHedgingPolicy policy = new ZefiroHedgingPolicy(95, MIN, 0.05, 10);
+
+        for (int i = 0; i < 10; ++i) {
+            policy.record(ZefiroEndpoint.MEDIA_LIST, MS);
+        }
+        then(policy.delay(ZefiroEndpoint.MEDIA_LIST)).isEqualTo(MIN.toNanos());
+    }
+
+    @Test
+    public void do_not_hedge_non_idempotent_endpoints() {
+        final ZefiroHedgingPolicy policy = new ZefiroHedgingPolicy(95, MIN, 0.05, 10);
+
+        for (int i = 0; i < 20; ++i) {
+            policy.record(ZefiroEndpoint.UPLOAD, 100 * MS);
+            policy.record(ZefiroEndpoint.LOGIN, 100 * MS);
+        }
+        then(policy.delay(ZefiroEndpoint.UPLOAD)).isEqualTo(-1);
+        then(policy.delay(ZefiroEndpoint.LOGIN)).isEqualTo(-1);
+    }
+
+    @Test
+    public void zero_ratio_disables_hedging() {
+        final ZefiroHedgingPolicy policy = new ZefiroHedgingPolicy(95, MIN, 0, 10);
+
+        for (int i = 0; i < 10; ++i) {
+            policy.onExchange();
+            policy.record(ZefiroEndpoint.CONTENT, 100 * MS);
+        }
+        then(policy.delay(ZefiroEndpoint.CONTENT)).isEqualTo(-1);
+        then(policy.tryHedge()).isFalse();
+    }
+
+    @Test
+    public void hedges_are_limited_by_the_budget() {
+        final ZefiroHedgingPolicy policy = new ZefiroHedgingPolicy(95, MIN, 0.25);
+
+        then(policy.tryHedge()).isFalse(); // the budget starts empty
+
+        for (int i = 0; i < 8; ++i) {
+            policy.onExchange();
+        }
+        then(policy.tryHedge()).isTrue();
+        then(policy.tryHedge()).isTrue();
+        then(policy.tryHedge()).isFalse();
+        then(policy.hedges()).isEqualTo(2);
+
+        //
+        // at most 10 hedges in a burst
+        //
+        for (int i = 0; i < 1000; ++i) {
+            policy.onExchange();
+        }
+        int hedges = 0;
+        while (policy.tryHedge()) {
+            ++hedges;
+        }
+        then(hedges).isEqualTo(10);
+        then(policy.hedges()).isEqualTo(12);
+    }
+
+    @Test
+    public void count_wins() {
+        final ZefiroHedgingPolicy policy = new ZefiroHedgingPolicy(95, MIN, 0.05);
+
+        policy.won(); policy.won();
+        then(policy.wins()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static ste.toosla.zefiro.ZefiroBulkhead.Priority.BACKGROUND;
+import static ste.toosla.zefiro.ZefiroBulkhead.Priority.INTERACTIVE;
+
+/**
+ *
+ */
+public class ZefiroLoadMonitorTest {
+
+    private static final Duration MAX_LATENCY = Duration.ofMillis(20);
+
+    private ZefiroBulkhead bulkhead;
+    private ZefiroConcurrencyLimiter concurrencyLimiter;
+    private ZefiroCircuitBreaker circuitBreaker;
+    private ZefiroLoadMonitor monitor;
+
+    @BeforeEach
+    public void before() {
+        bulkhead = new ZefiroBulkhead(1, 1, Duration.ofSeconds(5));
+        concurrencyLimiter = new ZefiroConcurrencyLimiter(10, 1, 10, Duration.ofSeconds(5));
+        circuitBreaker = new ZefiroCircuitBreaker(2, 0.5, Duration.ofSeconds(5), 1, Duration.ofSeconds(60), 1);
+        monitor = new ZefiroLoadMonitor(bulkhead, concurrencyLimiter, circuitBreaker, 1, MAX_LATENCY);
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new ZefiroLoadMonitor(null, concurrencyLimiter, circuitBreaker, 1, MAX_LATENCY))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("bulkhead, concurrencyLimiter and circuitBreaker can not be null");
+        thenThrownBy(() -> new ZefiroLoadMonitor(bulkhead, null, circuitBreaker, 1, MAX_LATENCY))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("bulkhead, concurrencyLimiter and circuitBreaker can not be null");
+        thenThrownBy(() -> new ZefiroLoadMonitor(bulkhead, concurrencyLimiter, null, 1, MAX_LATENCY))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("bulkhead, concurrencyLimiter and circuitBreaker can not be null");
+        thenThrownBy(() -> new ZefiroLoadMonitor(bulkhead, concurrencyLimiter, circuitBreaker, -1, MAX_LATENCY))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxWaiting can not be negative");
+        thenThrownBy(() -> new ZefiroLoadMonitor(bulkhead, concurrencyLimiter, circuitBreaker, 1, Duration.ZERO))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxLatency can not be null, zero or negative");
+    }
+
+    @Test
+    public void ready_when_idle() {
+        then(monitor.saturated()).isFalse();
+        then(monitor.ready()).isTrue();
+        then(monitor.shed(BACKGROUND)).isFalse();
+        then(monitor.shed()).isZero();
+        then(monitor.status())
+            .containsEntry("inFlight", 0).containsEntry("maxCalls", 1)
+            .containsEntry("concurrencyLimit", 10).containsEntry("waiting", 0)
+            .containsEntry("latency", 0L).containsKey("circuits");
+    }
+
+    @Test
+    public void saturated_when_calls_back_up() throws Exception {
+        final Thread[] waiters = new Thread[2];
+        try (ZefiroBulkhead.Permit permit = bulkhead.acquire("account")) {
+            for (int i = 0; i < waiters.length; ++i) {
+                waiters[i] = Thread.ofVirtual().start(() -> {
+                    try {
+                        bulkhead.acquire("account").close();
+                    } catch (InterruptedException x) {
+                        // done
+                    }
+                });
+            }
+            while (bulkhead.waiting() < 2) {
+                Thread.sleep(5);
+            }
+
+            then(monitor.waiting()).isEqualTo(2);
+            then(monitor.saturated()).isTrue();
+            then(monitor.ready()).isFalse();
+
+            //
+            // only background requests are shed
+            //
+            then(monitor.shed(INTERACTIVE)).isFalse();
+            then(monitor.shed(BACKGROUND)).isTrue();
+            then(monitor.shed()).isEqualTo(1);
+        }
+        for (Thread waiter: waiters) {
+            waiter.join();
+        }
+
+        then(monitor.waiting()).isZero();
+        then(monitor.ready()).isTrue();
+    }
+
+    @Test
+    public void saturated_while_zefiro_is_slow() throws Exception {
+        monitor.onCall(call(TimeUnit.MILLISECONDS.toNanos(5)));
+        then(monitor.ready()).isTrue();
+
+        for (int i = 0; i < 20; ++i) {
+            monitor.onCall(call(TimeUnit.MILLISECONDS.toNanos(100)));
+        }
+        then(monitor.latency()).isGreaterThan(MAX_LATENCY.toNanos());
+        then(monitor.saturated()).isTrue();
+        then(monitor.ready()).isFalse();
+
+        //
+        // no calls for a while: the latency is no longer recent
+        //
+        Thread.sleep(10 * MAX_LATENCY.toMillis() + 50);
+        then(monitor.latency()).isZero();
+        then(monitor.ready()).isTrue();
+
+        //
+        // and it starts over with the next call
+        //
+        monitor.onCall(call(TimeUnit.MILLISECONDS.toNanos(5)));
+        then(monitor.latency()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void ready_while_a_circuit_is_open() {
+        circuitBreaker.record("zefiro.me", true, 0);
+        circuitBreaker.record("zefiro.me", true, 0);
+
+        //
+        // Zefiro is down for all nodes, not only for this one
+        //
+        then(monitor.saturated()).isFalse();
+        then(monitor.ready()).isTrue();
+        then(monitor.shed(BACKGROUND)).isFalse();
+        then(monitor.status()).extractingByKey("circuits").isEqualTo(Map.of("zefiro.me", ZefiroCircuitBreaker.State.OPEN));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ZefiroCall call(final long duration) {
+        return new ZefiroCall(ZefiroEndpoint.CONTENT, 200, 0, 0, duration, 1, null);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ste.toosla.util.metrics.Histogram;
+
+/**
+ * Compares platform and virtual threads serving blocking downloads through
+ * {@link ZefiroClient} against a {@link FakeZefiro} that answers each call after
+ * a fixed latency. Platform threads are capped like Tomcat's default pool (200
+ * threads); virtual threads are only limited by the {@link ZefiroBulkhead}.
+ *
+ * <p>This is not part of the regular build; run it with:
+ * <pre>
+ * mvn test -Dtest=ZefiroLoadTest -Dtoosla.loadtest=true [-Dtoosla.loadtest.requests=2000] [-Dtoosla.loadtest.latency=200]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "toosla.loadtest", matches = "true")
+public class ZefiroLoadTest {
+
+    private static final int REQUESTS = Integer.getInteger("toosla.loadtest.requests", 2000);
+    private static final long LATENCY_MS = Long.getLong("toosla.loadtest.latency", 200);
+    private static final int PLATFORM_THREADS = 200;
+    private static final int ACCOUNTS = 100;
+    private static final int MAX_CALLS = 512;
+
+    private FakeZefiro zefiro;
+
+    private record Result(String mode, int requests, int errors, double seconds, Histogram latency) {
+        double throughput() {
+            return requests / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%-8s requests: %5d errors: %3d throughput: %8.1f req/s latency p50: %7.1f ms p99: %7.1f ms max: %7.1f ms",
+                mode, requests, errors, throughput(),
+                latency.percentile(50) / 1e6, latency.percentile(99) / 1e6, latency.max() / 1e6
+            );
+        }
+    }
+
+    @BeforeEach
+    public void before() throws IOException {
+        zefiro = new FakeZefiro(LATENCY_MS);
+    }
+
+    @AfterEach
+    public void after() {
+        zefiro.close();
+    }
+
+    @Test
+    public void virtual_threads_vs_platform_threads() throws Exception {
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(MAX_CALLS, 8, Duration.ofSeconds(60));
+
+        run("warm-up", Executors.newVirtualThreadPerTaskExecutor(), bulkhead, Math.min(REQUESTS, 500));
+
+        final Result platform = run("platform", Executors.newFixedThreadPool(PLATFORM_THREADS), bulkhead, REQUESTS);
+        final Result virtual = run("virtual", Executors.newVirtualThreadPerTaskExecutor(), bulkhead, REQUESTS);
+
+        System.out.println("Zefiro latency: " + LATENCY_MS + " ms, 6 calls per download, " + ACCOUNTS + " accounts");
+        System.out.println(platform);
+        System.out.println(virtual);
+        System.out.println("max concurrent upstream calls: " + zefiro.maxInFlight() + " (limit " + MAX_CALLS + ")");
+
+        then(platform.errors()).isZero();
+        then(virtual.errors()).isZero();
+        then(zefiro.maxInFlight()).isLessThanOrEqualTo(MAX_CALLS);
+        then(virtual.throughput()).isGreaterThan(platform.throughput());
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Result run(
+        final String mode, final ExecutorService executor, final ZefiroBulkhead bulkhead, final int requests
+    ) throws InterruptedException {
+        final HttpClient.Builder builder = new SharedHttpClientBuilder(
+            HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(Executors.newVirtualThreadPerTaskExecutor())
+        );
+        final Histogram latency = new Histogram();
+        final AtomicInteger errors = new AtomicInteger();
+
+        final long start = System.nanoTime();
+        try (executor) {
+            for (int i = 0; i < requests; ++i) {
+                final String account = "account" + (i % ACCOUNTS);
+                final long submitted = System.nanoTime();
+                executor.execute(() -> {
+                    try {
+                        new ZefiroClient(account, "secret")
+                            .withHttpClientBuilder(builder)
+                            .withApiUrl(zefiro.url())
+                            .withValidationKey("validationkey")
+                            .withBulkhead(bulkhead)
+                            .download(FakeZefiro.FILE);
+                        latency.record(System.nanoTime() - submitted);
+                    } catch (RuntimeException x) {
+                        if (errors.getAndIncrement() == 0) {
+                            x.printStackTrace();
+                        }
+                    }
+                });
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        return new Result(mode, requests, errors.get(), seconds, latency);
+    }
+}
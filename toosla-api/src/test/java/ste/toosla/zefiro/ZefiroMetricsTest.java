@@ -0,0 +1,60 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.io.IOException;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.Test;
+import ste.toosla.util.metrics.MetricsRegistry;
+
+/**
+ *
+ */
+public class ZefiroMetricsTest {
+
+    @Test
+    public void record_latency_status_and_bytes_per_endpoint() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final ZefiroMetrics metrics = new ZefiroMetrics(registry);
+
+        metrics.onCall(new ZefiroCall(ZefiroEndpoint.UPLOAD, 200, 1024, 80, 5_000_000, 1, null));
+        metrics.onCall(new ZefiroCall(ZefiroEndpoint.UPLOAD, 500, 1024, 20, 7_000_000, 2, null));
+
+        then(registry.timer("zefiro.latency{endpoint=upload}").count()).isEqualTo(2);
+        then(registry.counter("zefiro.calls{endpoint=upload,status=200}").sum()).isEqualTo(1);
+        then(registry.counter("zefiro.calls{endpoint=upload,status=500}").sum()).isEqualTo(1);
+        then(registry.distribution("zefiro.bytes.sent{endpoint=upload}").max()).isEqualTo(1024);
+        then(registry.distribution("zefiro.bytes.received{endpoint=upload}").max()).isEqualTo(80);
+        then(registry.counter("zefiro.retries{endpoint=upload}").sum()).isEqualTo(1);
+        then(registry.counter("zefiro.errors{endpoint=upload}").sum()).isZero();
+    }
+
+    @Test
+    public void record_io_errors() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final ZefiroMetrics metrics = new ZefiroMetrics(registry);
+
+        metrics.onCall(new ZefiroCall(ZefiroEndpoint.CONTENT, -1, 0, 0, 1_000, 1, new IOException()));
+
+        then(registry.counter("zefiro.errors{endpoint=content}").sum()).isEqualTo(1);
+        then(registry.counter("zefiro.calls{endpoint=content,status=-1}").sum()).isEqualTo(1);
+    }
+}
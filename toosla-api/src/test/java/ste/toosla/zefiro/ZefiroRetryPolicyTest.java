@@ -0,0 +1,184 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.Test;
+import ste.xtest.net.http.StubHttpClient.StubHttpResponse;
+
+/**
+ *
+ */
+public class ZefiroRetryPolicyTest {
+
+    private static final Duration BASE = Duration.ofMillis(100);
+    private static final Duration MAX = Duration.ofMillis(1000);
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new ZefiroRetryPolicy(0, BASE, MAX, 0.1, 5))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxAttempts must be greater than zero");
+        thenThrownBy(() -> new ZefiroRetryPolicy(3, null, MAX, 0.1, 5))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("baseDelay can not be null or negative");
+        thenThrownBy(() -> new ZefiroRetryPolicy(3, Duration.ofMillis(-1), MAX, 0.1, 5))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("baseDelay can not be null or negative");
+        thenThrownBy(() -> new ZefiroRetryPolicy(3, BASE, Duration.ofMillis(10), 0.1, 5))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("maxDelay can not be null or lower than baseDelay");
+        thenThrownBy(() -> new ZefiroRetryPolicy(3, BASE, MAX, -0.1, 5))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("budgetRatio and minRetriesPerSecond can not be negative");
+
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(3, BASE, MAX, 0.1, 5);
+        then(policy.maxAttempts()).isEqualTo(3);
+        then(policy.retries()).isZero();
+        then(policy.exhausted()).isZero();
+        then(policy.budget()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void retry_idempotent_endpoints_on_transient_failures() {
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(3, BASE, MAX, 0.1, 100);
+
+        for (ZefiroEndpoint endpoint: new ZefiroEndpoint[] {
+            ZefiroEndpoint.ROOT_FOLDER, ZefiroEndpoint.FOLDER_LIST, ZefiroEndpoint.MEDIA_LIST,
+            ZefiroEndpoint.MEDIA_GET, ZefiroEndpoint.CONTENT
+        }) {
+            for (int status: new int[] {429, 500, 502, 503, 504}) {
+                then(policy.backoff(endpoint, 1, response(status), null)).as(endpoint + " " + status).isBetween(0L, 100L);
+            }
+            then(policy.backoff(endpoint, 1, null, new IOException("reset"))).isBetween(0L, 100L);
+            then(policy.backoff(endpoint, 1, null, new HttpTimeoutException("timeout"))).isBetween(0L, 100L);
+        }
+    }
+
+    @Test
+    public void do_not_retry_successes_and_client_errors() {
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(3, BASE, MAX, 0.1, 5);
+
+        for (int status: new int[] {200, 304, 400, 401, 404, 412, 501}) {
+            then(policy.backoff(ZefiroEndpoint.MEDIA_LIST, 1, response(status), null)).as(String.valueOf(status)).isEqualTo(-1);
+        }
+        then(policy.retries()).isZero();
+    }
+
+    @Test
+    public void retry_uploads_only_if_not_sent() {
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(3, BASE, MAX, 0.1, 5);
+
+        then(policy.backoff(ZefiroEndpoint.UPLOAD, 1, null, new ConnectException("refused"))).isNotNegative();
+        then(policy.backoff(ZefiroEndpoint.UPLOAD, 1, null, new HttpConnectTimeoutException("timeout"))).isNotNegative();
+        then(policy.backoff(ZefiroEndpoint.UPLOAD, 1, response(429), null)).isNotNegative();
+
+        then(policy.backoff(ZefiroEndpoint.UPLOAD, 1, null, new IOException("reset"))).isEqualTo(-1);
+        then(policy.backoff(ZefiroEndpoint.UPLOAD, 1, null, new HttpTimeoutException("timeout"))).isEqualTo(-1);
+        for (int status: new int[] {500, 502, 503, 504}) {
+            then(policy.backoff(ZefiroEndpoint.UPLOAD, 1, response(status), null)).isEqualTo(-1);
+        }
+        then(policy.backoff(ZefiroEndpoint.LOGIN, 1, response(503), null)).isEqualTo(-1);
+    }
+
+    @Test
+    public void exponential_backoff_with_jitter_up_to_max_delay() {
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(10, BASE, MAX, 4, 1000);
+
+        long max2 = 0, max4 = 0, max8 = 0;
+        for (int i = 0; i < 500; ++i) {
+            final long d1 = policy.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null);
+            final long d2 = policy.backoff(ZefiroEndpoint.CONTENT, 2, response(503), null);
+            final long d4 = policy.backoff(ZefiroEndpoint.CONTENT, 4, response(503), null);
+            final long d8 = policy.backoff(ZefiroEndpoint.CONTENT, 8, response(503), null);
+            then(d1).isBetween(0L, 100L);
+            then(d2).isBetween(0L, 200L);
+            then(d4).isBetween(0L, 800L);
+            then(d8).isBetween(0L, 1000L);
+            max2 = Math.max(max2, d2); max4 = Math.max(max4, d4); max8 = Math.max(max8, d8);
+            policy.onExchange();
+        }
+        then(max2).isGreaterThan(100);  // jitter spans the whole range
+        then(max4).isGreaterThan(400);
+        then(max8).isGreaterThan(800);
+    }
+
+    @Test
+    public void give_up_after_max_attempts() {
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(3, BASE, MAX, 0.1, 5);
+
+        then(policy.backoff(ZefiroEndpoint.CONTENT, 2, response(503), null)).isNotNegative();
+        then(policy.backoff(ZefiroEndpoint.CONTENT, 3, response(503), null)).isEqualTo(-1);
+
+        final ZefiroRetryPolicy noRetries = new ZefiroRetryPolicy(1, BASE, MAX, 0.1, 5);
+        then(noRetries.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null)).isEqualTo(-1);
+    }
+
+    @Test
+    public void retries_are_limited_by_the_budget() throws Exception {
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(3, BASE, MAX, 0.5, 0);
+
+        //
+        // the budget starts with 10 retries
+        //
+        for (int i = 0; i < 10; ++i) {
+            then(policy.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null)).isNotNegative();
+        }
+        then(policy.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null)).isEqualTo(-1);
+        then(policy.retries()).isEqualTo(10);
+        then(policy.exhausted()).isEqualTo(1);
+
+        //
+        // each exchange adds budgetRatio retries
+        //
+        policy.onExchange(); policy.onExchange();
+        then(policy.budget()).isEqualTo(1.0);
+        then(policy.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null)).isNotNegative();
+        then(policy.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null)).isEqualTo(-1);
+        then(policy.exhausted()).isEqualTo(2);
+    }
+
+    @Test
+    public void budget_refills_over_time() throws Exception {
+        final ZefiroRetryPolicy policy = new ZefiroRetryPolicy(3, BASE, MAX, 0, 50);
+
+        for (int i = 0; i < 60; ++i) {
+            policy.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null);
+        }
+        then(policy.budget()).isLessThan(1.0);
+
+        Thread.sleep(100);
+        then(policy.budget()).isGreaterThanOrEqualTo(4.0);
+        then(policy.backoff(ZefiroEndpoint.CONTENT, 1, response(503), null)).isNotNegative();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static StubHttpResponse<String> response(final int status) {
+        return new StubHttpResponse<String>().statusCode(status);
+    }
+}
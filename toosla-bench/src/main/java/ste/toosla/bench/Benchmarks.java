@@ -0,0 +1,63 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the API hot paths:
+ * <ul>
+ * <li>{@link KeyManagerBenchmark} - access key lookups, logins and clean ups under contention</li>
+ * <li>{@code ZefiroClientBenchmark} - upload body building and files listing parsing across payload sizes</li>
+ * <li>{@link StorageControllerBenchmark} - read and write through Spring MVC (MockMvc) with a stubbed Zefiro</li>
+ * <li>{@link SerializationBenchmark} - JSON (de)serialization of the DTOs and of {@code ErrorResponse}</li>
+ * </ul>
+ *
+ * <p>It takes the usual JMH command line (e.g. {@code KeyManager -f 1 -wi 2 -i 3},
+ * {@code -h} for help) and adds the allocation profiler ({@code -prof gc}), so
+ * that the results report {@code gc.alloc.rate.norm}, the bytes allocated per
+ * operation, next to the score; run with {@code -Dtoosla.bench.gc=false} to
+ * leave it out.
+ */
+public class Benchmarks {
+
+    public static final String GC_PROPERTY = "toosla.bench.gc";
+
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+            || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            Main.main(args); return;
+        }
+
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (Boolean.parseBoolean(System.getProperty(GC_PROPERTY, "true"))) {
+            options.addProfiler(GCProfiler.class);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ste.toosla.api.KeyManager;
+
+/**
+ * {@link KeyManager} under contention: every API request looks its access key
+ * up with {@code get()}, each login adds one with {@code newKey()} and the
+ * scheduled {@code cleanUp()} scans all of them, all on the same lock.
+ *
+ * <p>{@code get} and {@code getUnknown} measure lookups of existing and
+ * unknown keys (a full scan, as for a stale bearer) from 4 threads;
+ * {@code churn} runs lookups, logins and clean ups at the same time. Keys
+ * expire after one second, so that keys added by {@code churn} are removed
+ * while the looked up ones, used continuously, stay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class KeyManagerBenchmark {
+
+    private static final Logger KEY_MANAGER_LOG = Logger.getLogger(KeyManager.class.getName());
+
+    private static final long EXPIRATION_TIME = 1000;
+
+    @Param({"10", "1000"})
+    public int keys;
+
+    private KeyManager keyManager;
+    private String[] accessKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        KEY_MANAGER_LOG.setLevel(java.util.logging.Level.WARNING); // cleanUp() logs at every call
+
+        keyManager = new KeyManager(EXPIRATION_TIME);
+        accessKeys = new String[keys];
+        for (int i = 0; i < keys; ++i) {
+            accessKeys[i] = keyManager.newKey("account" + i, "secret" + i, "validationkey" + i);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public KeyManager.KeyEntry get() {
+        return keyManager.get(randomKey());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public KeyManager.KeyEntry getUnknown() {
+        return keyManager.get("00000000-0000-0000-0000-000000000000");
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public KeyManager.KeyEntry churnGet() {
+        return keyManager.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public String churnNewKey() {
+        return keyManager.newKey("newaccount", "newsecret", "newvalidationkey");
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void churnCleanUp() {
+        keyManager.cleanUp();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private String randomKey() {
+        return accessKeys[ThreadLocalRandom.current().nextInt(accessKeys.length)];
+    }
+}
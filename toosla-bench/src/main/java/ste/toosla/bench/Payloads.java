@@ -0,0 +1,73 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.bench;
+
+import java.util.Date;
+
+/**
+ * Payloads shared by the benchmarks.
+ */
+public final class Payloads {
+
+    /**
+     * The modification date of the files listed by {@link #listing(int)} and
+     * served by the stubbed Zefiro.
+     */
+    public static final Date MODIFICATION_DATE = new Date(1755561600000L); // Aug 19 2025 00:00:00 GMT
+
+    private Payloads() {}
+
+    /**
+     * @param size the content size in bytes
+     *
+     * @return a JSON document of about {@code size} characters, like the ones
+     *         saved by the web app
+     */
+    public static String json(final int size) {
+        final StringBuilder sb = new StringBuilder(size + 32).append("{\"data\":\"");
+        while (sb.length() < size - 2) {
+            sb.append((char)('a' + sb.length() % 26));
+        }
+        return sb.append("\"}").toString();
+    }
+
+    /**
+     * @param files the number of files
+     *
+     * @return a files listing as returned by {@code /sapi/media?action=get&folderid=...}
+     */
+    public static String listing(final int files) {
+        final StringBuilder sb = new StringBuilder("{\"data\":{\"media\":[");
+        for (int i = 0; i < files; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":\"").append(11111 + i)
+              .append("\",\"name\":\"file-").append(i).append(".json\"")
+              .append(",\"folder\":12345,\"size\":2048,\"mediatype\":\"file\",\"status\":\"U\"")
+              .append(",\"etag\":\"J7XxRng02rtVeS3X9Wj58Q==\"")
+              .append(",\"creationdate\":").append(MODIFICATION_DATE.getTime())
+              .append(",\"modificationdate\":").append(MODIFICATION_DATE.getTime())
+              .append('}');
+        }
+        return sb.append("]},\"responsetime\":1755272687861}").toString();
+    }
+}
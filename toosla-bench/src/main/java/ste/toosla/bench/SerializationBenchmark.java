@@ -0,0 +1,124 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ste.toosla.api.dto.ErrorResponse;
+import ste.toosla.api.dto.LoginRequest;
+import ste.toosla.api.dto.LoginResponse;
+import ste.toosla.api.dto.ReadRequest;
+import ste.toosla.api.dto.WriteRequest;
+
+/**
+ * JSON serialization of the responses ({@link ErrorResponse},
+ * {@link LoginResponse}) and deserialization of the requests
+ * ({@link LoginRequest}, {@link ReadRequest}, {@link WriteRequest} with
+ * {@code size} bytes of content), with an {@code ObjectMapper} configured as
+ * Spring MVC's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Content {
+        @Param({"1024", "65536"})
+        public int size;
+
+        byte[] writeRequest;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            writeRequest = Jackson2ObjectMapperBuilder.json().build().writeValueAsBytes(
+                new WriteRequest("/Toosla/data.json", Payloads.json(size))
+            );
+        }
+    }
+
+    private ObjectWriter writer;
+    private ObjectReader loginRequestReader, readRequestReader, writeRequestReader;
+
+    private ErrorResponse errorResponse;
+    private LoginResponse loginResponse;
+    private byte[] loginRequest, readRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+        writer = mapper.writer();
+        loginRequestReader = mapper.readerFor(LoginRequest.class);
+        readRequestReader = mapper.readerFor(ReadRequest.class);
+        writeRequestReader = mapper.readerFor(WriteRequest.class);
+
+        errorResponse = new ErrorResponse("Precondition Failed", "Modification conflict detected");
+        loginResponse = new LoginResponse("bench", "5b0e5c5e-64a9-4bd5-a1c6-0c2dcf1c7f0c", "bench_key");
+
+        loginRequest = writer.writeValueAsBytes(new LoginRequest("YmVuY2g6YmVuY2g="));
+        readRequest = writer.writeValueAsBytes(new ReadRequest("/Toosla/data.json"));
+    }
+
+    @Benchmark
+    public byte[] errorResponse() throws IOException {
+        return writer.writeValueAsBytes(errorResponse);
+    }
+
+    @Benchmark
+    public byte[] loginResponse() throws IOException {
+        return writer.writeValueAsBytes(loginResponse);
+    }
+
+    @Benchmark
+    public LoginRequest loginRequest() throws IOException {
+        return loginRequestReader.readValue(loginRequest);
+    }
+
+    @Benchmark
+    public ReadRequest readRequest() throws IOException {
+        return readRequestReader.readValue(readRequest);
+    }
+
+    @Benchmark
+    public WriteRequest writeRequest(final Content content) throws IOException {
+        return writeRequestReader.readValue(content.writeRequest);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.http.HttpClient;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.ApplicationContextFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrint;
+import org.springframework.boot.test.autoconfigure.web.servlet.SpringBootMockMvcBuilderCustomizer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.DefaultMockMvcBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import ste.toosla.api.KeyManager;
+import ste.toosla.api.TooslaApiApplication;
+import ste.xtest.net.http.HttpClientStubber;
+import ste.xtest.net.http.StubHttpClient.StubHttpResponse;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * {@code /api/storage/read} and {@code /api/storage/write} through the whole
+ * Spring MVC stack (security filters, interceptors, validation, JSON
+ * conversion, controller and {@code ZefiroClient}) dispatched by MockMvc,
+ * with Zefiro stubbed in memory: what is measured is toosla's own cost per
+ * request, without network and Tomcat. The stubbed folder has 50 files; the
+ * content read and written is {@code size} bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StorageControllerBenchmark {
+
+    private static final String ZEFIRO_API_URL = "https://zefiro.me";
+    private static final String ZEFIRO_UPLOAD_URL = "https://upload.zefiro.me";
+    private static final String VALIDATION_KEY = "bench_key";
+    private static final String PATH = "/Toosla/file-0.json";
+    private static final int FILES = 50;
+
+    @Param({"1024", "65536"})
+    public int size;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String authorization;
+    private String readBody;
+    private String writeBody;
+    private String ifUnmodifiedSince;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final HttpClientStubber zefiro = zefiro(Payloads.json(size));
+
+        context = new SpringApplicationBuilder(TooslaApiApplication.class)
+            .web(WebApplicationType.SERVLET)
+            .contextFactory(ApplicationContextFactory.of(
+                () -> new GenericWebApplicationContext(new MockServletContext())
+            ))
+            .initializers(c -> ((GenericWebApplicationContext)c).registerBean(
+                "stubbedHttpClientBuilder", HttpClient.Builder.class, () -> zefiro, bd -> bd.setPrimary(true)
+            ))
+            .properties(
+                "toosla.zefiro.api-url=" + ZEFIRO_API_URL,
+                "toosla.zefiro.upload-url=" + ZEFIRO_UPLOAD_URL,
+                "toosla.storage.rate-limit.read.rate=0",
+                "toosla.storage.rate-limit.write.rate=0",
+                "logging.level.ste.toosla=WARN",
+                "logging.level.org.springframework.security=WARN",
+                "logging.level.org.springframework.web=WARN"
+            )
+            .run();
+
+        final WebApplicationContext webContext = (WebApplicationContext)context;
+        final DefaultMockMvcBuilder builder = MockMvcBuilders.webAppContextSetup(webContext);
+        final SpringBootMockMvcBuilderCustomizer customizer = new SpringBootMockMvcBuilderCustomizer(webContext);
+        customizer.setPrint(MockMvcPrint.NONE);
+        customizer.customize(builder);
+        mockMvc = builder.build();
+
+        authorization = "Bearer " + context.getBean(KeyManager.class).newKey("bench", "bench", VALIDATION_KEY);
+
+        final ObjectMapper json = new ObjectMapper();
+        readBody = json.writeValueAsString(Map.of("path", PATH));
+        writeBody = json.writeValueAsString(Map.of("path", PATH, "content", Payloads.json(size)));
+        ifUnmodifiedSince = DateTimeFormatter.ISO_INSTANT.format(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+
+        check(read()); check(write());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult read() throws Exception {
+        return mockMvc.perform(post("/api/storage/read")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", authorization)
+            .content(readBody)
+        ).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult write() throws Exception {
+        return mockMvc.perform(post("/api/storage/write")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("Authorization", authorization)
+            .header("If-Unmodified-Since", ifUnmodifiedSince)
+            .content(writeBody)
+        ).andReturn();
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private static void check(final MvcResult result) throws Exception {
+        final int status = result.getResponse().getStatus();
+        if (status != 200) {
+            throw new IllegalStateException(
+                "unexpected status " + status + " for " + result.getRequest().getRequestURI()
+                + ": " + result.getResponse().getContentAsString()
+            );
+        }
+    }
+
+    /**
+     * A Zefiro with {@code /OneMediaHub/Toosla} holding {@link #FILES} files;
+     * the first one, {@link #PATH}, has the given content.
+     */
+    private static HttpClientStubber zefiro(final String content) {
+        final HttpClientStubber zefiro = new HttpClientStubber();
+        zefiro.withStub(
+            ZEFIRO_API_URL + "/sapi/media/folder/root?action=get&validationkey=" + VALIDATION_KEY,
+            new StubHttpResponse<String>().text("{\"data\":{\"folders\":[{\"name\":\"OneMediaHub\",\"id\":47487}]}}")
+        ).withStub(
+            ZEFIRO_API_URL + "/sapi/media/folder?action=list&parentid=47487&limit=200&validationkey=" + VALIDATION_KEY,
+            new StubHttpResponse<String>().text("{\"data\":{\"folders\":[{\"name\":\"Toosla\",\"id\":12345}]}}")
+        ).withStub(
+            ZEFIRO_API_URL + "/sapi/media/folder?action=list&parentid=12345&limit=200&validationkey=" + VALIDATION_KEY,
+            new StubHttpResponse<String>().text("{\"data\":{\"folders\":[]}}")
+        ).withStub(
+            ZEFIRO_API_URL + "/sapi/media?action=get&folderid=12345&limit=200&validationkey=" + VALIDATION_KEY,
+            new StubHttpResponse<String>().text(Payloads.listing(FILES))
+        ).withStub(
+            ZEFIRO_API_URL + "/sapi/media?action=get&origin=omh,dropbox&validationkey=" + VALIDATION_KEY,
+            new StubHttpResponse<String>().text(
+                "{\"data\":{\"media\":[{\"id\":\"11111\",\"url\":\"" + ZEFIRO_API_URL + "/sapi/download/file?action=get&k=key_for_11111\","
+                + "\"modificationdate\":" + Payloads.MODIFICATION_DATE.getTime() + "}]}}"
+            )
+        ).withStub(
+            ZEFIRO_API_URL + "/sapi/download/file?action=get&k=key_for_11111",
+            new StubHttpResponse<String>().text(content)
+        ).withStub(
+            ZEFIRO_UPLOAD_URL + "/sapi/upload?action=save&acceptasynchronous=false&validationkey=" + VALIDATION_KEY,
+            new StubHttpResponse<String>().text(
+                "{\"success\":\"Media uploaded successfully\",\"id\":\"11111\",\"status\":\"V\","
+                + "\"etag\":\"J7XxRng02rtVeS3X9Wj58Q==\",\"responsetime\":1755272687861,\"type\":\"file\"}"
+            )
+        );
+
+        return zefiro;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.zefiro;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ste.toosla.bench.Payloads;
+
+/**
+ * The CPU bound parts of the {@link ZefiroClient} calls: building the
+ * multipart body of an upload, for contents from 1 KB to 1 MB, and finding a
+ * file in a files listing (the last one, the worst case), for folders from 1
+ * to 200 files (the page size the client asks for).
+ *
+ * <p>It lives in the client's package to call its package private helpers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ZefiroClientBenchmark {
+
+
+    @State(Scope.Benchmark)
+    public static class Upload {
+        @Param({"1024", "65536", "1048576"})
+        public int size;
+
+        ZefiroClient client;
+        String content;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            client = new ZefiroClient("bench", "bench");
+            content = Payloads.json(size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Listing {
+        @Param({"1", "50", "200"})
+        public int files;
+
+        ZefiroClient client;
+        String listing;
+        String name;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            client = new ZefiroClient("bench", "bench");
+            listing = Payloads.listing(files);
+            name = "file-" + (files - 1) + ".json";
+        }
+    }
+
+    @Benchmark
+    public ZefiroClient.Multipart multipart(final Upload upload) {
+        return upload.client.buildMultipartBody(
+            "toosla.json", upload.content, 12345, 11111, Payloads.MODIFICATION_DATE
+        );
+    }
+
+    @Benchmark
+    public Optional<JsonNode> listing(final Listing listing) throws IOException {
+        return listing.client.findFile(listing.listing, listing.name);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.bench;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs every benchmark once, in this JVM and for a few milliseconds, so that
+ * a broken benchmark (e.g. a stub no longer matching the client's calls) fails
+ * the build instead of the next benchmark session.
+ */
+public class BenchmarksTest {
+
+    @Test
+    public void run_all_benchmarks_once() throws Exception {
+        final Collection<RunResult> results = new Runner(
+            new OptionsBuilder()
+                .include("ste\\.toosla\\..*Benchmark")
+                .forks(0)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .measurementTime(TimeValue.milliseconds(100))
+                .param("keys", "10")
+                .param("size", "1024")
+                .param("files", "50")
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+
+        final Set<String> benchmarks = results.stream()
+            .map(r -> r.getParams().getBenchmark().replaceAll("^.*\\.(\\w+\\.\\w+)$", "$1"))
+            .collect(Collectors.toSet());
+        then(benchmarks).contains(
+            "KeyManagerBenchmark.get", "KeyManagerBenchmark.getUnknown", "KeyManagerBenchmark.churn",
+            "ZefiroClientBenchmark.multipart", "ZefiroClientBenchmark.listing",
+            "StorageControllerBenchmark.read", "StorageControllerBenchmark.write",
+            "SerializationBenchmark.errorResponse", "SerializationBenchmark.writeRequest"
+        );
+        for (RunResult result: results) {
+            then(result.getPrimaryResult().getScore()).as(result.getParams().getBenchmark()).isPositive();
+            then(result.getSecondaryResults()).as(result.getParams().getBenchmark()).containsKey("gc.alloc.rate.norm");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.edge;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import ste.toosla.util.metrics.MetricsRegistry;
+
+/**
+ * Logs an access message for each request and records its duration in
+ * {@link MetricsRegistry} with the same names used by
+ * {@link ste.toosla.api.config.AccessLogInterceptor}; the route is the path of
+ * the context the request was dispatched to.
+ */
+class AccessLogFilter extends Filter {
+
+    private static final Logger LOGGER = Logger.getLogger(AccessLogFilter.class.getName());
+
+    private final MetricsRegistry metrics;
+
+    AccessLogFilter(final MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String description() {
+        return "access log";
+    }
+
+    @Override
+    public void doFilter(final HttpExchange exchange, final Chain chain) throws IOException {
+        final long start = System.nanoTime();
+        String status = "error";
+        try {
+            chain.doFilter(exchange);
+            status = String.valueOf(exchange.getResponseCode());
+        } finally {
+            final long duration = System.nanoTime() - start;
+            record(exchange, status, duration);
+
+            final String message = String.format("Request: %s %s - Status: %s - Duration: %dms",
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().getPath(),
+                status,
+                TimeUnit.NANOSECONDS.toMillis(duration));
+            LOGGER.info(message);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void record(final HttpExchange exchange, final String status, final long duration) {
+        final String route = exchange.getRequestMethod() + " " + exchange.getHttpContext().getPath();
+
+        metrics.timer(MetricsRegistry.name("http.server.requests", "route", route, "status", status)).record(duration);
+
+        final LongAdder total = metrics.counter(MetricsRegistry.name("http.server.requests.total", "route", route));
+        final LongAdder errors = metrics.counter(MetricsRegistry.name("http.server.requests.errors", "route", route));
+        metrics.gauge(
+            MetricsRegistry.name("http.server.requests.errorRate", "route", route),
+            () -> {
+                final long n = total.sum();
+                return (n == 0) ? 0.0 : (double)errors.sum() / n;
+            }
+        );
+
+        total.increment();
+        if ("error".equals(status) || status.startsWith("5")) {
+            errors.increment();
+        }
+    }
+}
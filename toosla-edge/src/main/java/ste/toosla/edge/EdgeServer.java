@@ -0,0 +1,401 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.edge;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static ste.toosla.edge.Exchanges.json;
+import ste.toosla.api.KeyManager;
+import ste.toosla.api.NotFoundCache;
+import ste.toosla.api.StaleReadCache;
+import ste.toosla.api.StorageChangeFeed;
+import ste.toosla.api.StorageDeadlines;
+import ste.toosla.api.StorageRateLimiter;
+import ste.toosla.util.metrics.MetricsRegistry;
+import ste.toosla.zefiro.SharedHttpClientBuilder;
+import ste.toosla.zefiro.ZefiroBulkhead;
+import ste.toosla.zefiro.ZefiroCircuitBreaker;
+import ste.toosla.zefiro.ZefiroConcurrencyLimiter;
+import ste.toosla.zefiro.ZefiroHedgingPolicy;
+import ste.toosla.zefiro.ZefiroLoadMonitor;
+import ste.toosla.zefiro.ZefiroMetrics;
+import ste.toosla.zefiro.ZefiroRetryPolicy;
+
+/**
+ * A minimal server for low-memory hosts (e.g. an in-vehicle box or a home
+ * router acting as local proxy): it exposes the storage API, {@code /health},
+ * {@code /health/ready}, {@code /api/metrics} and the static web app on the JDK built-in
+ * {@link HttpServer}, handling each request on a virtual thread. It reuses
+ * {@link KeyManager}, {@link ste.toosla.zefiro.ZefiroClient}, the bulkhead and
+ * the metrics of toosla-api, but none of Spring, Tomcat, Security, JPA or H2.
+ *
+ * <p>It reads the same properties of the full server, from
+ * {@code config/application.properties} (if present) overridden by system
+ * properties and by {@code --name=value} command line arguments:
+ * <ul>
+ * <li>{@code server.port} (default 9090)</li>
+ * <li>{@code toosla.edge.webroot} - the directory of the web app (default {@code webroot})</li>
+ * <li>{@code toosla.keymanager.expiration-time-ms} and {@code toosla.keymanager.cleanup-period-ms} (default 300000)</li>
+ * <li>{@code toosla.zefiro.api-url} and {@code toosla.zefiro.upload-url}</li>
+ * <li>{@code toosla.zefiro.connect-timeout-ms} (default 5000)</li>
+ * <li>{@code toosla.zefiro.max-concurrent-calls} (default 128), {@code toosla.zefiro.max-concurrent-calls-per-account} (default 8), {@code toosla.zefiro.max-wait-ms} (default 5000) and {@code toosla.zefiro.account-weights} (e.g. {@code account1=2,account2=0.5}, default 1 for all)</li>
+ * <li>{@code toosla.zefiro.retry.max-attempts} (default 3), {@code toosla.zefiro.retry.base-delay-ms} (default 50), {@code toosla.zefiro.retry.max-delay-ms} (default 1000), {@code toosla.zefiro.retry.budget-ratio} (default 0.1) and {@code toosla.zefiro.retry.min-retries-per-second} (default 5)</li>
+ * <li>{@code toosla.zefiro.hedging.percentile} (default 95), {@code toosla.zefiro.hedging.min-delay-ms} (default 10) and {@code toosla.zefiro.hedging.max-ratio} (default 0, no hedging)</li>
+ * <li>{@code toosla.zefiro.circuit-breaker.window} (default 20), {@code toosla.zefiro.circuit-breaker.failure-rate} (default 0.5), {@code toosla.zefiro.circuit-breaker.slow-call-ms} (default 5000), {@code toosla.zefiro.circuit-breaker.slow-call-rate} (default 0.8), {@code toosla.zefiro.circuit-breaker.open-ms} (default 10000) and {@code toosla.zefiro.circuit-breaker.half-open-calls} (default 3)</li>
+ * <li>{@code toosla.zefiro.concurrency-limit.initial} (default 20), {@code toosla.zefiro.concurrency-limit.min} (default 4), {@code toosla.zefiro.concurrency-limit.max} (default 128) and {@code toosla.zefiro.concurrency-limit.max-wait-ms} (default 1000)</li>
+ * <li>{@code toosla.zefiro.overload.max-waiting} (default 32) and {@code toosla.zefiro.overload.max-latency-ms} (default 2000)</li>
+ * <li>{@code toosla.storage.stale-cache.max-entries} (default 100)</li>
+ * <li>{@code toosla.storage.not-found-cache.ttl-ms} (default 5000) and {@code toosla.storage.not-found-cache.max-entries} (default 100)</li>
+ * <li>{@code toosla.storage.changes.min-interval-ms} (default 5000), {@code toosla.storage.changes.max-interval-ms} (default 60000), {@code toosla.storage.changes.max-watchers} (default 100) and {@code toosla.storage.changes.timeout-ms} (default 600000)</li>
+ * <li>{@code toosla.storage.deadline.login-ms} (default 10000), {@code toosla.storage.deadline.read-ms} (default 15000) and {@code toosla.storage.deadline.write-ms} (default 30000)</li>
+ * <li>{@code toosla.storage.rate-limit.login.rate} and {@code .burst} (default 1 and 10), {@code toosla.storage.rate-limit.read.rate} and {@code .burst} (default 50 and 100), {@code toosla.storage.rate-limit.write.rate} and {@code .burst} (default 20 and 50)</li>
+ * </ul>
+ */
+public class EdgeServer implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(EdgeServer.class.getName());
+
+    public static final String CONFIG_FILE = "config/application.properties";
+
+    static {
+        //
+        // The JDK server writes headers and body with separate writes: without
+        // TCP_NODELAY small responses may wait for the client's delayed ACK
+        // (~40ms each). Must be set before the first HttpServer is created.
+        //
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Properties config;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("keymanager-cleanup").daemon().factory()
+    );
+    private KeyManager keyManager;
+    private HttpClient.Builder httpClientBuilder;
+    private HttpServer server;
+    private ZefiroCircuitBreaker circuitBreaker;
+    private ZefiroLoadMonitor loadMonitor;
+    private StorageChangeFeed changeFeed;
+
+    public EdgeServer(final Properties config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config can not be null");
+        }
+        this.config = config;
+    }
+
+    /**
+     * Uses the given builder for the HTTP clients to Zefiro instead of a shared
+     * JDK client (e.g. for testing).
+     *
+     * @param builder the builder - NOT NULL
+     *
+     * @return this server
+     */
+    public EdgeServer withHttpClientBuilder(final HttpClient.Builder builder) {
+        if (builder == null) {
+            throw new IllegalArgumentException("builder can not be null");
+        }
+        this.httpClientBuilder = builder; return this;
+    }
+
+    public EdgeServer start() throws IOException {
+        final long expiration = longValue("toosla.keymanager.expiration-time-ms", 300000);
+        final long cleanup = longValue("toosla.keymanager.cleanup-period-ms", 300000);
+
+        keyManager = new KeyManager(expiration);
+        scheduler.scheduleAtFixedRate(keyManager::cleanUp, cleanup, cleanup, TimeUnit.MILLISECONDS);
+
+        if (httpClientBuilder == null) {
+            httpClientBuilder = new SharedHttpClientBuilder(
+                HttpClient.newBuilder()
+                    .executor(executor)
+                    .connectTimeout(Duration.ofMillis(longValue("toosla.zefiro.connect-timeout-ms", 5000)))
+            );
+        }
+
+        final ZefiroBulkhead bulkhead = new ZefiroBulkhead(
+            (int)longValue("toosla.zefiro.max-concurrent-calls", 128),
+            (int)longValue("toosla.zefiro.max-concurrent-calls-per-account", 8),
+            Duration.ofMillis(longValue("toosla.zefiro.max-wait-ms", 5000))
+        ).withWeights(config.getProperty("toosla.zefiro.account-weights")).withMetrics(metrics);
+
+        final ZefiroRetryPolicy retryPolicy = new ZefiroRetryPolicy(
+            (int)longValue("toosla.zefiro.retry.max-attempts", 3),
+            Duration.ofMillis(longValue("toosla.zefiro.retry.base-delay-ms", 50)),
+            Duration.ofMillis(longValue("toosla.zefiro.retry.max-delay-ms", 1000)),
+            Double.parseDouble(config.getProperty("toosla.zefiro.retry.budget-ratio", "0.1")),
+            Double.parseDouble(config.getProperty("toosla.zefiro.retry.min-retries-per-second", "5"))
+        );
+        metrics.gauge("zefiro.retry.budget", retryPolicy::budget);
+        metrics.gauge("zefiro.retry.exhausted", retryPolicy::exhausted);
+
+        final ZefiroHedgingPolicy hedgingPolicy = new ZefiroHedgingPolicy(
+            Double.parseDouble(config.getProperty("toosla.zefiro.hedging.percentile", "95")),
+            Duration.ofMillis(longValue("toosla.zefiro.hedging.min-delay-ms", 10)),
+            Double.parseDouble(config.getProperty("toosla.zefiro.hedging.max-ratio", "0"))
+        );
+        metrics.gauge("zefiro.hedge.issued", hedgingPolicy::hedges);
+        metrics.gauge("zefiro.hedge.won", hedgingPolicy::wins);
+
+        circuitBreaker = new ZefiroCircuitBreaker(
+            (int)longValue("toosla.zefiro.circuit-breaker.window", 20),
+            Double.parseDouble(config.getProperty("toosla.zefiro.circuit-breaker.failure-rate", "0.5")),
+            Duration.ofMillis(longValue("toosla.zefiro.circuit-breaker.slow-call-ms", 5000)),
+            Double.parseDouble(config.getProperty("toosla.zefiro.circuit-breaker.slow-call-rate", "0.8")),
+            Duration.ofMillis(longValue("toosla.zefiro.circuit-breaker.open-ms", 10000)),
+            (int)longValue("toosla.zefiro.circuit-breaker.half-open-calls", 3)
+        );
+        metrics.gauge("zefiro.circuit.rejected", circuitBreaker::rejected);
+
+        final ZefiroConcurrencyLimiter concurrencyLimiter = new ZefiroConcurrencyLimiter(
+            (int)longValue("toosla.zefiro.concurrency-limit.initial", 20),
+            (int)longValue("toosla.zefiro.concurrency-limit.min", 4),
+            (int)longValue("toosla.zefiro.concurrency-limit.max", 128),
+            Duration.ofMillis(longValue("toosla.zefiro.concurrency-limit.max-wait-ms", 1000))
+        );
+        metrics.gauge("zefiro.concurrency.limit", concurrencyLimiter::limit);
+        metrics.gauge("zefiro.concurrency.inflight", concurrencyLimiter::inFlight);
+        metrics.gauge("zefiro.concurrency.rejected", concurrencyLimiter::rejected);
+
+        loadMonitor = new ZefiroLoadMonitor(
+            bulkhead, concurrencyLimiter, circuitBreaker,
+            (int)longValue("toosla.zefiro.overload.max-waiting", 32),
+            Duration.ofMillis(longValue("toosla.zefiro.overload.max-latency-ms", 2000))
+        );
+        metrics.gauge("zefiro.overload.ready", () -> loadMonitor.ready() ? 1 : 0);
+        metrics.gauge("zefiro.overload.shed", loadMonitor::shed);
+
+        final StaleReadCache staleReadCache = new StaleReadCache((int)longValue("toosla.storage.stale-cache.max-entries", 100));
+        metrics.gauge("storage.stale-cache.entries", staleReadCache::size);
+        metrics.gauge("storage.stale-cache.hits", staleReadCache::hits);
+
+        final NotFoundCache notFoundCache = new NotFoundCache(
+            Duration.ofMillis(longValue("toosla.storage.not-found-cache.ttl-ms", 5000)),
+            (int)longValue("toosla.storage.not-found-cache.max-entries", 100)
+        );
+        metrics.gauge("storage.not-found-cache.entries", notFoundCache::size);
+        metrics.gauge("storage.not-found-cache.hits", notFoundCache::hits);
+
+        final StorageRateLimiter rateLimiter = new StorageRateLimiter(
+            limit("login", 1, 10), limit("read", 50, 100), limit("write", 20, 50)
+        );
+        for (StorageRateLimiter.Operation operation: StorageRateLimiter.Operation.values()) {
+            metrics.gauge(
+                MetricsRegistry.name("storage.rate-limit.rejected", "operation", operation.tag()),
+                () -> rateLimiter.rejected(operation)
+            );
+        }
+
+        changeFeed = new StorageChangeFeed(
+            Duration.ofMillis(longValue("toosla.storage.changes.min-interval-ms", 5000)),
+            Duration.ofMillis(longValue("toosla.storage.changes.max-interval-ms", 60000)),
+            (int)longValue("toosla.storage.changes.max-watchers", 100)
+        );
+        metrics.gauge("storage.changes.watchers", changeFeed::watchers);
+        metrics.gauge("storage.changes.subscribers", changeFeed::subscribers);
+        metrics.gauge("storage.changes.checks", changeFeed::checks);
+        metrics.gauge("storage.changes.events", changeFeed::events);
+
+        final StorageHandler storage = new StorageHandler(
+            keyManager, httpClientBuilder, bulkhead, retryPolicy, hedgingPolicy, circuitBreaker,
+            concurrencyLimiter, loadMonitor, staleReadCache, notFoundCache, rateLimiter,
+            new StorageDeadlines(
+                Duration.ofMillis(longValue("toosla.storage.deadline.login-ms", 10000)),
+                Duration.ofMillis(longValue("toosla.storage.deadline.read-ms", 15000)),
+                Duration.ofMillis(longValue("toosla.storage.deadline.write-ms", 30000))
+            ),
+            changeFeed, longValue("toosla.storage.changes.timeout-ms", 600000),
+            new ZefiroMetrics(metrics),
+            config.getProperty("toosla.zefiro.api-url", "https://zefiro.me"),
+            config.getProperty("toosla.zefiro.upload-url", "https://upload.zefiro.me")
+        );
+
+        server = HttpServer.create(new InetSocketAddress((int)longValue("server.port", 9090)), 0);
+        server.setExecutor(executor);
+
+        final AccessLogFilter accessLog = new AccessLogFilter(metrics);
+        for (String path: new String[] {StorageHandler.LOGIN, StorageHandler.READ, StorageHandler.WRITE, StorageHandler.CHANGES}) {
+            context(path, storage, accessLog);
+        }
+        context("/health", (exchange) -> {
+            try (exchange) {
+                json(exchange, 200, health());
+            }
+        }, accessLog);
+        context("/health/ready", (exchange) -> {
+            try (exchange) {
+                final boolean ready = loadMonitor.ready();
+                json(exchange, ready ? 200 : 503, ready(ready));
+            }
+        }, accessLog);
+        context("/api/metrics", (exchange) -> {
+            try (exchange) {
+                json(exchange, 200, metrics());
+            }
+        }, accessLog);
+        context("/", new StaticHandler(Path.of(config.getProperty("toosla.edge.webroot", "webroot"))), accessLog);
+
+        server.start();
+        LOG.info(() -> "Toosla edge server listening on port " + port());
+
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public KeyManager keyManager() {
+        return keyManager;
+    }
+
+    @Override
+    public void close() {
+        //
+        // ends the changes streams, otherwise their exchanges would keep
+        // going; the short grace lets them terminate the response cleanly
+        //
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+        if (server != null) {
+            server.stop(1);
+        }
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Loads {@link #CONFIG_FILE} (if present), the system properties and the
+     * given {@code --name=value} arguments, in this order.
+     *
+     * @param args command line arguments - NOT NULL
+     *
+     * @return the configuration
+     *
+     * @throws IOException if the configuration file can not be read
+     */
+    public static Properties configuration(final String... args) throws IOException {
+        final Properties ret = new Properties();
+
+        final Path file = Path.of(CONFIG_FILE);
+        if (Files.isRegularFile(file)) {
+            try (Reader in = Files.newBufferedReader(file)) {
+                ret.load(in);
+            }
+        }
+        ret.putAll(System.getProperties());
+        for (String arg: args) {
+            final int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 2) {
+                ret.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                LOG.warning(() -> "Ignoring argument '" + arg + "', expected --name=value");
+            }
+        }
+
+        return ret;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final EdgeServer server = new EdgeServer(configuration(args)).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void context(final String path, final HttpHandler handler, final AccessLogFilter accessLog) {
+        final HttpContext context = server.createContext(path, handler);
+        context.getFilters().add(accessLog);
+    }
+
+    private Map<String, Object> health() {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("status", "UP");
+        ret.put("service", "Toosla API");
+        ret.put("timestamp", System.currentTimeMillis());
+        ret.put("zefiro", circuitBreaker.states());
+
+        return ret;
+    }
+
+    private Map<String, Object> ready(final boolean ready) {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("status", ready ? "UP" : "OUT_OF_SERVICE");
+        ret.put("service", "Toosla API");
+        ret.put("timestamp", System.currentTimeMillis());
+        ret.put("zefiro", loadMonitor.status());
+
+        return ret;
+    }
+
+    private Map<String, Object> metrics() {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("uptime", metrics.uptime());
+        ret.put("timestamp", System.currentTimeMillis());
+        ret.put("metrics", metrics.snapshot());
+
+        return ret;
+    }
+
+    private long longValue(final String name, final long defaultValue) {
+        final String value = config.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException x) {
+            LOG.log(Level.WARNING, () -> "Invalid value '" + value + "' for " + name + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private StorageRateLimiter.Limit limit(final String operation, final double rate, final int burst) {
+        final String prefix = "toosla.storage.rate-limit." + operation;
+        return new StorageRateLimiter.Limit(
+            Double.parseDouble(config.getProperty(prefix + ".rate", String.valueOf(rate))),
+            (int)longValue(prefix + ".burst", burst)
+        );
+    }
+}
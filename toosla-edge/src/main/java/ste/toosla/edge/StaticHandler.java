@@ -0,0 +1,139 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.edge;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import static ste.toosla.edge.Exchanges.lastModified;
+import static ste.toosla.edge.Exchanges.send;
+
+/**
+ * Serves the files of the web app from a directory, answering
+ * {@code If-Modified-Since} with {@code 304 Not Modified}. Directories are
+ * served through their {@code index.html}; paths escaping the root directory
+ * are not found.
+ */
+class StaticHandler implements HttpHandler {
+
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+        Map.entry("html", "text/html;charset=UTF-8"),
+        Map.entry("js", "text/javascript;charset=UTF-8"),
+        Map.entry("mjs", "text/javascript;charset=UTF-8"),
+        Map.entry("css", "text/css;charset=UTF-8"),
+        Map.entry("json", "application/json"),
+        Map.entry("svg", "image/svg+xml"),
+        Map.entry("png", "image/png"),
+        Map.entry("jpg", "image/jpeg"),
+        Map.entry("jpeg", "image/jpeg"),
+        Map.entry("gif", "image/gif"),
+        Map.entry("ico", "image/x-icon"),
+        Map.entry("woff", "font/woff"),
+        Map.entry("woff2", "font/woff2"),
+        Map.entry("ttf", "font/ttf"),
+        Map.entry("txt", "text/plain;charset=UTF-8")
+    );
+
+    private final Path root;
+
+    StaticHandler(final Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                send(exchange, 405, null, null);
+                return;
+            }
+
+            Path file = resolve(exchange.getRequestURI().getRawPath());
+            if (file != null && Files.isDirectory(file)) {
+                file = file.resolve("index.html");
+            }
+            if (file == null || !Files.isRegularFile(file)) {
+                send(exchange, 404, "text/plain;charset=UTF-8", "Not found".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            final Instant modified = Files.getLastModifiedTime(file).toInstant().truncatedTo(ChronoUnit.SECONDS);
+            lastModified(exchange, modified);
+            if (notModified(exchange, modified)) {
+                send(exchange, 304, null, null);
+                return;
+            }
+
+            final long size = Files.size(file);
+            exchange.getResponseHeaders().set("Content-Type", contentType(file));
+            if ("HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(size));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, size);
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(file, out);
+            }
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Path resolve(final String rawPath) {
+        final String path = URLDecoder.decode(rawPath, StandardCharsets.UTF_8);
+        final Path ret = root.resolve(path.replaceFirst("^/+", "")).normalize();
+
+        return ret.startsWith(root) ? ret : null;
+    }
+
+    private static boolean notModified(final HttpExchange exchange, final Instant modified) {
+        final String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+        if (since == null) {
+            return false;
+        }
+        try {
+            return !modified.isAfter(Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(since)));
+        } catch (DateTimeException x) {
+            return false;  // ignore invalid dates as per RFC 9110
+        }
+    }
+
+    private static String contentType(final Path file) {
+        final String name = file.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        final String extension = (dot < 0) ? "" : name.substring(dot + 1).toLowerCase();
+
+        return CONTENT_TYPES.getOrDefault(extension, "application/octet-stream");
+    }
+}
@@ -0,0 +1,621 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.edge;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static ste.toosla.edge.Exchanges.JSON;
+import static ste.toosla.edge.Exchanges.json;
+import static ste.toosla.edge.Exchanges.lastModified;
+import static ste.toosla.edge.Exchanges.send;
+import ste.toosla.api.KeyManager;
+import ste.toosla.api.NotFoundCache;
+import ste.toosla.api.StaleReadCache;
+import ste.toosla.api.StorageChangeFeed;
+import ste.toosla.api.StorageDeadlines;
+import ste.toosla.api.StorageRateLimiter;
+import ste.toosla.api.KeyManager.KeyEntry;
+import ste.toosla.api.dto.ChangeEvent;
+import ste.toosla.api.dto.ErrorResponse;
+import ste.toosla.api.dto.LoginRequest;
+import ste.toosla.api.dto.LoginResponse;
+import ste.toosla.api.dto.ReadRequest;
+import ste.toosla.api.dto.WriteRequest;
+import ste.toosla.util.metrics.MetricsRegistry;
+import ste.toosla.zefiro.ZefiroBulkhead;
+import ste.toosla.zefiro.ZefiroBusyException;
+import ste.toosla.zefiro.ZefiroCircuitBreaker;
+import ste.toosla.zefiro.ZefiroConcurrencyLimiter;
+import ste.toosla.zefiro.ZefiroCircuitOpenException;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroDeadline;
+import ste.toosla.zefiro.ZefiroException;
+import ste.toosla.zefiro.ZefiroFileNotFoundException;
+import ste.toosla.zefiro.ZefiroLoginException;
+import ste.toosla.zefiro.ZefiroLoginResponse;
+import ste.toosla.zefiro.ZefiroLoadMonitor;
+import ste.toosla.zefiro.ZefiroMetrics;
+import ste.toosla.zefiro.ZefiroModificationException;
+import ste.toosla.zefiro.ZefiroRetryPolicy;
+import ste.toosla.zefiro.ZefiroHedgingPolicy;
+import ste.toosla.zefiro.ZefiroTimeoutException;
+import ste.toosla.zefiro.ZefiroUploadResponse;
+
+/**
+ * Serves {@code POST /api/storage/login}, {@code /api/storage/read},
+ * {@code /api/storage/write} and {@code GET /api/storage/changes} with the
+ * same requests, responses, headers and status codes of
+ * {@link ste.toosla.api.StorageController}, without Spring.
+ *
+ * <p>Request bodies are bound with Jackson to the API DTOs and validated by
+ * hand against their constraints. A changes stream holds its (virtual) thread
+ * for as long as the client is subscribed, writing the events queued by the
+ * {@link StorageChangeFeed}.
+ */
+class StorageHandler implements HttpHandler {
+
+    private static final Logger LOG = Logger.getLogger(StorageHandler.class.getName());
+
+    static final String LOGIN = "/api/storage/login";
+    static final String READ = "/api/storage/read";
+    static final String WRITE = "/api/storage/write";
+    static final String CHANGES = "/api/storage/changes";
+
+    private static final int MAX_BODY = 16 * 1024 * 1024;
+
+    //
+    // Group 1: captures part1 (everything before colon, if present)
+    // Group 2: captures part2 (everything after colon, if present)
+    //
+    private final Pattern pattern = Pattern.compile("^([^:]*?)(?::(.*))?$");
+
+    private final KeyManager keyManager;
+    private final HttpClient.Builder httpClientBuilder;
+    private final ZefiroBulkhead zefiroBulkhead;
+    private final ZefiroRetryPolicy zefiroRetryPolicy;
+    private final ZefiroHedgingPolicy zefiroHedgingPolicy;
+    private final ZefiroCircuitBreaker zefiroCircuitBreaker;
+    private final ZefiroConcurrencyLimiter zefiroConcurrencyLimiter;
+    private final ZefiroLoadMonitor zefiroLoadMonitor;
+    private final StaleReadCache staleReadCache;
+    private final NotFoundCache notFoundCache;
+    private final StorageRateLimiter rateLimiter;
+    private final StorageDeadlines deadlines;
+    private final StorageChangeFeed changeFeed;
+    private final long changesTimeout;
+    private final ZefiroMetrics zefiroMetrics;
+    private final String zefiroApiUrl;
+    private final String zefiroUploadUrl;
+
+    StorageHandler(
+        final KeyManager keyManager, final HttpClient.Builder httpClientBuilder,
+        final ZefiroBulkhead zefiroBulkhead, final ZefiroRetryPolicy zefiroRetryPolicy,
+        final ZefiroHedgingPolicy zefiroHedgingPolicy, final ZefiroCircuitBreaker zefiroCircuitBreaker,
+        final ZefiroConcurrencyLimiter zefiroConcurrencyLimiter, final ZefiroLoadMonitor zefiroLoadMonitor,
+        final StaleReadCache staleReadCache, final NotFoundCache notFoundCache,
+        final StorageRateLimiter rateLimiter, final StorageDeadlines deadlines,
+        final StorageChangeFeed changeFeed, final long changesTimeout,
+        final ZefiroMetrics zefiroMetrics, final String zefiroApiUrl, final String zefiroUploadUrl
+    ) {
+        this.keyManager = keyManager;
+        this.httpClientBuilder = httpClientBuilder;
+        this.zefiroBulkhead = zefiroBulkhead;
+        this.zefiroRetryPolicy = zefiroRetryPolicy;
+        this.zefiroHedgingPolicy = zefiroHedgingPolicy;
+        this.zefiroCircuitBreaker = zefiroCircuitBreaker;
+        this.zefiroConcurrencyLimiter = zefiroConcurrencyLimiter;
+        this.zefiroLoadMonitor = zefiroLoadMonitor;
+        this.staleReadCache = staleReadCache;
+        this.notFoundCache = notFoundCache;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
+        this.changeFeed = changeFeed;
+        this.changesTimeout = changesTimeout;
+        this.zefiroMetrics = zefiroMetrics;
+        this.zefiroApiUrl = zefiroApiUrl;
+        this.zefiroUploadUrl = zefiroUploadUrl;
+    }
+
+    @Override
+    public void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String path = exchange.getRequestURI().getPath();
+            if (!LOGIN.equals(path) && !READ.equals(path) && !WRITE.equals(path) && !CHANGES.equals(path)) {
+                json(exchange, 404, new ErrorResponse("Not found", path));
+                return;
+            }
+            final String method = CHANGES.equals(path) ? "GET" : "POST";
+            if (!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                json(exchange, 405, new ErrorResponse("Method not allowed", exchange.getRequestMethod()));
+                return;
+            }
+
+            try {
+                switch (path) {
+                    case LOGIN -> login(exchange, body(exchange, LoginRequest.class));
+                    case READ -> read(exchange, body(exchange, ReadRequest.class));
+                    case CHANGES -> changes(exchange, query(exchange, "path"));
+                    default -> write(exchange, body(exchange, WriteRequest.class));
+                }
+            } catch (JsonProcessingException x) {
+                LOG.log(Level.WARNING, x, () -> "Malformed JSON input");
+                json(exchange, 400, new ErrorResponse("Malformed JSON input", x.getOriginalMessage()));
+            } catch (ValidationException x) {
+                LOG.warning(() -> "Validation error");
+                json(exchange, 400, new ErrorResponse(x.getMessage(), "Validation failed for input fields"));
+            } catch (RuntimeException x) {
+                LOG.log(Level.SEVERE, x, () -> "An unexpected error occurred");
+                json(exchange, 500, new ErrorResponse("An unexpected error occurred", x.getMessage()));
+            }
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void login(final HttpExchange exchange, final LoginRequest loginRequest) throws IOException {
+        validate(loginRequest.credentials(), "Credentials cannot be blank");
+        final ZefiroDeadline deadline = deadlines.login(exchange.getRequestHeaders().getFirst(StorageDeadlines.HEADER));
+
+        LOG.info(() -> "Attempting login");
+
+        final Matcher matcher = pattern.matcher(loginRequest.credentials());
+        matcher.matches();
+
+        final String account = matcher.group(1) != null ? matcher.group(1) : "";
+        final String secret = matcher.group(2) != null ? matcher.group(2) : "";
+
+        final String address = exchange.getRemoteAddress().getAddress().getHostAddress();
+        if (limited(exchange, StorageRateLimiter.Operation.LOGIN, StorageRateLimiter.loginKey(address, account))) {
+            return;
+        }
+
+        LOG.info(() -> "Sending login request to Zefiro for account '" + account + "'");
+        try {
+            final ZefiroLoginResponse zefiroResponse = newZefiroClient(account, secret).withDeadline(deadline).login();
+
+            final String validationKey = zefiroResponse.key();
+            final String accessKey = keyManager.newKey(account, secret, validationKey);
+
+            LOG.info(() -> "Login successful for account '" + account + "'");
+
+            json(exchange, 200, new LoginResponse(zefiroResponse.account(), accessKey, validationKey));
+        } catch (ZefiroLoginException x) {
+            LOG.info(() -> "Zefiro authentication failed - " + x.getMessage());
+            json(exchange, 401, new ErrorResponse("Zefiro authentication failed", x.getMessage()));
+        } catch (ZefiroBusyException x) {
+            LOG.warning(() -> "Service busy, retry later - " + x.getMessage());
+            busy(exchange, x);
+        } catch (ZefiroTimeoutException x) {
+            LOG.warning(() -> "Storage service timeout - " + x.getMessage());
+            timeout(exchange, "login", x);
+        } catch (ZefiroException x) {
+            LOG.severe(() -> "Error processing the Zefiro request - " + x.getMessage());
+            json(exchange, 500, new ErrorResponse("Error processing the Zefiro request", x.getMessage()));
+        }
+    }
+
+    private void read(final HttpExchange exchange, final ReadRequest readRequest) throws IOException {
+        validate(readRequest.path(), "must not be blank");
+        final ZefiroDeadline deadline = deadlines.read(exchange.getRequestHeaders().getFirst(StorageDeadlines.HEADER));
+
+        final Date ifModifiedSince = date(exchange, "If-Modified-Since");
+        LOG.info(() -> "Attempting to read file: " + readRequest.path() + " if modified since " + ifModifiedSince);
+
+        KeyEntry keyEntry = null;
+        try {
+            keyEntry = getValidKey(exchange);
+            if (limited(exchange, StorageRateLimiter.Operation.READ, keyEntry.account())) {
+                return;
+            }
+
+            final ZefiroFileNotFoundException missing = notFoundCache.get(keyEntry.account(), readRequest.path());
+            if (missing != null) {
+                LOG.info(() -> "File recently found missing: " + readRequest.path());
+                json(exchange, 404, new ErrorResponse("File not found", missing.getMessage()));
+                return;
+            }
+
+            final ZefiroClient zefiroClient = newZefiroClient(keyEntry).withDeadline(deadline);
+
+            final Optional<ZefiroClient.DownloadResult> result = zefiroClient.download(readRequest.path(), ifModifiedSince);
+            if (result.isPresent()) {
+                LOG.info(() -> "File read successfully: " + readRequest.path());
+                staleReadCache.put(keyEntry.account(), readRequest.path(), result.get().content(), result.get().lastModified());
+                lastModified(exchange, result.get().lastModified().toInstant());
+                send(exchange, 200, "application/json", result.get().content().getBytes(StandardCharsets.UTF_8));
+            } else {
+                LOG.info(() -> "File not modified: " + readRequest.path());
+                send(exchange, 304, null, null);
+            }
+        } catch (ZefiroFileNotFoundException x) {
+            LOG.warning(() -> "File not found: " + readRequest.path());
+            if (keyEntry != null) {
+                staleReadCache.remove(keyEntry.account(), readRequest.path());
+                notFoundCache.put(keyEntry.account(), readRequest.path(), x);
+            }
+            json(exchange, 404, new ErrorResponse("File not found", x.getMessage()));
+        } catch (ZefiroLoginException x) {
+            json(exchange, 401, new ErrorResponse("Unauthorized", x.getMessage()));
+        } catch (ZefiroCircuitOpenException x) {
+            stale(exchange, keyEntry, readRequest, ifModifiedSince, x);
+        } catch (ZefiroBusyException x) {
+            LOG.warning(() -> x.getMessage());
+            busy(exchange, x);
+        } catch (ZefiroTimeoutException x) {
+            LOG.warning(() -> x.getMessage());
+            timeout(exchange, "read", x);
+        } catch (ZefiroException x) {
+            LOG.log(Level.SEVERE, x, () -> "Error reading file: " + readRequest.path());
+            json(exchange, 500, new ErrorResponse("Error reading file", x.getMessage()));
+        }
+    }
+
+    private void write(final HttpExchange exchange, final WriteRequest writeRequest) throws IOException {
+        final List<String> errors = new ArrayList<>();
+        if (blank(writeRequest.path())) {
+            errors.add("must not be blank");
+        }
+        if (blank(writeRequest.content())) {
+            errors.add("must not be blank");
+        }
+        if (!errors.isEmpty()) {
+            throw new ValidationException(String.join(", ", errors));
+        }
+        final ZefiroDeadline deadline = deadlines.write(exchange.getRequestHeaders().getFirst(StorageDeadlines.HEADER));
+
+        final Date ifUnmodifiedSince = date(exchange, "If-Unmodified-Since");
+        LOG.info(() -> "Attempting to write file: " + writeRequest.path() + " with If-Unmodified-Since: " + ifUnmodifiedSince);
+
+        try {
+            final KeyEntry keyEntry = getValidKey(exchange);
+            if (zefiroLoadMonitor.shed(ZefiroBulkhead.Priority.BACKGROUND)) {
+                overloaded(exchange, "write");
+                return;
+            }
+            if (limited(exchange, StorageRateLimiter.Operation.WRITE, keyEntry.account())) {
+                return;
+            }
+
+            final ZefiroClient zefiroClient = newZefiroClient(keyEntry)
+                .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+                .withDeadline(deadline);
+
+            final ZefiroUploadResponse zefiroResponse;
+            try {
+                zefiroResponse = zefiroClient.upload(writeRequest.path(), writeRequest.content(), ifUnmodifiedSince);
+            } finally {
+                //
+                // the file may exist now, even if the upload failed
+                //
+                notFoundCache.remove(keyEntry.account(), writeRequest.path());
+            }
+            LOG.info(() -> "File written successfully: " + writeRequest.path());
+            staleReadCache.put(keyEntry.account(), writeRequest.path(), writeRequest.content(), zefiroResponse.lastModified());
+            changeFeed.changed(keyEntry.account(), writeRequest.path(), zefiroResponse.lastModified().getTime());
+
+            lastModified(exchange, zefiroResponse.lastModified().toInstant());
+            send(exchange, 200, null, null);
+        } catch (ZefiroFileNotFoundException x) {
+            LOG.warning(() -> "File not found: " + writeRequest.path());
+            json(exchange, 404, new ErrorResponse("File not found", x.getMessage()));
+        } catch (ZefiroModificationException x) {
+            LOG.warning(() -> "Precondition Failed for file: " + writeRequest.path() + " - " + x.getMessage());
+            if (x.lastModified.isPresent()) {
+                lastModified(exchange, x.lastModified.get().toInstant());
+            }
+            json(exchange, 412, new ErrorResponse("Precondition Failed", x.getMessage()));
+        } catch (ZefiroLoginException x) {
+            json(exchange, 401, new ErrorResponse("Unauthorized", x.getMessage()));
+        } catch (ZefiroBusyException x) {
+            LOG.warning(() -> x.getMessage());
+            busy(exchange, x);
+        } catch (ZefiroTimeoutException x) {
+            LOG.warning(() -> x.getMessage());
+            timeout(exchange, "write", x);
+        } catch (ZefiroException x) {
+            LOG.log(Level.SEVERE, x, () -> "Error writing file: " + writeRequest.path());
+            json(exchange, 500, new ErrorResponse("Error writing file", x.getMessage()));
+        }
+    }
+
+    /**
+     * Streams the changes of a file as server-sent events until the client
+     * goes away, the feed is closed or {@code changesTimeout} elapses.
+     */
+    private void changes(final HttpExchange exchange, final String path) throws IOException {
+        validate(path, "must not be blank");
+        LOG.info(() -> "Subscribing to the changes of file: " + path);
+
+        final KeyEntry keyEntry;
+        try {
+            keyEntry = getValidKey(exchange);
+        } catch (ZefiroLoginException x) {
+            json(exchange, 401, new ErrorResponse("Unauthorized", x.getMessage()));
+            return;
+        }
+        if (limited(exchange, StorageRateLimiter.Operation.READ, keyEntry.account())) {
+            return;
+        }
+
+        //
+        // an empty array marks the end of the stream
+        //
+        final byte[] end = new byte[0];
+        final BlockingQueue<byte[]> events = new LinkedBlockingQueue<>();
+        final AtomicBoolean gone = new AtomicBoolean();
+        final StorageChangeFeed.Subscription subscription = changeFeed.subscribe(
+            keyEntry.account(), path,
+            () -> newZefiroClient(keyEntry)
+                .withPriority(ZefiroBulkhead.Priority.BACKGROUND)
+                .withDeadline(deadlines.read(null)),
+            new StorageChangeFeed.Subscriber() {
+                @Override
+                public boolean onChange(final ChangeEvent change) {
+                    try {
+                        return offer(
+                            "id:" + change.lastModified() + "\nevent:change\ndata:" + JSON.writeValueAsString(change) + "\n\n"
+                        );
+                    } catch (JsonProcessingException x) {
+                        LOG.log(Level.SEVERE, x, () -> "Error serializing " + change);
+                        return true;
+                    }
+                }
+
+                @Override
+                public boolean onCheck() {
+                    return offer(":\n\n");
+                }
+
+                @Override
+                public void onClose() {
+                    events.add(end);
+                }
+
+                private boolean offer(final String event) {
+                    return !gone.get() && events.add(event.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        );
+        if (subscription == null) {
+            exchange.getResponseHeaders().set("Retry-After", "60");
+            json(exchange, 503, new ErrorResponse(
+                "Too many files watched, retry later", "the changes of " + path + " can not be watched now"
+            ));
+            return;
+        }
+
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+
+            final OutputStream out = exchange.getResponseBody();
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(changesTimeout);
+            for (long left = changesTimeout; left > 0; left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) {
+                final byte[] event = events.poll(left, TimeUnit.MILLISECONDS);
+                if (event == null || event == end) {
+                    break;
+                }
+                out.write(event);
+                out.flush();
+            }
+        } catch (IOException x) {
+            LOG.fine(() -> "Subscriber of " + path + " gone: " + x.getMessage());
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        } finally {
+            gone.set(true);
+            subscription.close();
+        }
+    }
+
+    /**
+     * Takes a token from the rate limiter of the given operation and account;
+     * if none is available, answers 429 telling when to retry.
+     *
+     * @return true if the request has been rejected
+     */
+    private boolean limited(
+        final HttpExchange exchange, final StorageRateLimiter.Operation operation, final String key
+    ) throws IOException {
+        final long wait = rateLimiter.acquire(operation, key);
+        if (wait == 0) {
+            return false;
+        }
+
+        LOG.warning(() -> "Too many " + operation.tag() + " requests for '" + key + "'");
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(StorageRateLimiter.retryAfterSeconds(wait)));
+        json(exchange, 429, new ErrorResponse(
+            "Too many requests, retry later", "rate limit of " + operation.tag() + " requests exceeded"
+        ));
+        return true;
+    }
+
+    private void overloaded(final HttpExchange exchange, final String operation) throws IOException {
+        LOG.warning(() -> "Service overloaded, " + operation + " request shed");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        json(exchange, 503, new ErrorResponse(
+            "Service overloaded, retry later", operation + " requests are shed while Zefiro calls are backing up"
+        ));
+    }
+
+    private void timeout(
+        final HttpExchange exchange, final String operation, final ZefiroTimeoutException x
+    ) throws IOException {
+        zefiroMetrics.registry().counter(
+            MetricsRegistry.name("storage.timeouts", "operation", operation, "phase", x.endpoint.tag)
+        ).increment();
+        json(exchange, 504, new ErrorResponse("Storage service timeout", x.getMessage()));
+    }
+
+    private void busy(final HttpExchange exchange, final ZefiroBusyException x) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(x.retryAfterSeconds()));
+        json(exchange, 503, new ErrorResponse(
+            (x instanceof ZefiroCircuitOpenException) ? "Storage service unavailable, retry later" : "Service busy, retry later",
+            x.getMessage()
+        ));
+    }
+
+    /**
+     * Serves the last known content of a file while Zefiro is unavailable, if
+     * this node has one; the response is marked as stale.
+     */
+    private void stale(
+        final HttpExchange exchange, final KeyEntry keyEntry, final ReadRequest readRequest,
+        final Date ifModifiedSince, final ZefiroCircuitOpenException x
+    ) throws IOException {
+        final Optional<StaleReadCache.Entry> cached = (keyEntry != null)
+                                                    ? staleReadCache.get(keyEntry.account(), readRequest.path())
+                                                    : Optional.empty();
+        if (cached.isEmpty()) {
+            LOG.warning(() -> x.getMessage());
+            busy(exchange, x);
+            return;
+        }
+
+        LOG.warning(() -> x.getMessage() + " - serving the last known content of " + readRequest.path());
+        exchange.getResponseHeaders().set("Warning", StaleReadCache.WARNING);
+        if (ifModifiedSince != null && cached.get().lastModified().getTime() <= ifModifiedSince.getTime()) {
+            send(exchange, 304, null, null);
+            return;
+        }
+        lastModified(exchange, cached.get().lastModified().toInstant());
+        send(exchange, 200, "application/json", cached.get().content().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ZefiroClient newZefiroClient(final KeyEntry keyEntry) {
+        return newZefiroClient(keyEntry.account(), keyEntry.secret())
+            .withValidationKey(keyEntry.validationKey());
+    }
+
+    private ZefiroClient newZefiroClient(final String account, final String secret) {
+        return new ZefiroClient(account, secret)
+            .withHttpClientBuilder(httpClientBuilder)
+            .withApiUrl(zefiroApiUrl)
+            .withUploadUrl(zefiroUploadUrl)
+            .withBulkhead(zefiroBulkhead)
+            .withRetryPolicy(zefiroRetryPolicy)
+            .withHedgingPolicy(zefiroHedgingPolicy)
+            .withCircuitBreaker(zefiroCircuitBreaker)
+            .withConcurrencyLimiter(zefiroConcurrencyLimiter)
+            .withListener(zefiroMetrics)
+            .withListener(zefiroLoadMonitor);
+    }
+
+    private KeyEntry getValidKey(final HttpExchange exchange) throws ZefiroLoginException {
+        final String authorizationHeader = exchange.getRequestHeaders().getFirst("Authorization");
+
+        KeyEntry keyEntry = null;
+        if (
+            authorizationHeader == null ||
+            !authorizationHeader.startsWith("Bearer ") ||
+            (keyEntry = keyManager.get(authorizationHeader.substring(7))) == null
+        ) {
+            throw new ZefiroLoginException("Missing or invalid Authorization header");
+        }
+        return keyEntry;
+    }
+
+    private <T> T body(final HttpExchange exchange, final Class<T> type) throws IOException {
+        final byte[] content;
+        try (InputStream in = exchange.getRequestBody()) {
+            content = in.readNBytes(MAX_BODY + 1);
+        }
+        if (content.length > MAX_BODY) {
+            throw new ValidationException("Request body too large");
+        }
+        final T ret = JSON.readValue(content, type);
+        if (ret == null) {
+            throw new ValidationException("Required request body is missing");
+        }
+        return ret;
+    }
+
+    /**
+     * @return the decoded value of the given query parameter or null if not given
+     */
+    private static String query(final HttpExchange exchange, final String name) {
+        final String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter: query.split("&")) {
+                final int eq = parameter.indexOf('=');
+                if (eq > 0 && name.equals(URLDecoder.decode(parameter.substring(0, eq), StandardCharsets.UTF_8))) {
+                    return URLDecoder.decode(parameter.substring(eq + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses an ISO 8601 date (as sent by the web app, e.g.
+     * {@code 2025-08-19T00:00:00.000Z}) or an HTTP date.
+     */
+    private static Date date(final HttpExchange exchange, final String header) {
+        final String value = exchange.getRequestHeaders().getFirst(header);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        final Instant instant = (Character.isDigit(value.charAt(0)))
+                              ? OffsetDateTime.parse(value, DateTimeFormatter.ISO_DATE_TIME).toInstant()
+                              : Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(value));
+        return Date.from(instant);
+    }
+
+    private static void validate(final String value, final String message) {
+        if (blank(value)) {
+            throw new ValidationException(message);
+        }
+    }
+
+    private static boolean blank(final String value) {
+        return (value == null) || value.isBlank();
+    }
+
+    private static class ValidationException extends RuntimeException {
+        ValidationException(final String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.edge;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.stream.Stream;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ste.toosla.api.StaleReadCache;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ *
+ */
+public class EdgeServerTest {
+
+    private static final String INDEX = "<html><body>toosla</body></html>";
+
+    @TempDir
+    Path home;
+
+    private Path webroot;
+
+    private FakeZefiro zefiro;
+    private EdgeServer server;
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void before() throws Exception {
+        webroot = Files.createDirectory(home.resolve("webroot"));
+        Files.writeString(home.resolve("secret.txt"), "secret");
+        Files.writeString(webroot.resolve("index.html"), INDEX);
+        Files.writeString(webroot.resolve("app.js"), "toosla();");
+
+        zefiro = new FakeZefiro(0);
+
+        server = new EdgeServer(config()).start();
+    }
+
+    @AfterEach
+    public void after() {
+        server.close();
+        zefiro.close();
+    }
+
+    @Test
+    public void constructor_sanity_check() {
+        thenThrownBy(() -> new EdgeServer(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("config can not be null");
+        thenThrownBy(() -> new EdgeServer(new Properties()).withHttpClientBuilder(null))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("builder can not be null");
+    }
+
+    @Test
+    public void configuration_from_system_properties_and_arguments() throws Exception {
+        System.setProperty("toosla.edge.test", "system");
+        try {
+            then(EdgeServer.configuration().getProperty("toosla.edge.test")).isEqualTo("system");
+
+            final Properties config = EdgeServer.configuration("--toosla.edge.test=argument", "--server.port=8080", "invalid");
+            then(config.getProperty("toosla.edge.test")).isEqualTo("argument");
+            then(config.getProperty("server.port")).isEqualTo("8080");
+            then(config.getProperty("invalid")).isNull();
+        } finally {
+            System.clearProperty("toosla.edge.test");
+        }
+    }
+
+    @Test
+    public void login_read_and_write() throws Exception {
+        HttpResponse<String> response = post(StorageHandler.LOGIN, null, "{\"credentials\":\"user:password\"}");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).contains("\"validationKey\":\"validationkey\"");
+
+        final String key = response.body().replaceAll(".*\"accessKey\":\"([^\"]+)\".*", "$1");
+        then(server.keyManager().containsKey(key)).isTrue();
+
+        response = post(StorageHandler.READ, key, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isEqualTo(FakeZefiro.CONTENT);
+        then(response.headers().firstValue("Content-Type")).hasValue("application/json");
+        then(response.headers().firstValue("Last-Modified")).hasValue("Tue, 19 Aug 2025 00:00:00 GMT");
+
+        response = post(StorageHandler.WRITE, key, "{\"path\":\"" + FakeZefiro.FILE + "\",\"content\":\"{}\"}");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.headers().firstValue("Last-Modified")).isPresent();
+    }
+
+    @Test
+    public void read_not_modified() throws Exception {
+        final String key = server.keyManager().newKey("user", "password", "validationkey");
+
+        final HttpResponse<String> response = http.send(
+            HttpRequest.newBuilder(uri(StorageHandler.READ))
+                .header("Authorization", "Bearer " + key)
+                .header("If-Modified-Since", "2025-08-20T00:00:00.000Z")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"path\":\"" + FakeZefiro.FILE + "\"}"))
+                .build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        then(response.statusCode()).isEqualTo(304);
+    }
+
+    @Test
+    public void unauthorized_without_a_valid_key() throws Exception {
+        HttpResponse<String> response = post(StorageHandler.READ, null, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.statusCode()).isEqualTo(401);
+        then(response.body()).contains("\"message\":\"Unauthorized\"");
+
+        response = post(StorageHandler.WRITE, "nokey", "{\"path\":\"" + FakeZefiro.FILE + "\",\"content\":\"{}\"}");
+        then(response.statusCode()).isEqualTo(401);
+    }
+
+    @Test
+    public void bad_requests() throws Exception {
+        HttpResponse<String> response = post(StorageHandler.LOGIN, null, "{\"credentials\":\"  \"}");
+        then(response.statusCode()).isEqualTo(400);
+        then(response.body())
+            .contains("\"message\":\"Credentials cannot be blank\"")
+            .contains("\"details\":\"Validation failed for input fields\"");
+
+        response = post(StorageHandler.READ, null, "{}");
+        then(response.statusCode()).isEqualTo(400);
+        then(response.body()).contains("\"message\":\"must not be blank\"");
+
+        response = post(StorageHandler.LOGIN, null, "{not json");
+        then(response.statusCode()).isEqualTo(400);
+        then(response.body()).contains("\"message\":\"Malformed JSON input\"");
+        then(zefiro.calls()).isZero();
+    }
+
+    @Test
+    public void unknown_paths_and_methods() throws Exception {
+        HttpResponse<String> response = post("/api/storage/loginx", null, "{}");
+        then(response.statusCode()).isEqualTo(404);
+
+        response = http.send(HttpRequest.newBuilder(uri(StorageHandler.READ)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        then(response.statusCode()).isEqualTo(405);
+        then(response.headers().firstValue("Allow")).hasValue("POST");
+
+        response = post("/index.html", null, "{}");
+        then(response.statusCode()).isEqualTo(405);
+    }
+
+    @Test
+    public void serve_static_content() throws Exception {
+        HttpResponse<String> response = get("/");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isEqualTo(INDEX);
+        then(response.headers().firstValue("Content-Type")).hasValueSatisfying((type) -> then(type).startsWith("text/html"));
+
+        response = get("/app.js");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isEqualTo("toosla();");
+        final String lastModified = response.headers().firstValue("Last-Modified").get();
+
+        response = http.send(
+            HttpRequest.newBuilder(uri("/app.js")).header("If-Modified-Since", lastModified).GET().build(),
+            HttpResponse.BodyHandlers.ofString()
+        );
+        then(response.statusCode()).isEqualTo(304);
+
+        then(get("/missing.js").statusCode()).isEqualTo(404);
+        then(get("/../webroot/index.html").statusCode()).isEqualTo(200);
+        then(get("/../secret.txt").statusCode()).isEqualTo(404);
+        then(get("/%2e%2e/secret.txt").statusCode()).isEqualTo(404);
+    }
+
+    @Test
+    public void health_and_metrics() throws Exception {
+        HttpResponse<String> response = get("/health");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).contains("\"status\":\"UP\"");
+
+        response = get("/health/ready");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).contains("\"status\":\"UP\"").contains("\"waiting\":0");
+
+        response = get("/api/metrics");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body())
+            .contains("\"uptime\":")
+            .contains("zefiro.bulkhead.inflight")
+            .contains("http.server.requests{route=GET /health,status=200}");
+    }
+
+    @Test
+    public void stale_reads_while_the_circuit_is_open() throws Exception {
+        server.close();
+
+        final Properties config = new Properties();
+        config.setProperty("server.port", "0");
+        config.setProperty("toosla.edge.webroot", webroot.toString());
+        config.setProperty("toosla.zefiro.api-url", zefiro.url());
+        config.setProperty("toosla.zefiro.upload-url", zefiro.url());
+        config.setProperty("toosla.zefiro.retry.max-attempts", "1");
+        config.setProperty("toosla.zefiro.circuit-breaker.window", "2");
+        config.setProperty("toosla.zefiro.circuit-breaker.open-ms", "60000");
+        server = new EdgeServer(config).start();
+
+        HttpResponse<String> response = post(StorageHandler.LOGIN, null, "{\"credentials\":\"user:password\"}");
+        final String key = response.body().replaceAll(".*\"accessKey\":\"([^\"]+)\".*", "$1");
+
+        response = post(StorageHandler.READ, key, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.headers().firstValue("Warning")).isEmpty();
+
+        zefiro.failNext("/sapi/media/folder/root", 1, 500, null);
+        response = post(StorageHandler.READ, key, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.statusCode()).isEqualTo(500);
+
+        //
+        // circuit open: last known content, Zefiro is not called
+        //
+        final int calls = zefiro.calls();
+        response = post(StorageHandler.READ, key, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.statusCode()).isEqualTo(200);
+        then(response.body()).isEqualTo(FakeZefiro.CONTENT);
+        then(response.headers().firstValue("Warning")).hasValue(StaleReadCache.WARNING);
+        then(response.headers().firstValue("Last-Modified")).hasValue("Tue, 19 Aug 2025 00:00:00 GMT");
+
+        response = post(StorageHandler.READ, key, "{\"path\":\"/Toosla/other.json\"}");
+        then(response.statusCode()).isEqualTo(503);
+        then(response.headers().firstValue("Retry-After")).isPresent();
+        then(response.body()).contains("Storage service unavailable, retry later");
+        then(zefiro.calls()).isEqualTo(calls);
+
+        then(get("/health").body()).contains("\"zefiro\":{\"127.0.0.1\":\"OPEN\"}");
+        response = get("/health/ready");
+        then(response.statusCode()).isEqualTo(200); // the circuit is open for the other nodes too
+        then(response.body()).contains("\"status\":\"UP\"").contains("\"circuits\":{\"127.0.0.1\":\"OPEN\"}");
+    }
+
+    @Test
+    public void too_many_reads() throws Exception {
+        server.close();
+
+        final Properties config = new Properties();
+        config.setProperty("server.port", "0");
+        config.setProperty("toosla.edge.webroot", webroot.toString());
+        config.setProperty("toosla.zefiro.api-url", zefiro.url());
+        config.setProperty("toosla.zefiro.upload-url", zefiro.url());
+        config.setProperty("toosla.storage.rate-limit.read.rate", "0.001");
+        config.setProperty("toosla.storage.rate-limit.read.burst", "1");
+        server = new EdgeServer(config).start();
+
+        final String key = server.keyManager().newKey("user", "password", "validationkey");
+
+        HttpResponse<String> response = post(StorageHandler.READ, key, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.statusCode()).isEqualTo(200);
+
+        final int calls = zefiro.calls();
+        response = post(StorageHandler.READ, key, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+        then(response.statusCode()).isEqualTo(429);
+        then(response.headers().firstValue("Retry-After")).isPresent();
+        then(response.body()).contains("Too many requests, retry later");
+        then(zefiro.calls()).isEqualTo(calls);
+
+        then(get("/api/metrics").body()).contains("\"storage.rate-limit.rejected{operation=read}\":1");
+    }
+
+    @Test
+    public void changes_stream() throws Exception {
+        final String key = server.keyManager().newKey("user", "password", "validationkey");
+
+        final HttpResponse<Stream<String>> stream = http.send(
+            HttpRequest.newBuilder(uri(StorageHandler.CHANGES + "?path=" + FakeZefiro.FILE))
+                .header("Authorization", "Bearer " + key)
+                .GET().build(),
+            HttpResponse.BodyHandlers.ofLines()
+        );
+        then(stream.statusCode()).isEqualTo(200);
+        then(stream.headers().firstValue("Content-Type")).hasValue("text/event-stream");
+
+        final Iterator<String> lines = stream.body().filter((line) -> line.startsWith("data:")).iterator();
+        then(lines.next()).isEqualTo(
+            "data:{\"path\":\"" + FakeZefiro.FILE + "\",\"lastModified\":1755561600000,\"etag\":\"58IEhYENeW04HhTImidzBw==\"}"
+        );
+
+        //
+        // writes are pushed right away
+        //
+        then(post(StorageHandler.WRITE, key, "{\"path\":\"" + FakeZefiro.FILE + "\",\"content\":\"{}\"}").statusCode()).isEqualTo(200);
+        then(lines.next()).startsWith("data:{\"path\":\"" + FakeZefiro.FILE + "\",\"lastModified\":").endsWith(",\"etag\":null}");
+        then(get("/api/metrics").body()).contains("\"storage.changes.subscribers\":1");
+
+        //
+        // the stream ends when the server is closed
+        //
+        server.close();
+        then(lines.hasNext()).isFalse();
+
+        server = new EdgeServer(config()).start();
+        HttpResponse<String> response = get(StorageHandler.CHANGES + "?path=" + FakeZefiro.FILE);
+        then(response.statusCode()).isEqualTo(401);
+        response = post(StorageHandler.CHANGES, key, "{}");
+        then(response.statusCode()).isEqualTo(405);
+        then(response.headers().firstValue("Allow")).hasValue("GET");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Properties config() {
+        final Properties config = new Properties();
+        config.setProperty("server.port", "0");
+        config.setProperty("toosla.edge.webroot", webroot.toString());
+        config.setProperty("toosla.zefiro.api-url", zefiro.url());
+        config.setProperty("toosla.zefiro.upload-url", zefiro.url());
+
+        return config;
+    }
+
+    private URI uri(final String path) {
+        return URI.create("http://localhost:" + server.port() + path);
+    }
+
+    private HttpResponse<String> get(final String path) throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(final String path, final String key, final String body) throws IOException, InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri(path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (key != null) {
+            request.header("Authorization", "Bearer " + key);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
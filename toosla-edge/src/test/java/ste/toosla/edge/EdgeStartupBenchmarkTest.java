@@ -0,0 +1,112 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.edge;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+import ste.toosla.api.StartupBenchmark;
+import ste.toosla.zefiro.FakeZefiro;
+
+/**
+ * Launches {@link EdgeServer} in a separate JVM and measures the time to the
+ * first successful {@code /health} response and the resident memory after a
+ * login and a few reads; run it with:
+ * <pre>
+ * mvn test -Dtest=EdgeStartupBenchmarkTest -Dtoosla.benchmark=true [-Dtoosla.benchmark.jvmopts="-Xmx32m -XX:+UseSerialGC"]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "toosla.benchmark", matches = "true")
+@EnabledOnOs(OS.LINUX)  // resident memory is read from /proc
+public class EdgeStartupBenchmarkTest {
+
+    private static final String JVM_OPTS = "-Xmx32m -Xss256k -XX:+UseSerialGC -XX:TieredStopAtLevel=1";
+
+    @TempDir
+    Path webroot;
+
+    @Test
+    public void startup_and_memory() throws Exception {
+        Files.writeString(webroot.resolve("index.html"), "<html></html>");
+
+        final int port = StartupBenchmark.freePort();
+
+        try (FakeZefiro zefiro = new FakeZefiro(0)) {
+            final List<String> command = new ArrayList<>();
+            command.add(StartupBenchmark.JAVA);
+            command.addAll(StartupBenchmark.jvmOptions(JVM_OPTS));
+            command.addAll(List.of(
+                "-Dserver.port=" + port,
+                "-Dtoosla.edge.webroot=" + webroot,
+                "-Dtoosla.zefiro.api-url=" + zefiro.url(),
+                "-Dtoosla.zefiro.upload-url=" + zefiro.url(),
+                "-Djava.util.logging.config.file=/dev/null",
+                "-cp", System.getProperty("java.class.path"),
+                EdgeServer.class.getName()
+            ));
+
+            try (StartupBenchmark edge = new StartupBenchmark(command, port, webroot)) {
+                final long idle = edge.rss();
+
+                final HttpClient http = HttpClient.newHttpClient();
+                final String body = post(http, edge, StorageHandler.LOGIN, null, "{\"credentials\":\"user:password\"}");
+                final String key = body.replaceAll(".*\"accessKey\":\"([^\"]+)\".*", "$1");
+                for (int i = 0; i < 100; ++i) {
+                    post(http, edge, StorageHandler.READ, key, "{\"path\":\"" + FakeZefiro.FILE + "\"}");
+                }
+
+                System.out.println("JVM options: " + StartupBenchmark.jvmOptions(JVM_OPTS));
+                System.out.println("Time to first /health: " + edge.startupMillis() + " ms");
+                System.out.println("RSS after startup: " + (idle / 1024) + " MB");
+                System.out.println("RSS after 100 reads: " + (edge.rss() / 1024) + " MB");
+                System.out.println("Peak RSS: " + (edge.peakRss() / 1024) + " MB");
+
+                then(zefiro.calls()).isPositive();
+            }
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private String post(
+        final HttpClient http, final StartupBenchmark edge, final String path, final String key, final String body
+    ) throws Exception {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(edge.uri(path))
+            .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (key != null) {
+            request.header("Authorization", "Bearer " + key);
+        }
+        final HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        then(response.statusCode()).isEqualTo(200);
+
+        return response.body();
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A dashboard syncing with the storage API as the web app does (see
+ * {@code TooslaStorage.js}): it logs in, reads the storage periodically with
+ * {@code If-Modified-Since} and, from time to time, saves a burst of changes
+ * with {@code If-Unmodified-Since}, one write per changed item. When a write
+ * is refused with 412 (or 409) it reads the newer content and retries.
+ *
+ * <p>With {@code toosla.load.patch}, writes after the first one send a merge
+ * patch of the changed item only, which the server merges with the changes
+ * made by the other devices in the meantime.
+ *
+ * <p>To exercise the conflict path, a share of the bursts is written with a
+ * precondition older than what the device read, as a device that was offline
+ * for a while would do.
+ */
+class Device implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(Device.class.getName());
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Duration OFFLINE = Duration.ofHours(1);
+
+    private final String name;
+    private final String account;
+    private final String password;
+    private final LoadTest.Settings settings;
+    private final HttpClient http;
+    private final Recorder recorder;
+    private final Random random;
+    private final long end;
+
+    private String accessKey;
+    private Instant lastModified;
+    private int changes;
+
+    Device(
+        final String name, final String account, final String password,
+        final LoadTest.Settings settings, final HttpClient http, final Recorder recorder,
+        final long seed, final long end
+    ) {
+        this.name = name;
+        this.account = account;
+        this.password = password;
+        this.settings = settings;
+        this.http = http;
+        this.recorder = recorder;
+        this.random = new Random(seed);
+        this.end = end;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!login()) {
+                if (!sleepUntil(Math.min(end, System.nanoTime() + 1_000_000_000L), end)) {
+                    return;
+                }
+            }
+            read();
+
+            long nextRead = System.nanoTime() + jitter(settings.readInterval());
+            long nextBurst = System.nanoTime() + exponential(settings.writeInterval());
+            while (sleepUntil(Math.min(nextRead, nextBurst), end)) {
+                if (System.nanoTime() >= nextBurst) {
+                    burst();
+                    nextBurst = System.nanoTime() + exponential(settings.writeInterval());
+                }
+                if (System.nanoTime() >= nextRead) {
+                    read();
+                    nextRead = System.nanoTime() + jitter(settings.readInterval());
+                }
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private boolean login() throws InterruptedException {
+        final HttpResponse<String> response = call(Recorder.LOGIN, "/api/storage/login",
+            Map.of("credentials", account + ":" + password), null, null
+        );
+        if (response != null && response.statusCode() == 200) {
+            try {
+                accessKey = JSON.readTree(response.body()).at("/accessKey").asText();
+                return true;
+            } catch (IOException x) {
+                LOG.log(Level.WARNING, () -> name + ": invalid login response " + response.body());
+            }
+        }
+        return false;
+    }
+
+    private void read() throws InterruptedException {
+        final HttpResponse<String> response = authorized(Recorder.READ, "/api/storage/read",
+            Map.of("path", settings.path()), "If-Modified-Since", lastModified
+        );
+        if (response == null) {
+            return;
+        }
+        if (response.statusCode() == 200) {
+            lastModified(response);
+        } else if (response.statusCode() == 404) {
+            //
+            // first device of a new account: create the storage
+            //
+            lastModified = null;
+            write(false);
+        }
+    }
+
+    private void burst() throws InterruptedException {
+        final boolean offline = (lastModified != null) && (random.nextDouble() < settings.conflictRate());
+        for (int i = 0; i < settings.burst() && System.nanoTime() < end; ++i) {
+            write(offline && i == 0);
+            if (i + 1 < settings.burst()) {
+                Thread.sleep(settings.burstGap().toMillis());
+            }
+        }
+    }
+
+    private void write(final boolean offline) throws InterruptedException {
+        Instant ifUnmodifiedSince = (offline) ? lastModified.minus(OFFLINE) : lastModified;
+        for (int attempt = 0; ; ++attempt) {
+            final Map<String, Object> body = (settings.patch() && lastModified != null)
+                ? Map.of("path", settings.path(), "mergePatch", Map.of("toosla.changes." + name, String.valueOf(++changes)))
+                : Map.of("path", settings.path(), "content", content());
+            final HttpResponse<String> response = authorized(Recorder.WRITE, "/api/storage/write",
+                body, "If-Unmodified-Since", ifUnmodifiedSince
+            );
+            if (response == null || (response.statusCode() != 412 && response.statusCode() != 409)) {
+                if (response != null && response.statusCode() == 200) {
+                    lastModified(response);
+                    if (!response.body().isEmpty()) {
+                        recorder.merged.increment();
+                    }
+                }
+                return;
+            }
+
+            recorder.conflicts.increment();
+            if (attempt >= settings.maxRetries()) {
+                recorder.unresolved.increment();
+                return;
+            }
+            recorder.retries.increment();
+            read();
+            ifUnmodifiedSince = lastModified;
+        }
+    }
+
+    /**
+     * Calls the API with the access key, logging in again (once) if the key
+     * expired.
+     */
+    private HttpResponse<String> authorized(
+        final String operation, final String path, final Object body, final String header, final Instant date
+    ) throws InterruptedException {
+        HttpResponse<String> response = call(operation, path, body, header, date);
+        if (response != null && response.statusCode() == 401) {
+            recorder.relogins.increment();
+            if (login()) {
+                response = call(operation, path, body, header, date);
+            }
+        }
+        return response;
+    }
+
+    private HttpResponse<String> call(
+        final String operation, final String path, final Object body, final String header, final Instant date
+    ) throws InterruptedException {
+        final long start = System.nanoTime();
+        try {
+            final byte[] content = JSON.writeValueAsBytes(body);
+            final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(settings.url() + path))
+                .timeout(settings.timeout())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(content));
+            if (accessKey != null) {
+                request.header("Authorization", "Bearer " + accessKey);
+            }
+            if (date != null) {
+                request.header(header, date.toString()); // ISO 8601, as the web app
+            }
+            final HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            recorder.sent.add(content.length);
+            recorder.received.add(response.body().getBytes(StandardCharsets.UTF_8).length);
+            recorder.record(operation, String.valueOf(response.statusCode()), System.nanoTime() - start);
+            if (Recorder.error(operation, String.valueOf(response.statusCode()))) {
+                LOG.fine(() -> name + ": " + operation + " " + response.statusCode() + " " + response.body());
+            }
+            return response;
+        } catch (IOException x) {
+            recorder.record(operation, x.getClass().getSimpleName(), System.nanoTime() - start);
+            LOG.fine(() -> name + ": " + operation + " failed: " + x);
+            return null;
+        }
+    }
+
+    private void lastModified(final HttpResponse<String> response) {
+        response.headers().firstValue("Last-Modified").ifPresent((value) -> {
+            try {
+                lastModified = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(value));
+            } catch (DateTimeParseException x) {
+                LOG.warning(() -> name + ": invalid Last-Modified " + value);
+            }
+        });
+    }
+
+    /**
+     * The items of the web app's local storage, padded to the configured size.
+     */
+    private String content() {
+        final Map<String, String> items = new LinkedHashMap<>();
+        items.put("toosla.device", name);
+        items.put("toosla.changes", String.valueOf(++changes));
+        items.put("toosla.padding", "");
+        try {
+            final int size = JSON.writeValueAsString(items).length();
+            items.put("toosla.padding", "x".repeat(Math.max(0, settings.payloadSize() - size)));
+
+            return JSON.writeValueAsString(items);
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+    }
+
+    /**
+     * Sleeps until the given time, unless it comes after end.
+     *
+     * @return false if end has been reached
+     */
+    private static boolean sleepUntil(final long time, final long end) throws InterruptedException {
+        final long wait = Math.min(time, end) - System.nanoTime();
+        if (wait > 0) {
+            Thread.sleep(Duration.ofNanos(wait));
+        }
+        return System.nanoTime() < end;
+    }
+
+    /**
+     * @return the given interval &plusmn;20% in nanoseconds
+     */
+    private long jitter(final Duration interval) {
+        return (long)(interval.toNanos() * (0.8 + 0.4 * random.nextDouble()));
+    }
+
+    /**
+     * @return an exponentially distributed interval with the given mean, in
+     *         nanoseconds (i.e. bursts are a Poisson process)
+     */
+    private long exponential(final Duration mean) {
+        return (long)(-Math.log(1 - random.nextDouble()) * mean.toNanos());
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import ste.toosla.sim.ZefiroSimulator;
+import ste.toosla.zefiro.ZefiroEndpoint;
+
+/**
+ * Generates load on a running toosla API (the Spring Boot server or the edge
+ * server) replaying the sync pattern of the dashboards: {@code accounts}
+ * accounts, each used by {@code devices} {@link Device}s that log in, read
+ * periodically with {@code If-Modified-Since} and write bursts of changes,
+ * retrying on 412 conflicts. Devices are started evenly over the ramp up and
+ * all stop at the end of the run.
+ *
+ * <p>At the end it prints and saves as JSON (to compare versions) throughput,
+ * latency percentiles and outcomes per operation, the errors, how conflicts
+ * were resolved and the upstream amplification, i.e. the Zefiro calls per API
+ * request, computed from the {@code zefiro.calls} counters in the API's
+ * {@code /api/metrics} before and after the run.
+ *
+ * <p>It reads system properties and {@code --name=value} arguments:
+ * <ul>
+ * <li>{@code toosla.load.url} - the API base URL (default http://localhost:8080)</li>
+ * <li>{@code toosla.load.accounts} (default 10) and {@code toosla.load.devices} per account (default 2)</li>
+ * <li>{@code toosla.load.account-prefix} (default {@code load}; accounts are {@code load-0}, {@code load-1}, ...) and {@code toosla.load.password}</li>
+ * <li>{@code toosla.load.path} (default {@code /Toosla/data.json}, as the web app)</li>
+ * <li>{@code toosla.load.duration-ms} (default 60000) and {@code toosla.load.ramp-up-ms} (default 10000)</li>
+ * <li>{@code toosla.load.read-interval-ms} (default 5000, &plusmn;20%)</li>
+ * <li>{@code toosla.load.write-interval-ms} - mean time between bursts (default 30000)</li>
+ * <li>{@code toosla.load.burst} (default 3) and {@code toosla.load.burst-gap-ms} (default 250)</li>
+ * <li>{@code toosla.load.conflict-rate} - share of bursts written with an outdated precondition (default 0.05)</li>
+ * <li>{@code toosla.load.max-retries} - on 412 (default 3)</li>
+ * <li>{@code toosla.load.payload-size} - bytes per write (default 2048)</li>
+ * <li>{@code toosla.load.patch} - if true, writes after the first one send a
+ *     merge patch of the item changed instead of the whole content (Spring Boot
+ *     server only; default false)</li>
+ * <li>{@code toosla.load.timeout-ms} (default 10000)</li>
+ * <li>{@code toosla.load.seed} (default 0)</li>
+ * <li>{@code toosla.load.label} - e.g. the version under test, copied in the results</li>
+ * <li>{@code toosla.load.output} (default {@code toosla-load-<timestamp>.json})</li>
+ * <li>{@code toosla.load.simulator} - if true, a {@link ZefiroSimulator} configured
+ *     with the {@code toosla.sim.*} properties runs in this process for the
+ *     duration of the test (the API must be configured to use it)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    private static final Logger LOG = Logger.getLogger(LoadTest.class.getName());
+
+    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final Pattern ENDPOINT = Pattern.compile("^zefiro\\.calls\\{endpoint=([^,}]+)");
+
+    /**
+     * The behaviour of the devices.
+     */
+    record Settings(
+        String url, String path, Duration duration, Duration rampUp,
+        Duration readInterval, Duration writeInterval, int burst, Duration burstGap,
+        double conflictRate, int maxRetries, int payloadSize, Duration timeout,
+        boolean patch
+    ) {}
+
+    private final Properties config;
+
+    public LoadTest(final Properties config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config can not be null");
+        }
+        this.config = config;
+    }
+
+    /**
+     * Runs the test and saves the results.
+     *
+     * @return the results
+     *
+     * @throws IOException if the results can not be saved or the simulator
+     *         can not be started
+     * @throws InterruptedException if interrupted
+     */
+    public Map<String, Object> run() throws IOException, InterruptedException {
+        final Settings settings = new Settings(
+            config.getProperty("toosla.load.url", "http://localhost:8080").replaceAll("/+$", ""),
+            config.getProperty("toosla.load.path", "/Toosla/data.json"),
+            millis("toosla.load.duration-ms", 60000),
+            millis("toosla.load.ramp-up-ms", 10000),
+            millis("toosla.load.read-interval-ms", 5000),
+            millis("toosla.load.write-interval-ms", 30000),
+            (int)longValue("toosla.load.burst", 3),
+            millis("toosla.load.burst-gap-ms", 250),
+            doubleValue("toosla.load.conflict-rate", 0.05),
+            (int)longValue("toosla.load.max-retries", 3),
+            (int)longValue("toosla.load.payload-size", 2048),
+            millis("toosla.load.timeout-ms", 10000),
+            Boolean.parseBoolean(config.getProperty("toosla.load.patch"))
+        );
+        final int accounts = (int)longValue("toosla.load.accounts", 10);
+        final int devices = (int)longValue("toosla.load.devices", 2);
+        final String prefix = config.getProperty("toosla.load.account-prefix", "load");
+        final String password = config.getProperty("toosla.load.password", "load");
+        final long seed = longValue("toosla.load.seed", 0);
+
+        ZefiroSimulator simulator = null;
+        if (Boolean.parseBoolean(config.getProperty("toosla.load.simulator"))) {
+            final Properties simulatorConfig = ZefiroSimulator.configuration();
+            simulatorConfig.putAll(config);
+            simulator = new ZefiroSimulator().withConfiguration(simulatorConfig).start();
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(settings.timeout())
+                .executor(executor)
+                .build();
+
+            final Map<String, Long> upstreamBefore = upstreamCalls(http, settings.url());
+
+            LOG.info(() -> String.format(
+                "Starting %d devices (%d accounts) against %s for %ds",
+                accounts * devices, accounts, settings.url(), settings.duration().toSeconds()
+            ));
+
+            final Recorder recorder = new Recorder();
+            final Instant started = Instant.now();
+            final long start = System.nanoTime();
+            final long end = start + settings.duration().toNanos();
+            final int total = accounts * devices;
+            try (ExecutorService runners = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < total; ++i) {
+                    final long delay = settings.rampUp().toNanos() * i / total;
+                    final Device device = new Device(
+                        prefix + "-" + (i / devices) + "/" + (i % devices), prefix + "-" + (i / devices), password,
+                        settings, http, recorder, seed + i, end
+                    );
+                    runners.execute(() -> {
+                        try {
+                            Thread.sleep(Duration.ofNanos(delay));
+                            device.run();
+                        } catch (InterruptedException x) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                }
+            }
+            final double seconds = (System.nanoTime() - start) / 1e9;
+
+            final Map<String, Long> upstreamAfter = upstreamCalls(http, settings.url());
+
+            final Map<String, Object> results = results(
+                settings, accounts, devices, started, seconds, recorder, upstreamBefore, upstreamAfter, simulator
+            );
+            save(results);
+            print(results, recorder, seconds);
+
+            return results;
+        } finally {
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    /**
+     * Loads the system properties and the given {@code --name=value}
+     * arguments, in this order.
+     *
+     * @param args command line arguments - NOT NULL
+     *
+     * @return the configuration
+     */
+    public static Properties configuration(final String... args) {
+        final Properties ret = new Properties();
+
+        ret.putAll(System.getProperties());
+        for (String arg: args) {
+            final int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 2) {
+                ret.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                LOG.warning(() -> "Ignoring argument '" + arg + "', expected --name=value");
+            }
+        }
+
+        return ret;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, Object> results = new LoadTest(configuration(args)).run();
+        System.exit(((Number)results.get("errors")).longValue() == 0 ? 0 : 1);
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Map<String, Object> results(
+        final Settings settings, final int accounts, final int devices,
+        final Instant started, final double seconds, final Recorder recorder,
+        final Map<String, Long> upstreamBefore, final Map<String, Long> upstreamAfter,
+        final ZefiroSimulator simulator
+    ) {
+        final long requests = recorder.requests();
+        final Map<String, Long> errors = recorder.errors();
+        final long errorCount = errors.values().stream().mapToLong(Long::longValue).sum();
+
+        final Map<String, Object> setup = new LinkedHashMap<>();
+        setup.put("url", settings.url());
+        setup.put("accounts", accounts);
+        setup.put("devices", devices);
+        setup.put("path", settings.path());
+        setup.put("durationMs", settings.duration().toMillis());
+        setup.put("rampUpMs", settings.rampUp().toMillis());
+        setup.put("readIntervalMs", settings.readInterval().toMillis());
+        setup.put("writeIntervalMs", settings.writeInterval().toMillis());
+        setup.put("burst", settings.burst());
+        setup.put("burstGapMs", settings.burstGap().toMillis());
+        setup.put("conflictRate", settings.conflictRate());
+        setup.put("maxRetries", settings.maxRetries());
+        setup.put("payloadSize", settings.payloadSize());
+        setup.put("patch", settings.patch());
+
+        final Map<String, Object> conflicts = new LinkedHashMap<>();
+        conflicts.put("conflicts", recorder.conflicts.sum());
+        conflicts.put("retries", recorder.retries.sum());
+        conflicts.put("unresolved", recorder.unresolved.sum());
+        conflicts.put("relogins", recorder.relogins.sum());
+        conflicts.put("merged", recorder.merged.sum());
+        conflicts.put("bytesSent", recorder.sent.sum());
+        conflicts.put("bytesReceived", recorder.received.sum());
+
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("label", config.getProperty("toosla.load.label", ""));
+        ret.put("started", started.toString());
+        ret.put("seconds", Recorder.round(seconds));
+        ret.put("settings", setup);
+        ret.put("requests", requests);
+        ret.put("throughput", Recorder.round(requests / seconds));
+        ret.put("errors", errorCount);
+        ret.put("errorRate", (requests == 0) ? 0.0 : Recorder.round((double)errorCount / requests));
+        ret.put("errorBreakdown", errors);
+        ret.put("operations", recorder.operations(seconds));
+        ret.put("sync", conflicts);
+
+        if (upstreamBefore != null && upstreamAfter != null) {
+            final Map<String, Long> byEndpoint = new TreeMap<>();
+            upstreamAfter.forEach((endpoint, calls) -> {
+                final long delta = calls - upstreamBefore.getOrDefault(endpoint, 0L);
+                if (delta > 0) {
+                    byEndpoint.put(endpoint, delta);
+                }
+            });
+            final long calls = byEndpoint.values().stream().mapToLong(Long::longValue).sum();
+
+            final Map<String, Object> upstream = new LinkedHashMap<>();
+            upstream.put("calls", calls);
+            upstream.put("callsPerRequest", (requests == 0) ? 0.0 : Recorder.round((double)calls / requests));
+            upstream.put("byEndpoint", byEndpoint);
+            ret.put("upstream", upstream);
+        }
+
+        if (simulator != null) {
+            final Map<String, Long> byEndpoint = new TreeMap<>();
+            for (ZefiroEndpoint endpoint: ZefiroEndpoint.values()) {
+                byEndpoint.put(endpoint.tag, simulator.calls(endpoint));
+            }
+            final Map<String, Object> zefiro = new LinkedHashMap<>();
+            zefiro.put("calls", simulator.calls());
+            zefiro.put("throttled", simulator.throttled());
+            zefiro.put("failures", simulator.failures());
+            zefiro.put("maxInFlight", simulator.maxInFlight());
+            zefiro.put("byEndpoint", byEndpoint);
+            ret.put("simulator", zefiro);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Sums the {@code zefiro.calls{endpoint,status}} counters of the API by
+     * endpoint.
+     *
+     * @return the calls by endpoint or null if the metrics are not available
+     */
+    private static Map<String, Long> upstreamCalls(final HttpClient http, final String url) throws InterruptedException {
+        try {
+            final HttpResponse<String> response = http.send(
+                HttpRequest.newBuilder(URI.create(url + "/api/metrics")).timeout(Duration.ofSeconds(10)).GET().build(),
+                HttpResponse.BodyHandlers.ofString()
+            );
+            if (response.statusCode() != 200) {
+                LOG.warning(() -> "metrics not available (" + response.statusCode() + "), upstream calls will not be reported");
+                return null;
+            }
+            final Map<String, Long> ret = new TreeMap<>();
+            final Iterator<Map.Entry<String, JsonNode>> metrics = JSON.readTree(response.body()).at("/metrics").fields();
+            while (metrics.hasNext()) {
+                final Map.Entry<String, JsonNode> metric = metrics.next();
+                final Matcher m = ENDPOINT.matcher(metric.getKey());
+                if (m.find()) {
+                    ret.merge(m.group(1), metric.getValue().asLong(), Long::sum);
+                }
+            }
+            return ret;
+        } catch (IOException x) {
+            LOG.log(Level.WARNING, () -> "metrics not available (" + x + "), upstream calls will not be reported");
+            return null;
+        }
+    }
+
+    private void save(final Map<String, Object> results) throws IOException {
+        String output = config.getProperty("toosla.load.output");
+        if (output == null || output.isBlank()) {
+            output = "toosla-load-" + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(LocalDateTime.now()) + ".json";
+        }
+        final Path file = Path.of(output).toAbsolutePath();
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        JSON.writeValue(file.toFile(), results);
+        LOG.info(() -> "Results saved in " + file);
+    }
+
+    private static void print(final Map<String, Object> results, final Recorder recorder, final double seconds) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(
+            "%d requests in %.1fs, %s req/s, %s errors%n",
+            recorder.requests(), seconds, results.get("throughput"), results.get("errors")
+        ));
+        recorder.operations(seconds).forEach((operation, values) -> sb.append(String.format("%-6s %s%n", operation, values)));
+        for (String section: new String[] {"errorBreakdown", "sync", "upstream", "simulator"}) {
+            if (results.containsKey(section)) {
+                sb.append(section).append(": ").append(results.get(section)).append(String.format("%n"));
+            }
+        }
+        System.out.print(sb);
+    }
+
+    private Duration millis(final String name, final long defaultValue) {
+        return Duration.ofMillis(longValue(name, defaultValue));
+    }
+
+    private long longValue(final String name, final long defaultValue) {
+        final String value = config.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException x) {
+            throw new IllegalArgumentException("invalid value '" + value + "' for " + name, x);
+        }
+    }
+
+    private double doubleValue(final String name, final double defaultValue) {
+        final String value = config.getProperty(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException x) {
+            throw new IllegalArgumentException("invalid value '" + value + "' for " + name, x);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.load;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import ste.toosla.util.metrics.Histogram;
+
+/**
+ * Collects the outcome and latency of each call to the storage API, by
+ * operation ({@code login}, {@code read}, {@code write}), plus the conflicts
+ * met by writes, how they were resolved and the bytes transferred.
+ *
+ * <p>An outcome is the HTTP status or, for calls that did not get a response,
+ * the simple name of the exception (e.g. {@code HttpTimeoutException}). Outcomes
+ * that are part of the normal sync protocol (304 and 404 for reads, 409 and
+ * 412 for writes) are not errors.
+ */
+class Recorder {
+
+    static final String LOGIN = "login";
+    static final String READ = "read";
+    static final String WRITE = "write";
+
+    private static final Map<String, Set<String>> EXPECTED = Map.of(
+        LOGIN, Set.of("200"),
+        READ, Set.of("200", "304", "404"),
+        WRITE, Set.of("200", "409", "412")
+    );
+
+    private final ConcurrentMap<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> outcomes = new ConcurrentHashMap<>();
+
+    final LongAdder conflicts = new LongAdder();
+    final LongAdder retries = new LongAdder();
+    final LongAdder unresolved = new LongAdder();
+    final LongAdder relogins = new LongAdder();
+    final LongAdder merged = new LongAdder();
+    final LongAdder sent = new LongAdder();
+    final LongAdder received = new LongAdder();
+
+    /**
+     * @param operation the operation
+     * @param outcome the status code or exception name
+     * @param nanos the time taken by the call
+     */
+    void record(final String operation, final String outcome, final long nanos) {
+        latencies.computeIfAbsent(operation, (o) -> new Histogram()).record(nanos);
+        outcomes.computeIfAbsent(operation, (o) -> new ConcurrentHashMap<>())
+                .computeIfAbsent(outcome, (o) -> new LongAdder()).increment();
+    }
+
+    static boolean error(final String operation, final String outcome) {
+        return !EXPECTED.getOrDefault(operation, Set.of()).contains(outcome);
+    }
+
+    long requests() {
+        return latencies.values().stream().mapToLong(Histogram::count).sum();
+    }
+
+    long count(final String operation, final String outcome) {
+        final Map<String, LongAdder> byOutcome = outcomes.get(operation);
+        final LongAdder count = (byOutcome == null) ? null : byOutcome.get(outcome);
+        return (count == null) ? 0 : count.sum();
+    }
+
+    /**
+     * @return the errors by {@code "<operation> <outcome>"}
+     */
+    Map<String, Long> errors() {
+        final Map<String, Long> ret = new TreeMap<>();
+        outcomes.forEach((operation, byOutcome) -> byOutcome.forEach((outcome, count) -> {
+            if (error(operation, outcome)) {
+                ret.put(operation + " " + outcome, count.sum());
+            }
+        }));
+        return ret;
+    }
+
+    /**
+     * @param seconds the duration of the run
+     *
+     * @return count, throughput, latency percentiles (in milliseconds) and
+     *         outcomes of each operation
+     */
+    Map<String, Object> operations(final double seconds) {
+        final Map<String, Object> ret = new TreeMap<>();
+        latencies.forEach((operation, h) -> {
+            final Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("mean", millis(h.mean()));
+            latency.put("p50", millis(h.percentile(50)));
+            latency.put("p90", millis(h.percentile(90)));
+            latency.put("p99", millis(h.percentile(99)));
+            latency.put("p999", millis(h.percentile(99.9)));
+            latency.put("max", millis(h.max()));
+
+            final Map<String, Long> byOutcome = new TreeMap<>();
+            outcomes.getOrDefault(operation, new ConcurrentHashMap<>())
+                    .forEach((outcome, count) -> byOutcome.put(outcome, count.sum()));
+
+            final Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", h.count());
+            values.put("throughput", round(h.count() / seconds));
+            values.put("latency", latency);
+            values.put("outcomes", byOutcome);
+            ret.put(operation, values);
+        });
+        return ret;
+    }
+
+    static double round(final double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+
+    private static double millis(final double nanos) {
+        return round(nanos / 1_000_000.0);
+    }
+}
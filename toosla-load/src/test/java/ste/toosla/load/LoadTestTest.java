@@ -0,0 +1,142 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import static org.assertj.core.api.BDDAssertions.then;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ste.toosla.edge.EdgeServer;
+import ste.toosla.sim.ZefiroSimulator;
+
+/**
+ * Runs short load tests against an {@link EdgeServer} backed by a
+ * {@link ZefiroSimulator}.
+ */
+public class LoadTestTest {
+
+    @TempDir
+    Path dir;
+
+    private ZefiroSimulator zefiro;
+    private EdgeServer server;
+
+    @AfterEach
+    public void after() {
+        if (server != null) {
+            server.close();
+        }
+        if (zefiro != null) {
+            zefiro.close();
+        }
+    }
+
+    @Test
+    public void replay_sync_and_save_results() throws Exception {
+        zefiro = new ZefiroSimulator().withFolder("/Toosla").start();
+        server = edge(zefiro.url());
+
+        final Properties config = config();
+        config.setProperty("toosla.load.output", dir.resolve("results/run.json").toString());
+        config.setProperty("toosla.load.label", "1.0.0");
+
+        final Map<String, Object> results = new LoadTest(config).run();
+
+        then(results).containsEntry("errors", 0L).containsEntry("label", "1.0.0");
+
+        final JsonNode saved = new ObjectMapper().readTree(dir.resolve("results/run.json").toFile());
+        then(saved.at("/label").asText()).isEqualTo("1.0.0");
+        then(saved.at("/requests").asLong()).isEqualTo(results.get("requests"));
+        then(saved.at("/operations/login/count").asLong()).isEqualTo(4);
+        then(saved.at("/operations/login/outcomes/200").asLong()).isEqualTo(4);
+        then(saved.at("/operations/read/count").asLong()).isGreaterThan(10);
+        then(saved.at("/operations/read/outcomes/304").asLong()).isPositive();
+        then(saved.at("/operations/write/outcomes/200").asLong()).isPositive();
+        then(saved.at("/operations/write/latency/p99").asDouble()).isPositive();
+        then(saved.at("/sync/conflicts").asLong()).isPositive();
+        then(saved.at("/sync/retries").asLong()).isPositive();
+
+        //
+        // each read and write takes several Zefiro calls
+        //
+        then(saved.at("/upstream/calls").asLong()).isEqualTo(zefiro.calls());
+        then(saved.at("/upstream/callsPerRequest").asDouble()).isGreaterThan(2.0);
+        then(saved.at("/upstream/byEndpoint/login").asLong()).isEqualTo(4);
+    }
+
+    @Test
+    public void run_the_simulator_in_process() throws Exception {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = edge("http://127.0.0.1:" + port);
+
+        final Properties config = config();
+        config.setProperty("toosla.load.output", dir.resolve("run.json").toString());
+        config.setProperty("toosla.load.simulator", "true");
+        config.setProperty("toosla.sim.port", String.valueOf(port));
+        config.setProperty("toosla.sim.error-rate.upload", "1");
+
+        final Map<String, Object> results = new LoadTest(config).run();
+
+        final JsonNode saved = new ObjectMapper().readTree(dir.resolve("run.json").toFile());
+        then(saved.at("/simulator/calls").asLong()).isEqualTo(saved.at("/upstream/calls").asLong()).isPositive();
+        then(saved.at("/simulator/failures").asLong()).isPositive();
+        then((Long)results.get("errors")).isPositive();
+        then(saved.at("/errorBreakdown/write 500").asLong()).isEqualTo(saved.at("/errors").asLong());
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private EdgeServer edge(final String zefiro) throws Exception {
+        final Properties config = new Properties();
+        config.setProperty("server.port", "0");
+        config.setProperty("toosla.edge.webroot", dir.toString());
+        config.setProperty("toosla.zefiro.api-url", zefiro);
+        config.setProperty("toosla.zefiro.upload-url", zefiro);
+
+        return new EdgeServer(config).start();
+    }
+
+    private Properties config() {
+        final Properties config = new Properties();
+        config.setProperty("toosla.load.url", "http://127.0.0.1:" + server.port());
+        config.setProperty("toosla.load.accounts", "2");
+        config.setProperty("toosla.load.devices", "2");
+        config.setProperty("toosla.load.duration-ms", "3000");
+        config.setProperty("toosla.load.ramp-up-ms", "0");
+        config.setProperty("toosla.load.read-interval-ms", "100");
+        config.setProperty("toosla.load.write-interval-ms", "300");
+        config.setProperty("toosla.load.burst", "2");
+        config.setProperty("toosla.load.burst-gap-ms", "20");
+        config.setProperty("toosla.load.conflict-rate", "0.5");
+        config.setProperty("toosla.load.payload-size", "512");
+
+        return config;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.sim;
+
+import java.util.Random;
+
+/**
+ * A distribution of response times in milliseconds.
+ *
+ * <p>Besides the factory methods, a latency can be given as a string (see
+ * {@link #parse(String)}), which is what the standalone simulator reads from
+ * its configuration:
+ * <ul>
+ * <li>{@code none} or {@code 0}</li>
+ * <li>{@code 120} or {@code fixed:120}</li>
+ * <li>{@code uniform:50-200}</li>
+ * <li>{@code lognormal:80,400} - median 80ms, 99th percentile 400ms</li>
+ * </ul>
+ */
+@FunctionalInterface
+public interface Latency {
+
+    /**
+     * The 99th percentile of the standard normal distribution.
+     */
+    double Z99 = 2.3263478740408408;
+
+    /**
+     * @param random the source of randomness - NOT NULL
+     *
+     * @return the next latency in milliseconds (never negative)
+     */
+    long millis(Random random);
+
+    static Latency none() {
+        return (random) -> 0;
+    }
+
+    static Latency fixed(final long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis can not be negative");
+        }
+        return (random) -> millis;
+    }
+
+    static Latency uniform(final long min, final long max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("invalid range " + min + "-" + max);
+        }
+        return (random) -> min + (long)(random.nextDouble() * (max - min + 1));
+    }
+
+    /**
+     * A log-normal distribution, the usual shape of service response times: most
+     * calls are close to the median, with a long tail of slow ones.
+     *
+     * @param median the median in milliseconds (&gt; 0)
+     * @param p99 the 99th percentile in milliseconds (&gt;= median)
+     *
+     * @return the distribution
+     */
+    static Latency logNormal(final double median, final double p99) {
+        if (median <= 0 || p99 < median) {
+            throw new IllegalArgumentException("invalid median " + median + " or p99 " + p99);
+        }
+        final double mu = Math.log(median);
+        final double sigma = (Math.log(p99) - mu) / Z99;
+
+        return (random) -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Parses the textual form of a latency described in the class comment.
+     *
+     * @param spec the latency - NOT BLANK
+     *
+     * @return the latency
+     *
+     * @throws IllegalArgumentException if spec is not valid
+     */
+    static Latency parse(final String spec) {
+        if (spec == null || spec.isBlank()) {
+            throw new IllegalArgumentException("latency can not be blank");
+        }
+        final String s = spec.trim().toLowerCase();
+        try {
+            if ("none".equals(s)) {
+                return none();
+            }
+            final int colon = s.indexOf(':');
+            if (colon < 0) {
+                return fixed(Long.parseLong(s));
+            }
+            final String type = s.substring(0, colon), args = s.substring(colon + 1);
+            switch (type) {
+                case "fixed":
+                    return fixed(Long.parseLong(args));
+                case "uniform": {
+                    final int dash = args.indexOf('-');
+                    return uniform(Long.parseLong(args.substring(0, dash)), Long.parseLong(args.substring(dash + 1)));
+                }
+                case "lognormal": {
+                    final int comma = args.indexOf(',');
+                    return logNormal(Double.parseDouble(args.substring(0, comma)), Double.parseDouble(args.substring(comma + 1)));
+                }
+                default:
+                    throw new IllegalArgumentException("unknown latency type '" + type + "'");
+            }
+        } catch (NumberFormatException | StringIndexOutOfBoundsException x) {
+            throw new IllegalArgumentException("invalid latency '" + spec + "'", x);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The folders and files of the simulated accounts. Each account has a root
+ * folder named {@value #ROOT}, as the user's space in Zefiro; ids are unique
+ * across accounts so that files can be looked up (and downloaded) by id only.
+ *
+ * <p>If a directory is given, the tree of each account is loaded from
+ * {@code <directory>/<account>} the first time the account is used and any
+ * change is written through; the modification date of a file is its last
+ * modified time. Without a directory everything is kept in memory.
+ *
+ * <p>New accounts are seeded with the given folders and files; seeds never
+ * replace what is already there.
+ */
+class MediaTree {
+
+    static final String ROOT = "OneMediaHub";
+
+    /**
+     * A folder or a file to create in every new account; {@code content} is
+     * {@code null} for folders.
+     */
+    record Seed(String path, byte[] content) {}
+
+    static final class Folder {
+        final long id;
+        final String account;
+        final String name;
+        final Folder parent;
+        final long created = System.currentTimeMillis();
+        final Map<String, Folder> folders = new ConcurrentSkipListMap<>();
+        final Map<String, Media> media = new ConcurrentSkipListMap<>();
+
+        Folder(final long id, final String account, final String name, final Folder parent) {
+            this.id = id; this.account = account; this.name = name; this.parent = parent;
+        }
+
+        long parentId() {
+            return (parent == null) ? 0 : parent.id;
+        }
+    }
+
+    static final class Media {
+        final long id;
+        final Folder folder;
+        final String name;
+        volatile byte[] content;
+        volatile long modified;
+
+        Media(final long id, final Folder folder, final String name) {
+            this.id = id; this.folder = folder; this.name = name;
+        }
+    }
+
+    private final Path directory;
+    private final List<Seed> seeds;
+    private final AtomicLong ids = new AtomicLong(47486);
+    private final Map<String, Folder> roots = new ConcurrentHashMap<>();
+    private final Map<Long, Folder> folders = new ConcurrentHashMap<>();
+    private final Map<Long, Media> media = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory where to keep the files (or {@code null} to keep them in memory)
+     * @param seeds the folders and files of new accounts - NOT NULL
+     */
+    MediaTree(final Path directory, final List<Seed> seeds) {
+        this.directory = directory;
+        this.seeds = List.copyOf(seeds);
+    }
+
+    /**
+     * @return the root folder of the given account, created (and seeded) if needed
+     */
+    Folder root(final String account) {
+        return roots.computeIfAbsent(account, (a) -> {
+            final Folder root = register(new Folder(ids.incrementAndGet(), a, ROOT, null));
+            try {
+                if (directory != null) {
+                    Files.createDirectories(path(root));
+                    load(root);
+                }
+                for (Seed seed: seeds) {
+                    seed(root, seed);
+                }
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+            return root;
+        });
+    }
+
+    Folder folder(final long id) {
+        return folders.get(id);
+    }
+
+    Media media(final long id) {
+        return media.get(id);
+    }
+
+    /**
+     * Looks up a file by path (e.g. {@code /Toosla/toosla.json}).
+     */
+    Optional<Media> find(final String account, final String path) {
+        Folder folder = root(account);
+        final String[] parts = path.substring(1).split("/");
+        for (int i = 0; i < parts.length - 1 && folder != null; ++i) {
+            folder = folder.folders.get(parts[i]);
+        }
+        return (folder == null) ? Optional.empty() : Optional.ofNullable(folder.media.get(parts[parts.length - 1]));
+    }
+
+    /**
+     * Creates the given folder in parent, if not already there.
+     */
+    Folder mkdir(final Folder parent, final String name) throws IOException {
+        checkName(name);
+        synchronized (parent) {
+            Folder folder = parent.folders.get(name);
+            if (folder == null) {
+                folder = register(new Folder(ids.incrementAndGet(), parent.account, name, parent));
+                if (directory != null) {
+                    Files.createDirectories(path(folder));
+                }
+                parent.folders.put(name, folder);
+            }
+            return folder;
+        }
+    }
+
+    /**
+     * Saves a file in the given folder: the file with the given id or, if not
+     * found, with the given name is replaced, otherwise a new one is created.
+     *
+     * @param folder the folder - NOT NULL
+     * @param id the id of the file to replace (0 for none)
+     * @param name the name of the file - NOT BLANK
+     * @param content the content - NOT NULL
+     * @param modified the modification date (milliseconds since the epoch)
+     *
+     * @return the saved file
+     *
+     * @throws IOException if the file can not be written to disk
+     */
+    Media save(
+        final Folder folder, final long id, final String name, final byte[] content, final long modified
+    ) throws IOException {
+        checkName(name);
+        synchronized (folder) {
+            Media file = media.get(id);
+            if (file == null || file.folder != folder || !file.name.equals(name)) {
+                file = folder.media.get(name);
+            }
+            if (file == null) {
+                file = new Media(ids.incrementAndGet(), folder, name);
+            }
+            if (directory != null) {
+                final Path path = path(folder).resolve(name);
+                Files.write(path, content);
+                Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+            }
+            file.content = content;
+            file.modified = modified;
+            if (folder.media.putIfAbsent(name, file) == null) {
+                media.put(file.id, file);
+            }
+            return file;
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private Folder register(final Folder folder) {
+        folders.put(folder.id, folder);
+        return folder;
+    }
+
+    private void seed(final Folder root, final Seed seed) throws IOException {
+        final String[] parts = seed.path().substring(1).split("/");
+        final int folderParts = (seed.content() == null) ? parts.length : parts.length - 1;
+
+        Folder folder = root;
+        for (int i = 0; i < folderParts; ++i) {
+            folder = mkdir(folder, parts[i]);
+        }
+        if (seed.content() != null && !folder.media.containsKey(parts[parts.length - 1])) {
+            save(folder, 0, parts[parts.length - 1], seed.content(), System.currentTimeMillis());
+        }
+    }
+
+    private void load(final Folder folder) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path(folder))) {
+            for (Path entry: entries) {
+                final String name = entry.getFileName().toString();
+                if (Files.isDirectory(entry)) {
+                    final Folder child = register(new Folder(ids.incrementAndGet(), folder.account, name, folder));
+                    folder.folders.put(name, child);
+                    load(child);
+                } else if (Files.isRegularFile(entry)) {
+                    final Media file = new Media(ids.incrementAndGet(), folder, name);
+                    file.content = Files.readAllBytes(entry);
+                    file.modified = Files.getLastModifiedTime(entry).toMillis();
+                    folder.media.put(name, file);
+                    media.put(file.id, file);
+                }
+            }
+        }
+    }
+
+    private Path path(final Folder folder) {
+        if (folder.parent == null) {
+            return directory.resolve(URLEncoder.encode(folder.account, StandardCharsets.UTF_8));
+        }
+        return path(folder.parent).resolve(folder.name);
+    }
+
+    private static void checkName(final String name) {
+        if (name == null || name.isBlank() || name.contains("/") || name.contains("\\") || ".".equals(name) || "..".equals(name)) {
+            throw new IllegalArgumentException("invalid name '" + name + "'");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.sim;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal parser of {@code multipart/form-data} bodies (RFC 7578), enough
+ * for the uploads of {@link ste.toosla.zefiro.ZefiroClient}.
+ */
+final class Multipart {
+
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+    private static final Pattern NAME = Pattern.compile("(?i)content-disposition:[^\\r\\n]*[; ]name=\"([^\"]*)\"");
+
+    private Multipart() {}
+
+    /**
+     * @param contentType the Content-Type of the request
+     * @param body the body of the request
+     *
+     * @return the parts by name, in the order they appear in the body
+     *
+     * @throws IllegalArgumentException if the body is not a valid multipart body
+     */
+    static Map<String, byte[]> parse(final String contentType, final byte[] body) {
+        final Matcher boundary = (contentType == null) ? null : BOUNDARY.matcher(contentType);
+        if (boundary == null || !contentType.toLowerCase().startsWith("multipart/") || !boundary.find()) {
+            throw new IllegalArgumentException("not a multipart content type: " + contentType);
+        }
+
+        //
+        // ISO-8859-1 maps each byte to one char, so indexes in the string are
+        // indexes in the body
+        //
+        final String text = new String(body, StandardCharsets.ISO_8859_1);
+        final String delimiter = "--" + boundary.group(1);
+
+        final Map<String, byte[]> ret = new LinkedHashMap<>();
+        int start = text.indexOf(delimiter);
+        while (start >= 0 && !text.startsWith("--", start + delimiter.length())) {
+            final int headers = text.indexOf("\r\n", start) + 2;
+            final int content = text.indexOf("\r\n\r\n", headers);
+            final int next = text.indexOf("\r\n" + delimiter, content);
+            if (headers < 2 || content < 0 || next < 0) {
+                throw new IllegalArgumentException("truncated multipart body");
+            }
+            final Matcher name = NAME.matcher(text.substring(headers, content + 2));
+            if (name.find()) {
+                ret.put(name.group(1), text.substring(content + 4, next).getBytes(StandardCharsets.ISO_8859_1));
+            }
+            start = next + 2;
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.sim;
+
+/**
+ * A token bucket allowing {@code rate} calls per second with bursts of up to
+ * {@code rate} calls (at least one).
+ */
+final class TokenBucket {
+
+    private final double rate;
+    private final double capacity;
+    private double tokens;
+    private long last = System.nanoTime();
+
+    TokenBucket(final double rate) {
+        this.rate = rate;
+        this.capacity = this.tokens = Math.max(1, rate);
+    }
+
+    synchronized boolean tryAcquire() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - last) * rate / 1_000_000_000.0);
+        last = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,796 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.sim;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import ste.toosla.sim.MediaTree.Folder;
+import ste.toosla.sim.MediaTree.Media;
+import ste.toosla.zefiro.ZefiroEndpoint;
+
+/**
+ * A local stand-in of the Zefiro API for tests, benchmarks and load tests.
+ * It implements the calls {@link ste.toosla.zefiro.ZefiroClient} performs
+ * (login, root folder, folder list, media list and metadata, upload and content
+ * download) on top of a {@link MediaTree} kept in memory or on disk, so that a
+ * client pointed to {@link #url()} with {@code withApiUrl}/{@code withUploadUrl}
+ * behaves as with the real service.
+ *
+ * <p>To make it useful to measure how toosla behaves when Zefiro does not, the
+ * simulator can inject, per {@link ZefiroEndpoint}:
+ * <ul>
+ * <li>latency, drawn from a {@link Latency} distribution</li>
+ * <li>failures, returning {@code errorStatus} with the given probability</li>
+ * </ul>
+ * and, for all calls, throttle each account to a number of calls per second
+ * (answering {@code 429 Too Many Requests}) and limit the calls in flight
+ * (answering {@code 503 Service Unavailable}). Payload sizes can be tuned with
+ * generated files ({@link #withFile(String, int)}) and with padding entries in
+ * the folder and media lists ({@link #withListPadding(int)}). Faults can be
+ * changed while the simulator is running.
+ *
+ * <p>If no account is given, any login is accepted and creates a new account;
+ * each account gets the seeded folders and files. Each account always gets
+ * the same validation key, so that many logins do not grow the memory.
+ *
+ * <p>It can be started standalone with {@link #main(String[])}; see
+ * {@link #withConfiguration(Properties)} for the supported properties.
+ */
+public class ZefiroSimulator implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(ZefiroSimulator.class.getName());
+
+    static {
+        //
+        // Without TCP_NODELAY small responses of the JDK server may wait for
+        // the client's delayed ACK (~40ms each), which would dwarf the latency
+        // we want to simulate. Must be set before the first HttpServer is created.
+        //
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    public static final String DOWNLOAD_PATH = "/sapi/download/file";
+
+    private static final DateTimeFormatter MODIFICATION_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private String host = "127.0.0.1";
+    private int port = 0;
+    private Path directory;
+    private final Map<String, String> accounts = new ConcurrentHashMap<>();
+    private final List<MediaTree.Seed> seeds = new ArrayList<>();
+
+    private volatile Latency latency = Latency.none();
+    private final Map<ZefiroEndpoint, Latency> latencies = new ConcurrentHashMap<>();
+    private volatile double errorRate = 0;
+    private final Map<ZefiroEndpoint, Double> errorRates = new ConcurrentHashMap<>();
+    private volatile int errorStatus = 500;
+    private volatile double throttle = 0;
+    private volatile int maxConcurrentCalls = 0;
+    private volatile int listPadding = 0;
+    private volatile Random random = new Random();
+
+    private final Map<String, String> validationKeys = new ConcurrentHashMap<>();
+    private final Map<String, String> accountKeys = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<ZefiroEndpoint, LongAdder> calls = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private MediaTree tree;
+    private HttpServer server;
+    private String url;
+
+    public ZefiroSimulator() {
+        for (ZefiroEndpoint endpoint: ZefiroEndpoint.values()) {
+            calls.put(endpoint, new LongAdder());
+        }
+    }
+
+    /**
+     * @param host the address to listen to (default 127.0.0.1) - NOT BLANK
+     */
+    public ZefiroSimulator withHost(final String host) {
+        if (host == null || host.isBlank()) {
+            throw new IllegalArgumentException("host can not be blank");
+        }
+        this.host = host; return this;
+    }
+
+    /**
+     * @param port the port to listen to (default 0, a random free port)
+     */
+    public ZefiroSimulator withPort(final int port) {
+        if (port < 0) {
+            throw new IllegalArgumentException("port can not be negative");
+        }
+        this.port = port; return this;
+    }
+
+    /**
+     * Keeps the files in the given directory, one subdirectory per account,
+     * instead of in memory.
+     *
+     * @param directory the directory - NOT NULL
+     */
+    public ZefiroSimulator withDirectory(final Path directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory can not be null");
+        }
+        this.directory = directory; return this;
+    }
+
+    /**
+     * Accepts the given credentials; once an account is given, any other
+     * login is rejected with 401.
+     */
+    public ZefiroSimulator withAccount(final String username, final String password) {
+        if (username == null || username.isBlank() || password == null) {
+            throw new IllegalArgumentException("username can not be blank and password can not be null");
+        }
+        accounts.put(username, password); return this;
+    }
+
+    /**
+     * Creates the given folder (e.g. {@code /Toosla}) in every new account.
+     */
+    public ZefiroSimulator withFolder(final String path) {
+        seeds.add(new MediaTree.Seed(checkPath(path), null)); return this;
+    }
+
+    /**
+     * Creates the given file (e.g. {@code /Toosla/toosla.json}) and its
+     * folders in every new account.
+     */
+    public ZefiroSimulator withFile(final String path, final String content) {
+        if (content == null) {
+            throw new IllegalArgumentException("content can not be null");
+        }
+        seeds.add(new MediaTree.Seed(checkPath(path), content.getBytes(StandardCharsets.UTF_8))); return this;
+    }
+
+    /**
+     * Creates the given file in every new account with a generated JSON
+     * content of the given size.
+     *
+     * @param path the path of the file - NOT BLANK
+     * @param size the size of the content in bytes (at least 11, the size of
+     *        the smallest generated document)
+     */
+    public ZefiroSimulator withFile(final String path, final int size) {
+        return withFile(path, generated(size));
+    }
+
+    /**
+     * @param latency the latency of all endpoints without a specific one - NOT NULL
+     */
+    public ZefiroSimulator withLatency(final Latency latency) {
+        if (latency == null) {
+            throw new IllegalArgumentException("latency can not be null");
+        }
+        this.latency = latency; return this;
+    }
+
+    public ZefiroSimulator withLatency(final ZefiroEndpoint endpoint, final Latency latency) {
+        if (endpoint == null || latency == null) {
+            throw new IllegalArgumentException("endpoint and latency can not be null");
+        }
+        latencies.put(endpoint, latency); return this;
+    }
+
+    /**
+     * @param rate the probability in [0, 1] that a call of any endpoint without
+     *        a specific rate fails with the error status
+     */
+    public ZefiroSimulator withErrorRate(final double rate) {
+        this.errorRate = checkRate(rate); return this;
+    }
+
+    public ZefiroSimulator withErrorRate(final ZefiroEndpoint endpoint, final double rate) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("endpoint can not be null");
+        }
+        errorRates.put(endpoint, checkRate(rate)); return this;
+    }
+
+    /**
+     * @param status the status of injected failures (default 500)
+     */
+    public ZefiroSimulator withErrorStatus(final int status) {
+        if (status < 400 || status > 599) {
+            throw new IllegalArgumentException("status must be in [400, 599]");
+        }
+        this.errorStatus = status; return this;
+    }
+
+    /**
+     * @param callsPerSecond the calls per second allowed to each account, with
+     *        bursts of the same size; 0 for no limit
+     */
+    public ZefiroSimulator withThrottling(final double callsPerSecond) {
+        if (callsPerSecond < 0) {
+            throw new IllegalArgumentException("callsPerSecond can not be negative");
+        }
+        this.throttle = callsPerSecond;
+        buckets.clear();
+        return this;
+    }
+
+    /**
+     * @param max the calls served at the same time; 0 for no limit
+     */
+    public ZefiroSimulator withMaxConcurrentCalls(final int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("max can not be negative");
+        }
+        this.maxConcurrentCalls = max; return this;
+    }
+
+    /**
+     * @param entries the number of made up entries appended to folder and media
+     *        lists, to simulate big accounts
+     */
+    public ZefiroSimulator withListPadding(final int entries) {
+        if (entries < 0) {
+            throw new IllegalArgumentException("entries can not be negative");
+        }
+        this.listPadding = entries; return this;
+    }
+
+    /**
+     * @param seed the seed of latencies and failures, for reproducible runs
+     */
+    public ZefiroSimulator withSeed(final long seed) {
+        this.random = new Random(seed); return this;
+    }
+
+    /**
+     * Configures the simulator from the given properties:
+     * <ul>
+     * <li>{@code toosla.sim.host} and {@code toosla.sim.port}</li>
+     * <li>{@code toosla.sim.directory}</li>
+     * <li>{@code toosla.sim.accounts} - comma separated {@code username:password}</li>
+     * <li>{@code toosla.sim.folders} - comma separated paths</li>
+     * <li>{@code toosla.sim.latency} and {@code toosla.sim.latency.<endpoint>} (see {@link Latency#parse(String)})</li>
+     * <li>{@code toosla.sim.error-rate}, {@code toosla.sim.error-rate.<endpoint>} and {@code toosla.sim.error-status}</li>
+     * <li>{@code toosla.sim.throttle} - calls per second per account</li>
+     * <li>{@code toosla.sim.max-concurrent-calls}</li>
+     * <li>{@code toosla.sim.list-padding}</li>
+     * <li>{@code toosla.sim.seed}</li>
+     * </ul>
+     * where {@code <endpoint>} is the tag of a {@link ZefiroEndpoint} (e.g. {@code upload}).
+     *
+     * @param config the configuration - NOT NULL
+     *
+     * @throws IllegalArgumentException if a value is not valid
+     */
+    public ZefiroSimulator withConfiguration(final Properties config) {
+        if (config == null) {
+            throw new IllegalArgumentException("config can not be null");
+        }
+        try {
+            final String host = config.getProperty("toosla.sim.host"); if (host != null) withHost(host);
+            final String port = config.getProperty("toosla.sim.port"); if (port != null) withPort(Integer.parseInt(port.trim()));
+            final String dir = config.getProperty("toosla.sim.directory"); if (dir != null) withDirectory(Path.of(dir));
+            for (String account: list(config.getProperty("toosla.sim.accounts"))) {
+                final int colon = account.indexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("invalid account '" + account + "', expected username:password");
+                }
+                withAccount(account.substring(0, colon), account.substring(colon + 1));
+            }
+            for (String folder: list(config.getProperty("toosla.sim.folders"))) {
+                withFolder(folder);
+            }
+            final String latency = config.getProperty("toosla.sim.latency"); if (latency != null) withLatency(Latency.parse(latency));
+            final String rate = config.getProperty("toosla.sim.error-rate"); if (rate != null) withErrorRate(Double.parseDouble(rate.trim()));
+            for (ZefiroEndpoint endpoint: ZefiroEndpoint.values()) {
+                final String l = config.getProperty("toosla.sim.latency." + endpoint.tag); if (l != null) withLatency(endpoint, Latency.parse(l));
+                final String r = config.getProperty("toosla.sim.error-rate." + endpoint.tag); if (r != null) withErrorRate(endpoint, Double.parseDouble(r.trim()));
+            }
+            final String status = config.getProperty("toosla.sim.error-status"); if (status != null) withErrorStatus(Integer.parseInt(status.trim()));
+            final String throttle = config.getProperty("toosla.sim.throttle"); if (throttle != null) withThrottling(Double.parseDouble(throttle.trim()));
+            final String max = config.getProperty("toosla.sim.max-concurrent-calls"); if (max != null) withMaxConcurrentCalls(Integer.parseInt(max.trim()));
+            final String padding = config.getProperty("toosla.sim.list-padding"); if (padding != null) withListPadding(Integer.parseInt(padding.trim()));
+            final String seed = config.getProperty("toosla.sim.seed"); if (seed != null) withSeed(Long.parseLong(seed.trim()));
+        } catch (NumberFormatException x) {
+            throw new IllegalArgumentException("invalid configuration: " + x.getMessage(), x);
+        }
+
+        return this;
+    }
+
+    public ZefiroSimulator start() throws IOException {
+        tree = new MediaTree(directory, seeds);
+
+        server = HttpServer.create(new InetSocketAddress(host, port), 4096);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+
+        url = "http://" + ("0.0.0.0".equals(host) ? "127.0.0.1" : host) + ":" + server.getAddress().getPort();
+        LOG.info(() -> "Zefiro simulator listening on " + url);
+
+        return this;
+    }
+
+    /**
+     * @return the base URL of both the API and the upload service
+     */
+    public String url() {
+        return url;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the calls received so far (including throttled and failed ones)
+     */
+    public long calls() {
+        return calls.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long calls(final ZefiroEndpoint endpoint) {
+        return calls.get(endpoint).sum();
+    }
+
+    /**
+     * @return the calls rejected with 429 or 503 because of throttling or too
+     *         many calls in flight
+     */
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return the calls failed on purpose
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * @return the content of the given file of the given account, if any
+     */
+    public Optional<String> content(final String account, final String path) {
+        return tree.find(account, checkPath(path)).map((file) -> new String(file.content, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Loads the system properties and the given {@code --name=value}
+     * arguments, in this order; by default the simulator listens on port
+     * 9191 and creates {@code /Toosla} in each account.
+     *
+     * @param args command line arguments - NOT NULL
+     *
+     * @return the configuration
+     */
+    public static Properties configuration(final String... args) {
+        final Properties ret = new Properties();
+
+        ret.setProperty("toosla.sim.port", "9191");
+        ret.setProperty("toosla.sim.folders", "/Toosla");
+        ret.putAll(System.getProperties());
+        for (String arg: args) {
+            final int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 2) {
+                ret.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                LOG.warning(() -> "Ignoring argument '" + arg + "', expected --name=value");
+            }
+        }
+
+        return ret;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final ZefiroSimulator simulator = new ZefiroSimulator().withConfiguration(configuration(args)).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final int n = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(n, Math::max);
+            try {
+                dispatch(exchange, n);
+            } catch (IllegalArgumentException x) {
+                send(exchange, 400, Map.of("error", String.valueOf(x.getMessage())));
+            } catch (IOException | RuntimeException x) {
+                LOG.log(Level.WARNING, x, () -> "failed to serve " + exchange.getRequestURI());
+                send(exchange, 500, Map.of("error", String.valueOf(x.getMessage())));
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void dispatch(final HttpExchange exchange, final int inFlight) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        final Map<String, String> query = parameters(exchange.getRequestURI().getRawQuery());
+
+        final ZefiroEndpoint endpoint = endpoint(path, query);
+        if (endpoint == null) {
+            send(exchange, 404, Map.of("error", "not found"));
+            return;
+        }
+        calls.get(endpoint).increment();
+
+        final int max = maxConcurrentCalls;
+        if (max > 0 && inFlight > max) {
+            throttled.increment();
+            send(exchange, 503, Map.of("error", "too many concurrent calls"));
+            return;
+        }
+
+        final byte[] body = exchange.getRequestBody().readAllBytes();
+
+        //
+        // Who is calling: the login name, the owner of the downloaded file or
+        // the account of the validation key
+        //
+        final String account;
+        Media download = null;
+        if (endpoint == ZefiroEndpoint.LOGIN) {
+            account = parameters(new String(body, StandardCharsets.UTF_8)).get("login");
+        } else if (endpoint == ZefiroEndpoint.CONTENT) {
+            download = tree.media(id(query.get("k")));
+            account = (download == null) ? null : download.folder.account;
+        } else {
+            account = validationKeys.get(String.valueOf(query.get("validationkey")));
+            if (account == null) {
+                send(exchange, 401, Map.of("error", "invalid validation key"));
+                return;
+            }
+        }
+
+        if (account != null && throttle > 0 && !buckets.computeIfAbsent(account, (a) -> new TokenBucket(throttle)).tryAcquire()) {
+            throttled.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 429, Map.of("error", "too many requests"));
+            return;
+        }
+
+        if (!delay(latencies.getOrDefault(endpoint, latency))) {
+            return;
+        }
+
+        if (random.nextDouble() < errorRates.getOrDefault(endpoint, errorRate)) {
+            failures.increment();
+            send(exchange, errorStatus, Map.of("error", "simulated failure"));
+            return;
+        }
+
+        switch (endpoint) {
+            case LOGIN -> login(exchange, body);
+            case ROOT_FOLDER -> send(exchange, 200, data("folders", List.of(folder(tree.root(account)))));
+            case FOLDER_LIST -> folders(exchange, account, query);
+            case MEDIA_LIST -> files(exchange, account, query);
+            case MEDIA_GET -> metadata(exchange, account, body);
+            case UPLOAD -> upload(exchange, account, body);
+            case CONTENT -> {
+                if (download == null) {
+                    send(exchange, 404, Map.of("error", "file not found"));
+                } else {
+                    send(exchange, 200, "application/octet-stream", download.content);
+                }
+            }
+        }
+    }
+
+    private static ZefiroEndpoint endpoint(final String path, final Map<String, String> query) {
+        return switch (path) {
+            case "/sapi/login" -> ZefiroEndpoint.LOGIN;
+            case "/sapi/media/folder/root" -> ZefiroEndpoint.ROOT_FOLDER;
+            case "/sapi/media/folder" -> ZefiroEndpoint.FOLDER_LIST;
+            case "/sapi/media" -> query.containsKey("folderid") ? ZefiroEndpoint.MEDIA_LIST : ZefiroEndpoint.MEDIA_GET;
+            case "/sapi/upload" -> ZefiroEndpoint.UPLOAD;
+            case DOWNLOAD_PATH -> ZefiroEndpoint.CONTENT;
+            default -> null;
+        };
+    }
+
+    private void login(final HttpExchange exchange, final byte[] body) throws IOException {
+        final Map<String, String> form = parameters(new String(body, StandardCharsets.UTF_8));
+        final String username = form.get("login"), password = form.get("password");
+
+        final boolean valid = accounts.isEmpty()
+                            ? (username != null && !username.isBlank())
+                            : (username != null && password != null && password.equals(accounts.get(username)));
+        if (!valid) {
+            send(exchange, 401, Map.of("error", "invalid credentials"));
+            return;
+        }
+
+        tree.root(username);
+        final String key = accountKeys.computeIfAbsent(username, (u) -> {
+            final byte[] bytes = new byte[16];
+            new Random().nextBytes(bytes);
+            final String k = HexFormat.of().formatHex(bytes);
+            validationKeys.put(k, u);
+            return k;
+        });
+
+        send(exchange, 200, data("validationkey", key));
+    }
+
+    private void folders(final HttpExchange exchange, final String account, final Map<String, String> query) throws IOException {
+        final Folder parent = owned(account, tree.folder(id(query.get("parentid"))));
+        if (parent == null) {
+            send(exchange, 404, Map.of("error", "folder not found"));
+            return;
+        }
+        final List<Object> folders = new ArrayList<>();
+        parent.folders.values().forEach((folder) -> folders.add(folder(folder)));
+        for (int i = 0, n = listPadding; i < n; ++i) {
+            final Map<String, Object> padding = folder(parent);
+            padding.put("id", -i - 1); padding.put("name", "padding-" + i); padding.put("parentid", parent.id);
+            folders.add(padding);
+        }
+        send(exchange, 200, data("folders", folders));
+    }
+
+    private void files(final HttpExchange exchange, final String account, final Map<String, String> query) throws IOException {
+        final Folder folder = owned(account, tree.folder(id(query.get("folderid"))));
+        if (folder == null) {
+            send(exchange, 404, Map.of("error", "folder not found"));
+            return;
+        }
+        final List<Object> media = new ArrayList<>();
+        folder.media.values().forEach((file) -> media.add(file(file)));
+        for (int i = 0, n = listPadding; i < n; ++i) {
+            final Map<String, Object> padding = new LinkedHashMap<>();
+            padding.put("id", String.valueOf(-i - 1)); padding.put("name", "padding-" + i + ".bin");
+            padding.put("modificationdate", folder.created); padding.put("size", 0);
+            padding.put("mediatype", "file"); padding.put("status", "U"); padding.put("etag", "padding");
+            media.add(padding);
+        }
+        final Map<String, Object> data = new LinkedHashMap<>();
+        data.put("media", media);
+        data.put("more", false);
+        send(exchange, 200, response(data));
+    }
+
+    private void metadata(final HttpExchange exchange, final String account, final byte[] body) throws IOException {
+        final List<Object> media = new ArrayList<>();
+        for (JsonNode id: JSON.readTree(body).at("/data/ids")) {
+            final Media file = tree.media(id.asLong());
+            if (file != null && file.folder.account.equals(account)) {
+                final Map<String, Object> entry = file(file);
+                entry.put("url", url + DOWNLOAD_PATH + "?action=get&k=" + file.id);
+                media.add(entry);
+            }
+        }
+        send(exchange, 200, data("media", media));
+    }
+
+    private void upload(final HttpExchange exchange, final String account, final byte[] body) throws IOException {
+        final Map<String, byte[]> parts = Multipart.parse(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+        if (!parts.containsKey("data") || !parts.containsKey("file")) {
+            throw new IllegalArgumentException("missing data or file part");
+        }
+        final JsonNode data = JSON.readTree(parts.get("data")).at("/data");
+
+        final Folder folder = owned(account, tree.folder(data.at("/folderid").asLong()));
+        if (folder == null) {
+            send(exchange, 404, Map.of("error", "folder not found"));
+            return;
+        }
+
+        long modified = System.currentTimeMillis();
+        if (data.hasNonNull("modificationdate")) {
+            try {
+                modified = LocalDateTime.parse(data.get("modificationdate").asText(), MODIFICATION_FORMAT)
+                                        .toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException x) {
+                throw new IllegalArgumentException("invalid modificationdate", x);
+            }
+        }
+
+        final Media file = tree.save(folder, data.at("/id").asLong(), data.at("/name").asText(), parts.get("file"), modified);
+
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("success", "Media uploaded successfully");
+        ret.put("id", String.valueOf(file.id));
+        ret.put("status", "V");
+        ret.put("etag", etag(file));
+        ret.put("responsetime", System.currentTimeMillis());
+        send(exchange, 200, ret);
+    }
+
+    private boolean delay(final Latency latency) {
+        final long millis = latency.millis(random);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Folder owned(final String account, final Folder folder) {
+        return (folder != null && folder.account.equals(account)) ? folder : null;
+    }
+
+    private static Map<String, Object> folder(final Folder folder) {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("id", folder.id);
+        ret.put("name", folder.name);
+        ret.put("parentid", folder.parentId());
+        ret.put("status", "N");
+        ret.put("magic", folder.parent == null);
+        ret.put("offline", false);
+        ret.put("date", folder.created);
+        return ret;
+    }
+
+    private static Map<String, Object> file(final Media file) {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("id", String.valueOf(file.id));
+        ret.put("name", file.name);
+        ret.put("modificationdate", file.modified);
+        ret.put("size", file.content.length);
+        ret.put("mediatype", "file");
+        ret.put("status", "U");
+        ret.put("etag", etag(file));
+        return ret;
+    }
+
+    private static String etag(final Media file) {
+        return Integer.toHexString(Arrays.hashCode(file.content)) + "-" + Long.toHexString(file.modified);
+    }
+
+    private static Map<String, Object> data(final String name, final Object value) {
+        final Map<String, Object> data = new LinkedHashMap<>();
+        data.put(name, value);
+
+        return response(data);
+    }
+
+    private static Map<String, Object> response(final Map<String, Object> data) {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("data", data);
+        ret.put("responsetime", System.currentTimeMillis());
+        return ret;
+    }
+
+    private static void send(final HttpExchange exchange, final int status, final Object body) throws IOException {
+        send(exchange, status, "application/json", JSON.writeValueAsBytes(body));
+    }
+
+    private static void send(
+        final HttpExchange exchange, final int status, final String contentType, final byte[] body
+    ) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, (body.length == 0) ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static Map<String, String> parameters(final String encoded) {
+        final Map<String, String> ret = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return ret;
+        }
+        for (String pair: encoded.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq > 0) {
+                ret.put(
+                    URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8)
+                );
+            }
+        }
+        return ret;
+    }
+
+    private static long id(final String value) {
+        try {
+            return (value == null) ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException x) {
+            return 0;
+        }
+    }
+
+    private static String generated(final int size) {
+        if (size < 11) {
+            throw new IllegalArgumentException("size must be at least 11");
+        }
+        return "{\"data\":\"" + "x".repeat(size - 11) + "\"}";
+    }
+
+    private static List<String> list(final String value) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(",")).map(String::trim).filter((s) -> !s.isEmpty()).toList();
+    }
+
+    private static String checkPath(final String path) {
+        if (path == null || !path.startsWith("/") || path.length() < 2 || path.endsWith("/")) {
+            throw new IllegalArgumentException("path must be absolute and not end with /");
+        }
+        return path;
+    }
+
+    private static double checkRate(final double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be in [0, 1]");
+        }
+        return rate;
+    }
+}
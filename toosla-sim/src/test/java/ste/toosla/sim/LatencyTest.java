@@ -0,0 +1,83 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.sim;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+public class LatencyTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void fixed_and_none() {
+        then(Latency.none().millis(random)).isZero();
+        then(Latency.fixed(120).millis(random)).isEqualTo(120);
+        thenThrownBy(() -> Latency.fixed(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void uniform_stays_in_range() {
+        final Latency latency = Latency.uniform(50, 60);
+        final long[] samples = samples(latency, 10000);
+
+        then(Arrays.stream(samples).min().getAsLong()).isEqualTo(50);
+        then(Arrays.stream(samples).max().getAsLong()).isEqualTo(60);
+        thenThrownBy(() -> Latency.uniform(60, 50)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void lognormal_has_the_given_median_and_p99() {
+        final long[] samples = samples(Latency.logNormal(80, 400), 100000);
+        Arrays.sort(samples);
+
+        then((double)samples[50000]).isCloseTo(80, Offset.offset(3.0));
+        then((double)samples[99000]).isCloseTo(400, Offset.offset(25.0));
+        thenThrownBy(() -> Latency.logNormal(80, 40)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void parse_textual_latencies() {
+        then(Latency.parse("none").millis(random)).isZero();
+        then(Latency.parse("25").millis(random)).isEqualTo(25);
+        then(Latency.parse(" fixed:30 ").millis(random)).isEqualTo(30);
+        then(Latency.parse("uniform:7-7").millis(random)).isEqualTo(7);
+        then(Latency.parse("lognormal:10,10").millis(random)).isEqualTo(10);
+
+        for (String spec: new String[] {"", "slow", "uniform:10", "lognormal:10", "gaussian:1,2", "fixed:-1"}) {
+            thenThrownBy(() -> Latency.parse(spec)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private long[] samples(final Latency latency, final int n) {
+        final long[] ret = new long[n];
+        for (int i = 0; i < n; ++i) {
+            ret[i] = latency.millis(random);
+        }
+        return ret;
+    }
+}
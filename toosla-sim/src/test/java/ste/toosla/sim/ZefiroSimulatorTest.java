@@ -0,0 +1,272 @@
+/*
+ * Toosla.me
+ * ---------
+ *
+ * Copyright (C) 2025 Stefano Fornari. Licensed under the
+ * EUPL-1.2 or later (see LICENSE).
+ *
+ * All Rights Reserved.  No use, copying or distribution of this
+ * work may be made except in accordance with a valid license
+ * agreement from Stefano Fornari.  This notice must be
+ * included on all copies, modifications and derivatives of this
+ * work.
+ *
+ * STEFANO FORNARI MAKES NO REPRESENTATIONS OR WARRANTIES ABOUT THE SUITABILITY
+ * OF THE SOFTWARE, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE, OR NON-INFRINGEMENT. STEFANO FORNARI SHALL NOT BE LIABLE FOR ANY
+ * DAMAGES SUFFERED BY LICENSEE AS A RESULT OF USING, MODIFYING OR DISTRIBUTING
+ * THIS SOFTWARE OR ITS DERIVATIVES.
+ */
+package ste.toosla.sim;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.Properties;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.assertj.core.api.BDDAssertions.thenThrownBy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ste.toosla.zefiro.ZefiroClient;
+import ste.toosla.zefiro.ZefiroEndpoint;
+import ste.toosla.zefiro.ZefiroException;
+import ste.toosla.zefiro.ZefiroFileNotFoundException;
+import ste.toosla.zefiro.ZefiroLoginException;
+import ste.toosla.zefiro.ZefiroModificationException;
+import ste.toosla.zefiro.ZefiroUploadResponse;
+
+/**
+ * Drives the real {@link ZefiroClient} against {@link ZefiroSimulator}.
+ */
+public class ZefiroSimulatorTest {
+
+    private static final String FILE = "/Toosla/toosla.json";
+
+    @TempDir
+    Path dir;
+
+    private ZefiroSimulator zefiro;
+
+    @AfterEach
+    public void after() {
+        if (zefiro != null) {
+            zefiro.close();
+        }
+    }
+
+    @Test
+    public void login_with_given_accounts_only() throws Exception {
+        zefiro = new ZefiroSimulator().withAccount("someone", "secret").start();
+
+        then(client("someone", "secret").login().key()).isNotBlank();
+        thenThrownBy(() -> client("someone", "wrong").login()).isInstanceOf(ZefiroLoginException.class);
+        thenThrownBy(() -> client("another", "secret").login()).isInstanceOf(ZefiroLoginException.class);
+    }
+
+    @Test
+    public void any_login_creates_an_account_if_no_accounts_are_given() throws Exception {
+        zefiro = new ZefiroSimulator().start();
+
+        final String key = client("someone", "any").login().key();
+        then(key).isNotBlank();
+        then(client("someone", "other").login().key()).isEqualTo(key);
+        then(client("another", "any").login().key()).isNotEqualTo(key);
+        then(zefiro.calls(ZefiroEndpoint.LOGIN)).isEqualTo(3);
+    }
+
+    @Test
+    public void calls_without_a_valid_key_are_rejected() throws Exception {
+        zefiro = new ZefiroSimulator().withFolder("/Toosla").start();
+
+        thenThrownBy(() -> client("someone", "any").withValidationKey("invalid").download(FILE))
+            .isInstanceOf(ZefiroException.class).hasMessageContaining("401");
+    }
+
+    @Test
+    public void upload_and_download() throws Exception {
+        zefiro = new ZefiroSimulator().withFolder("/Toosla").start();
+
+        final ZefiroClient client = loggedIn("someone");
+        final ZefiroUploadResponse upload = client.upload(FILE, "{\"hello\":\"world\"}");
+
+        then(upload.id()).isNotBlank();
+        then(client.download(FILE)).isEqualTo("{\"hello\":\"world\"}");
+        then(zefiro.content("someone", FILE)).hasValue("{\"hello\":\"world\"}");
+
+        client.upload(FILE, "{\"hello\":\"again\"}", upload.lastModified());
+        then(client.download(FILE)).isEqualTo("{\"hello\":\"again\"}");
+        then(zefiro.calls(ZefiroEndpoint.UPLOAD)).isEqualTo(2);
+        then(zefiro.calls(ZefiroEndpoint.CONTENT)).isEqualTo(2);
+    }
+
+    @Test
+    public void conditional_download_and_upload() throws Exception {
+        zefiro = new ZefiroSimulator().withFolder("/Toosla").start();
+
+        final ZefiroClient client = loggedIn("someone");
+        final Date lastModified = client.upload(FILE, "{}").lastModified();
+
+        then(client.download(FILE, lastModified)).isEmpty();
+        then(client.download(FILE, new Date(lastModified.getTime() - 60000))).isPresent();
+
+        loggedIn("someone").upload(FILE, "{\"from\":\"another device\"}", new Date(lastModified.getTime() + 60000));
+        thenThrownBy(() -> client.upload(FILE, "{\"from\":\"this device\"}", lastModified))
+            .isInstanceOf(ZefiroModificationException.class);
+        then(zefiro.content("someone", FILE)).hasValue("{\"from\":\"another device\"}");
+    }
+
+    @Test
+    public void missing_files_and_folders() throws Exception {
+        zefiro = new ZefiroSimulator().withFolder("/Toosla").start();
+
+        final ZefiroClient client = loggedIn("someone");
+        thenThrownBy(() -> client.download(FILE)).isInstanceOf(ZefiroFileNotFoundException.class);
+        thenThrownBy(() -> client.download("/Other/toosla.json")).isInstanceOf(ZefiroFileNotFoundException.class);
+        thenThrownBy(() -> client.upload("/Other/toosla.json", "{}")).isInstanceOf(ZefiroFileNotFoundException.class);
+    }
+
+    @Test
+    public void accounts_do_not_share_files() throws Exception {
+        zefiro = new ZefiroSimulator().withFile(FILE, "{\"seed\":true}").start();
+
+        loggedIn("someone").upload(FILE, "{\"mine\":true}");
+
+        then(loggedIn("someone").download(FILE)).isEqualTo("{\"mine\":true}");
+        then(loggedIn("another").download(FILE)).isEqualTo("{\"seed\":true}");
+    }
+
+    @Test
+    public void generated_files_and_list_padding() throws Exception {
+        zefiro = new ZefiroSimulator().withFile(FILE, 64 * 1024).withListPadding(500).start();
+
+        final String content = loggedIn("someone").download(FILE);
+        then(content).hasSize(64 * 1024).startsWith("{\"data\":\"");
+        then(content.length()).isEqualTo(64 * 1024);
+    }
+
+    @Test
+    public void files_on_disk_survive_restarts() throws Exception {
+        zefiro = new ZefiroSimulator().withDirectory(dir).withFolder("/Toosla").start();
+        final Date lastModified = loggedIn("some@one.com").upload(FILE, "{\"persistent\":true}").lastModified();
+        zefiro.close();
+
+        final Path file = dir.resolve("some%40one.com/Toosla/toosla.json");
+        then(file).hasContent("{\"persistent\":true}");
+        then(Files.getLastModifiedTime(file).toMillis()).isEqualTo(lastModified.getTime() / 1000 * 1000);
+
+        zefiro = new ZefiroSimulator().withDirectory(dir).withFile(FILE, "{\"seed\":true}").start();
+        then(loggedIn("some@one.com").download(FILE)).isEqualTo("{\"persistent\":true}");
+    }
+
+    @Test
+    public void inject_failures_per_endpoint() throws Exception {
+        zefiro = new ZefiroSimulator().withFile(FILE, "{}")
+            .withErrorRate(ZefiroEndpoint.UPLOAD, 1.0).withErrorStatus(503).start();
+
+        final ZefiroClient client = loggedIn("someone");
+        then(client.download(FILE)).isEqualTo("{}");
+        thenThrownBy(() -> client.upload(FILE, "{\"lost\":true}"))
+            .isInstanceOf(ZefiroException.class).hasMessageContaining("503");
+        then(zefiro.failures()).isEqualTo(1);
+
+        zefiro.withErrorRate(ZefiroEndpoint.UPLOAD, 0);
+        client.upload(FILE, "{\"saved\":true}");
+        then(zefiro.content("someone", FILE)).hasValue("{\"saved\":true}");
+    }
+
+    @Test
+    public void inject_latency_per_endpoint() throws Exception {
+        zefiro = new ZefiroSimulator().withFile(FILE, "{}")
+            .withLatency(ZefiroEndpoint.CONTENT, Latency.fixed(300)).start();
+
+        final ZefiroClient client = loggedIn("someone");
+
+        long start = System.nanoTime();
+        client.download(FILE);
+        then((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(300);
+
+        start = System.nanoTime();
+        client.download(FILE, new Date());
+        then((System.nanoTime() - start) / 1_000_000).isLessThan(300);
+    }
+
+    @Test
+    public void throttle_accounts() throws Exception {
+        zefiro = new ZefiroSimulator().withFile(FILE, "{}").withThrottling(3).start();
+
+        final ZefiroClient client = loggedIn("someone"); // 1 call
+        thenThrownBy(() -> client.download(FILE))         // 4 calls
+            .isInstanceOf(ZefiroException.class).hasMessageContaining("429");
+        then(zefiro.throttled()).isEqualTo(1);
+
+        then(loggedIn("another").validationKey()).isNotBlank();
+    }
+
+    @Test
+    public void limit_calls_in_flight() throws Exception {
+        zefiro = new ZefiroSimulator().withLatency(Latency.fixed(300)).withMaxConcurrentCalls(2).start();
+
+        final HttpClient http = HttpClient.newHttpClient();
+        final List<Future<Integer>> statuses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 6; ++i) {
+                final String user = "user" + i;
+                statuses.add(executor.submit(() -> http.send(
+                    HttpRequest.newBuilder(URI.create(zefiro.url() + "/sapi/login?action=login"))
+                        .header("Content-Type", "application/x-www-form-urlencoded")
+                        .POST(HttpRequest.BodyPublishers.ofString("login=" + user + "&password=x")).build(),
+                    HttpResponse.BodyHandlers.discarding()
+                ).statusCode()));
+            }
+        }
+
+        final List<Integer> codes = new ArrayList<>();
+        for (Future<Integer> status: statuses) {
+            codes.add(status.get());
+        }
+        then(codes).containsOnly(200, 503).contains(200, 503);
+        then(zefiro.throttled()).isEqualTo(codes.stream().filter((c) -> c == 503).count());
+    }
+
+    @Test
+    public void configuration_from_properties() throws Exception {
+        final Properties config = ZefiroSimulator.configuration(
+            "--toosla.sim.port=0", "--toosla.sim.accounts=someone:secret",
+            "--toosla.sim.latency.login=fixed:200", "--toosla.sim.error-rate.upload=1"
+        );
+        zefiro = new ZefiroSimulator().withConfiguration(config).start();
+
+        final long start = System.nanoTime();
+        final ZefiroClient client = client("someone", "secret");
+        client.login();
+        then((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(200);
+
+        thenThrownBy(() -> client.upload(FILE, "{}")).hasMessageContaining("500");
+
+        thenThrownBy(() -> new ZefiroSimulator().withConfiguration(ZefiroSimulator.configuration("--toosla.sim.latency=slow")))
+            .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("slow");
+    }
+
+    // --------------------------------------------------------- private methods
+
+    private ZefiroClient client(final String username, final String password) {
+        return new ZefiroClient(username, password).withApiUrl(zefiro.url()).withUploadUrl(zefiro.url());
+    }
+
+    private ZefiroClient loggedIn(final String username) throws Exception {
+        final ZefiroClient client = client(username, "any");
+        client.login();
+        return client;
+    }
+}